@@ -16,7 +16,6 @@
 package com.jgoetsch.eventtrader.order.price;
 
 import java.math.BigDecimal;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.function.Supplier;
 
@@ -24,7 +23,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jgoetsch.eventtrader.TradeSignal;
-import com.jgoetsch.tradeframework.OHLC;
+import com.jgoetsch.tradeframework.OHLCSeries;
+import com.jgoetsch.tradeframework.data.DataUnavailableException;
 import com.jgoetsch.tradeframework.data.HistoricalDataSource;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
 
@@ -37,8 +37,10 @@ public class HistoricalAveragePrice extends OffsetOrderPrice {
 	@Override
 	protected BigDecimal getBaseValue(TradeSignal trade, Supplier<MarketData> marketData) {
 		try {
-			OHLC data[] = historicalDataSource.getHistoricalData(trade.getContract(), new Date(), durationMinutes * 4, HistoricalDataSource.PERIOD_15_SECONDS);
-			return fromDouble(Arrays.asList(data).stream().mapToDouble(ohlc -> (ohlc.getHigh() + ohlc.getLow()) / 2).average().getAsDouble());
+			OHLCSeries data = historicalDataSource.getHistoricalSeries(trade.getContract(), new Date(), durationMinutes * 4, HistoricalDataSource.PERIOD_15_SECONDS);
+			if (data == null || data.isEmpty())
+				throw new DataUnavailableException("No historical data returned for " + trade.getContract());
+			return fromDouble(data.averageMidpoint());
 		} catch (Exception e) {
 			log.warn("Could not get historical data for average trade limit price, using Last price", e);
 			return marketData.get().getLast();
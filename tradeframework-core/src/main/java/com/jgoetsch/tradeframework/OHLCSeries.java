@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Series of OHLC bars stored in parallel primitive arrays, with bar times in epoch milliseconds.
+ * This avoids an object and a {@link Date} per bar for large amounts of historical data, and lets
+ * calculations over the series run as simple loops over the arrays.
+ * <p>
+ * Bars are appended in time order with {@link #add}. Code expecting individual {@link OHLC}
+ * objects can use {@link #get(int)} or {@link #asList()}, which return views of the series.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class OHLCSeries implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Time of bars that have no date.
+	 */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	private long[] time;
+	private double[] open;
+	private double[] high;
+	private double[] low;
+	private double[] close;
+	private long[] volume;
+	private int size;
+
+	public OHLCSeries() {
+		this(16);
+	}
+
+	public OHLCSeries(int capacity) {
+		capacity = Math.max(capacity, 1);
+		time = new long[capacity];
+		open = new double[capacity];
+		high = new double[capacity];
+		low = new double[capacity];
+		close = new double[capacity];
+		volume = new long[capacity];
+	}
+
+	/**
+	 * Creates a series using the given arrays, which must all have the same length, without copying them.
+	 */
+	public OHLCSeries(long[] time, double[] open, double[] high, double[] low, double[] close, long[] volume) {
+		if (open.length != time.length || high.length != time.length || low.length != time.length
+				|| close.length != time.length || volume.length != time.length)
+			throw new IllegalArgumentException("Series arrays must have the same length");
+		this.time = time;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+		this.size = time.length;
+	}
+
+	/**
+	 * Creates a series from an array of bars, which may be null in which case the series is empty.
+	 */
+	public static OHLCSeries of(OHLC[] bars) {
+		if (bars == null)
+			return new OHLCSeries();
+		OHLCSeries series = new OHLCSeries(bars.length);
+		for (OHLC bar : bars)
+			series.add(bar);
+		return series;
+	}
+
+	public void add(long time, double open, double high, double low, double close, long volume) {
+		if (size == this.time.length)
+			grow();
+		this.time[size] = time;
+		this.open[size] = open;
+		this.high[size] = high;
+		this.low[size] = low;
+		this.close[size] = close;
+		this.volume[size] = volume;
+		size++;
+	}
+
+	public void add(OHLC bar) {
+		add(bar.getDate() != null ? bar.getDate().getTime() : NO_TIME, bar.getOpen(), bar.getHigh(), bar.getLow(), bar.getClose(), bar.getVolume());
+	}
+
+	/**
+	 * Appends all bars of another series.
+	 */
+	public void addAll(OHLCSeries other) {
+		addAll(other, 0, other.size);
+	}
+
+	/**
+	 * Appends a range of bars of another series.
+	 * 
+	 * @param from index of the first bar to append, inclusive
+	 * @param to index of the last bar to append, exclusive
+	 */
+	public void addAll(OHLCSeries other, int from, int to) {
+		int count = to - from;
+		if (count <= 0)
+			return;
+		ensureCapacity(size + count);
+		System.arraycopy(other.time, from, time, size, count);
+		System.arraycopy(other.open, from, open, size, count);
+		System.arraycopy(other.high, from, high, size, count);
+		System.arraycopy(other.low, from, low, size, count);
+		System.arraycopy(other.close, from, close, size, count);
+		System.arraycopy(other.volume, from, volume, size, count);
+		size += count;
+	}
+
+	private void grow() {
+		ensureCapacity(time.length + (time.length >> 1) + 1);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > time.length) {
+			time = Arrays.copyOf(time, capacity);
+			open = Arrays.copyOf(open, capacity);
+			high = Arrays.copyOf(high, capacity);
+			low = Arrays.copyOf(low, capacity);
+			close = Arrays.copyOf(close, capacity);
+			volume = Arrays.copyOf(volume, capacity);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long getTime(int index) {
+		return time[checkIndex(index)];
+	}
+
+	public double getOpen(int index) {
+		return open[checkIndex(index)];
+	}
+
+	public double getHigh(int index) {
+		return high[checkIndex(index)];
+	}
+
+	public double getLow(int index) {
+		return low[checkIndex(index)];
+	}
+
+	public double getClose(int index) {
+		return close[checkIndex(index)];
+	}
+
+	public long getVolume(int index) {
+		return volume[checkIndex(index)];
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		return index;
+	}
+
+	/**
+	 * @return index of the first bar with a time at or after the given time, or the size of
+	 *         the series if there is none
+	 */
+	public int indexOf(long time) {
+		int lo = 0, hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.time[mid] < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @param from index of the first bar, inclusive
+	 * @param to index of the last bar, exclusive
+	 * @return a copy of a range of this series
+	 */
+	public OHLCSeries subSeries(int from, int to) {
+		if (from < 0 || to > size || from > to)
+			throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for size " + size);
+		OHLCSeries sub = new OHLCSeries(to - from);
+		sub.addAll(this, from, to);
+		return sub;
+	}
+
+	/**
+	 * @return view of a bar of this series
+	 */
+	public OHLC get(int index) {
+		return new View(this, checkIndex(index));
+	}
+
+	/**
+	 * @return list view of the bars of this series, for code expecting individual OHLC objects
+	 */
+	public List<OHLC> asList() {
+		return new AbstractList<OHLC>() {
+			public OHLC get(int index) {
+				return OHLCSeries.this.get(index);
+			}
+
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return array of views of the bars of this series
+	 */
+	public OHLC[] toArray() {
+		OHLC[] bars = new OHLC[size];
+		for (int i = 0; i < size; i++)
+			bars[i] = new View(this, i);
+		return bars;
+	}
+
+	/**
+	 * Returns the average high to low range as a percentage of the closing price.
+	 */
+	public double averageRange() {
+		if (size == 0)
+			return 0;
+		double total = 0;
+		for (int i = 0; i < size; i++)
+			total += (high[i] - low[i]) / close[i];
+		return total / size;
+	}
+
+	/**
+	 * Returns the average of the midpoints between the high and low of each bar.
+	 */
+	public double averageMidpoint() {
+		if (size == 0)
+			return Double.NaN;
+		double total = 0;
+		for (int i = 0; i < size; i++)
+			total += high[i] + low[i];
+		return total / (2 * size);
+	}
+
+	public double averageClose() {
+		if (size == 0)
+			return Double.NaN;
+		double total = 0;
+		for (int i = 0; i < size; i++)
+			total += close[i];
+		return total / size;
+	}
+
+	public double highest() {
+		double max = Double.NaN;
+		for (int i = 0; i < size; i++) {
+			if (!(high[i] <= max))
+				max = high[i];
+		}
+		return max;
+	}
+
+	public double lowest() {
+		double min = Double.NaN;
+		for (int i = 0; i < size; i++) {
+			if (!(low[i] >= min))
+				min = low[i];
+		}
+		return min;
+	}
+
+	public long totalVolume() {
+		long total = 0;
+		for (int i = 0; i < size; i++)
+			total += volume[i];
+		return total;
+	}
+
+	/**
+	 * @return single bar spanning the entire series, or null if it is empty
+	 */
+	public OHLC aggregate() {
+		if (size == 0)
+			return null;
+		SimpleOHLC bar = new SimpleOHLC();
+		if (time[0] != NO_TIME)
+			bar.setDate(new Date(time[0]));
+		bar.setOpen(open[0]);
+		bar.setHigh(highest());
+		bar.setLow(lowest());
+		bar.setClose(close[size - 1]);
+		bar.setVolume(totalVolume());
+		return bar;
+	}
+
+	/**
+	 * Combines the bars of this series into bars of a longer period aligned to the epoch,
+	 * such as 1 minute bars into 15 minute bars. The series must be in time order.
+	 * 
+	 * @param periodMillis length of the resampled bars in milliseconds
+	 */
+	public OHLCSeries resample(long periodMillis) {
+		OHLCSeries result = new OHLCSeries(Math.max(16, size / 4));
+		int last = -1;
+		long lastStart = 0;
+		for (int i = 0; i < size; i++) {
+			long start = Math.floorDiv(time[i], periodMillis) * periodMillis;
+			if (last < 0 || start != lastStart) {
+				result.add(start, open[i], high[i], low[i], close[i], volume[i]);
+				last = result.size - 1;
+				lastStart = start;
+			}
+			else {
+				if (high[i] > result.high[last])
+					result.high[last] = high[i];
+				if (low[i] < result.low[last])
+					result.low[last] = low[i];
+				result.close[last] = close[i];
+				result.volume[last] += volume[i];
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "OHLCSeries: " + size + " bars" + (size > 0 ? " from " + get(0) + " to " + get(size - 1) : "");
+	}
+
+	/**
+	 * View of a single bar of a series. Serialized as a copy of the bar.
+	 */
+	private static final class View implements OHLC, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final OHLCSeries series;
+		private final int index;
+
+		View(OHLCSeries series, int index) {
+			this.series = series;
+			this.index = index;
+		}
+
+		public double getOpen() {
+			return series.open[index];
+		}
+
+		public double getHigh() {
+			return series.high[index];
+		}
+
+		public double getLow() {
+			return series.low[index];
+		}
+
+		public double getClose() {
+			return series.close[index];
+		}
+
+		public Date getDate() {
+			return series.time[index] != NO_TIME ? new Date(series.time[index]) : null;
+		}
+
+		public long getVolume() {
+			return series.volume[index];
+		}
+
+		private Object writeReplace() {
+			return new SimpleOHLC(this);
+		}
+
+		@Override
+		public String toString() {
+			return new SimpleOHLC(this).toString();
+		}
+	}
+}
@@ -43,6 +43,18 @@ public class OHLCUtils {
 		}
 	}
 	
+	/**
+	 * Returns the average high to low range as a percentage of the closing price over the
+	 * given series.
+	 */
+	public static double averageRange(OHLCSeries prices) {
+		return prices == null ? 0 : prices.averageRange();
+	}
+
+	public static OHLC aggregate(OHLCSeries series) {
+		return series == null ? null : series.aggregate();
+	}
+
 	public static OHLC aggregate(OHLC ohlcs[]) {
 		if (ohlcs == null || ohlcs.length == 0)
 			return null;
@@ -50,8 +62,8 @@ public class OHLCUtils {
 			SimpleOHLC aggr = new SimpleOHLC();
 			aggr.setOpen(ohlcs[0].getOpen());
 			for (int i=0; i < ohlcs.length; i++) {
-				aggr.setHigh(Math.max(aggr.getHigh(), ohlcs[0].getHigh()));
-				aggr.setLow(Math.min(aggr.getLow() == 0 ? Double.MAX_VALUE : aggr.getLow(), ohlcs[0].getLow()));
+				aggr.setHigh(i == 0 ? ohlcs[i].getHigh() : Math.max(aggr.getHigh(), ohlcs[i].getHigh()));
+				aggr.setLow(i == 0 ? ohlcs[i].getLow() : Math.min(aggr.getLow(), ohlcs[i].getLow()));
 			}
 			aggr.setClose(ohlcs[ohlcs.length-1].getClose());
 			return aggr;
@@ -34,8 +34,8 @@ import com.jgoetsch.tradeframework.marketdata.MarketData;
 public class DefaultCalculatedPosition implements MutablePosition, ClosedPosition {
 
 	private Contract contract;
-	private BigDecimal curQuantity;
-	private BigDecimal totalQuantity;
+	private BigDecimal curQuantity = BigDecimal.ZERO;
+	private BigDecimal totalQuantity = BigDecimal.ZERO;
 	private BigDecimal multiplier;
 	private BigDecimal marketPrice;
 	private BigDecimal avgEntryPrice = BigDecimal.ZERO;
@@ -36,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import com.jgoetsch.tradeframework.Contract;
 import com.jgoetsch.tradeframework.Execution;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
+import com.jgoetsch.tradeframework.marketdata.MarketDataField;
 import com.jgoetsch.tradeframework.marketdata.MarketDataListener;
 import com.jgoetsch.tradeframework.marketdata.MarketDataSource;
 import com.jgoetsch.tradeframework.order.ExecutionListener;
@@ -187,7 +188,7 @@ public class SimulatedAccount implements AccountDataSource, AccountData, Executi
 		if (marketDataSource != null) {
 			try {
 				if (position.getQuantity().signum() != 0)
-					marketDataSource.subscribeMarketData(contract, this);
+					marketDataSource.subscribeMarketData(contract, this, MarketDataField.LAST);
 				else
 					marketDataSource.cancelMarketData(contract, this);
 			} catch (Exception e) {
@@ -198,7 +199,7 @@ public class SimulatedAccount implements AccountDataSource, AccountData, Executi
 
 	protected void onPositionClosed(Contract contract, ClosedPosition pos) {
 		if (transactionLog.isInfoEnabled()) {
-			transactionLog.info(String.format("%s\t%s\t%-5s\t%5d\t%8.5f\t%8.5f\t%5.2f\t%+6.2f%%\t%8.2f\t%7.2f\t%10.2f",
+			transactionLog.info(String.format("%s\t%s\t%-5s\t%5s\t%8.5f\t%8.5f\t%5.2f\t%+6.2f%%\t%8.2f\t%7.2f\t%10.2f",
 					dateFormat.format(pos.getEntryDate()), dateFormat.format(pos.getExitDate()),
 					contract, pos.getTransactionQuantity(), pos.getEntryPrice(), pos.getExitPrice(), pos.getExtentPrice(),
 					pos.getPercentGain().movePointRight(2), pos.getRealizedProfitLoss(), pos.getCommisions().negate(), getNetLiquidationValue()));
@@ -30,8 +30,8 @@ public final class TransactionStatistics {
 	double maxPl;
 	double maxGain;
 	double maxDrawdown;
-	BigDecimal totalPlAmount;
-	BigDecimal commissions;
+	BigDecimal totalPlAmount = BigDecimal.ZERO;
+	BigDecimal commissions = BigDecimal.ZERO;
 
 	public TransactionStatistics(Collection<ClosedPosition> transactions) {
 		nTransactions = transactions.size();
@@ -90,8 +90,12 @@ public final class TransactionStatistics {
 		return nShort;
 	}
 
+	public int getTransactionCount() {
+		return nTransactions;
+	}
+
 	public int getAvgNumberShares() {
-		return totalShares / nTransactions;
+		return nTransactions > 0 ? totalShares / nTransactions : 0;
 	}
 
 	public BigDecimal getProfitBeforeCommissions() {
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.backtest;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.Execution;
+import com.jgoetsch.tradeframework.account.ClosedPosition;
+import com.jgoetsch.tradeframework.account.TransactionStatistics;
+
+/**
+ * Executions, closed positions and equity of a backtest or one of its shards. Results of
+ * shards are merged in an order that depends only on the data and the order of the contracts
+ * in the backtest, not on the number of shards or the order in which they finish.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class BacktestResult {
+
+	private final BigDecimal initialBalance;
+	private final List<ExecutionRecord> executions;
+	private final List<ClosedPositionRecord> closedPositions;
+	private final NavigableMap<Instant, BigDecimal> profitLoss;
+
+	public static class ExecutionRecord {
+		private final Contract contract;
+		private final Execution execution;
+		private final int contractIndex;
+		private final int sequence;
+
+		ExecutionRecord(Contract contract, Execution execution, int contractIndex, int sequence) {
+			this.contract = contract;
+			this.execution = execution;
+			this.contractIndex = contractIndex;
+			this.sequence = sequence;
+		}
+
+		public Contract getContract() {
+			return contract;
+		}
+
+		public Execution getExecution() {
+			return execution;
+		}
+
+		@Override
+		public String toString() {
+			return contract + " " + execution;
+		}
+	}
+
+	static class ClosedPositionRecord {
+		private final ClosedPosition position;
+		private final int contractIndex;
+		private final int sequence;
+
+		ClosedPositionRecord(ClosedPosition position, int contractIndex, int sequence) {
+			this.position = position;
+			this.contractIndex = contractIndex;
+			this.sequence = sequence;
+		}
+	}
+
+	private static final Comparator<ExecutionRecord> executionOrder = Comparator
+			.comparing((ExecutionRecord r) -> r.execution.getDate(), Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparingInt(r -> r.contractIndex)
+			.thenComparingInt(r -> r.sequence);
+
+	private static final Comparator<ClosedPositionRecord> closedPositionOrder = Comparator
+			.comparing((ClosedPositionRecord r) -> r.position.getExitDate(), Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparingInt(r -> r.contractIndex)
+			.thenComparingInt(r -> r.sequence);
+
+	BacktestResult(BigDecimal initialBalance, List<ExecutionRecord> executions, List<ClosedPositionRecord> closedPositions,
+			NavigableMap<Instant, BigDecimal> profitLoss)
+	{
+		this.initialBalance = initialBalance;
+		this.executions = executions;
+		this.closedPositions = closedPositions;
+		this.profitLoss = profitLoss;
+	}
+
+	/**
+	 * Merges the results of independent shards of a backtest. The profit/loss of each shard
+	 * is carried forward from its last sample to the sample times of the other shards.
+	 */
+	static BacktestResult merge(BigDecimal initialBalance, List<BacktestResult> results) {
+		List<ExecutionRecord> executions = new ArrayList<ExecutionRecord>();
+		List<ClosedPositionRecord> closedPositions = new ArrayList<ClosedPositionRecord>();
+		TreeSet<Instant> sampleTimes = new TreeSet<Instant>();
+		for (BacktestResult result : results) {
+			executions.addAll(result.executions);
+			closedPositions.addAll(result.closedPositions);
+			sampleTimes.addAll(result.profitLoss.keySet());
+		}
+		executions.sort(executionOrder);
+		closedPositions.sort(closedPositionOrder);
+
+		TreeMap<Instant, BigDecimal> profitLoss = new TreeMap<Instant, BigDecimal>();
+		for (Instant time : sampleTimes) {
+			BigDecimal total = BigDecimal.ZERO;
+			for (BacktestResult result : results) {
+				Map.Entry<Instant, BigDecimal> sample = result.profitLoss.floorEntry(time);
+				if (sample != null)
+					total = total.add(sample.getValue());
+			}
+			profitLoss.put(time, total);
+		}
+		return new BacktestResult(initialBalance, executions, closedPositions, profitLoss);
+	}
+
+	public BigDecimal getInitialBalance() {
+		return initialBalance;
+	}
+
+	/**
+	 * @return all executions in time order
+	 */
+	public List<ExecutionRecord> getExecutions() {
+		return Collections.unmodifiableList(executions);
+	}
+
+	/**
+	 * @return all closed positions in order of exit time
+	 */
+	public List<ClosedPosition> getClosedPositions() {
+		List<ClosedPosition> list = new ArrayList<ClosedPosition>(closedPositions.size());
+		for (ClosedPositionRecord record : closedPositions)
+			list.add(record.position);
+		return list;
+	}
+
+	/**
+	 * @return account equity at each sample time, including unrealized profit/loss of open positions
+	 */
+	public NavigableMap<Instant, BigDecimal> getEquity() {
+		TreeMap<Instant, BigDecimal> equity = new TreeMap<Instant, BigDecimal>();
+		for (Map.Entry<Instant, BigDecimal> entry : profitLoss.entrySet())
+			equity.put(entry.getKey(), initialBalance.add(entry.getValue()));
+		return equity;
+	}
+
+	public BigDecimal getFinalEquity() {
+		return profitLoss.isEmpty() ? initialBalance : initialBalance.add(profitLoss.lastEntry().getValue());
+	}
+
+	public TransactionStatistics getTransactionStatistics() {
+		return new TransactionStatistics(getClosedPositions());
+	}
+
+	@Override
+	public String toString() {
+		return "BacktestResult: " + executions.size() + " executions, " + closedPositions.size() + " closed positions, final equity " + getFinalEquity();
+	}
+}
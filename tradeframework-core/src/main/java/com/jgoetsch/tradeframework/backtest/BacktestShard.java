@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.backtest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.Execution;
+import com.jgoetsch.tradeframework.InvalidContractException;
+import com.jgoetsch.tradeframework.account.SimulatedAccount;
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener;
+import com.jgoetsch.tradeframework.marketdata.SimulatedMarketDataFeed;
+import com.jgoetsch.tradeframework.marketdata.SimulatedMarketDataSource;
+import com.jgoetsch.tradeframework.order.SimulatedTradingService;
+import com.jgoetsch.tradeframework.order.commissions.CommissionStructure;
+import com.jgoetsch.tradeframework.tradingsystem.TradingSystem;
+
+/**
+ * Backtest of a subset of the contracts of a {@link ParallelBacktest}, with its own market data
+ * feeds, simulated trading service and account so that it can run on its own thread without
+ * sharing any state with other shards.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class BacktestShard extends RecursiveTask<BacktestResult> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<Contract, Integer> contracts;
+	private final StrategyFactory strategyFactory;
+	private final Instant startTimestamp;
+	private final Instant endTimestamp;
+	private final BigDecimal initialBalance;
+	private final long equitySampleInterval;
+	private final SimulatedMarketDataSource marketDataSource;
+	private final SimulatedTradingService tradingService;
+	private final SimulatedAccount account;
+	private final List<MarketDataListener> strategies = new ArrayList<MarketDataListener>();
+	private final List<BacktestResult.ExecutionRecord> executions = new ArrayList<BacktestResult.ExecutionRecord>();
+	private final TreeMap<Instant, BigDecimal> equity = new TreeMap<Instant, BigDecimal>();
+
+	/**
+	 * @param contracts contracts of this shard mapped to their index in the backtest's contract list
+	 * @param feedFactory function creating the market data feed of each contract
+	 * @param strategyFactory factory creating the strategy for each contract
+	 * @param startTimestamp time to start the backtest at
+	 * @param endTimestamp time to end the backtest at, or null to run until the feeds run out of data
+	 * @param initialBalance starting balance of this shard's account
+	 * @param commissions commissions charged by the simulated trading service
+	 * @param equitySampleInterval interval in milliseconds to sample equity at, or 0 for only at the end
+	 */
+	BacktestShard(Map<Contract, Integer> contracts, Function<Contract, ? extends SimulatedMarketDataFeed> feedFactory,
+			StrategyFactory strategyFactory, Instant startTimestamp, Instant endTimestamp, BigDecimal initialBalance,
+			CommissionStructure commissions, long equitySampleInterval)
+	{
+		this.contracts = contracts;
+		this.strategyFactory = strategyFactory;
+		this.startTimestamp = startTimestamp;
+		this.endTimestamp = endTimestamp;
+		this.initialBalance = initialBalance;
+		this.equitySampleInterval = equitySampleInterval;
+		Map<Contract, SimulatedMarketDataFeed> feeds = new LinkedHashMap<Contract, SimulatedMarketDataFeed>();
+		for (Contract contract : contracts.keySet())
+			feeds.put(contract, feedFactory.apply(contract));
+		this.marketDataSource = new SimulatedMarketDataSource(feeds, startTimestamp);
+		this.tradingService = new SimulatedTradingService(marketDataSource, commissions);
+		this.account = new SimulatedAccount(initialBalance, tradingService, marketDataSource);
+	}
+
+	public SimulatedMarketDataSource getMarketDataSource() {
+		return marketDataSource;
+	}
+
+	public SimulatedTradingService getTradingService() {
+		return tradingService;
+	}
+
+	public SimulatedAccount getAccount() {
+		return account;
+	}
+
+	@Override
+	protected BacktestResult compute() {
+		try {
+			begin();
+			runUntil(null);
+		} finally {
+			end();
+		}
+		return getResult();
+	}
+
+	/**
+	 * Subscribes and starts the strategies of this shard.
+	 */
+	void begin() {
+		tradingService.subscribeExecutions((Contract contract, Execution execution) ->
+				executions.add(new BacktestResult.ExecutionRecord(contract, execution, contracts.get(contract), executions.size())));
+		try {
+			for (Contract contract : contracts.keySet()) {
+				MarketDataListener strategy = strategyFactory.createStrategy(contract, this);
+				strategies.add(strategy);
+				marketDataSource.subscribeMarketData(contract, strategy);
+				if (strategy instanceof TradingSystem)
+					((TradingSystem)strategy).start();
+			}
+		} catch (IOException | InvalidContractException e) {
+			throw new BacktestException("Backtest of " + contracts.keySet() + " failed", e);
+		}
+
+		if (endTimestamp != null && equitySampleInterval > 0)
+			scheduleEquitySample(startTimestamp.plusMillis(equitySampleInterval), endTimestamp);
+	}
+
+	/**
+	 * Processes all events up to and including the given time, or up to the end of the backtest
+	 * if it is null.
+	 * 
+	 * @return time of the next event to be processed, or null if the backtest has reached its end
+	 */
+	Instant runUntil(Instant limit) {
+		try {
+			Instant next;
+			while ((next = marketDataSource.getNextEventTime()) != null && (endTimestamp == null || !next.isAfter(endTimestamp))) {
+				if (limit != null && next.isAfter(limit))
+					return next;
+				marketDataSource.advanceToNextEvent();
+			}
+			return null;
+		} catch (IOException e) {
+			throw new BacktestException("Backtest of " + contracts.keySet() + " failed", e);
+		}
+	}
+
+	/**
+	 * Stops the strategies of this shard, advances time to the end of the backtest and closes its
+	 * market data feeds.
+	 */
+	void end() {
+		for (MarketDataListener strategy : strategies) {
+			if (strategy instanceof TradingSystem)
+				((TradingSystem)strategy).stop();
+		}
+		if (endTimestamp != null && marketDataSource.getStartTimestamp().isBefore(endTimestamp))
+			marketDataSource.setStartTimestamp(endTimestamp);
+		try {
+			marketDataSource.close();
+		} catch (IOException e) {
+			throw new BacktestException("Error closing market data feeds", e);
+		}
+	}
+
+	BacktestResult getResult() {
+		TreeMap<Instant, BigDecimal> equity = new TreeMap<Instant, BigDecimal>(this.equity);
+		equity.put(marketDataSource.getStartTimestamp(), profitLoss());
+		return new BacktestResult(initialBalance, executions, closedPositions(), equity);
+	}
+
+	private void scheduleEquitySample(Instant time, Instant end) {
+		if (!time.isAfter(end)) {
+			marketDataSource.schedule(time, () -> {
+				equity.put(time, profitLoss());
+				scheduleEquitySample(time.plusMillis(equitySampleInterval), end);
+			});
+		}
+	}
+
+	private BigDecimal profitLoss() {
+		return account.getNetLiquidationValue().subtract(initialBalance);
+	}
+
+	private List<BacktestResult.ClosedPositionRecord> closedPositions() {
+		List<BacktestResult.ClosedPositionRecord> closedPositions = new ArrayList<BacktestResult.ClosedPositionRecord>();
+		for (int i = 0; i < account.getCompletedTransactions().size(); i++) {
+			BacktestResult.ClosedPositionRecord record = new BacktestResult.ClosedPositionRecord(account.getCompletedTransactions().get(i),
+					contracts.get(account.getCompletedTransactions().get(i).getContract()), i);
+			closedPositions.add(record);
+		}
+		return closedPositions;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.backtest;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.PropertyNotSetException;
+import com.jgoetsch.tradeframework.marketdata.SimulatedMarketDataFeed;
+import com.jgoetsch.tradeframework.order.commissions.CommissionStructure;
+import com.jgoetsch.tradeframework.order.commissions.FlatCommissions;
+
+/**
+ * Backtest engine running a strategy on many contracts in parallel. Contracts are distributed
+ * round robin over a number of {@link BacktestShard}s that are run in a {@link ForkJoinPool},
+ * each with its own market data feeds, simulated trading service and simulated account, and
+ * their results merged deterministically when all have finished.
+ * <p>
+ * Since shards do not share state, this is only suitable for strategies that trade each
+ * contract independently, such as {@link com.jgoetsch.tradeframework.tradingsystem.IntervalTradingSystem}
+ * subclasses. Each shard's account starts with a share of the initial balance in proportion
+ * to the number of contracts it trades, and the merged equity is the initial balance plus
+ * the sum of the profit/loss of each shard. Strategies that size orders from the equity or
+ * buying power of the account only see their shard's share of it, so their results depend
+ * on the number of shards; results of strategies that do not read the account do not. The
+ * feed factory is called from the thread creating the shards, but the feeds it creates are read
+ * from the shard threads, so any data source they share must be thread safe.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class ParallelBacktest {
+
+	private List<Contract> contracts;
+	private Function<Contract, ? extends SimulatedMarketDataFeed> feedFactory;
+	private StrategyFactory strategyFactory;
+	private Instant startTimestamp;
+	private Instant endTimestamp;
+	private BigDecimal initialBalance = BigDecimal.valueOf(100000);
+	private CommissionStructure commissions = new FlatCommissions(BigDecimal.ZERO);
+	private long equitySampleInterval;
+	private int shardCount;
+	private ForkJoinPool pool;
+
+	public BacktestResult run() {
+		if (contracts == null)
+			throw new PropertyNotSetException("contracts");
+		if (feedFactory == null)
+			throw new PropertyNotSetException("feedFactory");
+		if (strategyFactory == null)
+			throw new PropertyNotSetException("strategyFactory");
+		if (startTimestamp == null)
+			throw new PropertyNotSetException("startTimestamp");
+
+		ForkJoinPool pool = this.pool != null ? this.pool : ForkJoinPool.commonPool();
+		int shards = Math.min(contracts.size(), shardCount > 0 ? shardCount : pool.getParallelism());
+		List<Map<Contract, Integer>> shardContracts = new ArrayList<Map<Contract, Integer>>();
+		for (int i = 0; i < shards; i++)
+			shardContracts.add(new LinkedHashMap<Contract, Integer>());
+		for (int i = 0; i < contracts.size(); i++)
+			shardContracts.get(i % shards).put(contracts.get(i), i);
+
+		List<BacktestShard> tasks = new ArrayList<BacktestShard>();
+		BigDecimal remainingBalance = initialBalance;
+		for (int i = 0; i < shards; i++) {
+			Map<Contract, Integer> contracts = shardContracts.get(i);
+			BigDecimal balance = i == shards - 1 ? remainingBalance : initialBalance.multiply(BigDecimal.valueOf(contracts.size()))
+					.divide(BigDecimal.valueOf(this.contracts.size()), initialBalance.scale() + 2, RoundingMode.DOWN);
+			remainingBalance = remainingBalance.subtract(balance);
+			tasks.add(new BacktestShard(contracts, feedFactory, strategyFactory, startTimestamp, endTimestamp, balance,
+					commissions, equitySampleInterval));
+		}
+		return pool.invoke(ForkJoinTask.adapt(() -> {
+			List<BacktestResult> results = new ArrayList<BacktestResult>();
+			for (BacktestShard task : ForkJoinTask.invokeAll(tasks))
+				results.add(task.join());
+			return BacktestResult.merge(initialBalance, results);
+		}));
+	}
+
+	public List<Contract> getContracts() {
+		return contracts;
+	}
+
+	public void setContracts(List<Contract> contracts) {
+		this.contracts = contracts;
+	}
+
+	public Function<Contract, ? extends SimulatedMarketDataFeed> getFeedFactory() {
+		return feedFactory;
+	}
+
+	/**
+	 * Sets the function creating a new market data feed for a contract. A feed is created for each contract
+	 * when the backtest is run.
+	 */
+	public void setFeedFactory(Function<Contract, ? extends SimulatedMarketDataFeed> feedFactory) {
+		this.feedFactory = feedFactory;
+	}
+
+	public StrategyFactory getStrategyFactory() {
+		return strategyFactory;
+	}
+
+	public void setStrategyFactory(StrategyFactory strategyFactory) {
+		this.strategyFactory = strategyFactory;
+	}
+
+	public Instant getStartTimestamp() {
+		return startTimestamp;
+	}
+
+	public void setStartTimestamp(Instant startTimestamp) {
+		this.startTimestamp = startTimestamp;
+	}
+
+	public Instant getEndTimestamp() {
+		return endTimestamp;
+	}
+
+	/**
+	 * Sets the time to end the backtest at, or null to run until all feeds run out of data.
+	 */
+	public void setEndTimestamp(Instant endTimestamp) {
+		this.endTimestamp = endTimestamp;
+	}
+
+	public BigDecimal getInitialBalance() {
+		return initialBalance;
+	}
+
+	public void setInitialBalance(BigDecimal initialBalance) {
+		this.initialBalance = initialBalance;
+	}
+
+	public CommissionStructure getCommissions() {
+		return commissions;
+	}
+
+	public void setCommissions(CommissionStructure commissions) {
+		this.commissions = commissions;
+	}
+
+	public long getEquitySampleInterval() {
+		return equitySampleInterval;
+	}
+
+	/**
+	 * Sets the interval in milliseconds to sample account equity at, which requires an end timestamp.
+	 * If not set, equity is only recorded at the end of the backtest.
+	 */
+	public void setEquitySampleInterval(long equitySampleInterval) {
+		this.equitySampleInterval = equitySampleInterval;
+	}
+
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * Sets the number of shards to divide the contracts into, defaulting to the parallelism of the pool.
+	 */
+	public void setShardCount(int shardCount) {
+		this.shardCount = shardCount;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the pool to run shards in, defaulting to the common pool.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+}
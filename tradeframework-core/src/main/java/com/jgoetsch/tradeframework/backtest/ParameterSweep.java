@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.backtest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.InvalidContractException;
+import com.jgoetsch.tradeframework.PropertyNotSetException;
+import com.jgoetsch.tradeframework.marketdata.MarketData;
+import com.jgoetsch.tradeframework.marketdata.SimulatedMarketDataFeed;
+import com.jgoetsch.tradeframework.marketdata.TickArrayMarketDataFeed;
+import com.jgoetsch.tradeframework.order.commissions.CommissionStructure;
+import com.jgoetsch.tradeframework.order.commissions.FlatCommissions;
+
+/**
+ * Runs the same backtest with many strategy parameter sets. The market data of each contract is
+ * read from its feed and decoded only once, then replayed from memory to an independent
+ * {@link BacktestShard} for each parameter set, with its own simulated trading service and account.
+ * <p>
+ * Parameter sets are divided into batches run in parallel in a {@link ForkJoinPool}. The shards
+ * of a batch are advanced in lockstep, so that each tick is dispatched to every strategy instance
+ * of the batch while it is still in cache rather than the whole data set being replayed once per
+ * parameter set. The decoded ticks are shared by shards running concurrently, so strategies
+ * must not modify the market data passed to them.
+ * 
+ * @author jgoetsch
+ *
+ * @param <P> type of the strategy parameters, which should implement equals, hashCode and toString
+ */
+public class ParameterSweep<P> {
+
+	private List<Contract> contracts;
+	private Function<Contract, ? extends SimulatedMarketDataFeed> feedFactory;
+	private ParameterizedStrategyFactory<? super P> strategyFactory;
+	private List<P> parameterSets;
+	private Instant startTimestamp;
+	private Instant endTimestamp;
+	private BigDecimal initialBalance = BigDecimal.valueOf(100000);
+	private CommissionStructure commissions = new FlatCommissions(BigDecimal.ZERO);
+	private long equitySampleInterval;
+	private int batchCount;
+	private ForkJoinPool pool;
+
+	public SweepResult<P> run() {
+		if (contracts == null)
+			throw new PropertyNotSetException("contracts");
+		if (feedFactory == null)
+			throw new PropertyNotSetException("feedFactory");
+		if (strategyFactory == null)
+			throw new PropertyNotSetException("strategyFactory");
+		if (parameterSets == null)
+			throw new PropertyNotSetException("parameterSets");
+		if (startTimestamp == null)
+			throw new PropertyNotSetException("startTimestamp");
+		Set<P> distinct = new HashSet<P>();
+		for (P parameters : parameterSets) {
+			if (!distinct.add(parameters))
+				throw new IllegalArgumentException("Duplicate parameter set " + parameters);
+		}
+
+		ForkJoinPool pool = this.pool != null ? this.pool : ForkJoinPool.commonPool();
+		return pool.invoke(ForkJoinTask.adapt(() -> {
+			Map<Contract, MarketData[]> ticks = decode();
+
+			int batches = Math.min(parameterSets.size(), batchCount > 0 ? batchCount : pool.getParallelism());
+			List<ForkJoinTask<List<BacktestResult>>> tasks = new ArrayList<ForkJoinTask<List<BacktestResult>>>();
+			for (int b = 0; b < batches; b++) {
+				List<BacktestShard> shards = new ArrayList<BacktestShard>();
+				for (int i = b; i < parameterSets.size(); i += batches)
+					shards.add(createShard(parameterSets.get(i), ticks));
+				tasks.add(ForkJoinTask.adapt(() -> runBatch(shards)));
+			}
+			ForkJoinTask.invokeAll(tasks);
+
+			Map<P, BacktestResult> results = new LinkedHashMap<P, BacktestResult>();
+			for (int i = 0; i < parameterSets.size(); i++) {
+				BacktestResult result = tasks.get(i % batches).join().get(i / batches);
+				results.put(parameterSets.get(i), BacktestResult.merge(initialBalance, Collections.singletonList(result)));
+			}
+			return new SweepResult<P>(results);
+		}));
+	}
+
+	private Map<Contract, MarketData[]> decode() {
+		List<ForkJoinTask<MarketData[]>> tasks = new ArrayList<ForkJoinTask<MarketData[]>>();
+		for (Contract contract : contracts) {
+			tasks.add(ForkJoinTask.adapt(() -> {
+				try {
+					return TickArrayMarketDataFeed.decode(feedFactory.apply(contract), endTimestamp);
+				} catch (IOException | InvalidContractException e) {
+					throw new BacktestException("Error reading market data for " + contract, e);
+				}
+			}));
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		Map<Contract, MarketData[]> ticks = new HashMap<Contract, MarketData[]>();
+		for (int i = 0; i < contracts.size(); i++)
+			ticks.put(contracts.get(i), tasks.get(i).join());
+		return ticks;
+	}
+
+	private BacktestShard createShard(P parameters, Map<Contract, MarketData[]> ticks) {
+		Map<Contract, Integer> contractIndex = new LinkedHashMap<Contract, Integer>();
+		for (int i = 0; i < contracts.size(); i++)
+			contractIndex.put(contracts.get(i), i);
+		return new BacktestShard(contractIndex, contract -> new TickArrayMarketDataFeed(ticks.get(contract)),
+				(contract, shard) -> strategyFactory.createStrategy(parameters, contract, shard),
+				startTimestamp, endTimestamp, initialBalance, commissions, equitySampleInterval);
+	}
+
+	private static List<BacktestResult> runBatch(List<BacktestShard> shards) {
+		try {
+			Instant[] next = new Instant[shards.size()];
+			for (int i = 0; i < shards.size(); i++) {
+				shards.get(i).begin();
+				next[i] = shards.get(i).runUntil(Instant.MIN);
+			}
+			while (true) {
+				Instant time = null;
+				for (Instant t : next) {
+					if (t != null && (time == null || t.isBefore(time)))
+						time = t;
+				}
+				if (time == null)
+					break;
+				for (int i = 0; i < shards.size(); i++) {
+					if (next[i] != null)
+						next[i] = shards.get(i).runUntil(time);
+				}
+			}
+		} finally {
+			for (BacktestShard shard : shards)
+				shard.end();
+		}
+
+		List<BacktestResult> results = new ArrayList<BacktestResult>(shards.size());
+		for (BacktestShard shard : shards)
+			results.add(shard.getResult());
+		return results;
+	}
+
+	public List<Contract> getContracts() {
+		return contracts;
+	}
+
+	public void setContracts(List<Contract> contracts) {
+		this.contracts = contracts;
+	}
+
+	public Function<Contract, ? extends SimulatedMarketDataFeed> getFeedFactory() {
+		return feedFactory;
+	}
+
+	/**
+	 * Sets the function creating the market data feed for a contract, which is called once per
+	 * contract for the whole sweep.
+	 */
+	public void setFeedFactory(Function<Contract, ? extends SimulatedMarketDataFeed> feedFactory) {
+		this.feedFactory = feedFactory;
+	}
+
+	public ParameterizedStrategyFactory<? super P> getStrategyFactory() {
+		return strategyFactory;
+	}
+
+	public void setStrategyFactory(ParameterizedStrategyFactory<? super P> strategyFactory) {
+		this.strategyFactory = strategyFactory;
+	}
+
+	public List<P> getParameterSets() {
+		return parameterSets;
+	}
+
+	public void setParameterSets(List<P> parameterSets) {
+		this.parameterSets = parameterSets;
+	}
+
+	public Instant getStartTimestamp() {
+		return startTimestamp;
+	}
+
+	public void setStartTimestamp(Instant startTimestamp) {
+		this.startTimestamp = startTimestamp;
+	}
+
+	public Instant getEndTimestamp() {
+		return endTimestamp;
+	}
+
+	/**
+	 * Sets the time to end the backtest at, or null to run until all feeds run out of data.
+	 * Ticks after this time are not decoded.
+	 */
+	public void setEndTimestamp(Instant endTimestamp) {
+		this.endTimestamp = endTimestamp;
+	}
+
+	public BigDecimal getInitialBalance() {
+		return initialBalance;
+	}
+
+	public void setInitialBalance(BigDecimal initialBalance) {
+		this.initialBalance = initialBalance;
+	}
+
+	public CommissionStructure getCommissions() {
+		return commissions;
+	}
+
+	public void setCommissions(CommissionStructure commissions) {
+		this.commissions = commissions;
+	}
+
+	public long getEquitySampleInterval() {
+		return equitySampleInterval;
+	}
+
+	/**
+	 * Sets the interval in milliseconds to sample account equity at, which requires an end timestamp.
+	 */
+	public void setEquitySampleInterval(long equitySampleInterval) {
+		this.equitySampleInterval = equitySampleInterval;
+	}
+
+	public int getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Sets the number of batches to divide the parameter sets into, defaulting to the parallelism of the pool.
+	 */
+	public void setBatchCount(int batchCount) {
+		this.batchCount = batchCount;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the pool to run batches in, defaulting to the common pool.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.backtest;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener;
+
+/**
+ * Creates the strategy instance trading a single contract with one of the parameter sets
+ * of a {@link ParameterSweep}.
+ * 
+ * @author jgoetsch
+ *
+ * @param <P> type of the strategy parameters
+ */
+@FunctionalInterface
+public interface ParameterizedStrategyFactory<P> {
+
+	/**
+	 * @param parameters parameter set to create the strategy with
+	 * @param contract contract to be traded by the strategy
+	 * @param shard shard providing the market data source, trading service and account the strategy should use
+	 */
+	MarketDataListener createStrategy(P parameters, Contract contract, BacktestShard shard);
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.backtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+
+import com.jgoetsch.tradeframework.account.TransactionStatistics;
+
+/**
+ * Results of a {@link ParameterSweep}, in the order of its parameter sets.
+ * 
+ * @author jgoetsch
+ *
+ * @param <P> type of the strategy parameters
+ */
+public class SweepResult<P> {
+
+	private final Map<P, BacktestResult> results;
+
+	SweepResult(Map<P, BacktestResult> results) {
+		this.results = results;
+	}
+
+	public Map<P, BacktestResult> getResults() {
+		return Collections.unmodifiableMap(results);
+	}
+
+	public BacktestResult getResult(P parameters) {
+		return results.get(parameters);
+	}
+
+	public TransactionStatistics getStatistics(P parameters) {
+		BacktestResult result = results.get(parameters);
+		return result != null ? result.getTransactionStatistics() : null;
+	}
+
+	/**
+	 * Writes a tab separated table of the transaction statistics of each parameter set.
+	 */
+	public void writeTable(Appendable out) throws IOException {
+		out.append("Parameters\tTrades\tLong\tShort\tWin%\tTotal P/L%\tMax Drawdown%\tRealized P/L\tCommissions\tFinal Equity\n");
+		for (Map.Entry<P, BacktestResult> entry : results.entrySet()) {
+			TransactionStatistics stats = entry.getValue().getTransactionStatistics();
+			out.append(String.format("%s\t%d\t%d\t%d\t%.2f\t%+.2f\t%.2f\t%.2f\t%.2f\t%.2f\n",
+					entry.getKey(), stats.getTransactionCount(), stats.getLongCount(), stats.getShortCount(),
+					stats.getTransactionCount() > 0 ? stats.getWinningPercent() * 100 : 0.0,
+					stats.getTotalPlPercent() * 100, stats.getMaxDrawdown() * 100,
+					stats.getProfitBeforeCommissions(), stats.getCommssions().negate(), entry.getValue().getFinalEquity()));
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeTable(sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+}
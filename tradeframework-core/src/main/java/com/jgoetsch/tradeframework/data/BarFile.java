@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jgoetsch.tradeframework.OHLCSeries;
+
+/**
+ * Immutable contents of a binary bar file holding the cached bars of one contract and bar
+ * period, or of a single day of them for intraday bars. All values are big endian.
+ * <p>
+ * The file starts with a header of a magic number, format version, bar count, request count
+ * and, since version 2, coverage count. The bars follow in time order, stored by column: long
+ * epoch milli times, then double open, high, low and close prices, then long volumes. The
+ * sorted time column serves as the index of the file, searched to find the bars of a request.
+ * <p>
+ * Bars with a fixed period length are tracked by coverage, the disjoint time ranges that have
+ * been retrieved from the underlying source, stored in order as pairs of start and end times.
+ * Any request within the coverage can be answered from the file. Bars of calendar periods such
+ * as weeks or months are instead tracked by the requests that have been answered from them,
+ * each stored as its end time, number of periods and the times of the first and last bars
+ * returned for it.
+ * 
+ * @author jgoetsch
+ *
+ */
+final class BarFile {
+
+	static final int MAGIC = 0x54464252; // "TFBR"
+	static final short VERSION = 2;
+	static final int HEADER_SIZE_V1 = 14;
+	static final int HEADER_SIZE = 18;
+	static final int BAR_SIZE = 6 * 8;
+	static final int REQUEST_SIZE = 8 + 4 + 8 + 8;
+	static final int COVERAGE_SIZE = 8 + 8;
+
+	static final BarFile EMPTY = new BarFile(new OHLCSeries(), new long[0], new int[0], new long[0], new long[0], new long[0], new long[0]);
+
+	private final OHLCSeries bars;
+	private final long[] requestEnd;
+	private final int[] requestPeriods;
+	private final long[] requestFirst;
+	private final long[] requestLast;
+	private final Map<RequestKey, Integer> requestIndex;
+	private final long[] coverageStart;
+	private final long[] coverageEnd;
+
+	private static final class RequestKey {
+		final long end;
+		final int periods;
+
+		RequestKey(long end, int periods) {
+			this.end = end;
+			this.periods = periods;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(end) * 31 + periods;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof RequestKey && ((RequestKey) obj).end == end && ((RequestKey) obj).periods == periods;
+		}
+	}
+
+	private BarFile(OHLCSeries bars, long[] requestEnd, int[] requestPeriods, long[] requestFirst, long[] requestLast,
+			long[] coverageStart, long[] coverageEnd)
+	{
+		this.bars = bars;
+		this.requestEnd = requestEnd;
+		this.requestPeriods = requestPeriods;
+		this.requestFirst = requestFirst;
+		this.requestLast = requestLast;
+		this.requestIndex = new HashMap<RequestKey, Integer>(requestEnd.length * 2);
+		for (int i = 0; i < requestEnd.length; i++)
+			requestIndex.put(new RequestKey(requestEnd[i], requestPeriods[i]), i);
+		this.coverageStart = coverageStart;
+		this.coverageEnd = coverageEnd;
+	}
+
+	OHLCSeries getBars() {
+		return bars;
+	}
+
+	int getRequestCount() {
+		return requestEnd.length;
+	}
+
+	/**
+	 * @return copy of the bars returned for a previous request, or null if there was no such request
+	 */
+	OHLCSeries find(long endTime, int numPeriods) {
+		Integer i = requestIndex.get(new RequestKey(endTime, numPeriods));
+		if (i == null)
+			return null;
+		else if (requestFirst[i] > requestLast[i])
+			return new OHLCSeries();
+		else
+			return bars.subSeries(bars.indexOf(requestFirst[i]), bars.indexOf(requestLast[i] + 1));
+	}
+
+	/**
+	 * @return copy of the stored bars with start times in the given range
+	 */
+	OHLCSeries range(long start, long end) {
+		int from = bars.indexOf(start);
+		return bars.subSeries(from, Math.max(from, bars.indexOf(end)));
+	}
+
+	/**
+	 * @return true if the whole time range is within the coverage of this file
+	 */
+	boolean covers(long start, long end) {
+		return gaps(start, end).isEmpty();
+	}
+
+	/**
+	 * @return the parts of a time range not within the coverage of this file, as start and end time pairs in order
+	 */
+	List<long[]> gaps(long start, long end) {
+		List<long[]> gaps = new ArrayList<long[]>();
+		int i = Arrays.binarySearch(coverageEnd, start);
+		i = i < 0 ? -i - 1 : i + 1;
+		long pos = start;
+		for (; i < coverageStart.length && coverageStart[i] < end; i++) {
+			if (coverageStart[i] > pos)
+				gaps.add(new long[] { pos, coverageStart[i] });
+			pos = Math.max(pos, coverageEnd[i]);
+		}
+		if (pos < end)
+			gaps.add(new long[] { pos, end });
+		return gaps;
+	}
+
+	/**
+	 * Returns a new bar file with the bars retrieved for a time range added, replacing any
+	 * existing bars with the same times, and the range added to its coverage.
+	 * 
+	 * @param data bars retrieved in time order
+	 */
+	BarFile merge(OHLCSeries data, long start, long end) {
+		if (end <= start)
+			return new BarFile(mergeBars(bars, data), requestEnd, requestPeriods, requestFirst, requestLast, coverageStart, coverageEnd);
+		int n = coverageStart.length;
+		long[] newStart = new long[n + 1];
+		long[] newEnd = new long[n + 1];
+		int i = 0, count = 0;
+		while (i < n && coverageEnd[i] < start) {
+			newStart[count] = coverageStart[i];
+			newEnd[count++] = coverageEnd[i++];
+		}
+		for (; i < n && coverageStart[i] <= end; i++) {
+			start = Math.min(start, coverageStart[i]);
+			end = Math.max(end, coverageEnd[i]);
+		}
+		newStart[count] = start;
+		newEnd[count++] = end;
+		while (i < n) {
+			newStart[count] = coverageStart[i];
+			newEnd[count++] = coverageEnd[i++];
+		}
+		return new BarFile(mergeBars(bars, data), requestEnd, requestPeriods, requestFirst, requestLast,
+				Arrays.copyOf(newStart, count), Arrays.copyOf(newEnd, count));
+	}
+
+	/**
+	 * Returns a new bar file with the bars of a request added, replacing any existing bars
+	 * with the same times.
+	 * 
+	 * @param data bars returned for the request in time order
+	 */
+	BarFile merge(long endTime, int numPeriods, OHLCSeries data) {
+		Integer existing = requestIndex.get(new RequestKey(endTime, numPeriods));
+		int r = existing != null ? existing : requestEnd.length;
+		int length = Math.max(requestEnd.length, r + 1);
+		long[] newEnd = Arrays.copyOf(requestEnd, length);
+		int[] newPeriods = Arrays.copyOf(requestPeriods, length);
+		long[] newFirst = Arrays.copyOf(requestFirst, length);
+		long[] newLast = Arrays.copyOf(requestLast, length);
+		newEnd[r] = endTime;
+		newPeriods[r] = numPeriods;
+		newFirst[r] = data.isEmpty() ? Long.MAX_VALUE : data.getTime(0);
+		newLast[r] = data.isEmpty() ? Long.MIN_VALUE : data.getTime(data.size() - 1);
+		return new BarFile(mergeBars(bars, data), newEnd, newPeriods, newFirst, newLast, coverageStart, coverageEnd);
+	}
+
+	private static OHLCSeries mergeBars(OHLCSeries bars, OHLCSeries data) {
+		OHLCSeries merged = new OHLCSeries(bars.size() + data.size());
+		int i = 0, j = 0;
+		while (i < bars.size() || j < data.size()) {
+			if (j == data.size() || (i < bars.size() && bars.getTime(i) < data.getTime(j)))
+				merged.addAll(bars, i, ++i);
+			else {
+				if (i < bars.size() && bars.getTime(i) == data.getTime(j))
+					i++;
+				merged.addAll(data, j, ++j);
+			}
+		}
+		return merged;
+	}
+
+	static BarFile read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_V1);
+			readFully(channel, header);
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not a bar file: " + path);
+			short version = header.getShort();
+			if (version < 1 || version > VERSION)
+				throw new IOException("Unsupported bar file version " + version + ": " + path);
+			int count = header.getInt();
+			int requests = header.getInt();
+			int coverage = 0;
+			if (version >= 2) {
+				header = ByteBuffer.allocate(HEADER_SIZE - HEADER_SIZE_V1);
+				readFully(channel, header);
+				coverage = header.getInt();
+			}
+
+			ByteBuffer buf = ByteBuffer.allocate(count * BAR_SIZE + requests * REQUEST_SIZE + coverage * COVERAGE_SIZE);
+			readFully(channel, buf);
+			long[] time = new long[count];
+			double[] open = new double[count], high = new double[count], low = new double[count], close = new double[count];
+			long[] volume = new long[count];
+			buf.asLongBuffer().get(time);
+			buf.position(buf.position() + count * 8);
+			buf.asDoubleBuffer().get(open);
+			buf.position(buf.position() + count * 8);
+			buf.asDoubleBuffer().get(high);
+			buf.position(buf.position() + count * 8);
+			buf.asDoubleBuffer().get(low);
+			buf.position(buf.position() + count * 8);
+			buf.asDoubleBuffer().get(close);
+			buf.position(buf.position() + count * 8);
+			buf.asLongBuffer().get(volume);
+			buf.position(buf.position() + count * 8);
+
+			long[] requestEnd = new long[requests], requestFirst = new long[requests], requestLast = new long[requests];
+			int[] requestPeriods = new int[requests];
+			for (int i = 0; i < requests; i++) {
+				requestEnd[i] = buf.getLong();
+				requestPeriods[i] = buf.getInt();
+				requestFirst[i] = buf.getLong();
+				requestLast[i] = buf.getLong();
+			}
+			long[] coverageStart = new long[coverage], coverageEnd = new long[coverage];
+			for (int i = 0; i < coverage; i++) {
+				coverageStart[i] = buf.getLong();
+				coverageEnd[i] = buf.getLong();
+			}
+			return new BarFile(new OHLCSeries(time, open, high, low, close, volume), requestEnd, requestPeriods, requestFirst, requestLast,
+					coverageStart, coverageEnd);
+		}
+	}
+
+	/**
+	 * Writes the bar file to a temporary file and moves it into place, so that readers never
+	 * see a partially written file.
+	 */
+	void write(Path path) throws IOException {
+		int count = bars.size();
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + count * BAR_SIZE + requestEnd.length * REQUEST_SIZE + coverageStart.length * COVERAGE_SIZE);
+		buf.putInt(MAGIC).putShort(VERSION).putInt(count).putInt(requestEnd.length).putInt(coverageStart.length);
+		for (int i = 0; i < count; i++)
+			buf.putLong(bars.getTime(i));
+		for (int i = 0; i < count; i++)
+			buf.putDouble(bars.getOpen(i));
+		for (int i = 0; i < count; i++)
+			buf.putDouble(bars.getHigh(i));
+		for (int i = 0; i < count; i++)
+			buf.putDouble(bars.getLow(i));
+		for (int i = 0; i < count; i++)
+			buf.putDouble(bars.getClose(i));
+		for (int i = 0; i < count; i++)
+			buf.putLong(bars.getVolume(i));
+		for (int i = 0; i < requestEnd.length; i++)
+			buf.putLong(requestEnd[i]).putInt(requestPeriods[i]).putLong(requestFirst[i]).putLong(requestLast[i]);
+		for (int i = 0; i < coverageStart.length; i++)
+			buf.putLong(coverageStart[i]).putLong(coverageEnd[i]);
+		buf.flip();
+
+		Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (buf.hasRemaining())
+					channel.write(buf);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0)
+				throw new IOException("Unexpected end of bar file");
+		}
+		buf.flip();
+	}
+}
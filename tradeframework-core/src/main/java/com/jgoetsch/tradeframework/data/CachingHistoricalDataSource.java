@@ -15,18 +15,26 @@
  */
 package com.jgoetsch.tradeframework.data;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.text.SimpleDateFormat;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.jgoetsch.tradeframework.Contract;
 import com.jgoetsch.tradeframework.InvalidContractException;
 import com.jgoetsch.tradeframework.OHLC;
+import com.jgoetsch.tradeframework.OHLCSeries;
 
 /**
  * HistoricalDataSource wrapper that will cache the results of historical data requests to
@@ -34,65 +42,258 @@ import com.jgoetsch.tradeframework.OHLC;
  * This can help to alleviate the necessary throttling of requests necessary to avoid
  * historical data pacing violations from the IB system, especially when running simulations
  * on the same data repeatedly.
+ * <p>
+ * Bars are stored in binary {@link BarFile}s, and the most recently used files are kept
+ * decoded in memory up to a maximum total number of bars. Concurrent requests needing the
+ * same file, or the same data from the underlying source, only load it once. Updates lock
+ * only the file being written, so that different files are written in parallel.
+ * <p>
+ * Intraday bars are cached by the time ranges they cover, so any request falling within
+ * previously retrieved data is answered locally, including sub-ranges and overlaps of earlier
+ * requests, and a request extending beyond it only retrieves the missing part from the
+ * underlying source. They are stored in a directory per contract and bar period, with one
+ * file per UTC day, so that adding newly retrieved bars only rewrites the days they fall in.
+ * Bars of a day or longer, whose times depend on the exchange calendar, are cached per
+ * request in a single file per contract and bar period.
  * 
  * @author jgoetsch
  *
  */
 public class CachingHistoricalDataSource implements HistoricalDataSource {
 
+	private final Logger log = LoggerFactory.getLogger(CachingHistoricalDataSource.class);
+
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	private static final int FILE_LOCKS = 64;
+
 	private final HistoricalDataSource historicalDataSource;
-	private final String cacheLocation;
+	private final Path cacheLocation;
+	private long maxCachedBars = 2000000;
+	private long cachedBars;
+	private final LinkedHashMap<String, BarFile> cache = new LinkedHashMap<String, BarFile>(16, 0.75f, true);
+	private final SingleFlight<String, BarFile> fileLoads = new SingleFlight<String, BarFile>();
+	private final SingleFlight<String, OHLCSeries> requests = new SingleFlight<String, OHLCSeries>();
+	private final Object[] fileLocks = new Object[FILE_LOCKS];
 
 	public CachingHistoricalDataSource(HistoricalDataSource histDataSource) {
-		this.historicalDataSource = histDataSource;
-		this.cacheLocation = "historicaldata/";
+		this(histDataSource, "historicaldata/");
 	}
 
 	public CachingHistoricalDataSource(HistoricalDataSource histDataSource, String cacheLocation) {
 		this.historicalDataSource = histDataSource;
-		this.cacheLocation = cacheLocation;
+		this.cacheLocation = Paths.get(cacheLocation);
+		for (int i = 0; i < fileLocks.length; i++)
+			fileLocks[i] = new Object();
 	}
 
 	public OHLC[] getHistoricalData(Contract contract, Date endDate, int numPeriods, int periodUnit)
 	throws IOException, InvalidContractException, DataUnavailableException
 	{
-		StringBuilder reqString = new StringBuilder(cacheLocation);
-		reqString.append(contract.getType());
-		reqString.append("_").append(contract.getSymbol());
-		if (contract.getExpiry() != null)
-			reqString.append("_").append(contract.getExpiry());
-		reqString.append("_").append((new SimpleDateFormat("yyyyMMdd_HHmmss")).format(endDate));
-		reqString.append("_").append(numPeriods);
-		reqString.append("_").append(periodUnit);
-
-		File cacheFile = new File(reqString.toString());
-		OHLC[] data = null;
-
-		if (cacheFile.canRead()) {
-			try {
-				ObjectInputStream in = new ObjectInputStream(new FileInputStream(cacheFile));
-				data = (OHLC[])in.readObject();
-				in.close();
-				return data;
-			} catch (Exception e) {
-				e.printStackTrace();
+		OHLCSeries data = getHistoricalSeries(contract, endDate, numPeriods, periodUnit);
+		return data != null ? data.toArray() : null;
+	}
+
+	@Override
+	public OHLCSeries getHistoricalSeries(Contract contract, Date endDate, int numPeriods, int periodUnit)
+	throws IOException, InvalidContractException, DataUnavailableException
+	{
+		String fileName = getFileName(contract, periodUnit);
+		if (periodUnit < PERIOD_1_DAY)
+			return getHistoricalRange(contract, fileName, endDate, numPeriods, periodUnit);
+
+		OHLCSeries data = getBarFile(fileName).find(endDate.getTime(), numPeriods);
+		if (data != null)
+			return data;
+		if (historicalDataSource == null)
+			throw new DataUnavailableException("Cached data not found and live data source was not set");
+
+		return requests.load(fileName + "_" + endDate.getTime() + "_" + numPeriods, () -> {
+			OHLCSeries cached = getBarFile(fileName).find(endDate.getTime(), numPeriods);
+			if (cached != null)
+				return cached;
+			OHLCSeries fetched = historicalDataSource.getHistoricalSeries(contract, endDate, numPeriods, periodUnit);
+			if (fetched != null)
+				store(fileName, endDate.getTime(), numPeriods, fetched);
+			return fetched;
+		});
+	}
+
+	/**
+	 * Returns the bars overlapping the requested time span, retrieving only the parts of it
+	 * not yet covered by the cache. Bars still in progress are never marked as covered, so
+	 * they are retrieved again by later requests.
+	 */
+	private OHLCSeries getHistoricalRange(Contract contract, String fileName, Date endDate, int numPeriods, int periodUnit)
+	throws IOException, InvalidContractException, DataUnavailableException
+	{
+		long period = HistoricalDataUtils.getPeriodDurationInMillis(periodUnit);
+		long start = Math.floorDiv(endDate.getTime() - numPeriods * period, period) * period;
+		long end = -Math.floorDiv(-endDate.getTime(), period) * period;
+		if (gaps(fileName, start, end).isEmpty())
+			return range(fileName, start, end);
+		if (historicalDataSource == null)
+			throw new DataUnavailableException("Cached data not found and live data source was not set");
+
+		return requests.load(fileName + "_" + start + "_" + end, () -> {
+			long completed = Math.floorDiv(System.currentTimeMillis(), period) * period;
+			for (long[] gap : gaps(fileName, start, end)) {
+				OHLCSeries fetched = historicalDataSource.getHistoricalSeries(contract, new Date(gap[1]),
+						(int) ((gap[1] - gap[0]) / period), periodUnit);
+				if (fetched == null)
+					return null;
+				store(fileName, fetched, gap[0], Math.min(gap[1], completed));
 			}
+			return range(fileName, start, end);
+		});
+	}
+
+	/**
+	 * @return the parts of a time range not yet covered by the daily files, with gaps
+	 * continuing across midnight joined together
+	 */
+	private List<long[]> gaps(String fileName, long start, long end) {
+		List<long[]> gaps = new ArrayList<long[]>();
+		for (long day = Math.floorDiv(start, DAY_MILLIS) * DAY_MILLIS; day < end; day += DAY_MILLIS) {
+			for (long[] gap : getBarFile(getDayFileName(fileName, day)).gaps(Math.max(start, day), Math.min(end, day + DAY_MILLIS))) {
+				long[] last = gaps.isEmpty() ? null : gaps.get(gaps.size() - 1);
+				if (last != null && last[1] == gap[0])
+					last[1] = gap[1];
+				else
+					gaps.add(gap);
+			}
+		}
+		return gaps;
+	}
+
+	/**
+	 * @return copy of the bars in the daily files with start times in the given range
+	 */
+	private OHLCSeries range(String fileName, long start, long end) {
+		long day = Math.floorDiv(start, DAY_MILLIS) * DAY_MILLIS;
+		if (end <= day + DAY_MILLIS)
+			return getBarFile(getDayFileName(fileName, day)).range(start, end);
+		OHLCSeries data = new OHLCSeries();
+		for (; day < end; day += DAY_MILLIS)
+			data.addAll(getBarFile(getDayFileName(fileName, day)).range(Math.max(start, day), Math.min(end, day + DAY_MILLIS)));
+		return data;
+	}
+
+	/**
+	 * Name of the file holding the intraday bars of one UTC day, in a directory named after
+	 * the contract and bar period.
+	 */
+	private static String getDayFileName(String fileName, long day) {
+		String directory = fileName.endsWith(".bars") ? fileName.substring(0, fileName.length() - 5) : fileName;
+		return directory + "/" + DateTimeFormatter.BASIC_ISO_DATE.format(LocalDate.ofEpochDay(Math.floorDiv(day, DAY_MILLIS))) + ".bars";
+	}
+
+	protected String getFileName(Contract contract, int periodUnit) {
+		StringBuilder name = new StringBuilder();
+		name.append(contract.getType());
+		name.append("_").append(contract.getSymbol());
+		if (contract.getExpiry() != null)
+			name.append("_").append(contract.getExpiry());
+		name.append("_").append(periodUnit).append(".bars");
+		return name.toString();
+	}
+
+	private BarFile getBarFile(String fileName) {
+		synchronized (cache) {
+			BarFile barFile = cache.get(fileName);
+			if (barFile != null)
+				return barFile;
 		}
-		if (data == null) {
-			if (historicalDataSource == null)
-				throw new DataUnavailableException("Cached data not found and live data source was not set");
-			data = historicalDataSource.getHistoricalData(contract, endDate, numPeriods, periodUnit);
-			if (data != null) {
+		return fileLoads.load(fileName, () -> {
+			synchronized (cache) {
+				BarFile barFile = cache.get(fileName);
+				if (barFile != null)
+					return barFile;
+			}
+			BarFile barFile = BarFile.EMPTY;
+			Path path = cacheLocation.resolve(fileName);
+			if (Files.isReadable(path)) {
 				try {
-					ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(cacheFile));
-					out.writeObject(data);
-					out.close();
-				} catch (Exception e) {
-					e.printStackTrace();
+					barFile = BarFile.read(path);
+				} catch (IOException e) {
+					log.warn("Could not read cached historical data " + path + ", ignoring", e);
 				}
 			}
+			putBarFile(fileName, barFile);
+			return barFile;
+		});
+	}
+
+	private void store(String fileName, long endTime, int numPeriods, OHLCSeries data) {
+		synchronized (getFileLock(fileName)) {
+			write(fileName, getBarFile(fileName).merge(endTime, numPeriods, data));
 		}
-		return data;
+	}
+
+	/**
+	 * Adds retrieved intraday bars to the daily files they fall in, along with the part of
+	 * the retrieved time range within each day as its coverage.
+	 */
+	private void store(String fileName, OHLCSeries data, long start, long end) {
+		long first = data.isEmpty() ? start : Math.min(start, data.getTime(0));
+		long last = data.isEmpty() ? end : Math.max(end, data.getTime(data.size() - 1) + 1);
+		int from = 0;
+		for (long day = Math.floorDiv(first, DAY_MILLIS) * DAY_MILLIS; day < last; day += DAY_MILLIS) {
+			int to = data.indexOf(day + DAY_MILLIS);
+			long dayStart = Math.max(start, day);
+			long dayEnd = Math.min(end, day + DAY_MILLIS);
+			if (to > from || dayEnd > dayStart) {
+				String dayFileName = getDayFileName(fileName, day);
+				OHLCSeries dayBars = data.subSeries(from, to);
+				synchronized (getFileLock(dayFileName)) {
+					write(dayFileName, getBarFile(dayFileName).merge(dayBars, dayStart, Math.max(dayStart, dayEnd)));
+				}
+			}
+			from = to;
+		}
+	}
+
+	private Object getFileLock(String fileName) {
+		return fileLocks[(fileName.hashCode() & Integer.MAX_VALUE) % fileLocks.length];
+	}
+
+	private void write(String fileName, BarFile barFile) {
+		putBarFile(fileName, barFile);
+		try {
+			Path path = cacheLocation.resolve(fileName);
+			Files.createDirectories(path.getParent());
+			barFile.write(path);
+		} catch (IOException e) {
+			log.warn("Could not write cached historical data " + fileName, e);
+		}
+	}
+
+	private void putBarFile(String fileName, BarFile barFile) {
+		synchronized (cache) {
+			BarFile previous = cache.put(fileName, barFile);
+			if (previous != null)
+				cachedBars -= previous.getBars().size();
+			cachedBars += barFile.getBars().size();
+
+			Iterator<Map.Entry<String, BarFile>> iter = cache.entrySet().iterator();
+			while (cachedBars > maxCachedBars && iter.hasNext()) {
+				Map.Entry<String, BarFile> eldest = iter.next();
+				if (eldest.getValue() != barFile) {
+					cachedBars -= eldest.getValue().getBars().size();
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	public long getMaxCachedBars() {
+		return maxCachedBars;
+	}
+
+	/**
+	 * Sets the maximum total number of bars to keep decoded in memory, defaulting to two million.
+	 */
+	public void setMaxCachedBars(long maxCachedBars) {
+		this.maxCachedBars = maxCachedBars;
 	}
 
 	public void close() throws IOException {
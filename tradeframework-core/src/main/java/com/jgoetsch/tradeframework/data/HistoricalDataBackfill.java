@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.OHLCSeries;
+
+/**
+ * Runnable job that retrieves intraday historical bars of a list of contracts over a date
+ * range into the local historical data cache, for running from the Spring launcher.
+ * <p>
+ * The range is split into units of <code>periodsPerRequest</code> bars for each contract,
+ * which are requested in parallel from the historical data source and stored through a
+ * {@link CachingHistoricalDataSource}. Units are queued in time order with the contracts
+ * interleaved, so that the workers are storing different contracts at the same time, and
+ * since intraday bars are cached in a file per day, storing a unit only rewrites the days
+ * it covers rather than all the data retrieved so far for its contract. Pacing of the
+ * requests is left to the source, such as the request scheduler of TWSService. Each unit
+ * completed is appended to a checkpoint file, so that a restarted job skips the units
+ * already done. Progress is logged periodically with the throughput and estimated time
+ * remaining.
+ * <p>
+ * Daily and longer bars are not supported, as the cache stores them per request rather
+ * than by the time range they cover, so a backfill of them would only serve requests
+ * identical to its units.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class HistoricalDataBackfill implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(HistoricalDataBackfill.class);
+
+	private HistoricalDataSource historicalDataSource;
+	private List<Contract> contracts = new ArrayList<Contract>();
+	private Date startDate;
+	private Date endDate;
+	private int periodUnit = HistoricalDataSource.PERIOD_1_MINUTE;
+	private int periodsPerRequest = 1440;
+	private int threads = 4;
+	private String cacheLocation = "historicaldata/";
+	private String checkpointFile;
+	private long progressInterval = 10000;
+
+	private final AtomicInteger completedUnits = new AtomicInteger();
+	private final AtomicInteger failedUnits = new AtomicInteger();
+	private final AtomicLong bars = new AtomicLong();
+	private int skippedUnits;
+	private int totalUnits;
+	private long startTime;
+	private long lastProgress;
+
+	private static class WorkUnit {
+		private final Contract contract;
+		private final long endTime;
+		private final String key;
+
+		private WorkUnit(Contract contract, long endTime, String key) {
+			this.contract = contract;
+			this.endTime = endTime;
+			this.key = key;
+		}
+	}
+
+	public void run() {
+		if (historicalDataSource == null || startDate == null || endDate == null)
+			throw new IllegalStateException("historicalDataSource, startDate and endDate must be set");
+		if (periodUnit >= HistoricalDataSource.PERIOD_1_DAY)
+			throw new IllegalArgumentException("Backfill only supports intraday bar periods, which are cached by time range");
+
+		CachingHistoricalDataSource cache = new CachingHistoricalDataSource(historicalDataSource, cacheLocation);
+		Path checkpoint = checkpointFile != null ? Paths.get(checkpointFile) : Paths.get(cacheLocation, "backfill.checkpoint");
+		Set<String> finished = new HashSet<String>();
+		try {
+			if (Files.exists(checkpoint))
+				finished.addAll(Files.readAllLines(checkpoint, StandardCharsets.UTF_8));
+			if (checkpoint.toAbsolutePath().getParent() != null)
+				Files.createDirectories(checkpoint.toAbsolutePath().getParent());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read backfill checkpoint " + checkpoint, e);
+		}
+
+		List<WorkUnit> units = createUnits();
+		totalUnits = units.size();
+		units = units.stream().filter(u -> !finished.contains(u.key)).collect(Collectors.toList());
+		skippedUnits = totalUnits - units.size();
+		log.info("Backfilling {} units of {} bars for {} contracts, {} already completed", totalUnits, periodsPerRequest, contracts.size(), skippedUnits);
+
+		startTime = lastProgress = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (BufferedWriter writer = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			for (WorkUnit unit : units)
+				executor.execute(() -> backfill(cache, unit, writer));
+			executor.shutdown();
+			while (!executor.awaitTermination(progressInterval, TimeUnit.MILLISECONDS))
+				logProgress(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write backfill checkpoint " + checkpoint, e);
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		logProgress(true);
+	}
+
+	private List<WorkUnit> createUnits() {
+		long period = HistoricalDataUtils.getPeriodDurationInMillis(periodUnit);
+		long unitLength = period * periodsPerRequest;
+		long start = Math.floorDiv(startDate.getTime(), period) * period;
+		List<WorkUnit> units = new ArrayList<WorkUnit>();
+		for (long end = start + unitLength; end - unitLength < endDate.getTime(); end += unitLength) {
+			for (Contract contract : contracts) {
+				units.add(new WorkUnit(contract, end, contract.getType() + " " + contract.getSymbol()
+						+ (contract.getExpiry() != null ? " " + contract.getExpiry() : "")
+						+ " " + periodUnit + " " + end + " " + periodsPerRequest));
+			}
+		}
+		return units;
+	}
+
+	private void backfill(HistoricalDataSource cache, WorkUnit unit, BufferedWriter checkpoint) {
+		try {
+			OHLCSeries data = cache.getHistoricalSeries(unit.contract, new Date(unit.endTime), periodsPerRequest, periodUnit);
+			if (data == null)
+				throw new DataUnavailableException("No data returned");
+			synchronized (checkpoint) {
+				checkpoint.write(unit.key);
+				checkpoint.newLine();
+				checkpoint.flush();
+			}
+			bars.addAndGet(data.size());
+			completedUnits.incrementAndGet();
+		} catch (Exception e) {
+			log.warn("Failed to backfill " + unit.contract + " ending " + new Date(unit.endTime) + ": " + e.getMessage());
+			failedUnits.incrementAndGet();
+		}
+		logProgress(false);
+	}
+
+	private void logProgress(boolean finished) {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (!finished && now - lastProgress < progressInterval)
+				return;
+			lastProgress = now;
+		}
+		int done = completedUnits.get() + failedUnits.get();
+		int remaining = totalUnits - skippedUnits - done;
+		double seconds = Math.max(now - startTime, 1) / 1000.0;
+		if (finished)
+			log.info(String.format("Backfill finished: %d units completed, %d failed, %d skipped, %d bars in %.0f s (%.1f bars/s)",
+					completedUnits.get(), failedUnits.get(), skippedUnits, bars.get(), seconds, bars.get() / seconds));
+		else
+			log.info(String.format("Backfill progress: %d of %d units, %d failed, %d bars, %.2f units/s, %.1f bars/s, ETA %s",
+					done + skippedUnits, totalUnits, failedUnits.get(), bars.get(), done / seconds, bars.get() / seconds,
+					done > 0 ? formatDuration((long)(remaining * seconds / done)) : "unknown"));
+	}
+
+	private static String formatDuration(long seconds) {
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
+
+	public HistoricalDataSource getHistoricalDataSource() {
+		return historicalDataSource;
+	}
+
+	public void setHistoricalDataSource(HistoricalDataSource historicalDataSource) {
+		this.historicalDataSource = historicalDataSource;
+	}
+
+	public List<Contract> getContracts() {
+		return contracts;
+	}
+
+	public void setContracts(List<Contract> contracts) {
+		this.contracts = contracts;
+	}
+
+	/**
+	 * Sets the contracts to backfill as a list of stock symbols.
+	 */
+	public void setSymbols(List<String> symbols) {
+		this.contracts = symbols.stream().map(Contract::stock).collect(Collectors.toList());
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public void setEndDate(Date endDate) {
+		this.endDate = endDate;
+	}
+
+	public int getPeriodUnit() {
+		return periodUnit;
+	}
+
+	/**
+	 * Sets the bar period, one of the HistoricalDataSource period constants shorter than
+	 * PERIOD_1_DAY, defaulting to one minute.
+	 */
+	public void setPeriodUnit(int periodUnit) {
+		this.periodUnit = periodUnit;
+	}
+
+	public int getPeriodsPerRequest() {
+		return periodsPerRequest;
+	}
+
+	/**
+	 * Sets the number of bars in each unit of work, defaulting to one day of one minute bars.
+	 */
+	public void setPeriodsPerRequest(int periodsPerRequest) {
+		this.periodsPerRequest = periodsPerRequest;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of units requested in parallel, defaulting to 4.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public String getCacheLocation() {
+		return cacheLocation;
+	}
+
+	public void setCacheLocation(String cacheLocation) {
+		this.cacheLocation = cacheLocation;
+	}
+
+	public String getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * Sets the file recording completed units, defaulting to backfill.checkpoint in the cache location.
+	 */
+	public void setCheckpointFile(String checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public long getProgressInterval() {
+		return progressInterval;
+	}
+
+	public void setProgressInterval(long progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
+	public int getTotalUnits() {
+		return totalUnits;
+	}
+
+	public int getCompletedUnits() {
+		return completedUnits.get();
+	}
+
+	public int getFailedUnits() {
+		return failedUnits.get();
+	}
+
+	public int getSkippedUnits() {
+		return skippedUnits;
+	}
+
+	public long getBars() {
+		return bars.get();
+	}
+}
@@ -23,6 +23,7 @@ import java.util.TimeZone;
 import com.jgoetsch.tradeframework.Contract;
 import com.jgoetsch.tradeframework.InvalidContractException;
 import com.jgoetsch.tradeframework.OHLC;
+import com.jgoetsch.tradeframework.OHLCSeries;
 
 public interface HistoricalDataSource extends Closeable {
 
@@ -58,6 +59,18 @@ public interface HistoricalDataSource extends Closeable {
 	 */
 	public OHLC[] getHistoricalData(Contract contract, Date endDate, int numPeriods, int periodUnit) throws IOException, InvalidContractException, DataUnavailableException;
 
+	/**
+	 * Retrieves historical prices as a columnar series, taking the same parameters as
+	 * {@link #getHistoricalData(Contract, Date, int, int)}. The default implementation converts
+	 * the array it returns, while sources able to produce a series directly should override it.
+	 * 
+	 * @return series of the periods retrieved, or null if the data could not be retrieved
+	 */
+	public default OHLCSeries getHistoricalSeries(Contract contract, Date endDate, int numPeriods, int periodUnit) throws IOException, InvalidContractException, DataUnavailableException {
+		OHLC[] data = getHistoricalData(contract, endDate, numPeriods, periodUnit);
+		return data != null ? OHLCSeries.of(data) : null;
+	}
+
 	/**
 	 * Retrieves historical prices for the given symbol over the given dates.
 	 * 
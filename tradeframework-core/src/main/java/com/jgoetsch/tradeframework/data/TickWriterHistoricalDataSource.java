@@ -87,10 +87,10 @@ public class TickWriterHistoricalDataSource implements HistoricalDataSource {
 
 		// fill in empty periods with single value of adjacent period start/end
 		for (int i=0; i < numPeriods; i++) {
-			if (ohlc[i].getOpen() == -1) {
+			if (!ohlc[i].hasValue()) {
 				if (i == 0) {
 					for (int n=0; n < numPeriods; n++) {
-						if (ohlc[n].getOpen() != -1) {
+						if (ohlc[n].hasValue()) {
 							ohlc[i].addSample(ohlc[n].getOpen());
 							break;
 						}
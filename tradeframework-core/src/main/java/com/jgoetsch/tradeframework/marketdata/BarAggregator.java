@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.InvalidContractException;
+import com.jgoetsch.tradeframework.OHLC;
+import com.jgoetsch.tradeframework.SimpleOHLC;
+
+/**
+ * Builds time, tick and volume based bars from trades for any number of contracts and bar
+ * specifications at once, notifying {@link BarListener}s of each completed bar.
+ * <p>
+ * Each tick is applied to every bar being built for its contract in constant time, using only
+ * primitive fields, and an {@link com.jgoetsch.tradeframework.OHLC} is created only when a bar
+ * is completed. Ticks of different contracts may be delivered concurrently, as each contract
+ * is locked separately. Completed bars are passed to their listeners after the contract's lock
+ * is released, so listeners may place orders or subscribe and cancel bars without holding it;
+ * the bars of a contract are delivered in order as long as its ticks are delivered by one
+ * thread at a time.
+ * <p>
+ * The aggregator subscribes itself to its market data source for each contract when the first
+ * bar listener for the contract is added. If it has no market data source it may instead be
+ * subscribed to one or called directly as a {@link MarketDataListener}.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class BarAggregator implements MarketDataListener {
+
+	private final MarketDataSource marketDataSource;
+	private final ConcurrentMap<Contract, ContractBars> contractBars = new ConcurrentHashMap<Contract, ContractBars>();
+
+	public BarAggregator() {
+		this(null);
+	}
+
+	public BarAggregator(MarketDataSource marketDataSource) {
+		this.marketDataSource = marketDataSource;
+	}
+
+	public void subscribe(Contract contract, BarSpec spec, BarListener listener) throws IOException, InvalidContractException {
+		boolean first = false;
+		synchronized (this) {
+			ContractBars bars = contractBars.get(contract);
+			if (bars == null) {
+				bars = new ContractBars(contract);
+				contractBars.put(contract, bars);
+				first = true;
+			}
+			bars.add(spec, listener);
+		}
+		if (first && marketDataSource != null)
+			marketDataSource.subscribeMarketData(contract, this, MarketDataField.TRADE);
+	}
+
+	public void cancel(Contract contract, BarSpec spec, BarListener listener) throws IOException {
+		boolean last = false;
+		synchronized (this) {
+			ContractBars bars = contractBars.get(contract);
+			if (bars != null && bars.remove(spec, listener)) {
+				contractBars.remove(contract);
+				last = true;
+			}
+		}
+		if (last && marketDataSource != null)
+			marketDataSource.cancelMarketData(contract, this);
+	}
+
+	public void tick(Contract contract, MarketData data) {
+		ContractBars bars = contractBars.get(contract);
+		if (bars != null)
+			bars.tick(data);
+	}
+
+	@Override
+	public void tick(Contract contract, MarketData data, int changedFields) {
+		if ((changedFields & MarketDataField.TRADE) != 0)
+			tick(contract, data);
+	}
+
+	/**
+	 * Completes any bars in progress for a contract, such as at the end of a session or of a
+	 * simulation.
+	 */
+	public void flush(Contract contract) {
+		ContractBars bars = contractBars.get(contract);
+		if (bars != null)
+			bars.flush();
+	}
+
+	/**
+	 * Completes all bars in progress.
+	 */
+	public void flush() {
+		for (ContractBars bars : contractBars.values())
+			bars.flush();
+	}
+
+	private static final class ContractBars {
+		private final Contract contract;
+		private BarBuilder[] builders = new BarBuilder[0];
+
+		ContractBars(Contract contract) {
+			this.contract = contract;
+		}
+
+		synchronized void add(BarSpec spec, BarListener listener) {
+			for (BarBuilder builder : builders) {
+				if (builder.spec.equals(spec)) {
+					builder.listeners = Arrays.copyOf(builder.listeners, builder.listeners.length + 1);
+					builder.listeners[builder.listeners.length - 1] = listener;
+					return;
+				}
+			}
+			builders = Arrays.copyOf(builders, builders.length + 1);
+			builders[builders.length - 1] = new BarBuilder(spec, listener);
+		}
+
+		/**
+		 * @return true if there are no more listeners for this contract
+		 */
+		synchronized boolean remove(BarSpec spec, BarListener listener) {
+			for (int b = 0; b < builders.length; b++) {
+				BarBuilder builder = builders[b];
+				if (builder.spec.equals(spec)) {
+					for (int i = 0; i < builder.listeners.length; i++) {
+						if (builder.listeners[i] == listener) {
+							builder.listeners = remove(builder.listeners, i);
+							break;
+						}
+					}
+					if (builder.listeners.length == 0)
+						builders = remove(builders, b);
+					break;
+				}
+			}
+			return builders.length == 0;
+		}
+
+		void tick(MarketData data) {
+			long price = data.getLastTicks();
+			long timestamp = data.getTimestampMillis();
+			if (price == MarketData.NO_VALUE || timestamp == MarketData.NO_VALUE)
+				return;
+			long size = data.getLastSizeAsInt();
+			List<CompletedBar> completed = null;
+			synchronized (this) {
+				for (BarBuilder builder : builders)
+					completed = builder.update(timestamp, price, size, completed);
+			}
+			if (completed != null)
+				notifyListeners(completed, data);
+		}
+
+		void flush() {
+			List<CompletedBar> completed = null;
+			synchronized (this) {
+				for (BarBuilder builder : builders) {
+					if (builder.count > 0)
+						completed = builder.complete(completed);
+				}
+			}
+			if (completed != null)
+				notifyListeners(completed, null);
+		}
+
+		private void notifyListeners(List<CompletedBar> completed, MarketData data) {
+			for (CompletedBar bar : completed) {
+				for (BarListener listener : bar.listeners)
+					listener.barCompleted(contract, bar.spec, bar.bar, data);
+			}
+		}
+
+		private static <T> T[] remove(T[] array, int index) {
+			T[] result = Arrays.copyOf(array, array.length - 1);
+			System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+			return result;
+		}
+	}
+
+	/**
+	 * Bar completed while holding the lock of a contract, along with the listeners it is
+	 * to be passed to once the lock is released.
+	 */
+	private static final class CompletedBar {
+		final BarSpec spec;
+		final BarListener[] listeners;
+		final OHLC bar;
+
+		CompletedBar(BarSpec spec, BarListener[] listeners, OHLC bar) {
+			this.spec = spec;
+			this.listeners = listeners;
+			this.bar = bar;
+		}
+	}
+
+	private static final class BarBuilder {
+		final BarSpec spec;
+		BarListener[] listeners;
+		long start;
+		long open, high, low, close;
+		long volume;
+		long count;
+
+		BarBuilder(BarSpec spec, BarListener listener) {
+			this.spec = spec;
+			this.listeners = new BarListener[] { listener };
+		}
+
+		/**
+		 * @param completed bars completed so far by the current tick, or null if none
+		 * @return completed bars including any completed by this builder, or null if none
+		 */
+		List<CompletedBar> update(long timestamp, long price, long size, List<CompletedBar> completed) {
+			switch (spec.getType()) {
+			case TIME:
+				long interval = spec.getSize();
+				if (count > 0 && timestamp >= start + interval) {
+					long newStart = Math.floorDiv(timestamp, interval) * interval;
+					completed = complete(completed);
+					if (spec.isIncludeEmpty()) {
+						for (long t = start + interval; t < newStart; t += interval)
+							completed = emit(completed, t, close, close, close, close, 0);
+					}
+				}
+				if (count == 0)
+					start = Math.floorDiv(timestamp, interval) * interval;
+				add(price, size);
+				break;
+			case TICKS:
+				if (count == 0)
+					start = timestamp;
+				add(price, size);
+				if (count >= spec.getSize())
+					completed = complete(completed);
+				break;
+			case VOLUME:
+				if (count == 0)
+					start = timestamp;
+				add(price, size);
+				if (volume >= spec.getSize())
+					completed = complete(completed);
+				break;
+			}
+			return completed;
+		}
+
+		private void add(long price, long size) {
+			if (count == 0) {
+				open = high = low = price;
+				volume = 0;
+			}
+			else if (price > high)
+				high = price;
+			else if (price < low)
+				low = price;
+			close = price;
+			volume += size;
+			count++;
+		}
+
+		List<CompletedBar> complete(List<CompletedBar> completed) {
+			count = 0;
+			return emit(completed, start, open, high, low, close, volume);
+		}
+
+		private List<CompletedBar> emit(List<CompletedBar> completed, long start, long open, long high, long low, long close, long volume) {
+			SimpleOHLC bar = new SimpleOHLC();
+			bar.setDate(new Date(start));
+			bar.setOpen(FixedPointMarketData.toDouble(open));
+			bar.setHigh(FixedPointMarketData.toDouble(high));
+			bar.setLow(FixedPointMarketData.toDouble(low));
+			bar.setClose(FixedPointMarketData.toDouble(close));
+			bar.setVolume(volume);
+			if (completed == null)
+				completed = new ArrayList<CompletedBar>(2);
+			completed.add(new CompletedBar(spec, listeners, bar));
+			return completed;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.OHLC;
+
+/**
+ * Receives bars completed by a {@link BarAggregator}.
+ * 
+ * @author jgoetsch
+ *
+ */
+public interface BarListener {
+
+	/**
+	 * @param contract contract of the bar
+	 * @param spec specification of the bar as it was subscribed
+	 * @param bar the completed bar, dated at its start
+	 * @param data tick that completed the bar, which for time bars is the first tick of the next
+	 *             bar, or null if the bar was completed by {@link BarAggregator#flush(Contract)}
+	 */
+	public void barCompleted(Contract contract, BarSpec spec, OHLC bar, MarketData data);
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+/**
+ * Specifies how a {@link BarAggregator} divides ticks into bars: by a fixed time interval,
+ * a fixed number of trades or a fixed amount of traded volume.
+ * 
+ * @author jgoetsch
+ *
+ */
+public final class BarSpec {
+
+	public enum Type {
+		TIME, TICKS, VOLUME
+	}
+
+	private final Type type;
+	private final long size;
+	private final boolean includeEmpty;
+
+	private BarSpec(Type type, long size, boolean includeEmpty) {
+		if (size <= 0)
+			throw new IllegalArgumentException("Bar size must be positive");
+		this.type = type;
+		this.size = size;
+		this.includeEmpty = includeEmpty;
+	}
+
+	/**
+	 * Bars covering fixed time intervals aligned to the epoch, skipping intervals with no trades.
+	 * 
+	 * @param intervalMillis length of each bar in milliseconds
+	 */
+	public static BarSpec time(long intervalMillis) {
+		return new BarSpec(Type.TIME, intervalMillis, false);
+	}
+
+	/**
+	 * Bars covering fixed time intervals aligned to the epoch.
+	 * 
+	 * @param intervalMillis length of each bar in milliseconds
+	 * @param includeEmpty if true, intervals with no trades are emitted as flat bars at the previous
+	 *                     close with no volume once the next trade arrives
+	 */
+	public static BarSpec time(long intervalMillis, boolean includeEmpty) {
+		return new BarSpec(Type.TIME, intervalMillis, includeEmpty);
+	}
+
+	/**
+	 * Bars completed after a fixed number of trades.
+	 */
+	public static BarSpec ticks(long count) {
+		return new BarSpec(Type.TICKS, count, false);
+	}
+
+	/**
+	 * Bars completed once their traded volume reaches a fixed amount. A trade crossing the
+	 * threshold is included entirely in the bar it completes.
+	 */
+	public static BarSpec volume(long volume) {
+		return new BarSpec(Type.VOLUME, volume, false);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public boolean isIncludeEmpty() {
+		return includeEmpty;
+	}
+
+	@Override
+	public int hashCode() {
+		return (type.hashCode() * 31 + Long.hashCode(size)) * 31 + (includeEmpty ? 1 : 0);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof BarSpec))
+			return false;
+		BarSpec other = (BarSpec) obj;
+		return type == other.type && size == other.size && includeEmpty == other.includeEmpty;
+	}
+
+	@Override
+	public String toString() {
+		return type + ":" + size + (includeEmpty ? "+empty" : "");
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+/**
+ * Layout of the binary tick files written by {@link BinaryTickRecorder} and read by
+ * {@link BinaryTickMarketDataFeed}. All values are big endian.
+ * <p>
+ * The file starts with a header of a magic number, format version and the number of decimal
+ * places prices are stored with. The rest of the file is a sequence of blocks of up to a few
+ * thousand ticks, each starting with a block header of the tick count, base timestamp in epoch
+ * millis and base price. The ticks of a block are stored by column: millisecond timestamp
+ * deltas from the previous tick, then last, last size, bid, bid size, ask, ask size, and a
+ * byte of {@link MarketDataField} flags of the fields present in each tick. Prices are int
+ * offsets from the base price of the block in units of the file's price decimals.
+ * 
+ * @author jgoetsch
+ *
+ */
+final class BinaryTickFormat {
+
+	static final int MAGIC = 0x54464b54; // "TFKT"
+	static final short VERSION = 1;
+	static final int FILE_HEADER_SIZE = 8;
+	static final int BLOCK_HEADER_SIZE = 20;
+
+	/**
+	 * Bytes per tick in a block: seven int columns and the flags byte.
+	 */
+	static final int TICK_SIZE = 7 * 4 + 1;
+
+	static final int FIELDS = MarketDataField.LAST | MarketDataField.LAST_SIZE | MarketDataField.BID
+			| MarketDataField.BID_SIZE | MarketDataField.ASK | MarketDataField.ASK_SIZE;
+
+	static final int DEFAULT_PRICE_DECIMALS = 4;
+	static final int DEFAULT_BLOCK_TICKS = 4096;
+
+	private BinaryTickFormat() {
+	}
+
+	static long unitTicks(int priceDecimals) {
+		if (priceDecimals < 0 || priceDecimals > MarketData.PRICE_SCALE)
+			throw new IllegalArgumentException("Price decimals must be between 0 and " + MarketData.PRICE_SCALE);
+		long unit = 1;
+		for (int i = priceDecimals; i < MarketData.PRICE_SCALE; i++)
+			unit *= 10;
+		return unit;
+	}
+}
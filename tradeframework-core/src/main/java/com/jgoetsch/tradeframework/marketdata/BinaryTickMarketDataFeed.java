@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays ticks from a file in the binary format written by {@link BinaryTickRecorder},
+ * memory mapping the file and reading each tick directly from its columns without any
+ * parsing. The last timestamp of each tick is taken to be the time the last price changed.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class BinaryTickMarketDataFeed extends SimulatedMarketDataFeed {
+
+	private final ByteBuffer buffer;
+	private final long unitTicks;
+
+	private int blockStart;
+	private int blockTicks;
+	private int tickIndex;
+	private long timestamp;
+	private long basePrice;
+	private long lastPrice = MarketData.NO_VALUE;
+	private long lastTimestamp = MarketData.NO_VALUE;
+
+	public BinaryTickMarketDataFeed(Path file) throws IOException {
+		this(map(file));
+	}
+
+	/**
+	 * @param buffer buffer containing the whole of a binary tick file
+	 */
+	public BinaryTickMarketDataFeed(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.duplicate();
+		if (this.buffer.remaining() < BinaryTickFormat.FILE_HEADER_SIZE || this.buffer.getInt(0) != BinaryTickFormat.MAGIC)
+			throw new IOException("Not a binary tick file");
+		if (this.buffer.getShort(4) != BinaryTickFormat.VERSION)
+			throw new IOException("Unsupported binary tick file version " + this.buffer.getShort(4));
+		this.unitTicks = BinaryTickFormat.unitTicks(this.buffer.getShort(6));
+		this.blockStart = BinaryTickFormat.FILE_HEADER_SIZE;
+	}
+
+	private static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Binary tick file too large to map: " + file);
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	@Override
+	protected MarketData retrieveNextTick() throws IOException {
+		if (tickIndex == blockTicks) {
+			if (blockTicks > 0)
+				blockStart += BinaryTickFormat.BLOCK_HEADER_SIZE + blockTicks * BinaryTickFormat.TICK_SIZE;
+			if (blockStart + BinaryTickFormat.BLOCK_HEADER_SIZE > buffer.limit())
+				return null;
+			blockTicks = buffer.getInt(blockStart);
+			timestamp = buffer.getLong(blockStart + 4);
+			basePrice = buffer.getLong(blockStart + 12);
+			tickIndex = 0;
+			if (blockStart + BinaryTickFormat.BLOCK_HEADER_SIZE + blockTicks * BinaryTickFormat.TICK_SIZE > buffer.limit())
+				throw new IOException("Truncated binary tick file");
+		}
+
+		int columns = blockStart + BinaryTickFormat.BLOCK_HEADER_SIZE;
+		int columnSize = blockTicks * 4;
+		int pos = columns + tickIndex * 4;
+		int flags = buffer.get(columns + 7 * columnSize + tickIndex) & 0xff;
+		timestamp += buffer.getInt(pos);
+
+		FixedPointMarketData mkd = new FixedPointMarketData();
+		mkd.setTimestampMillis(timestamp);
+		if ((flags & MarketDataField.LAST) != 0)
+			mkd.setLastTicks(toTicks(buffer.getInt(pos + columnSize)));
+		if ((flags & MarketDataField.LAST_SIZE) != 0)
+			mkd.setLastSize(buffer.getInt(pos + 2 * columnSize));
+		if ((flags & MarketDataField.BID) != 0)
+			mkd.setBidTicks(toTicks(buffer.getInt(pos + 3 * columnSize)));
+		if ((flags & MarketDataField.BID_SIZE) != 0)
+			mkd.setBidSize(buffer.getInt(pos + 4 * columnSize));
+		if ((flags & MarketDataField.ASK) != 0)
+			mkd.setAskTicks(toTicks(buffer.getInt(pos + 5 * columnSize)));
+		if ((flags & MarketDataField.ASK_SIZE) != 0)
+			mkd.setAskSize(buffer.getInt(pos + 6 * columnSize));
+
+		if (mkd.getLastTicks() != lastPrice) {
+			lastPrice = mkd.getLastTicks();
+			lastTimestamp = timestamp;
+		}
+		mkd.setLastTimestampMillis(lastTimestamp);
+		tickIndex++;
+		return mkd;
+	}
+
+	private long toTicks(int offset) {
+		return (basePrice + offset) * unitTicks;
+	}
+
+	public void close() {
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import com.jgoetsch.tradeframework.Contract;
+
+/**
+ * Records the last, bid and ask prices and sizes of received ticks in the binary format
+ * described by {@link BinaryTickFormat}, for replay with {@link BinaryTickMarketDataFeed}.
+ * Ticks are buffered in memory and written a block at a time, so the recorder must be
+ * closed or flushed to write the last block. As with {@link MarketDataRecorder}, ticks
+ * with the same prices and sizes as the previous tick are not recorded.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class BinaryTickRecorder implements MarketDataListener, Flushable, Closeable {
+
+	private final DataOutputStream out;
+	private final int priceDecimals;
+	private final long unitTicks;
+
+	private final int timestamps[];
+	private final int last[];
+	private final int lastSize[];
+	private final int bid[];
+	private final int bidSize[];
+	private final int ask[];
+	private final int askSize[];
+	private final byte flags[];
+	private int count;
+	private long baseTimestamp;
+	private long basePrice;
+	private long prevTimestamp;
+
+	public BinaryTickRecorder(OutputStream output) throws IOException {
+		this(output, BinaryTickFormat.DEFAULT_PRICE_DECIMALS, BinaryTickFormat.DEFAULT_BLOCK_TICKS);
+	}
+
+	/**
+	 * @param output stream to write to
+	 * @param priceDecimals number of decimal places to store prices with, up to {@link MarketData#PRICE_SCALE}
+	 * @param blockTicks maximum number of ticks in each block
+	 */
+	public BinaryTickRecorder(OutputStream output, int priceDecimals, int blockTicks) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+		this.priceDecimals = priceDecimals;
+		this.unitTicks = BinaryTickFormat.unitTicks(priceDecimals);
+		timestamps = new int[blockTicks];
+		last = new int[blockTicks];
+		lastSize = new int[blockTicks];
+		bid = new int[blockTicks];
+		bidSize = new int[blockTicks];
+		ask = new int[blockTicks];
+		askSize = new int[blockTicks];
+		flags = new byte[blockTicks];
+
+		out.writeInt(BinaryTickFormat.MAGIC);
+		out.writeShort(BinaryTickFormat.VERSION);
+		out.writeShort(priceDecimals);
+	}
+
+	public int getPriceDecimals() {
+		return priceDecimals;
+	}
+
+	@Override
+	public synchronized void tick(Contract contract, MarketData data) {
+		try {
+			record(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Records a tick, throwing any exception writing to the underlying stream.
+	 */
+	public synchronized void record(MarketData data) throws IOException {
+		long ts = data.getTimestampMillis();
+		if (ts == MarketData.NO_VALUE)
+			ts = count > 0 ? prevTimestamp : 0;
+		long lastUnits = toUnits(data.getLastTicks());
+		long bidUnits = toUnits(data.getBidTicks());
+		long askUnits = toUnits(data.getAskTicks());
+		int tickFlags = MarketDataField.present(data) & BinaryTickFormat.FIELDS;
+		if (lastUnits == MarketData.NO_VALUE)
+			tickFlags &= ~MarketDataField.LAST;
+		if (bidUnits == MarketData.NO_VALUE)
+			tickFlags &= ~MarketDataField.BID;
+		if (askUnits == MarketData.NO_VALUE)
+			tickFlags &= ~MarketDataField.ASK;
+
+		if (count > 0) {
+			int i = count - 1;
+			if (flags[i] == (byte)tickFlags && lastSize[i] == data.getLastSizeAsInt()
+					&& bidSize[i] == data.getBidSizeAsInt() && askSize[i] == data.getAskSizeAsInt()
+					&& priceEquals(last[i], lastUnits) && priceEquals(bid[i], bidUnits) && priceEquals(ask[i], askUnits))
+				return;
+			if (count == timestamps.length || !fitsInt(ts - prevTimestamp)
+					|| !fitsBlock(lastUnits) || !fitsBlock(bidUnits) || !fitsBlock(askUnits))
+				writeBlock();
+		}
+		if (count == 0) {
+			baseTimestamp = ts;
+			prevTimestamp = ts;
+			basePrice = lastUnits != MarketData.NO_VALUE ? lastUnits
+					: bidUnits != MarketData.NO_VALUE ? bidUnits
+					: askUnits != MarketData.NO_VALUE ? askUnits : 0;
+		}
+
+		timestamps[count] = (int)(ts - prevTimestamp);
+		last[count] = offset(lastUnits);
+		lastSize[count] = data.getLastSizeAsInt();
+		bid[count] = offset(bidUnits);
+		bidSize[count] = data.getBidSizeAsInt();
+		ask[count] = offset(askUnits);
+		askSize[count] = data.getAskSizeAsInt();
+		flags[count] = (byte)tickFlags;
+		prevTimestamp = ts;
+		count++;
+	}
+
+	private long toUnits(long ticks) {
+		return ticks == MarketData.NO_VALUE ? ticks : Math.floorDiv(ticks + unitTicks / 2, unitTicks);
+	}
+
+	private boolean priceEquals(int offset, long units) {
+		return units == MarketData.NO_VALUE || offset == (int)(units - basePrice);
+	}
+
+	private boolean fitsBlock(long units) {
+		return units == MarketData.NO_VALUE || fitsInt(units - basePrice);
+	}
+
+	private static boolean fitsInt(long value) {
+		return value == (int)value;
+	}
+
+	private int offset(long units) {
+		return units == MarketData.NO_VALUE ? 0 : (int)(units - basePrice);
+	}
+
+	private void writeBlock() throws IOException {
+		out.writeInt(count);
+		out.writeLong(baseTimestamp);
+		out.writeLong(basePrice);
+		writeColumn(timestamps);
+		writeColumn(last);
+		writeColumn(lastSize);
+		writeColumn(bid);
+		writeColumn(bidSize);
+		writeColumn(ask);
+		writeColumn(askSize);
+		out.write(flags, 0, count);
+		count = 0;
+	}
+
+	private void writeColumn(int column[]) throws IOException {
+		for (int i = 0; i < count; i++)
+			out.writeInt(column[i]);
+	}
+
+	/**
+	 * Writes any buffered ticks as a block and flushes the underlying stream.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (count > 0)
+			writeBlock();
+		out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+		out.close();
+	}
+
+}
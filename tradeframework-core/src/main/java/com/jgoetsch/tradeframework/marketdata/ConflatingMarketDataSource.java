@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.InvalidContractException;
+
+/**
+ * MarketDataSource decorator that delivers market data to each listener on its own
+ * consumer thread, so that a slow listener does not hold up the thread of the underlying
+ * source or any other listener. If a listener falls behind, pending updates for the same
+ * contract are conflated into the latest value, with the changed field masks of the
+ * conflated updates combined.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class ConflatingMarketDataSource implements MarketDataSource {
+
+	private static final Logger log = LoggerFactory.getLogger(ConflatingMarketDataSource.class);
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final MarketDataSource marketDataSource;
+	private final Map<MarketDataListener, Consumer> consumers = new HashMap<MarketDataListener, Consumer>();
+	private ThreadFactory threadFactory = r -> {
+		Thread t = new Thread(r, "mkd-consumer-" + threadCount.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	};
+
+	public ConflatingMarketDataSource(MarketDataSource marketDataSource) {
+		this.marketDataSource = marketDataSource;
+	}
+
+	public MarketData getDataSnapshot(Contract contract) throws IOException, InvalidContractException {
+		return marketDataSource.getDataSnapshot(contract);
+	}
+
+	public CompletableFuture<MarketData> getMktDataSnapshot(Contract contract) throws IOException {
+		return marketDataSource.getMktDataSnapshot(contract);
+	}
+
+	public void subscribeMarketData(Contract contract, MarketDataListener marketDataListener) throws IOException, InvalidContractException {
+		subscribeMarketData(contract, marketDataListener, MarketDataField.ALL);
+	}
+
+	@Override
+	public void subscribeMarketData(Contract contract, MarketDataListener marketDataListener, int fieldMask) throws IOException, InvalidContractException {
+		Consumer consumer;
+		synchronized (consumers) {
+			consumer = consumers.get(marketDataListener);
+			if (consumer == null) {
+				consumer = new Consumer(marketDataListener);
+				consumers.put(marketDataListener, consumer);
+				threadFactory.newThread(consumer).start();
+			}
+			consumer.addContract(contract);
+		}
+		marketDataSource.subscribeMarketData(contract, consumer, fieldMask);
+	}
+
+	public void cancelMarketData(Contract contract, MarketDataListener marketDataListener) throws IOException {
+		Consumer consumer;
+		synchronized (consumers) {
+			consumer = consumers.get(marketDataListener);
+			if (consumer == null)
+				throw new IllegalArgumentException("Attempted to cancel market data for listener that is not subscribed: " + contract + ", " + marketDataListener);
+			if (consumer.removeContract(contract))
+				consumers.remove(marketDataListener);
+		}
+		marketDataSource.cancelMarketData(contract, consumer);
+	}
+
+	/**
+	 * @return number of updates to the given listener that were merged into a later
+	 * update because the listener had not yet processed the earlier one.
+	 */
+	public long getConflatedCount(MarketDataListener marketDataListener) {
+		Consumer consumer = getConsumer(marketDataListener);
+		return consumer != null ? consumer.getConflatedCount() : 0;
+	}
+
+	/**
+	 * @return number of updates delivered to the given listener.
+	 */
+	public long getDeliveredCount(MarketDataListener marketDataListener) {
+		Consumer consumer = getConsumer(marketDataListener);
+		return consumer != null ? consumer.getDeliveredCount() : 0;
+	}
+
+	private Consumer getConsumer(MarketDataListener marketDataListener) {
+		synchronized (consumers) {
+			return consumers.get(marketDataListener);
+		}
+	}
+
+	public void close() throws IOException {
+		List<Consumer> closing;
+		synchronized (consumers) {
+			closing = new ArrayList<Consumer>(consumers.values());
+			consumers.clear();
+		}
+		for (Consumer consumer : closing) {
+			for (Contract contract : consumer.getContracts())
+				marketDataSource.cancelMarketData(contract, consumer);
+			consumer.stop();
+		}
+		marketDataSource.close();
+	}
+
+	public MarketDataSource getMarketDataSource() {
+		return marketDataSource;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * Sets the factory used to create the consumer thread of each listener.
+	 * 
+	 * @param threadFactory
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	private static class PendingUpdate {
+		private MarketData data;
+		private int changedFields;
+	}
+
+	/**
+	 * Listener registered with the underlying source on behalf of one client listener,
+	 * holding the latest undelivered update for each contract and delivering them in
+	 * the order the contracts were first updated.
+	 */
+	private static class Consumer implements MarketDataListener, Runnable {
+		private final MarketDataListener listener;
+		private final Set<Contract> contracts = new HashSet<Contract>();
+		private final Map<Contract, PendingUpdate> pending = new HashMap<Contract, PendingUpdate>();
+		private final ArrayDeque<Contract> queue = new ArrayDeque<Contract>();
+		private boolean running = true;
+		private long conflatedCount;
+		private long deliveredCount;
+
+		private Consumer(MarketDataListener listener) {
+			this.listener = listener;
+		}
+
+		public void tick(Contract contract, MarketData data) {
+			tick(contract, data, MarketDataField.ALL);
+		}
+
+		@Override
+		public void tick(Contract contract, MarketData data, int changedFields) {
+			if (data instanceof SequencedMarketData)
+				data = data.snapshot();
+			synchronized (this) {
+				if (!contracts.contains(contract))
+					return;
+				PendingUpdate update = pending.get(contract);
+				if (update == null) {
+					update = new PendingUpdate();
+					update.data = data;
+					update.changedFields = changedFields;
+					pending.put(contract, update);
+					queue.add(contract);
+					notify();
+				}
+				else {
+					update.data = data;
+					update.changedFields |= changedFields;
+					conflatedCount++;
+				}
+			}
+		}
+
+		public void run() {
+			while (true) {
+				Contract contract;
+				PendingUpdate update;
+				synchronized (this) {
+					while (running && queue.isEmpty()) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if (!running)
+						return;
+					contract = queue.poll();
+					update = pending.remove(contract);
+					deliveredCount++;
+				}
+				try {
+					listener.tick(contract, update.data, update.changedFields);
+				} catch (RuntimeException e) {
+					log.error("Exception thrown from market data listener " + listener, e);
+				}
+			}
+		}
+
+		private synchronized void addContract(Contract contract) {
+			contracts.add(contract);
+		}
+
+		/**
+		 * @return true if there are no more contracts subscribed
+		 */
+		private synchronized boolean removeContract(Contract contract) {
+			contracts.remove(contract);
+			if (pending.remove(contract) != null)
+				queue.remove(contract);
+			if (contracts.isEmpty()) {
+				running = false;
+				notify();
+				return true;
+			}
+			else
+				return false;
+		}
+
+		private synchronized List<Contract> getContracts() {
+			return new ArrayList<Contract>(contracts);
+		}
+
+		private synchronized void stop() {
+			running = false;
+			notify();
+		}
+
+		private synchronized long getConflatedCount() {
+			return conflatedCount;
+		}
+
+		private synchronized long getDeliveredCount() {
+			return deliveredCount;
+		}
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * MarketData implementation storing prices as <code>long</code> fixed point values
+ * scaled by {@link MarketData#PRICE_SCALE} decimal places, and sizes and timestamps as
+ * primitives, so that it can be updated on the tick path without allocating. The
+ * <code>BigDecimal</code>, boxed and <code>Instant</code> getters of the
+ * {@link MarketData} interface are computed lazily from the primitive values and
+ * cached until the field is next updated.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class FixedPointMarketData implements MarketData, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final double TICKS_PER_UNIT = 1e8;
+
+	private long bid = NO_VALUE;
+	private long ask = NO_VALUE;
+	private long last = NO_VALUE;
+	private long high = NO_VALUE;
+	private long low = NO_VALUE;
+	private long close = NO_VALUE;
+	private int bidSize;
+	private int askSize;
+	private int lastSize;
+	private long volume;
+	private int sizeFlags;
+	private long lastTimestamp = NO_VALUE;
+	private long timestamp = NO_VALUE;
+
+	private transient BigDecimal bidDecimal;
+	private transient BigDecimal askDecimal;
+	private transient BigDecimal lastDecimal;
+	private transient BigDecimal highDecimal;
+	private transient BigDecimal lowDecimal;
+	private transient BigDecimal closeDecimal;
+	private transient Instant lastTimestampInstant;
+	private transient Instant timestampInstant;
+
+	public FixedPointMarketData() {
+	}
+
+	public FixedPointMarketData(double bid, double ask, double last) {
+		setBid(bid);
+		setAsk(ask);
+		setLast(last);
+	}
+
+	public FixedPointMarketData(MarketData source) {
+		set(source);
+	}
+
+	/**
+	 * Replaces all fields with those of the given market data, which is done without any
+	 * allocation if it is also fixed point.
+	 */
+	public void set(MarketData source) {
+		if (source instanceof FixedPointMarketData) {
+			FixedPointMarketData other = (FixedPointMarketData)source;
+			bid = other.bid;
+			ask = other.ask;
+			last = other.last;
+			high = other.high;
+			low = other.low;
+			close = other.close;
+			bidSize = other.bidSize;
+			askSize = other.askSize;
+			lastSize = other.lastSize;
+			volume = other.volume;
+			sizeFlags = other.sizeFlags;
+			lastTimestamp = other.lastTimestamp;
+			timestamp = other.timestamp;
+			bidDecimal = other.bidDecimal;
+			askDecimal = other.askDecimal;
+			lastDecimal = other.lastDecimal;
+			highDecimal = other.highDecimal;
+			lowDecimal = other.lowDecimal;
+			closeDecimal = other.closeDecimal;
+			lastTimestampInstant = other.lastTimestampInstant;
+			timestampInstant = other.timestampInstant;
+		}
+		else {
+			bidSize = askSize = lastSize = 0;
+			volume = 0;
+			sizeFlags = 0;
+			setBidTicks(source.getBidTicks());
+			setAskTicks(source.getAskTicks());
+			setLastTicks(source.getLastTicks());
+			setHighTicks(source.getHighTicks());
+			setLowTicks(source.getLowTicks());
+			setCloseTicks(source.getCloseTicks());
+			if (source.getBidSize() != null)
+				setBidSize(source.getBidSizeAsInt());
+			if (source.getAskSize() != null)
+				setAskSize(source.getAskSizeAsInt());
+			if (source.getLastSize() != null)
+				setLastSize(source.getLastSizeAsInt());
+			if (source.getVolume() != null)
+				setVolume(source.getVolumeAsLong());
+			setLastTimestampMillis(source.getLastTimestampMillis());
+			setTimestampMillis(source.getTimestampMillis());
+		}
+	}
+
+	/**
+	 * Converts a price to its fixed point representation.
+	 * 
+	 * @param price price, or <code>NaN</code> if not present
+	 * @return fixed point value scaled by {@link MarketData#PRICE_SCALE}, or {@link MarketData#NO_VALUE}.
+	 */
+	public static long toTicks(double price) {
+		return Double.isNaN(price) ? NO_VALUE : Math.round(price * TICKS_PER_UNIT);
+	}
+
+	public static long toTicks(BigDecimal price) {
+		return price == null ? NO_VALUE : price.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	public static double toDouble(long ticks) {
+		return ticks == NO_VALUE ? Double.NaN : ticks / TICKS_PER_UNIT;
+	}
+
+	/**
+	 * Converts a fixed point value to a decimal with the smallest non-negative scale that
+	 * represents it exactly, e.g. 100.25 or 100 rather than 100.25000000.
+	 */
+	public static BigDecimal toBigDecimal(long ticks) {
+		if (ticks == NO_VALUE)
+			return null;
+		BigDecimal decimal = BigDecimal.valueOf(ticks, PRICE_SCALE).stripTrailingZeros();
+		return decimal.scale() < 0 ? decimal.setScale(0) : decimal;
+	}
+
+	private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("MM/dd/yy HH:mm:ss z").withZone(ZoneId.of("America/New_York"));
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		if (timestamp != NO_VALUE)
+			sb.append(dateFormat.format(getTimestamp())).append(": ");
+		sb.append("Bid=").append(getBid());
+		sb.append(", Ask=").append(getAsk());
+		sb.append(", Last=").append(getLast());
+		return sb.toString();
+	}
+
+	public void setBid(double bid) {
+		setBidTicks(toTicks(bid));
+	}
+
+	public void setBid(BigDecimal bid) {
+		setBidTicks(toTicks(bid));
+	}
+
+	public void setBidTicks(long bid) {
+		this.bid = bid;
+		this.bidDecimal = null;
+	}
+
+	@Override
+	public long getBidTicks() {
+		return bid;
+	}
+
+	@Override
+	public double getBidAsDouble() {
+		return toDouble(bid);
+	}
+
+	@Override
+	public BigDecimal getBid() {
+		if (bidDecimal == null)
+			bidDecimal = toBigDecimal(bid);
+		return bidDecimal;
+	}
+
+	public void setAsk(double ask) {
+		setAskTicks(toTicks(ask));
+	}
+
+	public void setAsk(BigDecimal ask) {
+		setAskTicks(toTicks(ask));
+	}
+
+	public void setAskTicks(long ask) {
+		this.ask = ask;
+		this.askDecimal = null;
+	}
+
+	@Override
+	public long getAskTicks() {
+		return ask;
+	}
+
+	@Override
+	public double getAskAsDouble() {
+		return toDouble(ask);
+	}
+
+	@Override
+	public BigDecimal getAsk() {
+		if (askDecimal == null)
+			askDecimal = toBigDecimal(ask);
+		return askDecimal;
+	}
+
+	public void setLast(double last) {
+		setLastTicks(toTicks(last));
+	}
+
+	public void setLast(BigDecimal last) {
+		setLastTicks(toTicks(last));
+	}
+
+	public void setLastTicks(long last) {
+		this.last = last;
+		this.lastDecimal = null;
+	}
+
+	@Override
+	public long getLastTicks() {
+		return last;
+	}
+
+	@Override
+	public double getLastAsDouble() {
+		return toDouble(last);
+	}
+
+	@Override
+	public BigDecimal getLast() {
+		if (lastDecimal == null)
+			lastDecimal = toBigDecimal(last);
+		return lastDecimal;
+	}
+
+	public void setHigh(double high) {
+		setHighTicks(toTicks(high));
+	}
+
+	public void setHigh(BigDecimal high) {
+		setHighTicks(toTicks(high));
+	}
+
+	public void setHighTicks(long high) {
+		this.high = high;
+		this.highDecimal = null;
+	}
+
+	@Override
+	public long getHighTicks() {
+		return high;
+	}
+
+	@Override
+	public double getHighAsDouble() {
+		return toDouble(high);
+	}
+
+	@Override
+	public BigDecimal getHigh() {
+		if (highDecimal == null)
+			highDecimal = toBigDecimal(high);
+		return highDecimal;
+	}
+
+	public void setLow(double low) {
+		setLowTicks(toTicks(low));
+	}
+
+	public void setLow(BigDecimal low) {
+		setLowTicks(toTicks(low));
+	}
+
+	public void setLowTicks(long low) {
+		this.low = low;
+		this.lowDecimal = null;
+	}
+
+	@Override
+	public long getLowTicks() {
+		return low;
+	}
+
+	@Override
+	public double getLowAsDouble() {
+		return toDouble(low);
+	}
+
+	@Override
+	public BigDecimal getLow() {
+		if (lowDecimal == null)
+			lowDecimal = toBigDecimal(low);
+		return lowDecimal;
+	}
+
+	public void setClose(double close) {
+		setCloseTicks(toTicks(close));
+	}
+
+	public void setClose(BigDecimal close) {
+		setCloseTicks(toTicks(close));
+	}
+
+	public void setCloseTicks(long close) {
+		this.close = close;
+		this.closeDecimal = null;
+	}
+
+	@Override
+	public long getCloseTicks() {
+		return close;
+	}
+
+	@Override
+	public double getCloseAsDouble() {
+		return toDouble(close);
+	}
+
+	@Override
+	public BigDecimal getClose() {
+		if (closeDecimal == null)
+			closeDecimal = toBigDecimal(close);
+		return closeDecimal;
+	}
+
+	public void setBidSize(int bidSize) {
+		this.bidSize = bidSize;
+		this.sizeFlags |= MarketDataField.BID_SIZE;
+	}
+
+	@Override
+	public int getBidSizeAsInt() {
+		return bidSize;
+	}
+
+	@Override
+	public Integer getBidSize() {
+		return (sizeFlags & MarketDataField.BID_SIZE) != 0 ? Integer.valueOf(bidSize) : null;
+	}
+
+	public void setAskSize(int askSize) {
+		this.askSize = askSize;
+		this.sizeFlags |= MarketDataField.ASK_SIZE;
+	}
+
+	@Override
+	public int getAskSizeAsInt() {
+		return askSize;
+	}
+
+	@Override
+	public Integer getAskSize() {
+		return (sizeFlags & MarketDataField.ASK_SIZE) != 0 ? Integer.valueOf(askSize) : null;
+	}
+
+	public void setLastSize(int lastSize) {
+		this.lastSize = lastSize;
+		this.sizeFlags |= MarketDataField.LAST_SIZE;
+	}
+
+	@Override
+	public int getLastSizeAsInt() {
+		return lastSize;
+	}
+
+	@Override
+	public Integer getLastSize() {
+		return (sizeFlags & MarketDataField.LAST_SIZE) != 0 ? Integer.valueOf(lastSize) : null;
+	}
+
+	public void setVolume(long volume) {
+		this.volume = volume;
+		this.sizeFlags |= MarketDataField.VOLUME;
+	}
+
+	@Override
+	public long getVolumeAsLong() {
+		return volume;
+	}
+
+	@Override
+	public Integer getVolume() {
+		return (sizeFlags & MarketDataField.VOLUME) != 0 ? Integer.valueOf((int)Math.min(volume, Integer.MAX_VALUE)) : null;
+	}
+
+	public void setLastTimestampMillis(long lastTimestamp) {
+		this.lastTimestamp = lastTimestamp;
+		this.lastTimestampInstant = null;
+	}
+
+	public void setLastTimestamp(Instant lastTimestamp) {
+		setLastTimestampMillis(lastTimestamp != null ? lastTimestamp.toEpochMilli() : NO_VALUE);
+	}
+
+	@Override
+	public long getLastTimestampMillis() {
+		return lastTimestamp;
+	}
+
+	@Override
+	public Instant getLastTimestamp() {
+		if (lastTimestampInstant == null && lastTimestamp != NO_VALUE)
+			lastTimestampInstant = Instant.ofEpochMilli(lastTimestamp);
+		return lastTimestampInstant;
+	}
+
+	public void setTimestampMillis(long timestamp) {
+		this.timestamp = timestamp;
+		this.timestampInstant = null;
+	}
+
+	public void setTimestamp(Instant timestamp) {
+		setTimestampMillis(timestamp != null ? timestamp.toEpochMilli() : NO_VALUE);
+	}
+
+	@Override
+	public long getTimestampMillis() {
+		return timestamp;
+	}
+
+	@Override
+	public Instant getTimestamp() {
+		if (timestampInstant == null && timestamp != NO_VALUE)
+			timestampInstant = Instant.ofEpochMilli(timestamp);
+		return timestampInstant;
+	}
+
+}
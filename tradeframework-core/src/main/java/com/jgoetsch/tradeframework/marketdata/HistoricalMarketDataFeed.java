@@ -16,14 +16,20 @@
 package com.jgoetsch.tradeframework.marketdata;
 
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.time.DayOfWeek;
 import java.time.Instant;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,9 +42,28 @@ import com.jgoetsch.tradeframework.data.DataUnavailableException;
 import com.jgoetsch.tradeframework.data.HistoricalDataSource;
 import com.jgoetsch.tradeframework.data.HistoricalDataUtils;
 
+/**
+ * Simulated market data feed replaying historical bars of a contract, requested from a
+ * HistoricalDataSource in consecutive windows of <code>bufferLength</code> bars.
+ * <p>
+ * By default each window is requested when the previous one runs out, blocking the
+ * simulation for the duration of the request. With read-ahead enabled, the following windows
+ * are requested in the background while the current one is being replayed, and kept in a
+ * bounded queue until needed. The historical data source must then be safe to call from
+ * multiple threads.
+ * 
+ * @author jgoetsch
+ *
+ */
 public class HistoricalMarketDataFeed extends SimulatedMarketDataFeed {
 
 	private final Logger log = LoggerFactory.getLogger(HistoricalMarketDataFeed.class);
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private static final ExecutorService defaultPrefetchExecutor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "historical-prefetch-" + threadCount.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	});
 
 	private final HistoricalDataSource historicalDataSource;
 	private final Contract contract;
@@ -50,6 +75,20 @@ public class HistoricalMarketDataFeed extends SimulatedMarketDataFeed {
 	private OHLC[] data;
 	private int dataIndex;
 
+	private int prefetchWindows;
+	private Executor prefetchExecutor = defaultPrefetchExecutor;
+	private final ArrayDeque<Window> prefetched = new ArrayDeque<Window>();
+
+	private static class Window {
+		private final long endTime;
+		private final CompletableFuture<OHLC[]> data;
+
+		private Window(long endTime, CompletableFuture<OHLC[]> data) {
+			this.endTime = endTime;
+			this.data = data;
+		}
+	}
+
 	public HistoricalMarketDataFeed(Contract contract, HistoricalDataSource historicalDataSource, int period, int bufferLength) {
 		this.contract = contract;
 		this.historicalDataSource = historicalDataSource;
@@ -71,9 +110,7 @@ public class HistoricalMarketDataFeed extends SimulatedMarketDataFeed {
 				bufferEndTime += HistoricalDataUtils.getPeriodDurationInMillis(dataPeriod) * bufferLength;
 				if (log.isDebugEnabled())
 					log.debug("Requesting historical data for " + contract + " from " + dateFormat.format(Instant.ofEpochMilli(bufferEndTime - HistoricalDataUtils.getPeriodDurationInMillis(dataPeriod) * bufferLength)) + " to " + dateFormat.format(Instant.ofEpochMilli(bufferEndTime)));
-				data = historicalDataSource.getHistoricalData(contract,
-						new Date(bufferEndTime),
-						bufferLength, dataPeriod);
+				data = getWindow(bufferEndTime);
 			} catch (DataUnavailableException e) {
 				return null;
 			}
@@ -95,6 +132,51 @@ public class HistoricalMarketDataFeed extends SimulatedMarketDataFeed {
 		return mkd;
 	}
 
+	private OHLC[] getWindow(long endTime) throws IOException, InvalidContractException {
+		if (prefetchWindows <= 0)
+			return historicalDataSource.getHistoricalData(contract, new Date(endTime), bufferLength, dataPeriod);
+
+		while (!prefetched.isEmpty() && prefetched.peekFirst().endTime < endTime)
+			prefetched.pollFirst().data.cancel(false);
+		if (!prefetched.isEmpty() && prefetched.peekFirst().endTime != endTime)
+			cancelPrefetch();
+		if (prefetched.isEmpty())
+			prefetched.add(requestWindow(endTime));
+		Window window = prefetched.pollFirst();
+
+		long nextEndTime = prefetched.isEmpty() ? endTime : prefetched.peekLast().endTime;
+		while (prefetched.size() < prefetchWindows) {
+			nextEndTime = adjustTimestampToRTH(nextEndTime, contract) + HistoricalDataUtils.getPeriodDurationInMillis(dataPeriod) * bufferLength;
+			prefetched.add(requestWindow(nextEndTime));
+		}
+
+		try {
+			return window.data.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			else if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			else
+				throw e;
+		}
+	}
+
+	private Window requestWindow(long endTime) {
+		return new Window(endTime, CompletableFuture.supplyAsync(() -> {
+			try {
+				return historicalDataSource.getHistoricalData(contract, new Date(endTime), bufferLength, dataPeriod);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, prefetchExecutor));
+	}
+
+	private void cancelPrefetch() {
+		while (!prefetched.isEmpty())
+			prefetched.pollFirst().data.cancel(false);
+	}
+
 	@Override
 	public final void advanceTo(Instant timestamp) throws IOException, InvalidContractException {
 		long millis = timestamp.toEpochMilli();
@@ -108,14 +190,14 @@ public class HistoricalMarketDataFeed extends SimulatedMarketDataFeed {
 	}
 
 	protected MarketData marketDataFromBar(OHLC ohlc) {
-		SimpleMarketData mkd = new SimpleMarketData();
-		mkd.setLast(BigDecimal.valueOf(ohlc.getOpen()));
-		mkd.setBid(mkd.getLast());
-		mkd.setAsk(mkd.getLast());
+		FixedPointMarketData mkd = new FixedPointMarketData();
+		mkd.setLast(ohlc.getOpen());
+		mkd.setBidTicks(mkd.getLastTicks());
+		mkd.setAskTicks(mkd.getLastTicks());
 		mkd.setBidSize(10000);
 		mkd.setAskSize(10000);
-		mkd.setTimestamp(ohlc.getDate().toInstant());
-		mkd.setLastTimestamp(ohlc.getDate().toInstant());
+		mkd.setTimestampMillis(ohlc.getDate().getTime());
+		mkd.setLastTimestampMillis(ohlc.getDate().getTime());
 		return mkd;
 	}
 
@@ -154,8 +236,37 @@ public class HistoricalMarketDataFeed extends SimulatedMarketDataFeed {
 			return timestamp;
 	}
 
+	public int getPrefetchWindows() {
+		return prefetchWindows;
+	}
+
+	/**
+	 * Sets the number of windows following the current one to request in the background,
+	 * defaulting to zero to request each window only when it is needed.
+	 * 
+	 * @param prefetchWindows
+	 */
+	public void setPrefetchWindows(int prefetchWindows) {
+		this.prefetchWindows = prefetchWindows;
+	}
+
+	public Executor getPrefetchExecutor() {
+		return prefetchExecutor;
+	}
+
+	/**
+	 * Sets the executor used to request windows in the background, defaulting to a shared
+	 * pool of daemon threads.
+	 * 
+	 * @param prefetchExecutor
+	 */
+	public void setPrefetchExecutor(Executor prefetchExecutor) {
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
 	public final void close() throws IOException {
 		data = null;
+		cancelPrefetch();
 	}
 
 }
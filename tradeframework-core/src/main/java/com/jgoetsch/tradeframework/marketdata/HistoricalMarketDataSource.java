@@ -18,6 +18,7 @@ package com.jgoetsch.tradeframework.marketdata;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import com.jgoetsch.tradeframework.Contract;
 import com.jgoetsch.tradeframework.data.HistoricalDataSource;
@@ -28,6 +29,8 @@ public class HistoricalMarketDataSource extends SimulatedMarketDataSource {
 	private final Map<Contract, HistoricalMarketDataFeed> historicalFeeds = new HashMap<Contract, HistoricalMarketDataFeed>();
 	private final int dataPeriod;
 	private final int bufferLength;
+	private int prefetchWindows;
+	private Executor prefetchExecutor;
 
 	public HistoricalMarketDataSource(Map<Contract, ? extends SimulatedMarketDataFeed> marketDataFeedMap, HistoricalDataSource historicalDataSource, Instant startTimestamp) {
 		super(marketDataFeedMap, startTimestamp);
@@ -61,6 +64,9 @@ public class HistoricalMarketDataSource extends SimulatedMarketDataSource {
 				return historicalFeed;
 			else {
 				historicalFeed = new HistoricalMarketDataFeed(contract, historicalDataSource, getDataPeriod(), getBufferLength());
+				historicalFeed.setPrefetchWindows(prefetchWindows);
+				if (prefetchExecutor != null)
+					historicalFeed.setPrefetchExecutor(prefetchExecutor);
 				historicalFeeds.put(contract, historicalFeed);
 				return historicalFeed;
 			}
@@ -75,4 +81,26 @@ public class HistoricalMarketDataSource extends SimulatedMarketDataSource {
 		return bufferLength;
 	}
 
+	public int getPrefetchWindows() {
+		return prefetchWindows;
+	}
+
+	/**
+	 * Sets the number of windows of historical data each feed requests ahead of the one
+	 * being replayed.
+	 * 
+	 * @see HistoricalMarketDataFeed#setPrefetchWindows(int)
+	 */
+	public void setPrefetchWindows(int prefetchWindows) {
+		this.prefetchWindows = prefetchWindows;
+	}
+
+	public Executor getPrefetchExecutor() {
+		return prefetchExecutor;
+	}
+
+	public void setPrefetchExecutor(Executor prefetchExecutor) {
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
 }
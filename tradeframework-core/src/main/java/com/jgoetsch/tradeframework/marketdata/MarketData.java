@@ -20,6 +20,18 @@ import java.time.Instant;
 
 public interface MarketData {
 
+	/**
+	 * Number of decimal places represented by the fixed point price values
+	 * returned by the <code>get*Ticks()</code> methods.
+	 */
+	public static final int PRICE_SCALE = 8;
+
+	/**
+	 * Value returned by the primitive <code>long</code> accessors when the
+	 * corresponding field is not present.
+	 */
+	public static final long NO_VALUE = Long.MIN_VALUE;
+
 	public BigDecimal getBid();
 
 	public Integer getBidSize();
@@ -43,4 +55,105 @@ public interface MarketData {
 	public Instant getLastTimestamp();
 
 	public Instant getTimestamp();
+
+	/**
+	 * Returns an independent copy of this market data that will not reflect any
+	 * subsequent updates. Listeners receiving a reusable view such as
+	 * {@link SequencedMarketData} must call this to retain the data past the
+	 * current tick.
+	 * 
+	 * @return copy of this market data
+	 */
+	public default MarketData snapshot() {
+		return new FixedPointMarketData(this);
+	}
+
+	/**
+	 * Copies this market data into an existing {@link FixedPointMarketData}, replacing all of
+	 * its fields. Unlike {@link #snapshot()} this does not allocate, so it can be used to keep
+	 * the latest data on every tick.
+	 * 
+	 * @param target market data to update
+	 */
+	public default void copyTo(FixedPointMarketData target) {
+		target.set(this);
+	}
+
+	public default long getBidTicks() {
+		return FixedPointMarketData.toTicks(getBid());
+	}
+
+	public default long getAskTicks() {
+		return FixedPointMarketData.toTicks(getAsk());
+	}
+
+	public default long getLastTicks() {
+		return FixedPointMarketData.toTicks(getLast());
+	}
+
+	public default long getHighTicks() {
+		return FixedPointMarketData.toTicks(getHigh());
+	}
+
+	public default long getLowTicks() {
+		return FixedPointMarketData.toTicks(getLow());
+	}
+
+	public default long getCloseTicks() {
+		return FixedPointMarketData.toTicks(getClose());
+	}
+
+	public default double getBidAsDouble() {
+		return FixedPointMarketData.toDouble(getBidTicks());
+	}
+
+	public default double getAskAsDouble() {
+		return FixedPointMarketData.toDouble(getAskTicks());
+	}
+
+	public default double getLastAsDouble() {
+		return FixedPointMarketData.toDouble(getLastTicks());
+	}
+
+	public default double getHighAsDouble() {
+		return FixedPointMarketData.toDouble(getHighTicks());
+	}
+
+	public default double getLowAsDouble() {
+		return FixedPointMarketData.toDouble(getLowTicks());
+	}
+
+	public default double getCloseAsDouble() {
+		return FixedPointMarketData.toDouble(getCloseTicks());
+	}
+
+	public default int getBidSizeAsInt() {
+		Integer size = getBidSize();
+		return size != null ? size : 0;
+	}
+
+	public default int getAskSizeAsInt() {
+		Integer size = getAskSize();
+		return size != null ? size : 0;
+	}
+
+	public default int getLastSizeAsInt() {
+		Integer size = getLastSize();
+		return size != null ? size : 0;
+	}
+
+	public default long getVolumeAsLong() {
+		Integer volume = getVolume();
+		return volume != null ? volume : 0;
+	}
+
+	public default long getLastTimestampMillis() {
+		Instant ts = getLastTimestamp();
+		return ts != null ? ts.toEpochMilli() : NO_VALUE;
+	}
+
+	public default long getTimestampMillis() {
+		Instant ts = getTimestamp();
+		return ts != null ? ts.toEpochMilli() : NO_VALUE;
+	}
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+/**
+ * Bit flags identifying the fields of {@link MarketData}, used to describe which
+ * fields were updated by a market data event and which fields a listener is
+ * interested in.
+ * 
+ * @author jgoetsch
+ *
+ */
+public final class MarketDataField {
+
+	public static final int NONE = 0;
+	public static final int BID = 1;
+	public static final int BID_SIZE = 1 << 1;
+	public static final int ASK = 1 << 2;
+	public static final int ASK_SIZE = 1 << 3;
+	public static final int LAST = 1 << 4;
+	public static final int LAST_SIZE = 1 << 5;
+	public static final int HIGH = 1 << 6;
+	public static final int LOW = 1 << 7;
+	public static final int CLOSE = 1 << 8;
+	public static final int VOLUME = 1 << 9;
+	public static final int LAST_TIMESTAMP = 1 << 10;
+
+	public static final int QUOTE = BID | BID_SIZE | ASK | ASK_SIZE;
+	public static final int TRADE = LAST | LAST_SIZE | LAST_TIMESTAMP;
+
+	/**
+	 * Field mask that does not filter any events, including those that did not update
+	 * any of the fields above.
+	 */
+	public static final int ALL = -1;
+
+	private static final String names[] = { "BID", "BID_SIZE", "ASK", "ASK_SIZE", "LAST", "LAST_SIZE", "HIGH", "LOW", "CLOSE", "VOLUME", "LAST_TIMESTAMP" };
+
+	private MarketDataField() {
+	}
+
+	/**
+	 * Tests whether a listener registered with the given field mask should be notified
+	 * of an event with the given changed fields.
+	 */
+	public static boolean matches(int fieldMask, int changedFields) {
+		return fieldMask == ALL || (fieldMask & changedFields) != 0;
+	}
+
+	/**
+	 * Returns the fields that differ between two market data instances.
+	 * 
+	 * @param previous previous market data, or null in which case all fields present
+	 * in <code>current</code> are considered changed
+	 * @param current
+	 * @return bit mask of changed fields
+	 */
+	public static int diff(MarketData previous, MarketData current) {
+		if (previous == null)
+			return present(current);
+		int changed = NONE;
+		if (previous.getBidTicks() != current.getBidTicks())
+			changed |= BID;
+		if (!equals(previous.getBidSize(), current.getBidSize()))
+			changed |= BID_SIZE;
+		if (previous.getAskTicks() != current.getAskTicks())
+			changed |= ASK;
+		if (!equals(previous.getAskSize(), current.getAskSize()))
+			changed |= ASK_SIZE;
+		if (previous.getLastTicks() != current.getLastTicks())
+			changed |= LAST;
+		if (!equals(previous.getLastSize(), current.getLastSize()))
+			changed |= LAST_SIZE;
+		if (previous.getHighTicks() != current.getHighTicks())
+			changed |= HIGH;
+		if (previous.getLowTicks() != current.getLowTicks())
+			changed |= LOW;
+		if (previous.getCloseTicks() != current.getCloseTicks())
+			changed |= CLOSE;
+		if (!equals(previous.getVolume(), current.getVolume()))
+			changed |= VOLUME;
+		if (previous.getLastTimestampMillis() != current.getLastTimestampMillis())
+			changed |= LAST_TIMESTAMP;
+		return changed;
+	}
+
+	/**
+	 * @return bit mask of the fields that have a value in the given market data
+	 */
+	public static int present(MarketData data) {
+		int present = NONE;
+		if (data.getBidTicks() != MarketData.NO_VALUE)
+			present |= BID;
+		if (data.getBidSize() != null)
+			present |= BID_SIZE;
+		if (data.getAskTicks() != MarketData.NO_VALUE)
+			present |= ASK;
+		if (data.getAskSize() != null)
+			present |= ASK_SIZE;
+		if (data.getLastTicks() != MarketData.NO_VALUE)
+			present |= LAST;
+		if (data.getLastSize() != null)
+			present |= LAST_SIZE;
+		if (data.getHighTicks() != MarketData.NO_VALUE)
+			present |= HIGH;
+		if (data.getLowTicks() != MarketData.NO_VALUE)
+			present |= LOW;
+		if (data.getCloseTicks() != MarketData.NO_VALUE)
+			present |= CLOSE;
+		if (data.getVolume() != null)
+			present |= VOLUME;
+		if (data.getLastTimestampMillis() != MarketData.NO_VALUE)
+			present |= LAST_TIMESTAMP;
+		return present;
+	}
+
+	private static boolean equals(Integer a, Integer b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	public static String toString(int fields) {
+		if (fields == ALL)
+			return "ALL";
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < names.length; i++) {
+			if ((fields & (1 << i)) != 0) {
+				if (sb.length() > 0)
+					sb.append('|');
+				sb.append(names[i]);
+			}
+		}
+		return sb.length() > 0 ? sb.toString() : "NONE";
+	}
+}
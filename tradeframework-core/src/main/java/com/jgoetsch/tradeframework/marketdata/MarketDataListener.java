@@ -21,4 +21,16 @@ public interface MarketDataListener {
 
 	public void tick(Contract contract, MarketData data);
 
+	/**
+	 * Called by market data sources that track which fields were updated. The default
+	 * implementation ignores the changed fields and calls {@link #tick(Contract, MarketData)}.
+	 * 
+	 * @param contract
+	 * @param data
+	 * @param changedFields bit mask of {@link MarketDataField} values updated by this event
+	 */
+	public default void tick(Contract contract, MarketData data, int changedFields) {
+		tick(contract, data);
+	}
+
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import com.jgoetsch.tradeframework.Contract;
+
+/**
+ * Thread safe set of market data listeners, each registered with a field mask, for use by
+ * market data sources in dispatching events. Modifications copy the underlying array so
+ * that dispatching does not lock or allocate.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class MarketDataListenerSet {
+
+	private static final class Entry {
+		private final MarketDataListener listener;
+		private final int fieldMask;
+
+		private Entry(MarketDataListener listener, int fieldMask) {
+			this.listener = listener;
+			this.fieldMask = fieldMask;
+		}
+	}
+
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+
+	private volatile Entry[] entries = NO_ENTRIES;
+
+	/**
+	 * Adds a listener, or replaces the field mask of a listener already in this set.
+	 * 
+	 * @param listener
+	 * @param fieldMask bit mask of {@link MarketDataField} values the listener is
+	 * to be notified of changes to, or {@link MarketDataField#ALL}
+	 * @return true if the listener was not already in this set
+	 */
+	public synchronized boolean add(MarketDataListener listener, int fieldMask) {
+		Entry[] cur = entries;
+		for (int i = 0; i < cur.length; i++) {
+			if (cur[i].listener.equals(listener)) {
+				Entry[] newEntries = cur.clone();
+				newEntries[i] = new Entry(listener, fieldMask);
+				entries = newEntries;
+				return false;
+			}
+		}
+		Entry[] newEntries = new Entry[cur.length + 1];
+		System.arraycopy(cur, 0, newEntries, 0, cur.length);
+		newEntries[cur.length] = new Entry(listener, fieldMask);
+		entries = newEntries;
+		return true;
+	}
+
+	public synchronized boolean remove(MarketDataListener listener) {
+		Entry[] cur = entries;
+		for (int i = 0; i < cur.length; i++) {
+			if (cur[i].listener.equals(listener)) {
+				Entry[] newEntries = new Entry[cur.length - 1];
+				System.arraycopy(cur, 0, newEntries, 0, i);
+				System.arraycopy(cur, i + 1, newEntries, i, newEntries.length - i);
+				entries = newEntries;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean isEmpty() {
+		return entries.length == 0;
+	}
+
+	public int size() {
+		return entries.length;
+	}
+
+	/**
+	 * @return union of the field masks of all listeners in this set
+	 */
+	public int getFieldMask() {
+		int mask = MarketDataField.NONE;
+		for (Entry entry : entries)
+			mask |= entry.fieldMask;
+		return mask;
+	}
+
+	/**
+	 * Passes the given market data to each listener whose field mask matches the changed fields.
+	 */
+	public void fire(Contract contract, MarketData data, int changedFields) {
+		for (Entry entry : entries) {
+			if (MarketDataField.matches(entry.fieldMask, changedFields))
+				entry.listener.tick(contract, data, changedFields);
+		}
+	}
+
+	/**
+	 * Passes a separate {@link MarketData#snapshot()} of the given market data to each
+	 * listener whose field mask matches the changed fields.
+	 */
+	public void fireSnapshots(Contract contract, MarketData data, int changedFields) {
+		for (Entry entry : entries) {
+			if (MarketDataField.matches(entry.fieldMask, changedFields))
+				entry.listener.tick(contract, data.snapshot(), changedFields);
+		}
+	}
+}
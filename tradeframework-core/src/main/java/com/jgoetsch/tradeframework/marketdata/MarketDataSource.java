@@ -36,6 +36,17 @@ public interface MarketDataSource extends ContractDataSource<MarketData>, Closea
 	 */
 	public void subscribeMarketData(Contract contract, MarketDataListener marketDataListener) throws IOException, InvalidContractException;
 
+	/**
+	 * Begin receiving callbacks to a MarketDataListener with market data updates for the given contract,
+	 * only for updates to the fields given in the field mask. Sources that do not track updated fields
+	 * may ignore the mask and call the listener on every update, which is the default implementation.
+	 * 
+	 * @param fieldMask bit mask of {@link MarketDataField} values, or {@link MarketDataField#ALL}
+	 */
+	public default void subscribeMarketData(Contract contract, MarketDataListener marketDataListener, int fieldMask) throws IOException, InvalidContractException {
+		subscribeMarketData(contract, marketDataListener);
+	}
+
 	/**
 	 * Stops callbacks to a MarketDataListener for the given contract
 	 */
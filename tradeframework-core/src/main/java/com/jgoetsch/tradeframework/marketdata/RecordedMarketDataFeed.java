@@ -15,46 +15,42 @@
  */
 package com.jgoetsch.tradeframework.marketdata;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.math.BigDecimal;
-import java.time.Instant;
 
 public class RecordedMarketDataFeed extends SimulatedMarketDataFeed {
 
-	private BufferedReader input;
-	private BigDecimal defaultIncrement;
+	private InputStream input;
+	private TextTickParser parser;
+	private long defaultIncrement;
 
 	public RecordedMarketDataFeed(InputStream inputStream) {
-		this.input = new BufferedReader(new InputStreamReader(inputStream));
-		this.defaultIncrement = new BigDecimal("0.1");
+		this.input = inputStream;
+		this.parser = new TextTickParser(inputStream, true);
+		this.defaultIncrement = FixedPointMarketData.toTicks(0.1);
 	}
 
 	@Override
 	protected MarketData retrieveNextTick() throws IOException
 	{
-		for (;;) {
-			String line = input.readLine();
-			if (line == null)
-				return null;
-
-			String part[] = line.split("[\\s,]");
+		while (parser.nextLine()) {
 			try {
-				SimpleMarketData mkd = new SimpleMarketData();
-				mkd.setLastTimestamp(Instant.ofEpochMilli(Long.parseLong(part[0])));
-				mkd.setLast(new BigDecimal(part[1]));
-				mkd.setLastSize(Integer.parseInt(part[2]));
-				mkd.setBid(part.length >= 4 ? new BigDecimal(part[3]) : mkd.getLast().subtract(defaultIncrement));
-				mkd.setBidSize(part.length >= 5 ? Integer.parseInt(part[4]) : 10);
-				mkd.setAsk(part.length >= 5 ? new BigDecimal(part[5]) : mkd.getLast().add(defaultIncrement));
-				mkd.setAskSize(part.length >= 6 ? Integer.parseInt(part[6]) : 10);
+				int count = parser.getFieldCount();
+				FixedPointMarketData mkd = new FixedPointMarketData();
+				mkd.setLastTimestampMillis(parser.parseLong(0));
+				mkd.setTimestampMillis(mkd.getLastTimestampMillis());
+				mkd.setLastTicks(parser.parsePriceTicks(1));
+				mkd.setLastSize(parser.parseInt(2));
+				mkd.setBidTicks(count > 3 ? parser.parsePriceTicks(3) : mkd.getLastTicks() - defaultIncrement);
+				mkd.setBidSize(count > 4 ? parser.parseInt(4) : 10);
+				mkd.setAskTicks(count > 5 ? parser.parsePriceTicks(5) : mkd.getLastTicks() + defaultIncrement);
+				mkd.setAskSize(count > 6 ? parser.parseInt(6) : 10);
 				return mkd;
 			} catch (Exception e) {
-				System.err.println("Failed to parse input line, skipping: " + line);
+				System.err.println("Failed to parse input line, skipping: " + parser.getLine());
 			}
 		}
+		return null;
 	}
 
 	public void close() throws IOException {
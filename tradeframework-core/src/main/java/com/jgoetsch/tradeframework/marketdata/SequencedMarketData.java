@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+/**
+ * Read-only view of continuously updated market data, as passed to listeners by sources
+ * that dispatch without copying. The same instance is reused and updated in place for
+ * subsequent ticks, so it is only valid for the duration of the
+ * {@link MarketDataListener#tick} call. Listeners that need to retain the data must call
+ * {@link #snapshot()}.
+ * 
+ * @author jgoetsch
+ *
+ */
+public interface SequencedMarketData extends MarketData {
+
+	/**
+	 * @return number of updates applied to the underlying data, incremented on each
+	 * field update. Can be used to detect whether a retained snapshot is stale.
+	 */
+	public long getSequence();
+
+}
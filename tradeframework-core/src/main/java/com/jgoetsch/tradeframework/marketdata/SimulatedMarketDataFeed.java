@@ -18,7 +18,7 @@ package com.jgoetsch.tradeframework.marketdata;
 import java.io.Closeable;
 import java.io.IOException;
 import java.time.Instant;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.jgoetsch.tradeframework.InvalidContractException;
@@ -42,12 +42,12 @@ public abstract class SimulatedMarketDataFeed implements Closeable {
 	}
 
 	public final List<MarketData> getTicksUpTo(Instant timestamp) throws IOException, InvalidContractException {
-		List<MarketData> ticks = new LinkedList<MarketData>();
+		List<MarketData> ticks = new ArrayList<MarketData>();
 		if (nextTick == null)
 			nextTick = retrieveNextTick();
 		while (true) {
 			if (nextTick == null)
-				return null;
+				return ticks.isEmpty() ? null : ticks;
 			else if (nextTick.getTimestamp().isAfter(timestamp))
 				return ticks;
 			else {
@@ -68,10 +68,21 @@ public abstract class SimulatedMarketDataFeed implements Closeable {
 		return lastTick;
 	}
 
+	/**
+	 * Returns the next tick without consuming it.
+	 * 
+	 * @return the tick that will be returned by the next call to {@link #nextTick()}, or null if there are no more ticks
+	 */
+	public final MarketData peekTick() throws IOException, InvalidContractException {
+		if (nextTick == null)
+			nextTick = retrieveNextTick();
+		return nextTick;
+	}
+
 	public void advanceTo(Instant timestamp) throws IOException, InvalidContractException {
 		if (nextTick == null)
 			nextTick = retrieveNextTick();
-		while (nextTick != null && !nextTick.getTimestamp().isBefore(timestamp)) {
+		while (nextTick != null && !nextTick.getTimestamp().isAfter(timestamp)) {
 			lastTick = nextTick;
 			nextTick = retrieveNextTick();
 		}
@@ -17,13 +17,11 @@ package com.jgoetsch.tradeframework.marketdata;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.PriorityQueue;
 import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
@@ -32,6 +30,22 @@ import org.slf4j.LoggerFactory;
 import com.jgoetsch.tradeframework.Contract;
 import com.jgoetsch.tradeframework.InvalidContractException;
 
+/**
+ * Market data source replaying simulated market data feeds for each contract. As time is
+ * advanced, the ticks of all subscribed feeds are merged in timestamp order through a min-heap
+ * of subscriptions keyed by the timestamp of each feed's next tick, so that each tick is passed
+ * to listeners as soon as it is read. Ticks from different feeds with the same timestamp are
+ * delivered in the order the contracts were first subscribed.
+ * <p>
+ * Time advances from event to event, either the next tick of any subscribed feed or a task
+ * scheduled with {@link #schedule(Instant, Runnable)}, so that the time taken to replay is
+ * proportional to the number of events rather than the length of time replayed. The current
+ * time is set to the time of each event while it is being processed. Simulated orders are
+ * processed on the ticks of the contract they are for, so they are triggered at tick events.
+ * 
+ * @author jgoetsch
+ *
+ */
 public class SimulatedMarketDataSource implements MarketDataSource, TimeAdvanceable {
 
 	@SuppressWarnings("unused")
@@ -41,7 +55,49 @@ public class SimulatedMarketDataSource implements MarketDataSource, TimeAdvancea
 	private Map<Contract, SimulatedMarketDataFeed> marketDataFeedMap;
 	private Instant curTimestamp;
 
-	private Map<Contract, Set<MarketDataListener>> listenerMap = new HashMap<Contract, Set<MarketDataListener>>();
+	private Map<Contract, Subscription> listenerMap = new HashMap<Contract, Subscription>();
+	private Subscription[] heap = new Subscription[16];
+	private int heapSize;
+	private long subscriptionCount;
+	private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<ScheduledTask>();
+	private long taskCount;
+
+	private static class ScheduledTask implements Comparable<ScheduledTask> {
+		private final long timestamp;
+		private final long order;
+		private final Runnable task;
+
+		private ScheduledTask(long timestamp, long order, Runnable task) {
+			this.timestamp = timestamp;
+			this.order = order;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(ScheduledTask other) {
+			return timestamp != other.timestamp ? Long.compare(timestamp, other.timestamp) : Long.compare(order, other.order);
+		}
+	}
+
+	private static class Subscription {
+		private final MarketDataListenerSet listeners = new MarketDataListenerSet();
+		private final Contract contract;
+		private final SimulatedMarketDataFeed dataFeed;
+		private final long order;
+		private MarketData lastTick;
+		private long nextTimestamp;
+		private int heapIndex = -1;
+
+		private Subscription(Contract contract, SimulatedMarketDataFeed dataFeed, long order) {
+			this.contract = contract;
+			this.dataFeed = dataFeed;
+			this.order = order;
+		}
+
+		private boolean before(Subscription other) {
+			return nextTimestamp < other.nextTimestamp || (nextTimestamp == other.nextTimestamp && order < other.order);
+		}
+	}
 
 	public SimulatedMarketDataSource() {
 		curTimestamp = Instant.now();
@@ -76,30 +132,44 @@ public class SimulatedMarketDataSource implements MarketDataSource, TimeAdvancea
 	}
 
 	public final void subscribeMarketData(Contract contract, MarketDataListener marketDataListener) throws IOException, InvalidContractException {
+		subscribeMarketData(contract, marketDataListener, MarketDataField.ALL);
+	}
+
+	public final void subscribeMarketData(Contract contract, MarketDataListener marketDataListener, int fieldMask) throws IOException, InvalidContractException {
 		SimulatedMarketDataFeed dataFeed = getDataFeed(contract);
 		if (dataFeed == null)
 			throw new SimulatedDataNotAvailableException(contract);
 		else {
 			synchronized (this) {
-				Set<MarketDataListener> listeners = listenerMap.get(contract);
-				if (listeners == null) {
+				Subscription subscription = listenerMap.get(contract);
+				if (subscription == null) {
 					dataFeed.advanceTo(getStartTimestamp());
-					listeners = new HashSet<MarketDataListener>(3);
-					listenerMap.put(contract, listeners);
+					subscription = new Subscription(contract, dataFeed, subscriptionCount++);
+					subscription.lastTick = dataFeed.getLastTick();
+					listenerMap.put(contract, subscription);
+					MarketData nextTick = dataFeed.peekTick();
+					if (nextTick != null) {
+						subscription.nextTimestamp = nextTick.getTimestampMillis();
+						heapAdd(subscription);
+					}
 				}
-				listeners.add(marketDataListener);
+				subscription.listeners.add(marketDataListener, fieldMask);
 			}
-			if (dataFeed.getLastTick() != null)
-				marketDataListener.tick(contract, dataFeed.getLastTick());
+			MarketData lastTick = dataFeed.getLastTick();
+			if (lastTick != null)
+				marketDataListener.tick(contract, lastTick, MarketDataField.present(lastTick));
 		}
 	}
 
 	public synchronized final void cancelMarketData(Contract contract, MarketDataListener marketDataListener) {
-		Set<MarketDataListener> listeners = listenerMap.get(contract);
-		if (listeners != null) {
-			listeners.remove(marketDataListener);
-			if (listeners.isEmpty())
+		Subscription subscription = listenerMap.get(contract);
+		if (subscription != null) {
+			subscription.listeners.remove(marketDataListener);
+			if (subscription.listeners.isEmpty()) {
 				listenerMap.remove(contract);
+				if (subscription.heapIndex >= 0)
+					heapRemove(subscription.heapIndex);
+			}
 		}
 	}
 
@@ -126,40 +196,139 @@ public class SimulatedMarketDataSource implements MarketDataSource, TimeAdvancea
 	}
 
 	public synchronized final boolean receiveDataAndWait(long millis) throws IOException {
-		long chunkLength = 15000;
-		TreeMap<MarketData, Contract> chunkTicks = new TreeMap<MarketData, Contract>(new MarketDataTimestampComparator());
-		setStartTimestamp(getStartTimestamp().plusMillis(millis));
-
-		for (Instant newTimestamp = getStartTimestamp().plusMillis(chunkLength - millis); !newTimestamp.isAfter(getStartTimestamp()); newTimestamp.plusMillis(chunkLength)) {
-			chunkTicks.clear();
-			boolean hasMoreData = false;
-			for (Contract contract : listenerMap.keySet()) {
-				SimulatedMarketDataFeed dataFeed = getDataFeed(contract);
-				List<MarketData> ticks;
-				try {
-					ticks = dataFeed.getTicksUpTo(newTimestamp.isBefore(getStartTimestamp()) ? newTimestamp : getStartTimestamp());
-					if (ticks != null) {
-						hasMoreData = true;
-						for (MarketData tick : ticks)
-							chunkTicks.put(tick, contract);
-					}
-				} catch (InvalidContractException e) {
-					throw new RuntimeException(e);
+		Instant endTimestamp = getStartTimestamp().plusMillis(millis);
+		boolean processed = processEventsUpTo(endTimestamp.toEpochMilli());
+		setStartTimestamp(endTimestamp);
+		return processed || heapSize > 0 || !scheduledTasks.isEmpty();
+	}
+
+	public synchronized final Instant getNextEventTime() {
+		long next = nextEventTimestamp();
+		return next != Long.MAX_VALUE ? Instant.ofEpochMilli(next) : null;
+	}
+
+	public synchronized final boolean advanceToNextEvent() throws IOException {
+		long next = nextEventTimestamp();
+		if (next == Long.MAX_VALUE)
+			return false;
+		processEventsUpTo(next);
+		return true;
+	}
+
+	/**
+	 * Schedules a task to be run when simulated time reaches the given time, ordered after
+	 * any ticks at the same time.
+	 */
+	public synchronized final void schedule(Instant time, Runnable task) {
+		scheduledTasks.add(new ScheduledTask(time.toEpochMilli(), taskCount++, task));
+	}
+
+	private long nextEventTimestamp() {
+		long next = heapSize > 0 ? heap[0].nextTimestamp : Long.MAX_VALUE;
+		ScheduledTask task = scheduledTasks.peek();
+		return task != null && task.timestamp < next ? task.timestamp : next;
+	}
+
+	/**
+	 * Processes all ticks and scheduled tasks in time order up to the given time, advancing
+	 * the current time to that of each event.
+	 * 
+	 * @return true if any events were processed
+	 */
+	private boolean processEventsUpTo(long endTimestamp) throws IOException {
+		boolean processed = false;
+		long curTimestamp = getStartTimestamp().toEpochMilli();
+		try {
+			for (;;) {
+				ScheduledTask task = scheduledTasks.peek();
+				boolean isTick = heapSize > 0 && (task == null || heap[0].nextTimestamp <= task.timestamp);
+				long timestamp = isTick ? heap[0].nextTimestamp : task != null ? task.timestamp : Long.MAX_VALUE;
+				if (timestamp > endTimestamp)
+					break;
+				if (timestamp > curTimestamp) {
+					curTimestamp = timestamp;
+					setStartTimestamp(Instant.ofEpochMilli(timestamp));
 				}
-			}
-			if (!hasMoreData)
-				return false;
-
-			for (Map.Entry<MarketData, Contract> tickEntry : chunkTicks.entrySet()) {
-				Set<MarketDataListener> listeners = listenerMap.get(tickEntry.getValue());
-				if (listeners != null) {
-					for (MarketDataListener listener : new HashSet<MarketDataListener>(listeners)) {
-						listener.tick(tickEntry.getValue(), tickEntry.getKey());
+
+				if (isTick) {
+					Subscription subscription = heap[0];
+					MarketData tick = subscription.dataFeed.nextTick();
+					MarketData nextTick = subscription.dataFeed.peekTick();
+					if (nextTick == null)
+						heapRemove(0);
+					else {
+						subscription.nextTimestamp = nextTick.getTimestampMillis();
+						heapUpdate(0);
 					}
+
+					int changedFields = MarketDataField.diff(subscription.lastTick, tick);
+					subscription.lastTick = tick;
+					subscription.listeners.fire(subscription.contract, tick, changedFields);
 				}
+				else
+					scheduledTasks.poll().task.run();
+				processed = true;
 			}
+		} catch (InvalidContractException e) {
+			throw new RuntimeException(e);
 		}
-		return true;
+		return processed;
+	}
+
+	private void heapAdd(Subscription subscription) {
+		if (heapSize == heap.length)
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		heap[heapSize] = subscription;
+		subscription.heapIndex = heapSize++;
+		siftUp(subscription.heapIndex);
+	}
+
+	private void heapRemove(int i) {
+		heap[i].heapIndex = -1;
+		Subscription last = heap[--heapSize];
+		heap[heapSize] = null;
+		if (i < heapSize) {
+			heap[i] = last;
+			last.heapIndex = i;
+			heapUpdate(i);
+		}
+	}
+
+	private void heapUpdate(int i) {
+		siftDown(siftUp(i));
+	}
+
+	private int siftUp(int i) {
+		Subscription subscription = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!subscription.before(heap[parent]))
+				break;
+			heap[i] = heap[parent];
+			heap[i].heapIndex = i;
+			i = parent;
+		}
+		heap[i] = subscription;
+		subscription.heapIndex = i;
+		return i;
+	}
+
+	private void siftDown(int i) {
+		Subscription subscription = heap[i];
+		for (;;) {
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && heap[child + 1].before(heap[child]))
+				child++;
+			if (!heap[child].before(subscription))
+				break;
+			heap[i] = heap[child];
+			heap[i].heapIndex = i;
+			i = child;
+		}
+		heap[i] = subscription;
+		subscription.heapIndex = i;
 	}
 
 	public void close() throws IOException {
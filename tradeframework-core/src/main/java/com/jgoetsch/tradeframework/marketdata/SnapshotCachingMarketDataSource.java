@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.InvalidContractException;
+import com.jgoetsch.tradeframework.data.DataUnavailableException;
+
+/**
+ * MarketDataSource wrapper that answers snapshot requests without a round trip to the
+ * underlying source whenever it can.
+ * <p>
+ * While any listener is subscribed to a contract through this source, the latest market
+ * data received for it is kept and returned as its snapshot. Otherwise concurrent snapshot
+ * requests for the same contract share a single request to the underlying source, and the
+ * result is kept for the snapshot time to live, with the least recently used snapshots
+ * evicted beyond the maximum number cached.
+ * <p>
+ * Subscribing to the underlying source happens outside of any lock shared between
+ * contracts, so a slow subscription only delays other subscribers to the same contract.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class SnapshotCachingMarketDataSource implements MarketDataSource {
+
+	private final MarketDataSource marketDataSource;
+	private final ConcurrentMap<Contract, QuoteTracker> trackers = new ConcurrentHashMap<Contract, QuoteTracker>();
+	private final ConcurrentMap<Contract, CompletableFuture<MarketData>> inFlight = new ConcurrentHashMap<Contract, CompletableFuture<MarketData>>();
+	private final LinkedHashMap<Contract, CachedSnapshot> cache = new LinkedHashMap<Contract, CachedSnapshot>(16, 0.75f, true);
+	private long snapshotTtl = 1000;
+	private int maxCachedSnapshots = 1000;
+
+	/**
+	 * Listener subscribed to the underlying source on behalf of all listeners of a contract,
+	 * keeping the fields of the latest market data, which are copied in place on each tick
+	 * and only copied to a new snapshot when one is requested. The listeners subscribed
+	 * through this source are tracked so that the tracker is cancelled with the last of them.
+	 */
+	private static class QuoteTracker implements MarketDataListener {
+		private final Set<MarketDataListener> listeners = new HashSet<MarketDataListener>();
+		private final CompletableFuture<Void> subscribed = new CompletableFuture<Void>();
+		private final FixedPointMarketData latest = new FixedPointMarketData();
+		private boolean received;
+
+		public synchronized void tick(Contract contract, MarketData data) {
+			data.copyTo(latest);
+			received = true;
+		}
+
+		/**
+		 * @return copy of the latest market data, or null if none has been received
+		 */
+		synchronized MarketData snapshot() {
+			return received ? new FixedPointMarketData(latest) : null;
+		}
+	}
+
+	private static class CachedSnapshot {
+		private final MarketData data;
+		private final long expiry;
+
+		private CachedSnapshot(MarketData data, long expiry) {
+			this.data = data;
+			this.expiry = expiry;
+		}
+	}
+
+	public SnapshotCachingMarketDataSource(MarketDataSource marketDataSource) {
+		this.marketDataSource = marketDataSource;
+	}
+
+	public MarketData getDataSnapshot(Contract contract) throws IOException, InvalidContractException {
+		try {
+			return getMktDataSnapshot(contract).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataUnavailableException("Interrupted waiting for snapshot of " + contract, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			else
+				throw new DataUnavailableException(e.getCause());
+		}
+	}
+
+	public CompletableFuture<MarketData> getMktDataSnapshot(Contract contract) throws IOException {
+		MarketData data = getCachedSnapshot(contract);
+		if (data != null)
+			return CompletableFuture.completedFuture(data);
+
+		CompletableFuture<MarketData> future = new CompletableFuture<MarketData>();
+		CompletableFuture<MarketData> existing = inFlight.putIfAbsent(contract, future);
+		if (existing != null)
+			return existing;
+		try {
+			marketDataSource.getMktDataSnapshot(contract).whenComplete((result, ex) -> {
+				if (ex == null && result != null) {
+					synchronized (cache) {
+						cache.put(contract, new CachedSnapshot(result, currentTimeMillis() + snapshotTtl));
+						while (cache.size() > maxCachedSnapshots)
+							cache.remove(cache.keySet().iterator().next());
+					}
+				}
+				inFlight.remove(contract, future);
+				if (ex == null)
+					future.complete(result);
+				else
+					future.completeExceptionally(ex);
+			});
+		} catch (IOException | RuntimeException e) {
+			inFlight.remove(contract, future);
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private MarketData getCachedSnapshot(Contract contract) {
+		QuoteTracker tracker = trackers.get(contract);
+		MarketData latest = tracker != null ? tracker.snapshot() : null;
+		if (latest != null)
+			return latest;
+		synchronized (cache) {
+			CachedSnapshot cached = cache.get(contract);
+			if (cached == null)
+				return null;
+			else if (cached.expiry > currentTimeMillis())
+				return cached.data;
+			cache.remove(contract);
+			return null;
+		}
+	}
+
+	public void subscribeMarketData(Contract contract, MarketDataListener marketDataListener) throws IOException, InvalidContractException {
+		subscribeMarketData(contract, marketDataListener, MarketDataField.ALL);
+	}
+
+	@Override
+	public void subscribeMarketData(Contract contract, MarketDataListener marketDataListener, int fieldMask) throws IOException, InvalidContractException {
+		QuoteTracker tracker;
+		boolean created = false, added;
+		synchronized (trackers) {
+			tracker = trackers.get(contract);
+			if (tracker == null) {
+				tracker = new QuoteTracker();
+				trackers.put(contract, tracker);
+				created = true;
+			}
+			added = tracker.listeners.add(marketDataListener);
+		}
+		if (!added) {
+			marketDataSource.subscribeMarketData(contract, marketDataListener, fieldMask);
+			return;
+		}
+
+		try {
+			if (created) {
+				try {
+					marketDataSource.subscribeMarketData(contract, tracker);
+					tracker.subscribed.complete(null);
+				} catch (IOException | RuntimeException e) {
+					synchronized (trackers) {
+						trackers.remove(contract, tracker);
+					}
+					tracker.subscribed.completeExceptionally(e);
+					throw e;
+				}
+			}
+			else
+				awaitSubscribed(tracker);
+			marketDataSource.subscribeMarketData(contract, marketDataListener, fieldMask);
+		} catch (IOException | RuntimeException e) {
+			release(contract, tracker, marketDataListener);
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the underlying subscription of a tracker being subscribed by another thread.
+	 */
+	private static void awaitSubscribed(QuoteTracker tracker) throws IOException {
+		try {
+			tracker.subscribed.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			else if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw e;
+		}
+	}
+
+	public void cancelMarketData(Contract contract, MarketDataListener marketDataListener) throws IOException {
+		marketDataSource.cancelMarketData(contract, marketDataListener);
+		QuoteTracker tracker = trackers.get(contract);
+		if (tracker != null)
+			release(contract, tracker, marketDataListener);
+	}
+
+	/**
+	 * Removes a listener from a tracker, cancelling the tracker if it was the last one. Has
+	 * no effect for a listener that was not subscribed through this source.
+	 */
+	private void release(Contract contract, QuoteTracker tracker, MarketDataListener marketDataListener) throws IOException {
+		synchronized (trackers) {
+			if (!tracker.listeners.remove(marketDataListener) || !tracker.listeners.isEmpty())
+				return;
+			trackers.remove(contract, tracker);
+		}
+		if (tracker.subscribed.isDone() && !tracker.subscribed.isCompletedExceptionally())
+			marketDataSource.cancelMarketData(contract, tracker);
+	}
+
+	protected long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	public long getSnapshotTtl() {
+		return snapshotTtl;
+	}
+
+	/**
+	 * Sets the time in milliseconds that a snapshot retrieved from the underlying source is
+	 * returned for later requests, defaulting to one second.
+	 */
+	public void setSnapshotTtl(long snapshotTtl) {
+		this.snapshotTtl = snapshotTtl;
+	}
+
+	public int getMaxCachedSnapshots() {
+		return maxCachedSnapshots;
+	}
+
+	/**
+	 * Sets the maximum number of snapshots retrieved from the underlying source to keep,
+	 * defaulting to 1000.
+	 */
+	public void setMaxCachedSnapshots(int maxCachedSnapshots) {
+		this.maxCachedSnapshots = maxCachedSnapshots;
+	}
+
+	public MarketDataSource getMarketDataSource() {
+		return marketDataSource;
+	}
+
+	public void close() throws IOException {
+		List<Map.Entry<Contract, QuoteTracker>> closing;
+		synchronized (trackers) {
+			closing = new ArrayList<Map.Entry<Contract, QuoteTracker>>(trackers.entrySet());
+			trackers.clear();
+		}
+		for (Map.Entry<Contract, QuoteTracker> tracker : closing) {
+			CompletableFuture<Void> subscribed = tracker.getValue().subscribed;
+			if (subscribed.isDone() && !subscribed.isCompletedExceptionally())
+				marketDataSource.cancelMarketData(tracker.getKey(), tracker.getValue());
+		}
+		synchronized (cache) {
+			cache.clear();
+		}
+		marketDataSource.close();
+	}
+
+}
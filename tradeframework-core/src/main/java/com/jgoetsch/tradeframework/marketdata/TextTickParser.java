@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Line and field parser for delimited text tick files that works directly on the bytes of a
+ * reusable buffer, decoding numbers straight to primitive values and prices to fixed point
+ * ticks without creating any intermediate strings.
+ * <p>
+ * Timestamps parsed with a {@link SimpleDateFormat} pattern ending in seconds, optionally
+ * followed by milliseconds, are only fully parsed when the part of the timestamp before the
+ * seconds changes. Otherwise the seconds are added to the cached time of the start of the
+ * minute. This also applies to timestamps split into separate date and time fields, which
+ * once found are expected on the following lines as well.
+ * 
+ * @author jgoetsch
+ *
+ */
+class TextTickParser {
+
+	private static final long TICKS_PER_UNIT = 100000000L;
+
+	private final InputStream input;
+	private final boolean whitespaceDelimited;
+	private byte buf[] = new byte[1 << 16];
+	private int bufStart;
+	private int bufEnd;
+	private boolean eof;
+
+	private int lineStart;
+	private int lineEnd;
+	private int fieldStart[] = new int[16];
+	private int fieldEnd[] = new int[16];
+	private int fieldCount;
+
+	private DateFormat dateFormat;
+	private int secondsLength;
+	private byte cachedPrefix[] = new byte[0];
+	private long cachedMinute;
+	private int timestampFields;
+	private boolean splitTimestamp;
+
+	/**
+	 * @param input stream to read lines from
+	 * @param whitespaceDelimited true to split fields on any whitespace or comma, otherwise on tabs or commas
+	 */
+	TextTickParser(InputStream input, boolean whitespaceDelimited) {
+		this.input = input;
+		this.whitespaceDelimited = whitespaceDelimited;
+	}
+
+	/**
+	 * Sets the format of timestamps parsed with {@link #parseTimestamp(int)}, or null for
+	 * timestamps in epoch millis.
+	 */
+	void setDateFormat(DateFormat dateFormat) {
+		this.dateFormat = dateFormat;
+		this.secondsLength = 0;
+		this.cachedPrefix = new byte[0];
+		this.splitTimestamp = false;
+		if (dateFormat instanceof SimpleDateFormat) {
+			String pattern = ((SimpleDateFormat)dateFormat).toPattern();
+			if (pattern.endsWith(":ss.SSS"))
+				secondsLength = 6;
+			else if (pattern.endsWith(":ss"))
+				secondsLength = 2;
+		}
+	}
+
+	/**
+	 * Advances to the next non-empty line and splits it into fields.
+	 * 
+	 * @return false at end of input
+	 */
+	boolean nextLine() throws IOException {
+		for (;;) {
+			int eol = -1;
+			for (;;) {
+				for (int i = bufStart; i < bufEnd; i++) {
+					if (buf[i] == '\n') {
+						eol = i;
+						break;
+					}
+				}
+				if (eol >= 0 || eof)
+					break;
+				fill();
+			}
+			if (eol < 0) {
+				if (bufStart == bufEnd)
+					return false;
+				eol = bufEnd;
+			}
+			lineStart = bufStart;
+			lineEnd = eol > lineStart && buf[eol - 1] == '\r' ? eol - 1 : eol;
+			bufStart = eol < bufEnd ? eol + 1 : eol;
+			split();
+			if (fieldCount > 0)
+				return true;
+		}
+	}
+
+	private void fill() throws IOException {
+		if (bufStart > 0) {
+			System.arraycopy(buf, bufStart, buf, 0, bufEnd - bufStart);
+			bufEnd -= bufStart;
+			bufStart = 0;
+		}
+		if (bufEnd == buf.length)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		int n = input.read(buf, bufEnd, buf.length - bufEnd);
+		if (n < 0)
+			eof = true;
+		else
+			bufEnd += n;
+	}
+
+	private boolean isDelimiter(byte b) {
+		return b == '\t' || b == ',' || (whitespaceDelimited && (b == ' ' || b == '\f' || b == 0x0b));
+	}
+
+	/**
+	 * Splits the line the same way as String.split, keeping empty fields except at the end.
+	 */
+	private void split() {
+		fieldCount = 0;
+		int start = lineStart;
+		for (int i = lineStart; i <= lineEnd; i++) {
+			if (i == lineEnd || isDelimiter(buf[i])) {
+				if (fieldCount == fieldStart.length) {
+					fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+					fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+				}
+				fieldStart[fieldCount] = start;
+				fieldEnd[fieldCount] = i;
+				fieldCount++;
+				start = i + 1;
+			}
+		}
+		while (fieldCount > 0 && fieldStart[fieldCount - 1] == fieldEnd[fieldCount - 1])
+			fieldCount--;
+	}
+
+	int getFieldCount() {
+		return fieldCount;
+	}
+
+	String getLine() {
+		return new String(buf, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1);
+	}
+
+	String getField(int field) {
+		checkField(field);
+		return new String(buf, fieldStart[field], fieldEnd[field] - fieldStart[field], StandardCharsets.ISO_8859_1);
+	}
+
+	private void checkField(int field) {
+		if (field >= fieldCount)
+			throw new NumberFormatException("Missing field " + field);
+	}
+
+	long parseLong(int field) {
+		checkField(field);
+		int i = fieldStart[field], end = fieldEnd[field];
+		boolean negative = i < end && buf[i] == '-';
+		if (negative || (i < end && buf[i] == '+'))
+			i++;
+		if (i == end)
+			throw new NumberFormatException("Invalid number in field " + field);
+		long value = 0;
+		for (; i < end; i++) {
+			int d = buf[i] - '0';
+			if (d < 0 || d > 9)
+				throw new NumberFormatException("Invalid number in field " + field);
+			value = value * 10 + d;
+		}
+		return negative ? -value : value;
+	}
+
+	int parseInt(int field) {
+		long value = parseLong(field);
+		if (value != (int)value)
+			throw new NumberFormatException("Number out of range in field " + field);
+		return (int)value;
+	}
+
+	/**
+	 * Parses a decimal price to fixed point ticks scaled by {@link MarketData#PRICE_SCALE},
+	 * rounding half up any digits beyond the scale.
+	 */
+	long parsePriceTicks(int field) {
+		checkField(field);
+		int i = fieldStart[field], end = fieldEnd[field];
+		boolean negative = i < end && buf[i] == '-';
+		if (negative || (i < end && buf[i] == '+'))
+			i++;
+		long units = 0, fraction = 0, scale = TICKS_PER_UNIT;
+		boolean digits = false, point = false, roundUp = false;
+		for (; i < end; i++) {
+			byte b = buf[i];
+			if (b == '.' && !point)
+				point = true;
+			else if (b >= '0' && b <= '9') {
+				digits = true;
+				if (!point)
+					units = units * 10 + (b - '0');
+				else if (scale > 1) {
+					scale /= 10;
+					fraction += (b - '0') * scale;
+				}
+				else if (scale == 1) {
+					roundUp = b >= '5';
+					scale = 0;
+				}
+			}
+			else
+				throw new NumberFormatException("Invalid price in field " + field);
+		}
+		if (!digits)
+			throw new NumberFormatException("Invalid price in field " + field);
+		long ticks = units * TICKS_PER_UNIT + fraction + (roundUp ? 1 : 0);
+		return negative ? -ticks : ticks;
+	}
+
+	/**
+	 * Parses a timestamp in the current date format, or in epoch millis if there is none.
+	 * A timestamp that does not parse from the given field alone is parsed from it joined to
+	 * the next field with a space, in which case {@link #getTimestampFields()} returns 2 and
+	 * the timestamps of following lines are parsed from two fields first.
+	 * 
+	 * @return timestamp in epoch millis
+	 */
+	long parseTimestamp(int field) {
+		timestampFields = 1;
+		if (dateFormat == null)
+			return parseLong(field);
+
+		checkField(field);
+		int fields = splitTimestamp && field + 1 < fieldCount ? 2 : 1;
+		if (secondsLength > 0 && matchesCachedPrefix(field, fields)) {
+			long seconds = parseSeconds(fieldEnd[field + fields - 1] - secondsLength);
+			if (seconds >= 0) {
+				timestampFields = fields;
+				return cachedMinute + seconds;
+			}
+		}
+
+		Date date = dateFormat.parse(getTimestampText(field, fields), new ParsePosition(0));
+		if (date == null && field + 1 < fieldCount) {
+			fields = 3 - fields;
+			date = dateFormat.parse(getTimestampText(field, fields), new ParsePosition(0));
+		}
+		if (date == null)
+			throw new NumberFormatException("Invalid timestamp in field " + field);
+		timestampFields = fields;
+		splitTimestamp = fields == 2;
+
+		int start = fieldStart[field], end = fieldEnd[field + fields - 1];
+		if (secondsLength > 0 && fieldEnd[field + fields - 1] - fieldStart[field + fields - 1] > secondsLength) {
+			long seconds = parseSeconds(end - secondsLength);
+			if (seconds >= 0) {
+				// prefix as it appears in the parsed text, with a space in place of the field delimiter
+				cachedPrefix = Arrays.copyOfRange(buf, start, end - secondsLength);
+				if (fields == 2)
+					cachedPrefix[fieldEnd[field] - start] = ' ';
+				cachedMinute = date.getTime() - seconds;
+			}
+		}
+		return date.getTime();
+	}
+
+	private String getTimestampText(int field, int fields) {
+		return fields == 1 ? getField(field) : getField(field) + " " + getField(field + 1);
+	}
+
+	/**
+	 * @return true if the timestamp in the given fields joined with a space consists of the
+	 *         cached prefix followed by the seconds
+	 */
+	private boolean matchesCachedPrefix(int field, int fields) {
+		int start = fieldStart[field], end = fieldEnd[field + fields - 1];
+		if (end - start != cachedPrefix.length + secondsLength)
+			return false;
+		else if (fields == 1)
+			return Arrays.equals(buf, start, end - secondsLength, cachedPrefix, 0, cachedPrefix.length);
+		int dateLength = fieldEnd[field] - start;
+		return dateLength < cachedPrefix.length && cachedPrefix[dateLength] == ' '
+				&& Arrays.equals(buf, start, start + dateLength, cachedPrefix, 0, dateLength)
+				&& Arrays.equals(buf, fieldStart[field + 1], end - secondsLength, cachedPrefix, dateLength + 1, cachedPrefix.length);
+	}
+
+	/**
+	 * @return seconds and optional millis at the given buffer position in millis, or -1 if not digits
+	 */
+	private long parseSeconds(int pos) {
+		int s1 = buf[pos] - '0', s2 = buf[pos + 1] - '0';
+		if (s1 < 0 || s1 > 5 || s2 < 0 || s2 > 9)
+			return -1;
+		long millis = (s1 * 10 + s2) * 1000L;
+		if (secondsLength == 6) {
+			if (buf[pos + 2] != '.')
+				return -1;
+			int ms = 0;
+			for (int i = pos + 3; i < pos + 6; i++) {
+				int d = buf[i] - '0';
+				if (d < 0 || d > 9)
+					return -1;
+				ms = ms * 10 + d;
+			}
+			millis += ms;
+		}
+		return millis;
+	}
+
+	int getTimestampFields() {
+		return timestampFields;
+	}
+}
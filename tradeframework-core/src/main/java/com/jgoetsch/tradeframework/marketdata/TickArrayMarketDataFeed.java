@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jgoetsch.tradeframework.InvalidContractException;
+
+/**
+ * Feed replaying ticks that have already been decoded into memory. The tick array is not
+ * copied, so any number of feeds can replay the same decoded data independently, such as
+ * when running the same market data through many simulations. Ticks are shared between
+ * the feeds, which may be replayed on different threads at the same time, so listeners
+ * must not modify them, such as through the setters of {@link FixedPointMarketData}, and
+ * must call {@link MarketData#snapshot()} to get a copy they can modify.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class TickArrayMarketDataFeed extends SimulatedMarketDataFeed {
+
+	private final MarketData[] ticks;
+	private int index;
+
+	/**
+	 * @param ticks ticks to replay in order, which are not copied and must not be modified
+	 */
+	public TickArrayMarketDataFeed(MarketData[] ticks) {
+		this.ticks = ticks;
+	}
+
+	/**
+	 * Reads all ticks from a feed and closes it.
+	 * 
+	 * @param feed feed to decode
+	 * @param endTimestamp time after which ticks are not needed, or null to read the entire feed
+	 * @return ticks of the feed in order
+	 */
+	public static MarketData[] decode(SimulatedMarketDataFeed feed, Instant endTimestamp) throws IOException, InvalidContractException {
+		List<MarketData> ticks = new ArrayList<MarketData>();
+		try {
+			MarketData tick;
+			while ((tick = feed.nextTick()) != null && (endTimestamp == null || tick.getTimestampMillis() <= endTimestamp.toEpochMilli()))
+				ticks.add(tick);
+		} finally {
+			feed.close();
+		}
+		return ticks.toArray(new MarketData[ticks.size()]);
+	}
+
+	@Override
+	protected MarketData retrieveNextTick() {
+		return index < ticks.length ? ticks[index++] : null;
+	}
+
+	public void close() {
+	}
+
+}
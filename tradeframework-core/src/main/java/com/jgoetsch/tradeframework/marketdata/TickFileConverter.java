@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.marketdata;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+
+import com.jgoetsch.tradeframework.InvalidContractException;
+
+/**
+ * Converts recorded tick files to the binary format read by {@link BinaryTickMarketDataFeed}.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class TickFileConverter {
+
+	/**
+	 * Copies all ticks from a simulated feed to a binary tick recorder.
+	 * 
+	 * @return number of ticks read from the feed
+	 */
+	public static int convert(SimulatedMarketDataFeed input, BinaryTickRecorder output) throws IOException, InvalidContractException {
+		int count = 0;
+		MarketData tick;
+		while ((tick = input.nextTick()) != null) {
+			output.record(tick);
+			count++;
+		}
+		output.flush();
+		return count;
+	}
+
+	/**
+	 * Converts a text file in the format read by {@link TickWriterMarketDataFeed} to binary.
+	 * 
+	 * @param dateFormat format of the timestamp column, or null if timestamps are in epoch millis
+	 * @param defaultIncrement price increment used for missing bid and ask prices
+	 */
+	public static int convert(InputStream input, OutputStream output, String dateFormat, BigDecimal defaultIncrement) throws IOException, InvalidContractException {
+		try (TickWriterMarketDataFeed feed = new TickWriterMarketDataFeed(input, defaultIncrement,
+					dateFormat != null ? new SimpleDateFormat(dateFormat) : null);
+				BinaryTickRecorder recorder = new BinaryTickRecorder(output)) {
+			return convert(feed, recorder);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: TickFileConverter <input file> <output file> [date format] [default increment]");
+			System.exit(1);
+		}
+		try (InputStream input = new FileInputStream(args[0]);
+				OutputStream output = new FileOutputStream(args[1])) {
+			int count = convert(input, output, args.length > 2 ? args[2] : null,
+					new BigDecimal(args.length > 3 ? args[3] : "0.01"));
+			System.out.println("Converted " + count + " ticks");
+		}
+	}
+}
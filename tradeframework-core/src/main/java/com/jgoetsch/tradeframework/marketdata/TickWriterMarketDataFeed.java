@@ -15,72 +15,54 @@
  */
 package com.jgoetsch.tradeframework.marketdata;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.text.DateFormat;
-import java.text.ParseException;
-import java.time.Instant;
-import java.util.Date;
 
 public class TickWriterMarketDataFeed extends SimulatedMarketDataFeed {
 
-	private BufferedReader input;
-	private BigDecimal defaultIncrement;
-	private DateFormat dateFormat;
-	private BigDecimal lastPrice;
-	private Instant lastTimestamp;
+	private InputStream input;
+	private TextTickParser parser;
+	private long defaultIncrement;
+	private long lastPrice = MarketData.NO_VALUE;
+	private long lastTimestamp = MarketData.NO_VALUE;
 
 	public TickWriterMarketDataFeed(InputStream inputStream, BigDecimal defaultIncrement, DateFormat dateFormat) {
-		this.input = new BufferedReader(new InputStreamReader(inputStream));
-		this.defaultIncrement = defaultIncrement;
-		this.dateFormat = dateFormat;
+		this.input = inputStream;
+		this.parser = new TextTickParser(inputStream, false);
+		this.parser.setDateFormat(dateFormat);
+		this.defaultIncrement = FixedPointMarketData.toTicks(defaultIncrement);
 	}
 
 	@Override
 	protected MarketData retrieveNextTick() throws IOException
 	{
-		for (;;) {
-			String line = input.readLine();
-			if (line == null)
-				return null;
-
-			String part[] = line.split("[\\t,]");
+		while (parser.nextLine()) {
 			try {
-				int field = 0;
-				Date ts;
-				if (dateFormat != null) {
-					try {
-						ts = dateFormat.parse(part[field]);
-					} catch (ParseException e) {
-						ts = dateFormat.parse(part[field] + " " + part[++field]);
-					}
-				}
-				else
-					ts = new Date(Long.parseLong(part[field]));
-
-				SimpleMarketData mkd = new SimpleMarketData();
-				mkd.setTimestamp(ts.toInstant());
-				mkd.setLast(new BigDecimal(part[++field]));
-				mkd.setLastSize(part.length >= ++field ? Integer.parseInt(part[field]) : 0);
-				if (mkd.getLast() != lastPrice) {
-					lastTimestamp = mkd.getTimestamp();
-					lastPrice = mkd.getLast();
+				int count = parser.getFieldCount();
+				FixedPointMarketData mkd = new FixedPointMarketData();
+				mkd.setTimestampMillis(parser.parseTimestamp(0));
+				int field = parser.getTimestampFields();
+				mkd.setLastTicks(parser.parsePriceTicks(field));
+				mkd.setLastSize(++field < count ? parser.parseInt(field) : 0);
+				if (mkd.getLastTicks() != lastPrice) {
+					lastTimestamp = mkd.getTimestampMillis();
+					lastPrice = mkd.getLastTicks();
 				}
-				mkd.setLastTimestamp(lastTimestamp);
+				mkd.setLastTimestampMillis(lastTimestamp);
 
-				mkd.setBid(part.length > ++field ? new BigDecimal(part[field]) : mkd.getLast().subtract(defaultIncrement));
-				mkd.setBidSize(part.length > ++field ? Integer.parseInt(part[field]) : 10);
-				mkd.setAsk(part.length > ++field ? new BigDecimal(part[field]) : mkd.getLast().subtract(defaultIncrement));
-				mkd.setAskSize(part.length > ++field ? Integer.parseInt(part[field]) : 10);
+				mkd.setBidTicks(++field < count ? parser.parsePriceTicks(field) : mkd.getLastTicks() - defaultIncrement);
+				mkd.setBidSize(++field < count ? parser.parseInt(field) : 10);
+				mkd.setAskTicks(++field < count ? parser.parsePriceTicks(field) : mkd.getLastTicks() + defaultIncrement);
+				mkd.setAskSize(++field < count ? parser.parseInt(field) : 10);
 
 				return mkd;
 			} catch (Exception e) {
-				System.err.println("Failed to parse input line, skipping: " + line + " (" + e.getMessage() + ")");
+				System.err.println("Failed to parse input line, skipping: " + parser.getLine() + " (" + e.getMessage() + ")");
 			}
 		}
+		return null;
 	}
 
 	public void close() throws IOException {
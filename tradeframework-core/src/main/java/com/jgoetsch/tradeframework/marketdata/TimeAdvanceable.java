@@ -16,9 +16,27 @@
 package com.jgoetsch.tradeframework.marketdata;
 
 import java.io.IOException;
+import java.time.Instant;
 
 public interface TimeAdvanceable {
 
+	/**
+	 * Advances time by the given number of milliseconds, processing all events up to the new time.
+	 * 
+	 * @return false if there are no more events to process
+	 */
 	public boolean receiveDataAndWait(long millis) throws IOException;
 
+	/**
+	 * @return time of the next pending event, or null if there are none
+	 */
+	public Instant getNextEventTime() throws IOException;
+
+	/**
+	 * Advances time directly to the next pending event, processing all events at that time.
+	 * 
+	 * @return false if there are no more events to process
+	 */
+	public boolean advanceToNextEvent() throws IOException;
+
 }
\ No newline at end of file
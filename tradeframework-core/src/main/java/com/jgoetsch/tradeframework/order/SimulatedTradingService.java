@@ -30,6 +30,7 @@ import com.jgoetsch.tradeframework.Execution;
 import com.jgoetsch.tradeframework.InvalidContractException;
 import com.jgoetsch.tradeframework.Order;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
+import com.jgoetsch.tradeframework.marketdata.MarketDataField;
 import com.jgoetsch.tradeframework.marketdata.MarketDataListener;
 import com.jgoetsch.tradeframework.marketdata.MarketDataSource;
 import com.jgoetsch.tradeframework.order.commissions.CommissionStructure;
@@ -64,12 +65,23 @@ public class SimulatedTradingService implements TradingService, MarketDataListen
 		this.commissions = commissions;
 	}
 
-	public synchronized void tick(Contract contract, MarketData marketData) {
+	public void tick(Contract contract, MarketData marketData) {
+		tick(contract, marketData, MarketDataField.ALL);
+	}
+
+	/**
+	 * Processes the open orders of the contract against the tick, skipping those whose
+	 * {@link OrderProcessor#getFieldMask() field mask} does not match the updated fields.
+	 */
+	@Override
+	public synchronized void tick(Contract contract, MarketData marketData, int changedFields) {
 		Collection<OrderProcessor> contractOrders = openOrders.get(contract);
 		if (contractOrders != null) {
 			Iterator<OrderProcessor> openOrderIter = contractOrders.iterator();
 			while (openOrderIter.hasNext()) {
 				OrderProcessor openOrder = openOrderIter.next();
+				if (!MarketDataField.matches(openOrder.getFieldMask(), changedFields))
+					continue;
 				Execution execution = openOrder.process(marketData);
 				if (execution != null) {
 					if (commissions != null)
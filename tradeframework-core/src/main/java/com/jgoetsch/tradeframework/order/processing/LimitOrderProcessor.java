@@ -19,6 +19,7 @@ import java.math.BigDecimal;
 
 import com.jgoetsch.tradeframework.Execution;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
+import com.jgoetsch.tradeframework.marketdata.MarketDataField;
 
 public class LimitOrderProcessor extends MarketOrderProcessor {
 
@@ -29,6 +30,14 @@ public class LimitOrderProcessor extends MarketOrderProcessor {
 		this.limitPrice = limitPrice;
 	}
 
+	/**
+	 * A limit order can only become marketable when the quote or last price changes.
+	 */
+	@Override
+	public int getFieldMask() {
+		return MarketDataField.BID | MarketDataField.ASK | MarketDataField.LAST;
+	}
+
 	@Override
 	protected Execution handleProcessing(MarketData marketData) {
 		if ((isBuying() && marketData.getAsk().compareTo(getLimitPrice()) <= 0) || (isSelling() && marketData.getBid().compareTo(getLimitPrice()) >= 0))
@@ -19,6 +19,7 @@ import java.math.BigDecimal;
 
 import com.jgoetsch.tradeframework.Execution;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
+import com.jgoetsch.tradeframework.marketdata.MarketDataField;
 
 public abstract class OrderProcessor {
 	private final BigDecimal totalQuantity;
@@ -50,6 +51,17 @@ public abstract class OrderProcessor {
 		return (isBuying() ? "BUY " : "SELL ") + totalQuantity + ": " + quantityRemaining + " remaining";
 	}
 
+	/**
+	 * Returns the {@link MarketDataField} values this order is processed against. Ticks
+	 * that update none of them are not passed to {@link #process(MarketData)}. Defaults
+	 * to all fields.
+	 * 
+	 * @return bit mask of {@link MarketDataField} values
+	 */
+	public int getFieldMask() {
+		return MarketDataField.ALL;
+	}
+
 	/**
 	 * 
 	 * @param marketData market data to process order against
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+import com.jgoetsch.tradeframework.OHLC;
+
+/**
+ * Average true range using Wilder's smoothing, seeded with the simple average of the true
+ * range of the first period of bars.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class ATR extends Statistic {
+
+	private final int period;
+	private int count;
+	private double sum;
+	private double prevClose = Double.NaN;
+
+	public ATR(int period) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Period must be positive");
+		this.period = period;
+	}
+
+	public void addSample(OHLC bar) {
+		addSample(bar.getHigh(), bar.getLow(), bar.getClose());
+	}
+
+	public void addSample(double high, double low, double close) {
+		double range = high - low;
+		if (!Double.isNaN(prevClose))
+			range = Math.max(range, Math.max(Math.abs(high - prevClose), Math.abs(low - prevClose)));
+		prevClose = close;
+
+		if (count < period) {
+			sum += range;
+			if (++count == period)
+				setValue(sum / period);
+		}
+		else
+			setValue((getValue() * (period - 1) + range) / period);
+	}
+
+	/**
+	 * Adds a sample with only a closing price, such as a trade tick.
+	 */
+	public void addSample(double value) {
+		addSample(value, value, value);
+	}
+
+	public void clear() {
+		super.clear();
+		count = 0;
+		sum = 0;
+		prevClose = Double.NaN;
+	}
+}
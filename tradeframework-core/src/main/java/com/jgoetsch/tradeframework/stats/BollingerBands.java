@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Bollinger bands, a simple moving average with bands a multiple of the rolling standard
+ * deviation above and below it. The value of the statistic is the middle band.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class BollingerBands extends Statistic {
+
+	private final RollingStdev stdev;
+	private final double width;
+
+	/**
+	 * @param period number of samples in the moving average
+	 * @param width number of standard deviations between the middle and outer bands
+	 */
+	public BollingerBands(int period, double width) {
+		this.stdev = new RollingStdev(period);
+		this.width = width;
+	}
+
+	public void addSample(double value) {
+		stdev.addSample(value);
+		if (stdev.hasValue())
+			setValue(stdev.getMean());
+	}
+
+	public double getMiddle() {
+		return getValue();
+	}
+
+	public double getUpper() {
+		return getValue() + width * stdev.getValue();
+	}
+
+	public double getLower() {
+		return getValue() - width * stdev.getValue();
+	}
+
+	public double getStdev() {
+		return stdev.getValue();
+	}
+
+	public void clear() {
+		super.clear();
+		stdev.clear();
+	}
+}
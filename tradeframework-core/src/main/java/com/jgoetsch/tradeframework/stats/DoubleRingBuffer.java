@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Fixed capacity circular buffer of primitive doubles, evicting the oldest value when a value
+ * is added to a full buffer.
+ * 
+ * @author jgoetsch
+ *
+ */
+public final class DoubleRingBuffer {
+
+	private final double[] values;
+	private int head;
+	private int size;
+
+	public DoubleRingBuffer(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.values = new double[capacity];
+	}
+
+	/**
+	 * Adds a value to the buffer.
+	 * 
+	 * @return the value evicted to make room for the new one if the buffer was full, otherwise NaN
+	 */
+	public double add(double value) {
+		if (size < values.length) {
+			int index = head + size;
+			values[index < values.length ? index : index - values.length] = value;
+			size++;
+			return Double.NaN;
+		}
+		else {
+			double evicted = values[head];
+			values[head] = value;
+			if (++head == values.length)
+				head = 0;
+			return evicted;
+		}
+	}
+
+	/**
+	 * @param index index of the value, where 0 is the oldest value in the buffer
+	 */
+	public double get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		index += head;
+		return values[index < values.length ? index : index - values.length];
+	}
+
+	/**
+	 * @return the oldest value in the buffer, which will be evicted next if it is full
+	 */
+	public double getFirst() {
+		return get(0);
+	}
+
+	public double getLast() {
+		return get(size - 1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return values.length;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean isFull() {
+		return size == values.length;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+}
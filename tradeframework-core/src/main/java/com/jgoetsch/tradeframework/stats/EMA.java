@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Exponential moving average, seeded with the simple average of the first period of samples.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class EMA extends Statistic {
+
+	private final int period;
+	private final double alpha;
+	private int count;
+	private double sum;
+
+	public EMA(int period) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Period must be positive");
+		this.period = period;
+		this.alpha = 2.0 / (period + 1);
+	}
+
+	public void addSample(double value) {
+		if (count < period) {
+			sum += value;
+			if (++count == period)
+				setValue(sum / period);
+		}
+		else
+			setValue(getValue() + alpha * (value - getValue()));
+	}
+
+	public void clear() {
+		super.clear();
+		count = 0;
+		sum = 0;
+	}
+}
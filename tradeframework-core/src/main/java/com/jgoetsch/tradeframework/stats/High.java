@@ -18,7 +18,7 @@ package com.jgoetsch.tradeframework.stats;
 public class High extends Statistic {
 
 	public void addSample(double value) {
-		setValue(Math.max(getValue() == NO_DATA ? Double.MIN_VALUE : getValue(), value));
+		setValue(hasValue() ? Math.max(getValue(), value) : value);
 	}
 
 }
@@ -18,7 +18,7 @@ package com.jgoetsch.tradeframework.stats;
 public class Low extends Statistic {
 
 	public void addSample(double value) {
-		setValue(Math.min(getValue() == NO_DATA ? Double.MAX_VALUE : getValue(), value));
+		setValue(hasValue() ? Math.min(getValue(), value) : value);
 	}
 
 }
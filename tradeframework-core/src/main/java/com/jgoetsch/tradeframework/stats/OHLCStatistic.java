@@ -61,6 +61,10 @@ public class OHLCStatistic implements OHLC {
 		return numSamples;
 	}
 
+	public boolean hasValue() {
+		return numSamples > 0;
+	}
+
 	public double getValue() {
 		return getClose();
 	}
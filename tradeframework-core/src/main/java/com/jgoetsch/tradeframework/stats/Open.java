@@ -18,7 +18,7 @@ package com.jgoetsch.tradeframework.stats;
 public class Open extends Statistic {
 
 	public void addSample(double value) {
-		if (getValue() == NO_DATA)
+		if (!hasValue())
 			setValue(value);
 	}
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Relative strength index using Wilder's smoothing, which has a value once a full period of
+ * changes, or one more than the period of samples, has been added.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class RSI extends Statistic {
+
+	private final int period;
+	private int count;
+	private double prev = Double.NaN;
+	private double avgGain;
+	private double avgLoss;
+
+	public RSI(int period) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Period must be positive");
+		this.period = period;
+	}
+
+	public void addSample(double value) {
+		if (Double.isNaN(prev)) {
+			prev = value;
+			return;
+		}
+		double change = value - prev;
+		prev = value;
+		double gain = change > 0 ? change : 0;
+		double loss = change < 0 ? -change : 0;
+
+		if (count < period) {
+			avgGain += gain / period;
+			avgLoss += loss / period;
+			if (++count < period)
+				return;
+		}
+		else {
+			avgGain = (avgGain * (period - 1) + gain) / period;
+			avgLoss = (avgLoss * (period - 1) + loss) / period;
+		}
+		if (avgLoss == 0)
+			setValue(avgGain == 0 ? 50 : 100);
+		else
+			setValue(100 - 100 / (1 + avgGain / avgLoss));
+	}
+
+	public void clear() {
+		super.clear();
+		count = 0;
+		prev = Double.NaN;
+		avgGain = 0;
+		avgLoss = 0;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Maximum or minimum over a rolling window of samples, maintained with a monotonic deque so
+ * that each sample is added and removed at most once.
+ * 
+ * @author jgoetsch
+ *
+ */
+public abstract class RollingExtreme extends Statistic {
+
+	private final int period;
+	private final boolean max;
+	private final double[] values;
+	private final long[] sequence;
+	private int head;
+	private int size;
+	private long count;
+
+	protected RollingExtreme(int period, boolean max) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Period must be positive");
+		this.period = period;
+		this.max = max;
+		this.values = new double[period];
+		this.sequence = new long[period];
+	}
+
+	public void addSample(double value) {
+		if (size > 0 && sequence[head] <= count - period) {
+			if (++head == period)
+				head = 0;
+			size--;
+		}
+		while (size > 0) {
+			double tail = values[index(size - 1)];
+			if (max ? tail <= value : tail >= value)
+				size--;
+			else
+				break;
+		}
+		int tail = index(size++);
+		values[tail] = value;
+		sequence[tail] = count;
+		if (++count >= period)
+			setValue(values[head]);
+	}
+
+	private int index(int i) {
+		i += head;
+		return i < period ? i : i - period;
+	}
+
+	public void clear() {
+		super.clear();
+		head = 0;
+		size = 0;
+		count = 0;
+	}
+}
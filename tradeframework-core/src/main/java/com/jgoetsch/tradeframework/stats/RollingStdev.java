@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Standard deviation over a rolling window of samples, updated in constant time using
+ * Welford's method extended to remove the sample leaving the window.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class RollingStdev extends Statistic {
+
+	private final DoubleRingBuffer samples;
+	private double mean;
+	private double m2;
+
+	public RollingStdev(int period) {
+		this.samples = new DoubleRingBuffer(period);
+	}
+
+	public void addSample(double value) {
+		if (samples.isFull()) {
+			double evicted = samples.add(value);
+			double newMean = mean + (value - evicted) / samples.size();
+			m2 += (value - evicted) * (value - newMean + evicted - mean);
+			mean = newMean;
+			setValue(Math.sqrt(getVariance()));
+		}
+		else {
+			samples.add(value);
+			double delta = value - mean;
+			mean += delta / samples.size();
+			m2 += delta * (value - mean);
+			if (samples.isFull())
+				setValue(Math.sqrt(getVariance()));
+		}
+	}
+
+	/**
+	 * @return mean of the samples in the window
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * @return population variance of the samples in the window
+	 */
+	public double getVariance() {
+		return samples.isEmpty() ? 0 : Math.max(m2, 0) / samples.size();
+	}
+
+	/**
+	 * @return sample variance of the samples in the window
+	 */
+	public double getSampleVariance() {
+		return samples.size() < 2 ? 0 : Math.max(m2, 0) / (samples.size() - 1);
+	}
+
+	public void clear() {
+		super.clear();
+		samples.clear();
+		mean = 0;
+		m2 = 0;
+	}
+}
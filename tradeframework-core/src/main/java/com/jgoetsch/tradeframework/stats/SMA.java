@@ -15,39 +15,50 @@
  */
 package com.jgoetsch.tradeframework.stats;
 
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-
+/**
+ * Simple moving average, which is the average of all samples so far until the period is filled.
+ * 
+ * @author jgoetsch
+ *
+ */
 public class SMA extends Statistic {
 
-	private Queue<Double> samples;
+	private final DoubleRingBuffer samples;
 	private double sum;
 
 	/**
-	 * Constructs an SMA statistic over the specified period and period unit length
+	 * Constructs an SMA statistic over the specified number of samples
 	 * 
-	 * @param numPeriods number of time periods to use
-	 * @param periodLength length of time period of each sample unit in milliseconds
+	 * @param period number of samples to average
 	 */
 	public SMA(int period) {
-		samples = new ArrayBlockingQueue<Double>(period);
+		samples = new DoubleRingBuffer(period);
 	}
 
 	public void addSample(double value) {
-		if (!samples.offer(value)) {
-			sum -= samples.remove();
+		if (samples.isFull())
+			sum -= samples.add(value);
+		else
 			samples.add(value);
-		}
 		sum += value;
+		setValue(sum / samples.size());
 	}
 
 	public double getValue() {
-		if (samples.isEmpty())
+		if (!hasValue())
 			throw new IllegalStateException("Attempted to get SMA value with no sample data.");
-		return sum / samples.size();
+		return super.getValue();
+	}
+
+	/**
+	 * @return true if a full period of samples has been added
+	 */
+	public boolean isFull() {
+		return samples.isFull();
 	}
 
 	public void clear() {
+		super.clear();
 		samples.clear();
 		sum = 0;
 	}
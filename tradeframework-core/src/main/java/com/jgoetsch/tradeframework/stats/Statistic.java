@@ -15,16 +15,38 @@
  */
 package com.jgoetsch.tradeframework.stats;
 
+/**
+ * Value calculated incrementally from a stream of samples. The value is only defined once
+ * {@link #hasValue()} returns true, as any double including negative values may be valid.
+ * 
+ * @author jgoetsch
+ *
+ */
 public abstract class Statistic {
 
 	private double value = NO_DATA;
+	private boolean hasValue;
 
+	/**
+	 * Value returned by the basic statistics before any samples are added.
+	 * 
+	 * @deprecated cannot be distinguished from a sample of the same value, use {@link #hasValue()}
+	 */
+	@Deprecated
 	public static final int NO_DATA = -1;
 
 	public abstract void addSample(double value);
 
 	public void clear() {
 		value = NO_DATA;
+		hasValue = false;
+	}
+
+	/**
+	 * @return true if enough samples have been added for the value of this statistic to be defined
+	 */
+	public boolean hasValue() {
+		return hasValue;
 	}
 
 	public double getValue() {
@@ -33,5 +55,6 @@ public abstract class Statistic {
 
 	public void setValue(double value) {
 		this.value = value;
+		this.hasValue = true;
 	}
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Volume weighted average price, either cumulative since the last call to {@link #clear()},
+ * such as for a trading session, or over a rolling window of samples.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class VWAP extends Statistic {
+
+	private final DoubleRingBuffer prices;
+	private final DoubleRingBuffer volumes;
+	private double sumPriceVolume;
+	private double sumVolume;
+
+	/**
+	 * Constructs a cumulative VWAP.
+	 */
+	public VWAP() {
+		this.prices = null;
+		this.volumes = null;
+	}
+
+	/**
+	 * Constructs a VWAP over a rolling window.
+	 * 
+	 * @param period number of samples in the window
+	 */
+	public VWAP(int period) {
+		this.prices = new DoubleRingBuffer(period);
+		this.volumes = new DoubleRingBuffer(period);
+	}
+
+	public void addSample(double price, double volume) {
+		if (prices != null && prices.isFull()) {
+			double evictedVolume = volumes.add(volume);
+			sumPriceVolume -= prices.add(price) * evictedVolume;
+			sumVolume -= evictedVolume;
+		}
+		else if (prices != null) {
+			prices.add(price);
+			volumes.add(volume);
+		}
+		sumPriceVolume += price * volume;
+		sumVolume += volume;
+	}
+
+	/**
+	 * Adds a sample with a volume of one.
+	 */
+	public void addSample(double value) {
+		addSample(value, 1);
+	}
+
+	public boolean hasValue() {
+		return sumVolume > 0;
+	}
+
+	public double getValue() {
+		return sumVolume > 0 ? sumPriceVolume / sumVolume : Double.NaN;
+	}
+
+	public double getVolume() {
+		return sumVolume;
+	}
+
+	public void clear() {
+		super.clear();
+		if (prices != null) {
+			prices.clear();
+			volumes.clear();
+		}
+		sumPriceVolume = 0;
+		sumVolume = 0;
+	}
+}
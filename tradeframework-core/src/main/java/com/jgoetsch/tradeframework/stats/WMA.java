@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.tradeframework.stats;
+
+/**
+ * Linearly weighted moving average, giving the newest sample a weight equal to the period and
+ * the oldest a weight of one. Updated in constant time from the running sum of the window.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class WMA extends Statistic {
+
+	private final DoubleRingBuffer samples;
+	private final double denominator;
+	private double sum;
+	private double weightedSum;
+
+	public WMA(int period) {
+		this.samples = new DoubleRingBuffer(period);
+		this.denominator = period * (period + 1) / 2.0;
+	}
+
+	public void addSample(double value) {
+		if (samples.isFull()) {
+			weightedSum += samples.capacity() * value - sum;
+			sum += value - samples.add(value);
+			setValue(weightedSum / denominator);
+		}
+		else {
+			samples.add(value);
+			weightedSum += samples.size() * value;
+			sum += value;
+			if (samples.isFull())
+				setValue(weightedSum / denominator);
+		}
+	}
+
+	public void clear() {
+		super.clear();
+		samples.clear();
+		sum = 0;
+		weightedSum = 0;
+	}
+}
@@ -15,70 +15,117 @@
  */
 package com.jgoetsch.tradeframework.tradingsystem;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 
 import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.InvalidContractException;
 import com.jgoetsch.tradeframework.OHLC;
+import com.jgoetsch.tradeframework.marketdata.BarAggregator;
+import com.jgoetsch.tradeframework.marketdata.BarListener;
+import com.jgoetsch.tradeframework.marketdata.BarSpec;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
-import com.jgoetsch.tradeframework.stats.OHLCStatistic;
 
-public abstract class IntervalTradingSystem extends AbstractTradingSystem {
+/**
+ * Trading system acting on fixed interval bars within trading hours. Ticks received as a
+ * {@link com.jgoetsch.tradeframework.marketdata.MarketDataListener} are aggregated into bars by
+ * a private {@link BarAggregator}, or the system may instead be subscribed as a {@link BarListener}
+ * to a shared aggregator using {@link #getBarSpec()}.
+ * 
+ * @author jgoetsch
+ *
+ */
+public abstract class IntervalTradingSystem extends AbstractTradingSystem implements BarListener {
 
-	private long intervalLength;
-	private long tradingDayStart;
-	private long tradingDayEnd;
-	private long lastTimestamp;
-	private OHLCStatistic ohlc;
-	private GregorianCalendar cal;
+	private final long intervalLength;
+	private final long tradingDayStart;
+	private final long tradingDayEnd;
+	private final BarSpec barSpec;
+	private final BarAggregator barAggregator = new BarAggregator();
+	private volatile Contract contract;
+	private ZoneId timeZone = ZoneId.of("America/New_York");
+	private long dayStart = Long.MAX_VALUE;
+	private long dayEnd = Long.MIN_VALUE;
+	private long sessionStart;
+	private long sessionEnd;
 
 	public IntervalTradingSystem(long intervalLength) {
-		this.intervalLength = intervalLength * 1000;
-		this.ohlc = new OHLCStatistic();
-		this.tradingDayStart = 9 * 3600 + 30 * 60;	// 9:30 am eastern
-		this.tradingDayEnd = 16 * 3600;	// 4:00 pm eastern
-		this.cal = new GregorianCalendar();
+		this(intervalLength, 9 * 3600 + 30 * 60, 16 * 3600);	// 9:30 am - 4:00 pm eastern
 	}
 
 	public IntervalTradingSystem(long intervalLength, long tradingDayStart, long tradingDayEnd) {
 		this.intervalLength = intervalLength * 1000;
-		this.ohlc = new OHLCStatistic();
 		this.tradingDayStart = tradingDayStart;
 		this.tradingDayEnd = tradingDayEnd;
-		this.cal = new GregorianCalendar();
+		this.barSpec = BarSpec.time(this.intervalLength, true);
 	}
-	
-	public synchronized void tick(Contract contract, MarketData data) {
-		long ts = data.getTimestamp().toEpochMilli();
-		if (lastTimestamp == 0)
-			lastTimestamp = (ts / intervalLength) * intervalLength;
-		while (ts - lastTimestamp > intervalLength) {
-			if (isWithinTradingHours(lastTimestamp)) {
-				if (ohlc.getClose() == -1)
-					ohlc.addSample(data.getLast().doubleValue());
-				intervalTick(data, ohlc, lastTimestamp, intervalLength);
+
+	public void tick(Contract contract, MarketData data) {
+		if (this.contract == null) {
+			synchronized (this) {
+				if (this.contract == null) {
+					try {
+						barAggregator.subscribe(contract, barSpec, this);
+					} catch (IOException | InvalidContractException e) {
+						throw new IllegalStateException(e);
+					}
+					this.contract = contract;
+				}
 			}
-			ohlc.clear();
-			lastTimestamp += intervalLength;
 		}
-		ohlc.addSample(data.getLast().doubleValue());
+		barAggregator.tick(contract, data);
+	}
+
+	public void barCompleted(Contract contract, BarSpec spec, OHLC bar, MarketData data) {
+		long timestamp = bar.getDate().getTime();
+		if (isWithinTradingHours(timestamp))
+			intervalTick(data, bar, timestamp, intervalLength);
 	}
 
 	public void onStop() {
 		super.onStop();
-		if (isWithinTradingHours(lastTimestamp) && ohlc.getClose() != -1)
-			intervalTick(null, ohlc, lastTimestamp, intervalLength);
+		barAggregator.flush();
 	}
 
-	protected boolean isWithinTradingHours(long timestamp) {
-		cal.setTime(new Date(lastTimestamp));
-		if (cal.get(Calendar.DAY_OF_WEEK) != Calendar.SATURDAY && cal.get(Calendar.DAY_OF_WEEK) != Calendar.SUNDAY) {
-			long sec = cal.get(Calendar.SECOND) + cal.get(Calendar.MINUTE) * 60 + cal.get(Calendar.HOUR_OF_DAY) * 3600;
-			if (sec >= tradingDayStart && sec < tradingDayEnd)
-				return true;
+	/**
+	 * @return specification of the bars this trading system acts on
+	 */
+	public BarSpec getBarSpec() {
+		return barSpec;
+	}
+
+	public ZoneId getTimeZone() {
+		return timeZone;
+	}
+
+	/**
+	 * Sets the time zone of the trading hours, which defaults to US eastern time.
+	 */
+	public void setTimeZone(ZoneId timeZone) {
+		this.timeZone = timeZone;
+		this.dayStart = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Tests whether a bar start time is within trading hours. The session bounds are calculated
+	 * once per day rather than for each bar.
+	 */
+	protected synchronized boolean isWithinTradingHours(long timestamp) {
+		if (timestamp < dayStart || timestamp >= dayEnd) {
+			LocalDate date = Instant.ofEpochMilli(timestamp).atZone(timeZone).toLocalDate();
+			dayStart = date.atStartOfDay(timeZone).toInstant().toEpochMilli();
+			dayEnd = date.plusDays(1).atStartOfDay(timeZone).toInstant().toEpochMilli();
+			if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY)
+				sessionStart = sessionEnd = dayStart;
+			else {
+				sessionStart = date.atStartOfDay().plusSeconds(tradingDayStart).atZone(timeZone).toInstant().toEpochMilli();
+				sessionEnd = date.atStartOfDay().plusSeconds(tradingDayEnd).atZone(timeZone).toInstant().toEpochMilli();
+			}
 		}
-		return false;
+		return timestamp >= sessionStart && timestamp < sessionEnd;
 	}
 
 	protected abstract void intervalTick(MarketData data, OHLC ohlc, long timestamp, long interval);
@@ -0,0 +1,117 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.time.Instant
+
+import com.jgoetsch.tradeframework.marketdata.BarAggregator
+import com.jgoetsch.tradeframework.marketdata.BarListener
+import com.jgoetsch.tradeframework.marketdata.BarSpec
+import com.jgoetsch.tradeframework.marketdata.FixedPointMarketData
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.tradingsystem.IntervalTradingSystem
+
+class BarAggregatorSpec extends Specification {
+
+	static MarketData trade(long timestamp, double price, int size) {
+		def data = new FixedPointMarketData()
+		data.timestampMillis = timestamp
+		data.lastTimestampMillis = timestamp
+		data.lastTicks = FixedPointMarketData.toTicks(price)
+		data.lastSize = size
+		data
+	}
+
+	static class Collector implements BarListener {
+		def bars = []
+		void barCompleted(Contract contract, BarSpec spec, OHLC bar, MarketData data) {
+			bars << [contract.symbol, spec.type.name(), bar.date.time, bar.open, bar.high, bar.low, bar.close, bar.volume]
+		}
+	}
+
+	def "Builds time, tick and volume bars for several contracts at once"() {
+		given:
+		def abcd = Contract.stock("ABCD")
+		def wxyz = Contract.stock("WXYZ")
+		def aggregator = new BarAggregator()
+		def collector = new Collector()
+		aggregator.subscribe(abcd, BarSpec.time(1000, true), collector)
+		aggregator.subscribe(abcd, BarSpec.ticks(3), collector)
+		aggregator.subscribe(wxyz, BarSpec.volume(250), collector)
+
+		when:
+		[[100, 10.0, 100], [500, 10.5, 100], [900, 9.5, 100], [1000, 10.2, 50], [3200, 10.1, 10]].each {
+			aggregator.tick(abcd, trade(it[0], it[1], it[2]))
+			aggregator.tick(wxyz, trade(it[0], it[1] * 2, it[2]))
+		}
+		aggregator.flush(abcd)
+
+		then:
+		collector.bars.findAll { it[0] == "ABCD" && it[1] == "TIME" } == [
+			["ABCD", "TIME", 0, 10.0, 10.5, 9.5, 9.5, 300],
+			["ABCD", "TIME", 1000, 10.2, 10.2, 10.2, 10.2, 50],
+			["ABCD", "TIME", 2000, 10.2, 10.2, 10.2, 10.2, 0],
+			["ABCD", "TIME", 3000, 10.1, 10.1, 10.1, 10.1, 10]
+		]
+		collector.bars.findAll { it[0] == "ABCD" && it[1] == "TICKS" } == [
+			["ABCD", "TICKS", 100, 10.0, 10.5, 9.5, 9.5, 300],
+			["ABCD", "TICKS", 1000, 10.2, 10.2, 10.1, 10.1, 60]
+		]
+		collector.bars.findAll { it[0] == "WXYZ" } == [
+			["WXYZ", "VOLUME", 100, 20.0, 21.0, 19.0, 19.0, 300]
+		]
+	}
+
+	def "Interval trading system acts on bars within trading hours"() {
+		given:
+		def bars = []
+		def system = new IntervalTradingSystem(60) {
+			protected void intervalTick(MarketData data, OHLC ohlc, long timestamp, long interval) {
+				bars << [Instant.ofEpochMilli(timestamp).toString(), ohlc.close, data?.lastAsDouble]
+			}
+		}
+		def contract = Contract.stock("ABCD")
+		long open = Instant.parse("2021-03-15T13:30:00Z").toEpochMilli()
+		system.start()
+
+		when:
+		system.tick(contract, trade(open - 30000, 9.0, 100))
+		system.tick(contract, trade(open + 10000, 10.0, 100))
+		system.tick(contract, trade(open + 60000, 11.0, 100))
+		system.tick(contract, trade(open + 190000, 12.0, 100))
+		system.stop()
+
+		then:
+		bars == [
+			["2021-03-15T13:30:00Z", 10.0, 11.0],
+			["2021-03-15T13:31:00Z", 11.0, 12.0],
+			["2021-03-15T13:32:00Z", 11.0, 12.0],
+			["2021-03-15T13:33:00Z", 12.0, null]
+		]
+	}
+
+	def "Notifies listeners without holding the lock of the contract"() {
+		given:
+		def abcd = Contract.stock("ABCD")
+		def aggregator = new BarAggregator()
+		def collector = new Collector()
+		def otherThreadFlushed = null
+		def listener = { Contract contract, BarSpec spec, OHLC bar, MarketData data ->
+			if (otherThreadFlushed == null) {
+				def thread = Thread.start { aggregator.flush(abcd) }
+				thread.join(5000)
+				otherThreadFlushed = !thread.isAlive()
+			}
+		} as BarListener
+		aggregator.subscribe(abcd, BarSpec.ticks(2), listener)
+		aggregator.subscribe(abcd, BarSpec.time(1000, false), collector)
+
+		when:
+		aggregator.tick(abcd, trade(100, 10.0, 100))
+		aggregator.tick(abcd, trade(200, 10.5, 100))
+
+		then:
+		otherThreadFlushed
+		collector.bars == [["ABCD", "TIME", 0, 10.0, 10.5, 10.0, 10.5, 200]]
+	}
+}
@@ -0,0 +1,70 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+
+import com.jgoetsch.tradeframework.marketdata.BinaryTickMarketDataFeed
+import com.jgoetsch.tradeframework.marketdata.BinaryTickRecorder
+import com.jgoetsch.tradeframework.marketdata.FixedPointMarketData
+import com.jgoetsch.tradeframework.marketdata.TickFileConverter
+
+class BinaryTickFormatSpec extends Specification {
+
+	def "Replays recorded ticks across blocks"() {
+		given:
+		def out = new ByteArrayOutputStream()
+		def recorder = new BinaryTickRecorder(out, 4, 3)
+		def ticks = (0..9).collect {
+			def mkd = new FixedPointMarketData(10.00 + it * 0.01, 10.02 + it * 0.01, 10.01 + it * 0.01)
+			mkd.setLastSize(100 + it)
+			mkd.setBidSize(it)
+			mkd.setTimestampMillis(1500000000000L + it * 250)
+			mkd
+		}
+		def missingAsk = new FixedPointMarketData()
+		missingAsk.setLast(12.5d)
+		missingAsk.setTimestampMillis(1500000010000L)
+
+		when:
+		ticks.each { recorder.record(it) }
+		recorder.record(ticks[9])
+		recorder.record(missingAsk)
+		recorder.close()
+		def feed = new BinaryTickMarketDataFeed(ByteBuffer.wrap(out.toByteArray()))
+		def replayed = []
+		def tick
+		while ((tick = feed.nextTick()) != null)
+			replayed << tick
+
+		then:
+		replayed.size() == 11
+		(0..9).every {
+			replayed[it].lastTicks == ticks[it].lastTicks && replayed[it].bidTicks == ticks[it].bidTicks &&
+				replayed[it].askTicks == ticks[it].askTicks && replayed[it].lastSize == ticks[it].lastSize &&
+				replayed[it].bidSize == ticks[it].bidSize && replayed[it].timestampMillis == ticks[it].timestampMillis
+		}
+		replayed[10].last == 12.5
+		replayed[10].ask == null
+		replayed[10].bidSize == null
+		replayed[10].lastTimestampMillis == 1500000010000L
+	}
+
+	def "Converts text tick files"() {
+		given:
+		def text = "1500000000000\t10.00\t100\t9.99\t5\t10.01\t7\n1500000001000\t10.01\t200\t10.00\t6\t10.02\t8\n"
+		def out = new ByteArrayOutputStream()
+
+		when:
+		def count = TickFileConverter.convert(new ByteArrayInputStream(text.bytes), out, null, 0.01)
+		def feed = new BinaryTickMarketDataFeed(ByteBuffer.wrap(out.toByteArray()))
+		def first = feed.nextTick()
+		def second = feed.nextTick()
+
+		then:
+		count == 2
+		first.last == 10 && first.bid == 9.99 && first.askSize == 7
+		second.last == 10.01 && second.lastSize == 200 && second.timestampMillis == 1500000001000L
+		feed.nextTick() == null
+	}
+}
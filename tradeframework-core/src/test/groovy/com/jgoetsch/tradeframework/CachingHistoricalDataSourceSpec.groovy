@@ -0,0 +1,181 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.jgoetsch.tradeframework.data.CachingHistoricalDataSource
+import com.jgoetsch.tradeframework.data.HistoricalDataSource
+
+class CachingHistoricalDataSourceSpec extends Specification {
+
+	Path dir
+
+	def setup() {
+		dir = Files.createTempDirectory("caching-historical")
+	}
+
+	def cleanup() {
+		dir.toFile().deleteDir()
+	}
+
+	static class MinuteBarSource implements HistoricalDataSource {
+		final AtomicInteger requests = new AtomicInteger()
+		final List<List> requested = []
+		CountDownLatch release
+
+		OHLC[] getHistoricalData(Contract contract, Date endDate, int numPeriods, int periodUnit) {
+			requests.incrementAndGet()
+			requested << [endDate.time, numPeriods]
+			release?.await()
+			(numPeriods..1).collect { n ->
+				def bar = new SimpleOHLC()
+				bar.date = new Date(endDate.time - 60000L * n)
+				bar.open = bar.high = bar.low = bar.close = bar.date.time / 60000
+				bar.volume = 100
+				bar
+			} as OHLC[]
+		}
+
+		void close() {
+		}
+	}
+
+	def "Caches intraday bars of each contract and period in one binary file per day"() {
+		given:
+		def source = new MinuteBarSource()
+		def cache = new CachingHistoricalDataSource(source, dir.toString())
+		def contract = Contract.stock("ABCD")
+
+		when:
+		def first = cache.getHistoricalData(contract, new Date(600000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+		def again = cache.getHistoricalSeries(contract, new Date(600000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+		cache.getHistoricalData(contract, new Date(900000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requests.get() == 2
+		first*.close == [5.0, 6.0, 7.0, 8.0, 9.0]
+		again.toArray()*.close == first*.close
+		Files.list(dir).count() == 1
+		Files.list(dir.resolve("STOCK_ABCD_4")).collect { it.fileName.toString() } == ["19700101.bars"]
+
+		when:
+		def reopened = new CachingHistoricalDataSource(source, dir.toString())
+		def fromDisk = reopened.getHistoricalData(contract, new Date(900000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requests.get() == 2
+		fromDisk*.close == [10.0, 11.0, 12.0, 13.0, 14.0]
+		fromDisk*.date == (10..14).collect { new Date(it * 60000L) }
+	}
+
+	def "Serves sub-ranges from cached coverage and retrieves only missing bars"() {
+		given:
+		def source = new MinuteBarSource()
+		def cache = new CachingHistoricalDataSource(source, dir.toString())
+		def contract = Contract.stock("ABCD")
+
+		when:
+		cache.getHistoricalData(contract, new Date(1200000), 10, HistoricalDataSource.PERIOD_1_MINUTE)
+		def inside = cache.getHistoricalData(contract, new Date(900000), 3, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requested == [[1200000L, 10]]
+		inside*.close == [12.0, 13.0, 14.0]
+
+		when:
+		def shifted = cache.getHistoricalData(contract, new Date(1500000), 10, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requested == [[1200000L, 10], [1500000L, 5]]
+		shifted*.close == (15..24).collect { it as double }
+
+		when:
+		def spanning = cache.getHistoricalData(contract, new Date(1800000), 30, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requested == [[1200000L, 10], [1500000L, 5], [600000L, 10], [1800000L, 5]]
+		spanning*.close == (0..29).collect { it as double }
+
+		when:
+		def reopened = new CachingHistoricalDataSource(source, dir.toString())
+		def fromDisk = reopened.getHistoricalData(contract, new Date(1740000), 7, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requests.get() == 4
+		fromDisk*.close == (22..28).collect { it as double }
+	}
+
+	def "Only rewrites the daily files that retrieved bars fall in"() {
+		given:
+		def day = 24 * 60 * 60000L
+		def source = new MinuteBarSource()
+		def cache = new CachingHistoricalDataSource(source, dir.toString())
+		def contract = Contract.stock("ABCD")
+		def fileKey = { name -> Files.readAttributes(dir.resolve("STOCK_ABCD_4/" + name), BasicFileAttributes).fileKey() }
+
+		when:
+		def spanning = cache.getHistoricalData(contract, new Date(day + 300000), 10, HistoricalDataSource.PERIOD_1_MINUTE)
+		def firstDayKey = fileKey("19700101.bars")
+		def secondDayKey = fileKey("19700102.bars")
+		cache.getHistoricalData(contract, new Date(day + 600000), 10, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requested == [[day + 300000, 10], [day + 600000, 5]]
+		spanning*.date == (-5..4).collect { new Date(day + it * 60000L) }
+		fileKey("19700101.bars") == firstDayKey
+		fileKey("19700102.bars") != secondDayKey
+
+		when:
+		def reopened = new CachingHistoricalDataSource(source, dir.toString())
+		def fromDisk = reopened.getHistoricalData(contract, new Date(day + 600000), 15, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requests.get() == 2
+		fromDisk*.date == (-5..9).collect { new Date(day + it * 60000L) }
+	}
+
+	def "Loads concurrent identical requests once"() {
+		given:
+		def source = new MinuteBarSource(release: new CountDownLatch(1))
+		def cache = new CachingHistoricalDataSource(source, dir.toString())
+		def executor = Executors.newFixedThreadPool(4)
+
+		when:
+		def futures = (1..4).collect {
+			executor.submit({ cache.getHistoricalData(Contract.stock("ABCD"), new Date(600000), 5, HistoricalDataSource.PERIOD_1_MINUTE) } as java.util.concurrent.Callable)
+		}
+		Thread.sleep(200)
+		source.release.countDown()
+		def results = futures*.get()
+
+		then:
+		source.requests.get() == 1
+		results.every { it*.close == [5.0, 6.0, 7.0, 8.0, 9.0] }
+
+		cleanup:
+		executor.shutdown()
+	}
+
+	def "Evicts least recently used files from memory"() {
+		given:
+		def source = new MinuteBarSource()
+		def cache = new CachingHistoricalDataSource(source, dir.toString())
+		cache.maxCachedBars = 5
+
+		when:
+		cache.getHistoricalData(Contract.stock("ABCD"), new Date(600000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+		cache.getHistoricalData(Contract.stock("WXYZ"), new Date(600000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+		Files.delete(dir.resolve("STOCK_ABCD_4/19700101.bars"))
+		cache.getHistoricalData(Contract.stock("ABCD"), new Date(600000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+		cache.getHistoricalData(Contract.stock("ABCD"), new Date(600000), 5, HistoricalDataSource.PERIOD_1_MINUTE)
+
+		then:
+		source.requests.get() == 3
+	}
+}
@@ -0,0 +1,64 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+import com.jgoetsch.tradeframework.marketdata.ConflatingMarketDataSource
+import com.jgoetsch.tradeframework.marketdata.FixedPointMarketData
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.MarketDataField
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener
+import com.jgoetsch.tradeframework.marketdata.MarketDataSource
+
+class ConflatingMarketDataSourceSpec extends Specification {
+
+	MarketDataSource source = Mock(MarketDataSource)
+	ConflatingMarketDataSource conflating = new ConflatingMarketDataSource(source)
+
+	def "Conflates updates for a slow listener to the latest value"() {
+		given:
+		def contract = Contract.stock("ABCD")
+		def release = new CountDownLatch(1)
+		def received = new LinkedBlockingQueue()
+		def listener = new MarketDataListener() {
+			void tick(Contract c, MarketData data) {
+			}
+			void tick(Contract c, MarketData data, int changedFields) {
+				received.put([data.bid, changedFields])
+				release.await()
+			}
+		}
+		MarketDataListener consumer
+
+		when:
+		conflating.subscribeMarketData(contract, listener)
+
+		then:
+		1 * source.subscribeMarketData(contract, _, MarketDataField.ALL) >> { args -> consumer = args[1] }
+
+		when:
+		consumer.tick(contract, new FixedPointMarketData(1.00d, 1.01d, 1.00d), MarketDataField.BID)
+		def first = received.poll(5, TimeUnit.SECONDS)
+		consumer.tick(contract, new FixedPointMarketData(1.01d, 1.02d, 1.00d), MarketDataField.BID)
+		consumer.tick(contract, new FixedPointMarketData(1.02d, 1.02d, 1.00d), MarketDataField.ASK)
+		consumer.tick(contract, new FixedPointMarketData(1.03d, 1.02d, 1.00d), MarketDataField.BID_SIZE)
+		release.countDown()
+		def second = received.poll(5, TimeUnit.SECONDS)
+
+		then:
+		first == [1.00, MarketDataField.BID]
+		second == [1.03, MarketDataField.BID | MarketDataField.ASK | MarketDataField.BID_SIZE]
+		conflating.getConflatedCount(listener) == 2
+		conflating.getDeliveredCount(listener) == 2
+		received.isEmpty()
+
+		when:
+		conflating.cancelMarketData(contract, listener)
+
+		then:
+		1 * source.cancelMarketData(contract, consumer)
+	}
+}
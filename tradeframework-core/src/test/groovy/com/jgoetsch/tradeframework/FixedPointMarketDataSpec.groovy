@@ -0,0 +1,95 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Instant
+
+import com.jgoetsch.tradeframework.marketdata.FixedPointMarketData
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.SimpleMarketData
+
+class FixedPointMarketDataSpec extends Specification {
+
+	@Unroll
+	def "price #price is stored as #ticks ticks"() {
+		when:
+		def mkd = new FixedPointMarketData()
+		mkd.setLast(price as double)
+
+		then:
+		mkd.lastTicks == ticks
+		mkd.lastAsDouble == (price as double)
+		mkd.last == decimal
+		mkd.last.toPlainString() == text
+		mkd.last.toString() == text
+
+		where:
+		price     | ticks           | decimal | text
+		150.25    | 15025000000L    | 150.25  | "150.25"
+		100.0     | 10000000000L    | 100     | "100"
+		0.0001    | 10000L          | 0.0001  | "0.0001"
+		1.1       | 110000000L      | 1.1     | "1.1"
+		-2.5      | -250000000L     | -2.5    | "-2.5"
+	}
+
+	def "absent fields are null through compatibility getters"() {
+		when:
+		def mkd = new FixedPointMarketData()
+
+		then:
+		mkd.bid == null
+		mkd.bidTicks == MarketData.NO_VALUE
+		Double.isNaN(mkd.bidAsDouble)
+		mkd.bidSize == null
+		mkd.bidSizeAsInt == 0
+		mkd.volume == null
+		mkd.timestamp == null
+		mkd.timestampMillis == MarketData.NO_VALUE
+	}
+
+	def "compatibility view is cached until field is updated"() {
+		given:
+		def mkd = new FixedPointMarketData()
+		mkd.setBid(10.5d)
+
+		when:
+		def first = mkd.bid
+
+		then:
+		mkd.bid.is(first)
+
+		when:
+		mkd.setBid(10.75d)
+
+		then:
+		mkd.bid == 10.75
+	}
+
+	def "copies from other MarketData implementations"() {
+		given:
+		def source = new SimpleMarketData(10.01, 100, 10.02, 200, 10.015, null)
+		source.setTimestamp(Instant.ofEpochMilli(1600000000000L))
+
+		when:
+		def mkd = new FixedPointMarketData(source)
+
+		then:
+		mkd.bidTicks == 1001000000L
+		mkd.askSize == 200
+		mkd.last == 10.015
+		mkd.lastSize == null
+		mkd.timestamp == source.timestamp
+		new FixedPointMarketData(mkd).lastTicks == mkd.lastTicks
+	}
+
+	def "default primitive accessors convert from BigDecimal"() {
+		given:
+		MarketData source = new SimpleMarketData(1.23, 1.24, null)
+
+		expect:
+		source.bidTicks == 123000000L
+		source.askAsDouble == 1.24d
+		source.lastTicks == MarketData.NO_VALUE
+	}
+}
@@ -0,0 +1,116 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentLinkedQueue
+
+import com.jgoetsch.tradeframework.data.HistoricalDataBackfill
+import com.jgoetsch.tradeframework.data.HistoricalDataSource
+
+class HistoricalDataBackfillSpec extends Specification {
+
+	Path dir
+
+	def setup() {
+		dir = Files.createTempDirectory("historical-backfill")
+	}
+
+	def cleanup() {
+		dir.toFile().deleteDir()
+	}
+
+	static class FakeSource implements HistoricalDataSource {
+		final Queue<String> requested = new ConcurrentLinkedQueue<String>()
+		String failSymbol
+
+		OHLC[] getHistoricalData(Contract contract, Date endDate, int numPeriods, int periodUnit) {
+			requested << contract.symbol + ":" + endDate.time
+			if (contract.symbol == failSymbol)
+				throw new IOException("unavailable")
+			(numPeriods..1).collect { n ->
+				def bar = new SimpleOHLC()
+				bar.date = new Date(endDate.time - 60000L * n)
+				bar.open = bar.high = bar.low = bar.close = 10
+				bar
+			} as OHLC[]
+		}
+
+		void close() {
+		}
+	}
+
+	HistoricalDataBackfill backfill(HistoricalDataSource source) {
+		def backfill = new HistoricalDataBackfill()
+		backfill.historicalDataSource = source
+		backfill.symbols = ["ABCD", "EFGH", "WXYZ"]
+		backfill.startDate = new Date(0)
+		backfill.endDate = new Date(60000L * 25)
+		backfill.periodUnit = HistoricalDataSource.PERIOD_1_MINUTE
+		backfill.periodsPerRequest = 10
+		backfill.threads = 3
+		backfill.cacheLocation = dir.toString()
+		backfill
+	}
+
+	def "Backfills each contract in units and resumes from the checkpoint"() {
+		given:
+		def source = new FakeSource(failSymbol: "EFGH")
+
+		when:
+		def first = backfill(source)
+		first.run()
+
+		then:
+		first.totalUnits == 9
+		first.completedUnits == 6
+		first.failedUnits == 3
+		first.bars == 60
+		source.requested.size() == 9
+		source.requested.findAll { it.startsWith("ABCD") } as Set == ["ABCD:600000", "ABCD:1200000", "ABCD:1800000"] as Set
+		Files.isDirectory(dir.resolve("STOCK_ABCD_4"))
+		Files.readAllLines(dir.resolve("backfill.checkpoint")).size() == 6
+
+		when:
+		source.requested.clear()
+		source.failSymbol = null
+		def resumed = backfill(source)
+		resumed.run()
+
+		then:
+		resumed.skippedUnits == 6
+		resumed.completedUnits == 3
+		resumed.failedUnits == 0
+		source.requested as Set == ["EFGH:600000", "EFGH:1200000", "EFGH:1800000"] as Set
+		Files.readAllLines(dir.resolve("backfill.checkpoint")).size() == 9
+	}
+
+	def "Interleaves contracts in time order"() {
+		given:
+		def source = new FakeSource()
+		def job = backfill(source)
+		job.threads = 1
+
+		when:
+		job.run()
+
+		then:
+		source.requested as List == ["ABCD:600000", "EFGH:600000", "WXYZ:600000", "ABCD:1200000", "EFGH:1200000", "WXYZ:1200000",
+				"ABCD:1800000", "EFGH:1800000", "WXYZ:1800000"]
+	}
+
+	def "Rejects daily bars which are not cached by time range"() {
+		given:
+		def source = new FakeSource()
+		def backfill = backfill(source)
+		backfill.periodUnit = HistoricalDataSource.PERIOD_1_DAY
+
+		when:
+		backfill.run()
+
+		then:
+		thrown(IllegalArgumentException)
+		source.requested.isEmpty()
+	}
+}
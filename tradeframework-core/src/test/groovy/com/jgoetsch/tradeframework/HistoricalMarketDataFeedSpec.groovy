@@ -0,0 +1,66 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.time.Instant
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+
+import com.jgoetsch.tradeframework.data.HistoricalDataSource
+import com.jgoetsch.tradeframework.marketdata.HistoricalMarketDataFeed
+
+class HistoricalMarketDataFeedSpec extends Specification {
+
+	static class MinuteBarSource implements HistoricalDataSource {
+		final Queue<Long> requested = new ConcurrentLinkedQueue<Long>()
+		final Queue<String> threads = new ConcurrentLinkedQueue<String>()
+		long lastEndTime
+
+		OHLC[] getHistoricalData(Contract contract, Date endDate, int numPeriods, int periodUnit) {
+			requested << endDate.time
+			threads << Thread.currentThread().name
+			if (endDate.time > lastEndTime)
+				return null
+			(numPeriods..1).collect { n ->
+				def bar = new SimpleOHLC()
+				bar.date = new Date(endDate.time - 60000L * n)
+				bar.open = bar.high = bar.low = bar.close = bar.date.time / 60000
+				bar
+			} as OHLC[]
+		}
+
+		void close() {
+		}
+	}
+
+	def "Replays the same ticks with windows requested ahead in the background"() {
+		given:
+		def contract = Contract.stock("ABCD")
+		contract.currency = "EUR"
+		def source = new MinuteBarSource(lastEndTime: 2100000)
+		def executor = Executors.newSingleThreadExecutor({ r -> new Thread(r, "prefetch") } as java.util.concurrent.ThreadFactory)
+		def feed = new HistoricalMarketDataFeed(contract, source, HistoricalDataSource.PERIOD_1_MINUTE, 5)
+		feed.prefetchWindows = prefetch
+		feed.prefetchExecutor = executor
+
+		when:
+		feed.advanceTo(Instant.ofEpochMilli(600000))
+		def ticks = [feed.lastTick]
+		def tick
+		while ((tick = feed.nextTick()) != null)
+			ticks << tick
+
+		then:
+		ticks*.last == (10..34).collect { it as double }
+		(source.requested as List).take(6) == [900000L, 1200000L, 1500000L, 1800000L, 2100000L, 2400000L]
+		source.requested.size() <= 6 + prefetch
+		(source.threads as List).every { it == "prefetch" } == (prefetch > 0)
+
+		cleanup:
+		feed.close()
+		executor.shutdown()
+
+		where:
+		prefetch << [0, 2]
+	}
+}
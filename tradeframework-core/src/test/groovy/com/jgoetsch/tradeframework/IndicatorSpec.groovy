@@ -0,0 +1,111 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import com.jgoetsch.tradeframework.stats.ATR
+import com.jgoetsch.tradeframework.stats.BollingerBands
+import com.jgoetsch.tradeframework.stats.EMA
+import com.jgoetsch.tradeframework.stats.High
+import com.jgoetsch.tradeframework.stats.Low
+import com.jgoetsch.tradeframework.stats.RSI
+import com.jgoetsch.tradeframework.stats.RollingMax
+import com.jgoetsch.tradeframework.stats.RollingMin
+import com.jgoetsch.tradeframework.stats.RollingStdev
+import com.jgoetsch.tradeframework.stats.SMA
+import com.jgoetsch.tradeframework.stats.VWAP
+import com.jgoetsch.tradeframework.stats.WMA
+
+class IndicatorSpec extends Specification {
+
+	static final int PERIOD = 5
+	static final List<Double> samples = new Random(42).with { r -> (1..50).collect { r.nextGaussian() * 3 - 1 } }
+
+	static boolean close(double a, double b) {
+		Math.abs(a - b) < 1e-9
+	}
+
+	def "Rolling window indicators match brute force calculation"() {
+		given:
+		def sma = new SMA(PERIOD)
+		def wma = new WMA(PERIOD)
+		def max = new RollingMax(PERIOD)
+		def min = new RollingMin(PERIOD)
+		def stdev = new RollingStdev(PERIOD)
+		def bands = new BollingerBands(PERIOD, 2)
+		def vwap = new VWAP(PERIOD)
+
+		expect:
+		samples.eachWithIndex { x, i ->
+			[sma, wma, max, min, stdev, bands].each { it.addSample(x) }
+			vwap.addSample(x, i % 3 + 1)
+			def window = samples.subList(Math.max(0, i - PERIOD + 1), i + 1)
+			def volumes = (Math.max(0, i - PERIOD + 1)..i).collect { it % 3 + 1 }
+			assert [wma, max, min, stdev, bands].every { it.hasValue() == (i >= PERIOD - 1) }
+			assert close(sma.value, window.sum() / window.size())
+			assert close(vwap.value, (0..<window.size()).sum { window[it] * volumes[it] } / volumes.sum())
+			if (i >= PERIOD - 1) {
+				double mean = window.sum() / PERIOD
+				double sd = Math.sqrt(window.sum { (it - mean) ** 2 } / PERIOD)
+				assert close(wma.value, (0..<PERIOD).sum { window[it] * (it + 1) } / 15)
+				assert max.value == window.max()
+				assert min.value == window.min()
+				assert close(stdev.value, sd)
+				assert close(bands.upper, mean + 2 * sd) && close(bands.lower, mean - 2 * sd)
+			}
+		}
+	}
+
+	def "Exponential and Wilder smoothed indicators"() {
+		given:
+		def ema = new EMA(3)
+		def rsi = new RSI(3)
+		def atr = new ATR(2)
+
+		when:
+		[1, 2, 3].each { ema.addSample(it) }
+		then:
+		ema.value == 2
+		when:
+		ema.addSample(6)
+		then:
+		ema.value == 4
+
+		when:
+		[10, 11, 10, 12].each { rsi.addSample(it) }
+		then:
+		close(rsi.value, 75)
+		when:
+		rsi.addSample(12)
+		then:
+		close(rsi.value, 75)
+
+		when:
+		atr.addSample(11, 9, 10)
+		then:
+		!atr.hasValue()
+		when:
+		atr.addSample(14, 12, 13)
+		atr.addSample(13, 12, 12)
+		then:
+		close(atr.value, ((2 + 4) / 2 * 1 + 1) / 2)
+	}
+
+	def "Basic statistics have a value once sampled even if negative"() {
+		given:
+		def high = new High()
+		def low = new Low()
+
+		expect:
+		!high.hasValue()
+		when:
+		[-3, -1, -2].each { high.addSample(it); low.addSample(it) }
+		then:
+		high.hasValue()
+		high.value == -1
+		low.value == -3
+		when:
+		high.clear()
+		then:
+		!high.hasValue()
+	}
+}
@@ -0,0 +1,71 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+class OHLCSeriesSpec extends Specification {
+
+	static OHLC[] bars() {
+		(0..<6).collect { i ->
+			def bar = new SimpleOHLC()
+			bar.date = new Date(60000L * i)
+			bar.open = 10 + i
+			bar.high = 11 + i * 2
+			bar.low = 9 - i
+			bar.close = 10.5 + i
+			bar.volume = 100 * (i + 1)
+			bar
+		} as OHLC[]
+	}
+
+	def "Converts to and from OHLC arrays"() {
+		given:
+		def series = OHLCSeries.of(bars())
+
+		expect:
+		series.size() == 6
+		series.asList().collect { it.toString() } == bars().collect { it.toString() }
+		series.toArray()*.volume == bars()*.volume
+		series.get(2).date == new Date(120000)
+		series.indexOf(90000) == 2
+		series.indexOf(1000000) == 6
+		series.subSeries(1, 3).toArray()*.open == [11.0, 12.0]
+	}
+
+	def "Aggregates as loops over the arrays"() {
+		given:
+		def series = OHLCSeries.of(bars())
+
+		expect:
+		series.averageRange() == OHLCUtils.averageRange(bars())
+		series.averageMidpoint() == bars().sum { (it.high + it.low) / 2 } / 6
+		OHLCUtils.aggregate(bars()).with { [open, high, low, close] } == series.aggregate().with { [open, high, low, close] }
+		series.aggregate().high == 21
+		series.aggregate().low == 4
+		series.aggregate().volume == 2100
+	}
+
+	def "Resamples into longer bars"() {
+		when:
+		def resampled = OHLCSeries.of(bars()).resample(180000)
+
+		then:
+		resampled.size() == 2
+		resampled.toArray().collect { [it.date.time, it.open, it.high, it.low, it.close, it.volume] } == [
+			[0, 10.0, 15.0, 7.0, 12.5, 600],
+			[180000, 13.0, 21.0, 4.0, 15.5, 1500]
+		]
+	}
+
+	def "Views serialize as copies of the bar"() {
+		given:
+		def bytes = new ByteArrayOutputStream()
+		new ObjectOutputStream(bytes).writeObject(OHLCSeries.of(bars()).toArray())
+
+		when:
+		def read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject()
+
+		then:
+		read.every { it instanceof SimpleOHLC }
+		read*.close == bars()*.close
+	}
+}
@@ -0,0 +1,92 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.time.Instant
+
+import com.jgoetsch.tradeframework.backtest.BacktestShard
+import com.jgoetsch.tradeframework.backtest.ParallelBacktest
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener
+import com.jgoetsch.tradeframework.marketdata.RecordedMarketDataFeed
+import com.jgoetsch.tradeframework.order.commissions.FlatCommissions
+
+class ParallelBacktestSpec extends Specification {
+
+	static class RoundTripStrategy implements MarketDataListener {
+		final Contract contract
+		final BacktestShard shard
+		int ticks
+
+		RoundTripStrategy(Contract contract, BacktestShard shard) {
+			this.contract = contract
+			this.shard = shard
+		}
+
+		void tick(Contract c, MarketData data) {
+			ticks++
+			if (ticks == 1)
+				shard.tradingService.placeOrder(Order.marketOrder(contract, 100))
+			else if (ticks == 3)
+				shard.tradingService.placeOrder(Order.marketOrder(contract, -100))
+		}
+	}
+
+	static class BalanceStrategy implements MarketDataListener {
+		static final List<BigDecimal> balances = [].asSynchronized()
+
+		BalanceStrategy(BacktestShard shard) {
+			balances << shard.account.getNetLiquidationValue()
+		}
+
+		void tick(Contract c, MarketData data) {
+		}
+	}
+
+	ParallelBacktest backtest(int shards) {
+		def backtest = new ParallelBacktest()
+		backtest.contracts = ["AAA", "BBB", "CCC", "DDD", "EEE"].collect { Contract.stock(it) }
+		backtest.feedFactory = { Contract c ->
+			def base = c.symbol.charAt(0) - ('A' as char) + 10
+			def text = (0..4).collect { "${1000 * (it + 1)} ${base + it} 100 ${base + it - 0.01} 10 ${base + it + 0.01} 10" }.join("\n")
+			new RecordedMarketDataFeed(new ByteArrayInputStream(text.bytes))
+		}
+		backtest.strategyFactory = { c, shard -> new RoundTripStrategy(c, shard) }
+		backtest.startTimestamp = Instant.ofEpochMilli(0)
+		backtest.endTimestamp = Instant.ofEpochMilli(10000)
+		backtest.commissions = new FlatCommissions(BigDecimal.ONE)
+		backtest.equitySampleInterval = 2000
+		backtest.shardCount = shards
+		backtest
+	}
+
+	def "Merges shard results independently of the number of shards"() {
+		when:
+		def single = backtest(1).run()
+		def sharded = backtest(3).run()
+
+		then:
+		sharded.executions*.toString() == single.executions*.toString()
+		sharded.closedPositions*.contract == single.closedPositions*.contract
+		sharded.equity == single.equity
+		sharded.closedPositions.size() == 5
+		sharded.executions*.contract.symbol.take(5) == ["AAA", "BBB", "CCC", "DDD", "EEE"]
+		sharded.finalEquity == 100000 + 5 * (198 - 2)
+		sharded.equity.keySet()*.toEpochMilli() as List == [2000, 4000, 6000, 8000, 10000]
+	}
+
+	def "Divides the initial balance among shards by number of contracts"() {
+		given:
+		BalanceStrategy.balances.clear()
+		def backtest = backtest(3)
+		backtest.initialBalance = 100000
+		backtest.strategyFactory = { c, shard -> new BalanceStrategy(shard) }
+
+		when:
+		def result = backtest.run()
+
+		then:
+		BalanceStrategy.balances.toSorted() == [20000, 40000, 40000, 40000, 40000]
+		result.finalEquity == 100000
+	}
+}
@@ -0,0 +1,107 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.time.Instant
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.jgoetsch.tradeframework.backtest.BacktestShard
+import com.jgoetsch.tradeframework.backtest.ParallelBacktest
+import com.jgoetsch.tradeframework.backtest.ParameterSweep
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener
+import com.jgoetsch.tradeframework.marketdata.RecordedMarketDataFeed
+import com.jgoetsch.tradeframework.marketdata.SimpleMarketData
+import com.jgoetsch.tradeframework.marketdata.TickArrayMarketDataFeed
+import com.jgoetsch.tradeframework.order.commissions.FlatCommissions
+
+class ParameterSweepSpec extends Specification {
+
+	static class ExitAfterStrategy implements MarketDataListener {
+		final Contract contract
+		final BacktestShard shard
+		final int exitTick
+		int ticks
+
+		ExitAfterStrategy(int exitTick, Contract contract, BacktestShard shard) {
+			this.exitTick = exitTick
+			this.contract = contract
+			this.shard = shard
+		}
+
+		void tick(Contract c, MarketData data) {
+			ticks++
+			if (ticks == 1)
+				shard.tradingService.placeOrder(Order.marketOrder(contract, 100))
+			else if (ticks == exitTick)
+				shard.tradingService.placeOrder(Order.marketOrder(contract, -100))
+		}
+	}
+
+	static contracts = ["AAA", "BBB", "CCC"].collect { Contract.stock(it) }
+
+	static RecordedMarketDataFeed feed(Contract c) {
+		def base = c.symbol.charAt(0) - ('A' as char) + 10
+		def text = (0..5).collect { "${1000 * (it + 1)} ${base + it * (it % 2 ? -1 : 1)} 100 ${base + it * (it % 2 ? -1 : 1) - 0.01} 10 ${base + it * (it % 2 ? -1 : 1) + 0.01} 10" }.join("\n")
+		new RecordedMarketDataFeed(new ByteArrayInputStream(text.bytes))
+	}
+
+	def "Runs each parameter set on market data decoded once"() {
+		given:
+		def feedCount = new AtomicInteger()
+		def sweep = new ParameterSweep<Integer>()
+		sweep.contracts = contracts
+		sweep.feedFactory = { Contract c -> feedCount.incrementAndGet(); feed(c) }
+		sweep.strategyFactory = { int exitTick, Contract c, BacktestShard shard -> new ExitAfterStrategy(exitTick, c, shard) }
+		sweep.parameterSets = [2, 3, 4, 5]
+		sweep.startTimestamp = Instant.ofEpochMilli(0)
+		sweep.endTimestamp = Instant.ofEpochMilli(10000)
+		sweep.commissions = new FlatCommissions(BigDecimal.ONE)
+		sweep.batchCount = 3
+
+		when:
+		def result = sweep.run()
+
+		then:
+		feedCount.get() == 3
+		result.results.keySet() as List == [2, 3, 4, 5]
+		[2, 3, 4, 5].every { exitTick ->
+			def single = new ParallelBacktest(contracts: contracts, feedFactory: { feed(it) },
+					strategyFactory: { c, shard -> new ExitAfterStrategy(exitTick, c, shard) },
+					startTimestamp: Instant.ofEpochMilli(0), endTimestamp: Instant.ofEpochMilli(10000),
+					commissions: new FlatCommissions(BigDecimal.ONE), shardCount: 1).run()
+			result.getResult(exitTick).executions*.toString() == single.executions*.toString() &&
+					result.getResult(exitTick).finalEquity == single.finalEquity
+		}
+		result.getStatistics(2).transactionCount == 3
+		result.getResult(3).finalEquity != result.getResult(4).finalEquity
+		result.toString().readLines().size() == 5
+	}
+
+	def "Rejects duplicate parameter sets"() {
+		given:
+		def sweep = new ParameterSweep<Integer>()
+		sweep.contracts = contracts
+		sweep.feedFactory = { Contract c -> feed(c) }
+		sweep.strategyFactory = { int exitTick, Contract c, BacktestShard shard -> new ExitAfterStrategy(exitTick, c, shard) }
+		sweep.parameterSets = [2, 3, 2]
+		sweep.startTimestamp = Instant.ofEpochMilli(0)
+
+		when:
+		sweep.run()
+
+		then:
+		thrown(IllegalArgumentException)
+	}
+
+	def "Decodes ticks without a timestamp"() {
+		given:
+		def untimed = new SimpleMarketData(10.0, 10.1, 10.05)
+		def timed = new SimpleMarketData(10.0, 10.1, 10.05)
+		timed.timestamp = Instant.ofEpochMilli(20000)
+		def feed = new TickArrayMarketDataFeed([untimed, timed] as MarketData[])
+
+		expect:
+		TickArrayMarketDataFeed.decode(feed, Instant.ofEpochMilli(10000)) == [untimed] as MarketData[]
+	}
+}
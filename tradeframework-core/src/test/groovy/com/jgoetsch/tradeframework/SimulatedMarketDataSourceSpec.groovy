@@ -0,0 +1,78 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.time.Instant
+
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener
+import com.jgoetsch.tradeframework.marketdata.RecordedMarketDataFeed
+import com.jgoetsch.tradeframework.marketdata.SimulatedMarketDataSource
+
+class SimulatedMarketDataSourceSpec extends Specification {
+
+	static RecordedMarketDataFeed feed(String text) {
+		new RecordedMarketDataFeed(new ByteArrayInputStream(text.bytes))
+	}
+
+	def "Merges ticks from multiple feeds in timestamp order"() {
+		given:
+		def abcd = Contract.stock("ABCD")
+		def wxyz = Contract.stock("WXYZ")
+		def source = new SimulatedMarketDataSource([
+				(abcd): feed("1000 10.00 1\n2000 10.01 2\n2000 10.02 3\n4000 10.03 4\n"),
+				(wxyz): feed("1500 20.00 1\n2000 20.01 2\n3000 20.02 3\n")
+			], Instant.ofEpochMilli(1000))
+		def received = []
+		def listener = new MarketDataListener() {
+			void tick(Contract contract, MarketData data) {
+				received << contract.symbol + ":" + data.lastTimestampMillis + ":" + data.lastSize
+			}
+		}
+		source.subscribeMarketData(abcd, listener)
+		source.subscribeMarketData(wxyz, listener)
+
+		when:
+		received.clear()
+		def more = source.receiveDataAndWait(2000)
+
+		then:
+		more
+		received == ["WXYZ:1500:1", "ABCD:2000:2", "ABCD:2000:3", "WXYZ:2000:2", "WXYZ:3000:3"]
+
+		when:
+		received.clear()
+		source.cancelMarketData(wxyz, listener)
+		more = source.receiveDataAndWait(1000)
+
+		then:
+		more
+		received == ["ABCD:4000:4"]
+		!source.receiveDataAndWait(1000)
+	}
+
+	def "Advances directly to the next tick or scheduled task"() {
+		given:
+		def day = 86400000L
+		def abcd = Contract.stock("ABCD")
+		def source = new SimulatedMarketDataSource([(abcd): feed("${day} 10.00 1\n${day * 30} 10.01 2\n")], Instant.ofEpochMilli(0))
+		def events = []
+		source.subscribeMarketData(abcd, new MarketDataListener() {
+			void tick(Contract contract, MarketData data) {
+				events << "tick:" + source.startTimestamp.toEpochMilli()
+			}
+		})
+		source.schedule(Instant.ofEpochMilli(day * 30), { events << "task:" + source.startTimestamp.toEpochMilli() })
+		source.schedule(Instant.ofEpochMilli(day * 2), { events << "task:" + source.startTimestamp.toEpochMilli() })
+
+		expect:
+		source.nextEventTime == Instant.ofEpochMilli(day)
+		source.advanceToNextEvent()
+		source.advanceToNextEvent()
+		source.nextEventTime == Instant.ofEpochMilli(day * 30)
+		source.advanceToNextEvent()
+		!source.advanceToNextEvent()
+		source.nextEventTime == null
+		events == ["tick:${day}", "task:${day * 2}", "tick:${day * 30}", "task:${day * 30}"]*.toString()
+	}
+}
@@ -0,0 +1,57 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.MarketDataField
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener
+import com.jgoetsch.tradeframework.marketdata.MarketDataSource
+import com.jgoetsch.tradeframework.marketdata.SimpleMarketData
+import com.jgoetsch.tradeframework.order.ExecutionListener
+import com.jgoetsch.tradeframework.order.SimulatedTradingService
+
+class SimulatedTradingServiceSpec extends Specification {
+
+	static class NullSource implements MarketDataSource {
+		MarketData getDataSnapshot(Contract contract) {
+			null
+		}
+
+		CompletableFuture<MarketData> getMktDataSnapshot(Contract contract) {
+			CompletableFuture.completedFuture(null)
+		}
+
+		void subscribeMarketData(Contract contract, MarketDataListener listener) {
+		}
+
+		void cancelMarketData(Contract contract, MarketDataListener listener) {
+		}
+
+		void close() {
+		}
+	}
+
+	def "Processes limit orders only on ticks updating the quote or last price"() {
+		given:
+		def contract = Contract.stock("ABCD")
+		def service = new SimulatedTradingService(new NullSource())
+		def executions = []
+		service.subscribeExecutions({ c, e -> executions << e } as ExecutionListener)
+		service.placeOrder(Order.limitOrder(contract, 100G, 10G))
+		def marketable = new SimpleMarketData(9.9G, 10.0G, 10.0G)
+
+		when:
+		service.tick(contract, marketable, MarketDataField.BID_SIZE | MarketDataField.VOLUME)
+
+		then:
+		executions.isEmpty()
+
+		when:
+		service.tick(contract, marketable, MarketDataField.ASK)
+
+		then:
+		executions*.price == [10.0G]
+	}
+}
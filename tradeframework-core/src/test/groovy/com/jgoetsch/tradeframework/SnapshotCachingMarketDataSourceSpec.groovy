@@ -0,0 +1,220 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import com.jgoetsch.tradeframework.marketdata.FixedPointMarketData
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener
+import com.jgoetsch.tradeframework.marketdata.MarketDataSource
+import com.jgoetsch.tradeframework.marketdata.SimpleMarketData
+import com.jgoetsch.tradeframework.marketdata.SnapshotCachingMarketDataSource
+
+class SnapshotCachingMarketDataSourceSpec extends Specification {
+
+	static class FakeSource implements MarketDataSource {
+		final Map<Contract, List<CompletableFuture<MarketData>>> requests = [:].withDefault { [] }
+		final Map<Contract, List<MarketDataListener>> listeners = [:].withDefault { [] }
+		final CountDownLatch subscribing = new CountDownLatch(1)
+		CountDownLatch release
+
+		MarketData getDataSnapshot(Contract contract) {
+			throw new UnsupportedOperationException()
+		}
+
+		CompletableFuture<MarketData> getMktDataSnapshot(Contract contract) {
+			def future = new CompletableFuture<MarketData>()
+			requests[contract] << future
+			future
+		}
+
+		void subscribeMarketData(Contract contract, MarketDataListener listener) {
+			subscribing.countDown()
+			release?.await()
+			synchronized (listeners) {
+				listeners[contract] << listener
+			}
+		}
+
+		void cancelMarketData(Contract contract, MarketDataListener listener) {
+			listeners[contract].remove(listener)
+		}
+
+		void tick(Contract contract, MarketData data) {
+			listeners[contract].each { it.tick(contract, data) }
+		}
+
+		void close() {
+		}
+	}
+
+	static MarketData quote(double last) {
+		new SimpleMarketData(null, null, new BigDecimal(last))
+	}
+
+	def "Coalesces concurrent snapshot requests and caches the result"() {
+		given:
+		def abcd = Contract.stock("ABCD")
+		def source = new FakeSource()
+		def cache = new SnapshotCachingMarketDataSource(source)
+		cache.snapshotTtl = 200
+
+		when:
+		def first = cache.getMktDataSnapshot(abcd)
+		def second = cache.getMktDataSnapshot(abcd)
+
+		then:
+		source.requests[abcd].size() == 1
+		!first.done
+
+		when:
+		source.requests[abcd][0].complete(quote(1.5))
+
+		then:
+		first.get().last == 1.5
+		second.get().last == 1.5
+		cache.getMktDataSnapshot(abcd).get().last == 1.5
+		cache.getDataSnapshot(abcd).last == 1.5
+		source.requests[abcd].size() == 1
+
+		when:
+		Thread.sleep(250)
+		def expired = cache.getMktDataSnapshot(abcd)
+
+		then:
+		!expired.done
+		source.requests[abcd].size() == 2
+	}
+
+	def "Evicts least recently used snapshots"() {
+		given:
+		def source = new FakeSource()
+		def cache = new SnapshotCachingMarketDataSource(source)
+		cache.maxCachedSnapshots = 2
+		def contracts = ["A", "B", "C"].collect { Contract.stock(it) }
+
+		when:
+		contracts.each {
+			cache.getMktDataSnapshot(it)
+			source.requests[it][0].complete(quote(1))
+		}
+		cache.getMktDataSnapshot(contracts[0])
+		cache.getMktDataSnapshot(contracts[2])
+
+		then:
+		source.requests[contracts[0]].size() == 2
+		source.requests[contracts[2]].size() == 1
+	}
+
+	def "Answers snapshots from live subscriptions"() {
+		given:
+		def abcd = Contract.stock("ABCD")
+		def source = new FakeSource()
+		def cache = new SnapshotCachingMarketDataSource(source)
+		def received = []
+		def listener = new MarketDataListener() {
+			void tick(Contract contract, MarketData data) {
+				received << data.last
+			}
+		}
+
+		when:
+		cache.subscribeMarketData(abcd, listener)
+		source.tick(abcd, quote(2.5))
+		def snapshot = cache.getMktDataSnapshot(abcd)
+
+		then:
+		received == [2.5]
+		snapshot.done
+		snapshot.get().last == 2.5
+		source.requests[abcd].isEmpty()
+
+		when:
+		cache.cancelMarketData(abcd, listener)
+		def afterCancel = cache.getMktDataSnapshot(abcd)
+
+		then:
+		source.listeners[abcd].isEmpty()
+		!afterCancel.done
+		source.requests[abcd].size() == 1
+	}
+
+	def "Copies live market data only when a snapshot is requested"() {
+		given:
+		def abcd = Contract.stock("ABCD")
+		def source = new FakeSource()
+		def cache = new SnapshotCachingMarketDataSource(source)
+		cache.subscribeMarketData(abcd, { c, d -> } as MarketDataListener)
+		def reused = new FixedPointMarketData(10.0, 10.2, 10.1)
+		reused.bidSize = 300
+
+		when:
+		source.tick(abcd, reused)
+		reused.last = 11.0
+		def first = cache.getMktDataSnapshot(abcd).get()
+		def second = cache.getMktDataSnapshot(abcd).get()
+
+		then:
+		first.last == 10.1
+		first.bidSize == 300
+		first.askSize == null
+		!first.is(reused)
+		!first.is(second)
+		source.requests[abcd].isEmpty()
+	}
+
+	def "Ignores cancelling a listener that was not subscribed"() {
+		given:
+		def abcd = Contract.stock("ABCD")
+		def source = new FakeSource()
+		def cache = new SnapshotCachingMarketDataSource(source)
+		def listener = { c, d -> } as MarketDataListener
+		def other = { c, d -> } as MarketDataListener
+
+		when:
+		cache.subscribeMarketData(abcd, listener)
+		cache.cancelMarketData(abcd, other)
+		cache.cancelMarketData(abcd, other)
+		source.tick(abcd, quote(3))
+
+		then:
+		source.listeners[abcd].size() == 2
+		cache.getMktDataSnapshot(abcd).get().last == 3
+
+		when:
+		cache.cancelMarketData(abcd, listener)
+
+		then:
+		source.listeners[abcd].isEmpty()
+	}
+
+	@Timeout(10)
+	def "Answers snapshots for other contracts while a subscription is in progress"() {
+		given:
+		def source = new FakeSource(release: new CountDownLatch(1))
+		def cache = new SnapshotCachingMarketDataSource(source)
+		def subscriber = Thread.start {
+			cache.subscribeMarketData(Contract.stock("SLOW"), { c, d -> } as MarketDataListener)
+		}
+
+		when:
+		source.subscribing.await(5, TimeUnit.SECONDS)
+		def snapshot = cache.getMktDataSnapshot(Contract.stock("ABCD"))
+
+		then:
+		source.requests[Contract.stock("ABCD")].size() == 1
+
+		when:
+		source.release.countDown()
+		subscriber.join(5000)
+
+		then:
+		!subscriber.alive
+		source.listeners[Contract.stock("SLOW")].size() == 2
+		!snapshot.done
+	}
+}
@@ -0,0 +1,80 @@
+package com.jgoetsch.tradeframework
+
+import spock.lang.Specification
+
+import java.text.SimpleDateFormat
+
+import com.jgoetsch.tradeframework.marketdata.RecordedMarketDataFeed
+import com.jgoetsch.tradeframework.marketdata.TickWriterMarketDataFeed
+
+class TextTickFeedSpec extends Specification {
+
+	def "Parses tick writer lines with cached timestamp prefix"() {
+		given:
+		def dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"))
+		def text = "2020-01-02 09:30:58\t10.005\t100\t10.00\t5\t10.01\t7\r\n" +
+				"2020-01-02 09:30:59,10.005,200\n" +
+				"bad line\n" +
+				"2020-01-02\t09:31:00\t10.125\t300\t10.12\t1\t10.13\t2"
+		def feed = new TickWriterMarketDataFeed(new ByteArrayInputStream(text.bytes), 0.01, dateFormat)
+
+		when:
+		def ticks = [feed.nextTick(), feed.nextTick(), feed.nextTick(), feed.nextTick()]
+
+		then:
+		ticks[0].timestampMillis == java.time.Instant.parse("2020-01-02T09:30:58Z").toEpochMilli()
+		ticks[0].last == 10.005
+		ticks[0].ask == 10.01
+		ticks[1].timestampMillis == ticks[0].timestampMillis + 1000
+		ticks[1].lastSize == 200
+		ticks[1].bid == 9.995
+		ticks[1].ask == 10.015
+		ticks[1].lastTimestampMillis == ticks[0].timestampMillis
+		ticks[2].timestampMillis == ticks[0].timestampMillis + 2000
+		ticks[2].last == 10.125
+		ticks[2].askSize == 2
+		ticks[3] == null
+	}
+
+	def "Parses split date and time fields once per minute"() {
+		given:
+		def parses = []
+		def dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss") {
+			Date parse(String text, java.text.ParsePosition pos) {
+				parses << text
+				return super.parse(text, pos)
+			}
+		}
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"))
+		def text = "2020-01-02\t09:30:58\t10.00\t100\n" +
+				"2020-01-02\t09:30:59\t10.01\t100\n" +
+				"2020-01-02\t09:31:00\t10.02\t100\n" +
+				"2020-01-03\t09:31:01\t10.03\t100\n"
+		def feed = new TickWriterMarketDataFeed(new ByteArrayInputStream(text.bytes), 0.01, dateFormat)
+
+		when:
+		def ticks = (1..4).collect { feed.nextTick() }
+
+		then:
+		ticks*.timestampMillis == ["2020-01-02T09:30:58Z", "2020-01-02T09:30:59Z", "2020-01-02T09:31:00Z", "2020-01-03T09:31:01Z"]
+				.collect { java.time.Instant.parse(it).toEpochMilli() }
+		ticks*.last == [10.00, 10.01, 10.02, 10.03]
+		parses == ["2020-01-02", "2020-01-02 09:30:58", "2020-01-02 09:31:00", "2020-01-03 09:31:01"]
+	}
+
+	def "Parses recorded whitespace delimited lines"() {
+		given:
+		def text = "1500000000000 10.5 100 10.4 1 10.6 2\n1500000000500 10.55 50\n"
+		def feed = new RecordedMarketDataFeed(new ByteArrayInputStream(text.bytes))
+
+		when:
+		def first = feed.nextTick()
+		def second = feed.nextTick()
+
+		then:
+		first.timestampMillis == 1500000000000L
+		first.bid == 10.4 && first.askSize == 2
+		second.last == 10.55 && second.lastSize == 50 && second.ask == 10.65
+	}
+}
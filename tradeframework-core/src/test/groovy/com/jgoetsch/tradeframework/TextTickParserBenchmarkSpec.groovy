@@ -0,0 +1,127 @@
+package com.jgoetsch.tradeframework
+
+import groovy.transform.CompileStatic
+
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+import java.text.DateFormat
+import java.text.ParseException
+import java.text.SimpleDateFormat
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import com.jgoetsch.tradeframework.marketdata.SimpleMarketData
+import com.jgoetsch.tradeframework.marketdata.TickWriterMarketDataFeed
+
+/**
+ * Compares the throughput of TickWriterMarketDataFeed against the previous implementation
+ * based on String.split, BigDecimal and DateFormat. Only run when the benchmark system property
+ * is set, e.g. <code>gradle :tradeframework-core:test -Pbenchmark=1000000 --tests '*BenchmarkSpec'</code>,
+ * with the property giving the number of lines to parse.
+ */
+@Requires({ System.getProperty("benchmark") != null })
+class TextTickParserBenchmarkSpec extends Specification {
+
+	private static final Logger log = LoggerFactory.getLogger(TextTickParserBenchmarkSpec)
+	private static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS"
+	private static final int ROUNDS = 5
+
+	@Unroll
+	def "Parses tick writer lines faster than the legacy implementation with #layout timestamps"() {
+		given:
+		int lines = System.getProperty("benchmark").isInteger() ? System.getProperty("benchmark") as int : 1000000
+		byte[] data = generate(lines, separator)
+		long legacyRate = 0, parserRate = 0
+
+		when:
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime()
+			int count = legacy(data)
+			long legacyNanos = System.nanoTime() - start
+
+			start = System.nanoTime()
+			int parsed = parse(data)
+			long nanos = System.nanoTime() - start
+
+			assert count == lines && parsed == lines
+			legacyRate = count * 1000000000L / legacyNanos
+			parserRate = parsed * 1000000000L / nanos
+			log.info(String.format("%s timestamps round %d: legacy %,d ticks/s, parser %,d ticks/s",
+					layout, round, legacyRate, parserRate))
+		}
+
+		then:
+		parserRate > legacyRate
+
+		where:
+		layout   | separator
+		"joined" | ' '
+		"split"  | '\t'
+	}
+
+	@CompileStatic
+	private static byte[] generate(int lines, String separator) {
+		DateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN.replace(" ", separator))
+		StringBuilder sb = new StringBuilder()
+		long ts = 1500000000000L
+		double last = 100
+		for (int i = 0; i < lines; i++) {
+			ts += 37
+			last += ((i * 7919) % 11 - 5) * 0.01
+			sb.append(dateFormat.format(new Date(ts))).append('\t')
+				.append(String.format("%.2f", last)).append('\t').append(100 + i % 500).append('\t')
+				.append(String.format("%.2f", last - 0.01)).append('\t').append(i % 40).append('\t')
+				.append(String.format("%.2f", last + 0.01)).append('\t').append(i % 30).append('\n')
+		}
+		return sb.toString().getBytes(StandardCharsets.ISO_8859_1)
+	}
+
+	@CompileStatic
+	private static int parse(byte[] data) {
+		int parsed = 0
+		TickWriterMarketDataFeed feed = new TickWriterMarketDataFeed(new ByteArrayInputStream(data),
+				new BigDecimal("0.01"), new SimpleDateFormat(DATE_PATTERN))
+		try {
+			while (feed.nextTick() != null)
+				parsed++
+		} finally {
+			feed.close()
+		}
+		return parsed
+	}
+
+	/**
+	 * Parsing as done by TickWriterMarketDataFeed before it used TextTickParser.
+	 */
+	@CompileStatic
+	private static int legacy(byte[] data) {
+		DateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN)
+		BufferedReader input = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data)))
+		int count = 0
+		String line
+		while ((line = input.readLine()) != null) {
+			String[] part = line.split("[\\t,]")
+			int field = 0
+			Date ts
+			try {
+				ts = dateFormat.parse(part[field])
+			} catch (ParseException e) {
+				ts = dateFormat.parse(part[field] + " " + part[++field])
+			}
+			SimpleMarketData mkd = new SimpleMarketData()
+			mkd.setTimestamp(ts.toInstant())
+			mkd.setLast(new BigDecimal(part[++field]))
+			mkd.setLastSize(Integer.parseInt(part[++field]))
+			mkd.setBid(new BigDecimal(part[++field]))
+			mkd.setBidSize(Integer.parseInt(part[++field]))
+			mkd.setAsk(new BigDecimal(part[++field]))
+			mkd.setAskSize(Integer.parseInt(part[++field]))
+			count++
+		}
+		return count
+	}
+}
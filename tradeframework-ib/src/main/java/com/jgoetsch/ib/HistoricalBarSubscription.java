@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.ib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import com.jgoetsch.tradeframework.OHLC;
+
+/**
+ * Subscription delivering streamed historical bars to a Flow.Subscriber. TWS cannot be
+ * asked to slow down, so bars received beyond the demand of the subscriber are buffered
+ * until requested. Cancelling runs the cancellers added for each stage of the request,
+ * removing it from the request queue and cancelling it in TWS.
+ * 
+ * @author jgoetsch
+ *
+ */
+class HistoricalBarSubscription implements Flow.Subscription {
+
+	private final Flow.Subscriber<? super OHLC> subscriber;
+	private final ArrayDeque<OHLC> buffer = new ArrayDeque<OHLC>();
+	private long demand;
+	private boolean completed;
+	private Throwable error;
+	private boolean terminated;
+	private boolean cancelled;
+	private boolean draining;
+	private final List<Runnable> cancellers = new ArrayList<Runnable>();
+
+	HistoricalBarSubscription(Flow.Subscriber<? super OHLC> subscriber) {
+		this.subscriber = subscriber;
+	}
+
+	/**
+	 * Adds an action to run when the subscription is cancelled or fails, run immediately if
+	 * it already has been cancelled.
+	 */
+	void addCanceller(Runnable canceller) {
+		boolean cancel;
+		synchronized (this) {
+			cancel = cancelled;
+			if (!cancel)
+				cancellers.add(canceller);
+		}
+		if (cancel)
+			canceller.run();
+	}
+
+	private void runCancellers() {
+		List<Runnable> cancel;
+		synchronized (this) {
+			cancel = new ArrayList<Runnable>(cancellers);
+			cancellers.clear();
+		}
+		cancel.forEach(Runnable::run);
+	}
+
+	void onNext(OHLC bar) {
+		synchronized (this) {
+			if (cancelled || completed)
+				return;
+			buffer.addLast(bar);
+		}
+		drain();
+	}
+
+	void onComplete() {
+		synchronized (this) {
+			if (completed)
+				return;
+			completed = true;
+		}
+		drain();
+	}
+
+	void onError(Throwable ex) {
+		synchronized (this) {
+			if (completed)
+				return;
+			completed = true;
+			error = ex;
+			buffer.clear();
+		}
+		runCancellers();
+		drain();
+	}
+
+	@Override
+	public void request(long n) {
+		if (n <= 0) {
+			onError(new IllegalArgumentException("Requested non-positive number of bars " + n));
+			return;
+		}
+		synchronized (this) {
+			demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+		}
+		drain();
+	}
+
+	@Override
+	public void cancel() {
+		synchronized (this) {
+			if (cancelled)
+				return;
+			cancelled = true;
+			buffer.clear();
+		}
+		runCancellers();
+	}
+
+	private void drain() {
+		synchronized (this) {
+			if (draining)
+				return;
+			draining = true;
+		}
+		while (true) {
+			OHLC next;
+			Throwable ex;
+			synchronized (this) {
+				if (cancelled || terminated || (buffer.isEmpty() || demand == 0) && !(buffer.isEmpty() && completed)) {
+					draining = false;
+					return;
+				}
+				next = buffer.pollFirst();
+				if (next != null && demand != Long.MAX_VALUE)
+					demand--;
+				terminated = next == null;
+				ex = error;
+			}
+			if (next != null)
+				subscriber.onNext(next);
+			else if (ex != null)
+				subscriber.onError(ex);
+			else
+				subscriber.onComplete();
+		}
+	}
+}
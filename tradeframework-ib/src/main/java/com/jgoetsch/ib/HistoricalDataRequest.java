@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.ib;
+
+import java.util.Objects;
+
+import com.jgoetsch.tradeframework.Contract;
+
+/**
+ * Parameters of a single TWS historical data request. Requests with equal parameters are
+ * considered identical for the purpose of pacing.
+ * 
+ * @author jgoetsch
+ *
+ */
+public final class HistoricalDataRequest {
+
+	private final Contract contract;
+	private final String endDateTime;
+	private final String duration;
+	private final String barSize;
+	private final String whatToShow;
+	private final boolean onlyRTH;
+
+	public HistoricalDataRequest(Contract contract, String endDateTime, String duration, String barSize, String whatToShow, boolean onlyRTH) {
+		this.contract = contract;
+		this.endDateTime = endDateTime;
+		this.duration = duration;
+		this.barSize = barSize;
+		this.whatToShow = whatToShow;
+		this.onlyRTH = onlyRTH;
+	}
+
+	public Contract getContract() {
+		return contract;
+	}
+
+	public String getEndDateTime() {
+		return endDateTime;
+	}
+
+	public String getDuration() {
+		return duration;
+	}
+
+	public String getBarSize() {
+		return barSize;
+	}
+
+	public String getWhatToShow() {
+		return whatToShow;
+	}
+
+	public boolean isOnlyRTH() {
+		return onlyRTH;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(contract, endDateTime, duration, barSize, whatToShow, onlyRTH);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof HistoricalDataRequest))
+			return false;
+		HistoricalDataRequest other = (HistoricalDataRequest) obj;
+		return Objects.equals(contract, other.contract) && Objects.equals(endDateTime, other.endDateTime)
+				&& Objects.equals(duration, other.duration) && Objects.equals(barSize, other.barSize)
+				&& Objects.equals(whatToShow, other.whatToShow) && onlyRTH == other.onlyRTH;
+	}
+
+	@Override
+	public String toString() {
+		return contract + " " + duration + ", " + barSize + " " + whatToShow + " ending " + endDateTime;
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.ib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jgoetsch.tradeframework.OHLC;
+
+/**
+ * Queues TWS historical data requests and sends them as fast as the IB historical data
+ * pacing limits allow, so that bulk requests never cause pacing violations:
+ * <ul>
+ * <li>no more than 60 requests within any ten minute period</li>
+ * <li>no more than 5 requests for the same contract and data type within any two seconds</li>
+ * <li>no identical request within 15 seconds of the last</li>
+ * <li>no more than 50 requests outstanding at once</li>
+ * </ul>
+ * Each limit is enforced over a sliding window of the times requests were actually sent,
+ * since the limits apply to any period of that length and not to fixed intervals. Requests
+ * blocked only by a per contract limit do not hold up requests for other contracts.
+ * <p>
+ * If a pacing violation is still reported, for example because of requests made by another
+ * client, sending is paused and the request retried with an increasing delay. Requests that
+ * receive no response within the request timeout complete with a TimeoutException.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class HistoricalDataRequestScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(HistoricalDataRequestScheduler.class);
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * Sends a historical data request to TWS.
+	 */
+	public interface RequestSender {
+		CompletableFuture<OHLC[]> send(HistoricalDataRequest request);
+	}
+
+	private static class PendingRequest<T> {
+		private final HistoricalDataRequest request;
+		private final Function<HistoricalDataRequest, CompletableFuture<T>> sender;
+		private final CompletableFuture<T> result = new CompletableFuture<T>();
+		private int retries;
+
+		private PendingRequest(HistoricalDataRequest request, Function<HistoricalDataRequest, CompletableFuture<T>> sender) {
+			this.request = request;
+			this.sender = sender;
+		}
+	}
+
+	private final RequestSender sender;
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "tws-historical-" + threadCount.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final ArrayDeque<PendingRequest<?>> queue = new ArrayDeque<PendingRequest<?>>();
+	private final ArrayDeque<Long> sent = new ArrayDeque<Long>();
+	private final Map<Object, ArrayDeque<Long>> sentByContract = new HashMap<Object, ArrayDeque<Long>>();
+	private final Map<HistoricalDataRequest, Long> lastSent = new HashMap<HistoricalDataRequest, Long>();
+	private int activeRequests;
+	private long pausedUntil;
+	private ScheduledFuture<?> scheduledDispatch;
+	private long scheduledTime;
+
+	private int maxRequests = 60;
+	private long requestWindow = 600000;
+	private int maxContractRequests = 5;
+	private long contractWindow = 2000;
+	private long identicalRequestInterval = 15000;
+	private int maxActiveRequests = 50;
+	private long requestTimeout = 60000;
+	private long pacingViolationDelay = 10000;
+	private int maxRetries = 5;
+
+	public HistoricalDataRequestScheduler(RequestSender sender) {
+		this.sender = sender;
+	}
+
+	/**
+	 * Queues a historical data request to be sent as soon as the pacing limits allow.
+	 * 
+	 * @return future completed with the returned bars, or exceptionally if the request failed
+	 */
+	public CompletableFuture<OHLC[]> submit(HistoricalDataRequest request) {
+		return submit(request, sender::send);
+	}
+
+	/**
+	 * Queues a historical data request to be sent with the given sender instead of the
+	 * default one, such as for requests streaming their results.
+	 * 
+	 * @param sender function sending the request, returning a future completed once the
+	 *   response to the request has been received
+	 * @return future completed with the result of the future returned by the sender
+	 */
+	public <T> CompletableFuture<T> submit(HistoricalDataRequest request, Function<HistoricalDataRequest, CompletableFuture<T>> sender) {
+		PendingRequest<T> pending = new PendingRequest<T>(request, sender);
+		synchronized (this) {
+			queue.addLast(pending);
+		}
+		dispatch();
+		return pending.result;
+	}
+
+	/**
+	 * @return number of requests waiting to be sent
+	 */
+	public synchronized int getQueuedRequests() {
+		return queue.size();
+	}
+
+	/**
+	 * @return number of requests sent and awaiting a response
+	 */
+	public synchronized int getActiveRequests() {
+		return activeRequests;
+	}
+
+	private void dispatch() {
+		List<PendingRequest<?>> ready = new ArrayList<PendingRequest<?>>();
+		synchronized (this) {
+			long now = currentTimeMillis();
+			expire(sent, now - requestWindow);
+			lastSent.values().removeIf(t -> t <= now - identicalRequestInterval);
+			sentByContract.values().removeIf(times -> {
+				expire(times, now - contractWindow);
+				return times.isEmpty();
+			});
+
+			long next = Long.MAX_VALUE;
+			if (now < pausedUntil)
+				next = pausedUntil;
+			else {
+				for (Iterator<PendingRequest<?>> iter = queue.iterator(); iter.hasNext() && activeRequests < maxActiveRequests; ) {
+					if (sent.size() >= maxRequests) {
+						next = Math.min(next, sent.peekFirst() + requestWindow);
+						break;
+					}
+					PendingRequest<?> pending = iter.next();
+					if (pending.result.isDone()) {
+						iter.remove();
+						continue;
+					}
+					long readyTime = getReadyTime(pending.request);
+					if (readyTime > now)
+						next = Math.min(next, readyTime);
+					else {
+						iter.remove();
+						activeRequests++;
+						sent.addLast(now);
+						sentByContract.computeIfAbsent(getContractKey(pending.request), k -> new ArrayDeque<Long>()).addLast(now);
+						lastSent.put(pending.request, now);
+						ready.add(pending);
+					}
+				}
+			}
+			if (!queue.isEmpty() && next != Long.MAX_VALUE && activeRequests < maxActiveRequests)
+				scheduleDispatch(now, next);
+		}
+
+		for (PendingRequest<?> pending : ready)
+			send(pending);
+	}
+
+	private long getReadyTime(HistoricalDataRequest request) {
+		long readyTime = 0;
+		Long last = lastSent.get(request);
+		if (last != null)
+			readyTime = last + identicalRequestInterval;
+		ArrayDeque<Long> times = sentByContract.get(getContractKey(request));
+		if (times != null && times.size() >= maxContractRequests)
+			readyTime = Math.max(readyTime, times.peekFirst() + contractWindow);
+		return readyTime;
+	}
+
+	private void scheduleDispatch(long now, long time) {
+		if (scheduledDispatch != null && !scheduledDispatch.isDone() && scheduledTime > now) {
+			if (scheduledTime <= time)
+				return;
+			scheduledDispatch.cancel(false);
+		}
+		scheduledTime = time;
+		scheduledDispatch = timer.schedule(this::dispatch, time - now, TimeUnit.MILLISECONDS);
+	}
+
+	private <T> void send(PendingRequest<T> pending) {
+		log.debug("Sending historical data request {}", pending.request);
+		CompletableFuture<T> response;
+		try {
+			response = pending.sender.apply(pending.request);
+		} catch (RuntimeException e) {
+			response = CompletableFuture.failedFuture(e);
+		}
+		response.orTimeout(requestTimeout, TimeUnit.MILLISECONDS)
+			.whenComplete((data, ex) -> onResponse(pending, data, ex));
+	}
+
+	private <T> void onResponse(PendingRequest<T> pending, T data, Throwable ex) {
+		Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+		boolean retry = false;
+		synchronized (this) {
+			activeRequests--;
+			if (isPacingViolation(cause) && pending.retries < maxRetries && !pending.result.isDone()) {
+				long delay = pacingViolationDelay << pending.retries++;
+				log.info("Pacing violation, retrying historical data request {} in {} ms", pending.request, delay);
+				pausedUntil = Math.max(pausedUntil, currentTimeMillis() + delay);
+				queue.addFirst(pending);
+				retry = true;
+			}
+		}
+		if (!retry) {
+			if (cause == null)
+				pending.result.complete(data);
+			else
+				pending.result.completeExceptionally(cause);
+		}
+		dispatch();
+	}
+
+	protected boolean isPacingViolation(Throwable ex) {
+		return ex != null && ex.getMessage() != null && ex.getMessage().toLowerCase().contains("pacing violation");
+	}
+
+	private static Object getContractKey(HistoricalDataRequest request) {
+		return Arrays.asList(request.getContract(), request.getContract().getExchange(), request.getWhatToShow());
+	}
+
+	private static void expire(ArrayDeque<Long> times, long cutoff) {
+		while (!times.isEmpty() && times.peekFirst() <= cutoff)
+			times.pollFirst();
+	}
+
+	protected long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	public int getMaxRequests() {
+		return maxRequests;
+	}
+
+	/**
+	 * Sets the maximum number of requests sent within any request window, defaulting to 60.
+	 */
+	public void setMaxRequests(int maxRequests) {
+		this.maxRequests = maxRequests;
+	}
+
+	public long getRequestWindow() {
+		return requestWindow;
+	}
+
+	/**
+	 * Sets the length in milliseconds of the request window, defaulting to ten minutes.
+	 */
+	public void setRequestWindow(long requestWindow) {
+		this.requestWindow = requestWindow;
+	}
+
+	public int getMaxContractRequests() {
+		return maxContractRequests;
+	}
+
+	/**
+	 * Sets the maximum number of requests for the same contract and data type sent within
+	 * any contract window, defaulting to 5.
+	 */
+	public void setMaxContractRequests(int maxContractRequests) {
+		this.maxContractRequests = maxContractRequests;
+	}
+
+	public long getContractWindow() {
+		return contractWindow;
+	}
+
+	/**
+	 * Sets the length in milliseconds of the contract window, defaulting to two seconds.
+	 */
+	public void setContractWindow(long contractWindow) {
+		this.contractWindow = contractWindow;
+	}
+
+	public long getIdenticalRequestInterval() {
+		return identicalRequestInterval;
+	}
+
+	/**
+	 * Sets the minimum time in milliseconds between identical requests, defaulting to 15 seconds.
+	 */
+	public void setIdenticalRequestInterval(long identicalRequestInterval) {
+		this.identicalRequestInterval = identicalRequestInterval;
+	}
+
+	public int getMaxActiveRequests() {
+		return maxActiveRequests;
+	}
+
+	/**
+	 * Sets the maximum number of requests awaiting a response at once, defaulting to 50.
+	 */
+	public void setMaxActiveRequests(int maxActiveRequests) {
+		this.maxActiveRequests = maxActiveRequests;
+	}
+
+	public long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for the response to a request, defaulting to one minute.
+	 */
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+
+	public long getPacingViolationDelay() {
+		return pacingViolationDelay;
+	}
+
+	/**
+	 * Sets the time in milliseconds to pause sending after a pacing violation, doubled for
+	 * each further retry of the same request, defaulting to ten seconds.
+	 */
+	public void setPacingViolationDelay(long pacingViolationDelay) {
+		this.pacingViolationDelay = pacingViolationDelay;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Sets the number of times a request is retried after pacing violations, defaulting to 5.
+	 */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+}
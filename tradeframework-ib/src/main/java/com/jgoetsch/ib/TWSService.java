@@ -25,7 +25,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -41,11 +43,15 @@ import com.jgoetsch.ib.handlers.AccountDataListenerHandler;
 import com.jgoetsch.ib.handlers.ContractDetailsHandler;
 import com.jgoetsch.ib.handlers.HandlerManager;
 import com.jgoetsch.ib.handlers.HistoricalDataHandler;
+import com.jgoetsch.ib.handlers.IdIndexedHandlerManager;
 import com.jgoetsch.ib.handlers.MarketDataHandler;
 import com.jgoetsch.ib.handlers.MarketDataListenerHandler;
 import com.jgoetsch.ib.handlers.MessageLogger;
 import com.jgoetsch.ib.handlers.NextValidIdHandler;
-import com.jgoetsch.ib.handlers.SimpleHandlerDelegatingWrapper;
+import com.jgoetsch.ib.handlers.RingBufferDelegatingWrapper;
+import com.jgoetsch.ib.handlers.RingBufferDelegatingWrapper.PartitionTask;
+import com.jgoetsch.ib.handlers.RingBufferDelegatingWrapper.WaitStrategy;
+import com.jgoetsch.ib.handlers.StreamingHistoricalDataHandler;
 import com.jgoetsch.tradeframework.Contract;
 import com.jgoetsch.tradeframework.ContractDetails;
 import com.jgoetsch.tradeframework.InvalidContractException;
@@ -60,6 +66,7 @@ import com.jgoetsch.tradeframework.data.ContractDetailsSource;
 import com.jgoetsch.tradeframework.data.DataUnavailableException;
 import com.jgoetsch.tradeframework.data.HistoricalDataSource;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
+import com.jgoetsch.tradeframework.marketdata.MarketDataField;
 import com.jgoetsch.tradeframework.marketdata.MarketDataListener;
 import com.jgoetsch.tradeframework.marketdata.MarketDataSource;
 import com.jgoetsch.tradeframework.order.ExecutionListener;
@@ -73,21 +80,36 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 
 	protected final HandlerManager handlerManager;
 	protected final EClientSocket eClientSocket;
+	private final RingBufferDelegatingWrapper eventBus;
 	protected final Map<Contract, MarketDataListenerHandler> marketDataSubscriptions = new HashMap<Contract, MarketDataListenerHandler>();
+	private volatile MarketDataListenerHandler subscribedHandlers[] = new MarketDataListenerHandler[0];
+	private final PartitionTask flushMarketDataTask = (partition, partitions) -> {
+		for (MarketDataListenerHandler mkdlHandler : subscribedHandlers) {
+			if (RingBufferDelegatingWrapper.partitionOf(mkdlHandler.getId(), partitions) == partition)
+				mkdlHandler.flush();
+		}
+	};
 	protected final Map<String, AccountDataListenerHandler> accountDataSubscriptions = new HashMap<String, AccountDataListenerHandler>();
 	private AtomicInteger curRequestId = new AtomicInteger(-1);
+	private final HistoricalDataRequestScheduler historicalDataScheduler = new HistoricalDataRequestScheduler(this::sendHistoricalDataRequest);
 
 	private String host = "localhost";
 	private int port = 7496;
 	private int clientId = 1;
+	private boolean reusableMarketData = false;
+	private boolean coalesceMarketData = false;
+	private int eventConsumerThreads = 0;
+	private int eventBufferSize = 4096;
+	private WaitStrategy eventWaitStrategy = WaitStrategy.BLOCKING;
 
 	private final EReaderSignal readerSignal;
 
 	public TWSService() {
-		handlerManager = new SimpleHandlerDelegatingWrapper();
-		handlerManager.addHandler(MessageLogger.createLoggingHandler());
+		handlerManager = new IdIndexedHandlerManager();
+		handlerManager.addHandler(MessageLogger.getEnabledEvents(), MessageLogger.createLoggingHandler());
+		eventBus = new RingBufferDelegatingWrapper((EWrapper)handlerManager);
 		readerSignal = new EJavaSignal();
-		eClientSocket = new EClientSocket((EWrapper)handlerManager, readerSignal);
+		eClientSocket = new EClientSocket(eventBus, readerSignal);
 	}
 
 	/**
@@ -96,6 +118,7 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 	public TWSService(EClientSocket clientSocket, HandlerManager handlerManager) {
 		this.eClientSocket = clientSocket;
 		this.handlerManager = handlerManager;
+		this.eventBus = null;
 		this.readerSignal = null;
 	}
 
@@ -110,6 +133,12 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 
 	public boolean connect() {
 		NextValidIdHandler h = new NextValidIdHandler(handlerManager);
+		if (eventBus != null) {
+			eventBus.setConsumerThreads(eventConsumerThreads);
+			eventBus.setBufferSize(eventBufferSize);
+			eventBus.setWaitStrategy(eventWaitStrategy);
+			eventBus.start();
+		}
 		eClientSocket.eConnect(host, port, clientId);
 
 		// start reader and processor threads
@@ -122,6 +151,8 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 			    	readerSignal.waitForSignal();
 			        try {
 			            reader.processMsgs();
+			            if (coalesceMarketData)
+			            	flushMarketData();
 			        } catch (Exception e) {
 			            log.error("Exception thrown from EReader processing messages", e);
 			        }
@@ -153,6 +184,8 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 		if (eClientSocket.isConnected()) {
 			eClientSocket.eDisconnect();
 		}
+		if (eventBus != null)
+			eventBus.stop();
 	}
 	
 	public boolean isConnected() {
@@ -277,16 +310,43 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 	}
 
 	public void subscribeMarketData(Contract contract, MarketDataListener marketDataListener) {
+		subscribeMarketData(contract, marketDataListener, MarketDataField.ALL);
+	}
+
+	@Override
+	public void subscribeMarketData(Contract contract, MarketDataListener marketDataListener, int fieldMask) {
 		int tickerId = getNextId();
 		synchronized (marketDataSubscriptions) {
 			MarketDataListenerHandler mkdlHandler = marketDataSubscriptions.get(contract);
 			if (mkdlHandler == null) {
 				mkdlHandler = new MarketDataListenerHandler(tickerId, contract);
+				mkdlHandler.setReusableMarketData(reusableMarketData);
+				mkdlHandler.setCoalesceTicks(coalesceMarketData);
 				marketDataSubscriptions.put(contract, mkdlHandler);
+				subscribedHandlers = marketDataSubscriptions.values().toArray(new MarketDataListenerHandler[0]);
 				handlerManager.addHandler(mkdlHandler);
 				eClientSocket.reqMktData(tickerId, mapper.toTWSContract(contract), null, false, false, Collections.emptyList());
 			}
-			mkdlHandler.addListener(marketDataListener);
+			mkdlHandler.addListener(marketDataListener, fieldMask);
+		}
+	}
+
+	/**
+	 * Dispatches any market data updates being held back by coalescing mode while
+	 * waiting for the rest of a price/size pair. Called automatically after each batch
+	 * of messages is processed. When events are handled by consumer threads, a single
+	 * flush task is queued on each consumer behind the events already published to it,
+	 * which dispatches the held updates of the subscriptions handled by that consumer.
+	 * <p>
+	 * Listeners are notified without holding the subscription lock, using the copy of
+	 * the subscriptions taken each time one is added or removed.
+	 */
+	public void flushMarketData() {
+		if (eventBus != null)
+			eventBus.executeOnEachPartition(flushMarketDataTask);
+		else {
+			for (MarketDataListenerHandler mkdlHandler : subscribedHandlers)
+				mkdlHandler.flush();
 		}
 	}
 
@@ -300,6 +360,7 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 					eClientSocket.cancelMktData(mkdlHandler.getId());
 					handlerManager.removeHandler(mkdlHandler);
 					marketDataSubscriptions.remove(contract);
+					subscribedHandlers = marketDataSubscriptions.values().toArray(new MarketDataListenerHandler[0]);
 				}
 			}
 		}
@@ -337,40 +398,112 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 	{
 		if (!isConnected())
 			throw new DataUnavailableException("TWS service is not connected");
+		try {
+			return getHistoricalDataAsync(contract, endDate, duration, periodUnit, onlyRTH).get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof DataUnavailableException)
+				throw (DataUnavailableException)ex.getCause();
+			log.warn("Historical data request for " + contract + " failed", ex.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Queues a historical data request with the historical data scheduler, to be sent as soon
+	 * as the IB pacing limits allow.
+	 * 
+	 * @return future completed with the returned bars
+	 */
+	public CompletableFuture<OHLC[]> getHistoricalDataAsync(Contract contract, Date endDate, int numPeriods, int periodUnit)
+	{
+		String duration = (numPeriods * histDurationMultiplier[periodUnit]) + " " + histDurationUnit[periodUnit];
+		return getHistoricalDataAsync(contract, endDate, duration, periodUnit, true);
+	}
+
+	public CompletableFuture<OHLC[]> getHistoricalDataAsync(Contract contract, Date endDate, String duration, int periodUnit, boolean onlyRTH)
+	{
 		DateFormat df = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
 		df.setTimeZone(HistoricalDataSource.timeZone);
 		log.debug("getHistoricalData: " + contract + " " + duration + ", " + histPeriodUnit[periodUnit] + " ending " + df.format(new Date(endDate.getTime() - 1)));
+		return historicalDataScheduler.submit(new HistoricalDataRequest(contract, df.format(new Date(endDate.getTime() - 1)) + " EST",
+				duration, histPeriodUnit[periodUnit], "TRADES", onlyRTH));
+	}
 
-		int retryCount = 5, delay = 2000;
-		do {
-			int tickerId = getNextId();
-			HistoricalDataHandler hdh = new HistoricalDataHandler(tickerId, handlerManager);
-			eClientSocket.reqHistoricalData(tickerId, mapper.toTWSContract(contract), df.format(new Date(endDate.getTime() - 1)) + " EST", duration, histPeriodUnit[periodUnit], "TRADES", onlyRTH ? 1 : 0, 2, false, Collections.emptyList());
-
-			try {
-				return hdh.getCompletableFuture().get();
-			} catch (ExecutionException ex) {
-				String err = ex.getCause().getMessage();
-				if (err == null || err.indexOf("pacing violation") == -1) {
-					if (ex.getCause() instanceof DataUnavailableException)
-						throw (DataUnavailableException)ex.getCause();
-					else
-						return null;
-				}
-			} catch (InterruptedException e) {
-				return null;
-			}
+	private CompletableFuture<OHLC[]> sendHistoricalDataRequest(HistoricalDataRequest request) {
+		if (!isConnected())
+			return CompletableFuture.failedFuture(new DataUnavailableException("TWS service is not connected"));
+		int tickerId = getNextId();
+		HistoricalDataHandler hdh = new HistoricalDataHandler(tickerId, handlerManager);
+		hdh.getCompletableFuture().whenComplete((data, ex) -> {
+			if (ex instanceof TimeoutException)
+				eClientSocket.cancelHistoricalData(tickerId);
+		});
+		eClientSocket.reqHistoricalData(tickerId, mapper.toTWSContract(request.getContract()), request.getEndDateTime(), request.getDuration(),
+				request.getBarSize(), request.getWhatToShow(), request.isOnlyRTH() ? 1 : 0, 2, false, Collections.emptyList());
+		return hdh.getCompletableFuture();
+	}
 
-			log.info("Pacing violation, waiting to retry data request...");
-			try {
-				Thread.sleep(delay);
-			} catch (InterruptedException e) {
-				return null;
-			}
-			delay *= 2;
-		} while (retryCount-- > 0);
+	/**
+	 * Requests historical data to be passed to a subscriber bar by bar as it is received,
+	 * rather than all at once when the request completes. The request is queued with the
+	 * historical data scheduler and sent as soon as the IB pacing limits allow.
+	 * <p>
+	 * If keepUpToDate is set, the end date is ignored and the request covers the duration up
+	 * to the present, then continues to stream updates of the most recent bar and new bars
+	 * as they form until the subscription is cancelled. Updates to the same bar share the
+	 * same date.
+	 */
+	public void streamHistoricalData(Contract contract, Date endDate, String duration, int periodUnit, boolean onlyRTH, boolean keepUpToDate,
+			Flow.Subscriber<? super OHLC> subscriber)
+	{
+		String endDateTime = "";
+		if (!keepUpToDate) {
+			DateFormat df = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
+			df.setTimeZone(HistoricalDataSource.timeZone);
+			endDateTime = df.format(new Date(endDate.getTime() - 1)) + " EST";
+		}
+		log.debug("streamHistoricalData: " + contract + " " + duration + ", " + histPeriodUnit[periodUnit] + (keepUpToDate ? " kept up to date" : " ending " + endDateTime));
 
-		return null;
+		HistoricalBarSubscription subscription = new HistoricalBarSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		CompletableFuture<Void> sent = historicalDataScheduler.submit(new HistoricalDataRequest(contract, endDateTime, duration, histPeriodUnit[periodUnit], "TRADES", onlyRTH),
+				request -> sendStreamingHistoricalDataRequest(request, keepUpToDate, subscription));
+		sent.whenComplete((v, ex) -> {
+			if (ex != null)
+				subscription.onError(ex);
+		});
+		subscription.addCanceller(() -> sent.cancel(false));
+	}
+
+	private CompletableFuture<Void> sendStreamingHistoricalDataRequest(HistoricalDataRequest request, boolean keepUpToDate, HistoricalBarSubscription subscription) {
+		if (!isConnected())
+			return CompletableFuture.failedFuture(new DataUnavailableException("TWS service is not connected"));
+		int tickerId = getNextId();
+		StreamingHistoricalDataHandler handler = new StreamingHistoricalDataHandler(tickerId, handlerManager, subscription::onNext, keepUpToDate);
+		handler.getCompletableFuture().whenComplete((v, ex) -> {
+			if (ex == null)
+				subscription.onComplete();
+			else if (handler.getInitialData().isDone() && !handler.getInitialData().isCompletedExceptionally())
+				subscription.onError(ex);
+		});
+		subscription.addCanceller(() -> {
+			handler.getInitialData().cancel(false);
+			if (handler.getCompletableFuture().cancel(false))
+				eClientSocket.cancelHistoricalData(tickerId);
+		});
+		eClientSocket.reqHistoricalData(tickerId, mapper.toTWSContract(request.getContract()), request.getEndDateTime(), request.getDuration(),
+				request.getBarSize(), request.getWhatToShow(), request.isOnlyRTH() ? 1 : 0, 2, keepUpToDate, Collections.emptyList());
+		return handler.getInitialData();
+	}
+
+	/**
+	 * @return the scheduler pacing historical data requests, to configure its limits
+	 */
+	public HistoricalDataRequestScheduler getHistoricalDataScheduler() {
+		return historicalDataScheduler;
 	}
 
 	@Override
@@ -412,4 +545,80 @@ public class TWSService implements TradingService, AccountDataSource, MultiAccou
 		return clientId;
 	}
 
+	/**
+	 * Sets whether market data subscribers are passed a reusable read-only view instead
+	 * of a new copy on each tick. See {@link MarketDataListenerHandler#setReusableMarketData(boolean)}.
+	 * Applies to subscriptions made after it is set.
+	 * 
+	 * @param reusableMarketData
+	 */
+	public void setReusableMarketData(boolean reusableMarketData) {
+		this.reusableMarketData = reusableMarketData;
+	}
+
+	public boolean isReusableMarketData() {
+		return reusableMarketData;
+	}
+
+	/**
+	 * Sets whether each bid, ask or last price tick and its matching size tick are
+	 * delivered to market data subscribers as a single event. See
+	 * {@link MarketDataListenerHandler#setCoalesceTicks(boolean)}. Applies to
+	 * subscriptions made after it is set.
+	 * 
+	 * @param coalesceMarketData
+	 */
+	public void setCoalesceMarketData(boolean coalesceMarketData) {
+		this.coalesceMarketData = coalesceMarketData;
+	}
+
+	public boolean isCoalesceMarketData() {
+		return coalesceMarketData;
+	}
+
+	public int getEventConsumerThreads() {
+		return eventConsumerThreads;
+	}
+
+	/**
+	 * Sets the number of threads handling events received from TWS, which are passed from
+	 * the message processing thread through a ring buffer and partitioned by request id.
+	 * If 0, the default, handlers are run inline on the message processing thread. Takes
+	 * effect on the next call to connect().
+	 * 
+	 * @param eventConsumerThreads
+	 * @see RingBufferDelegatingWrapper
+	 */
+	public void setEventConsumerThreads(int eventConsumerThreads) {
+		this.eventConsumerThreads = eventConsumerThreads;
+	}
+
+	public int getEventBufferSize() {
+		return eventBufferSize;
+	}
+
+	/**
+	 * Sets the number of event slots in the ring buffer, must be a power of 2.
+	 * Takes effect on the next call to connect().
+	 * 
+	 * @param eventBufferSize
+	 */
+	public void setEventBufferSize(int eventBufferSize) {
+		this.eventBufferSize = eventBufferSize;
+	}
+
+	public WaitStrategy getEventWaitStrategy() {
+		return eventWaitStrategy;
+	}
+
+	/**
+	 * Sets how event consumer threads wait for events. Takes effect on the next call
+	 * to connect().
+	 * 
+	 * @param eventWaitStrategy
+	 */
+	public void setEventWaitStrategy(WaitStrategy eventWaitStrategy) {
+		this.eventWaitStrategy = eventWaitStrategy;
+	}
+
 }
@@ -44,15 +44,20 @@ import com.ib.client.SoftDollarTier;
 import com.ib.client.TickAttrib;
 import com.ib.client.TickAttribBidAsk;
 import com.ib.client.TickAttribLast;
+import com.jgoetsch.tradeframework.ib.spi.GenerateDispatcher;
 
 /**
  * Base implementation of the EWrapper interface with empty handlers for every event
  * and common handling of error and closed connection conditions.
  * Extending classes need override only the events they want to handle.
+ * <p>
+ * The parameter names of the event methods here are used to generate {@link DispatchingWrapper}
+ * and {@link QueueingWrapper}.
  * 
  * @author jgoetsch
  *
  */
+@GenerateDispatcher(value = "DispatchingWrapper", broadcastEvents = "nextValidId", queueing = "QueueingWrapper")
 public class BaseHandler<T> implements EWrapper {
 
 	public final static int WAIT_TIME = 2500;
@@ -64,11 +69,21 @@ public class BaseHandler<T> implements EWrapper {
 	}
 
 	public BaseHandler(HandlerManager manager) {
-		manager.addHandler(this);
-		future = new CompletableFuture<T>()
-				.whenComplete((m, e) -> {
-					manager.removeHandler(this);
-				});
+		this(manager, true);
+	}
+
+	/**
+	 * Creates a handler that removes itself from the given manager on completion,
+	 * optionally leaving it to the subclass constructor to add it to the manager once
+	 * it is fully initialized.
+	 */
+	protected BaseHandler(HandlerManager manager, boolean register) {
+		if (register)
+			manager.addHandler(this);
+		future = new CompletableFuture<T>();
+		future.whenComplete((m, e) -> {
+			manager.removeHandler(this);
+		});
 	}
 
 	public CompletableFuture<T> getCompletableFuture() {
@@ -40,8 +40,9 @@ public class BaseIdHandler<T> extends BaseHandler<T> {
 	}
 
 	public BaseIdHandler(int id, HandlerManager manager) {
-		super(manager);
+		super(manager, false);
 		this.id = id;
+		manager.addHandler(this);
 	}
 
 	public int getId() {
@@ -100,6 +101,13 @@ public class BaseIdHandler<T> extends BaseHandler<T> {
 			onHistoricalDataEnd(startDateStr, endDateStr);
 	}
 
+	@Override
+	public final void historicalDataUpdate(int reqId, Bar bar)
+	{
+		if (id == reqId)
+			onHistoricalDataUpdate(bar);
+	}
+
 	@Override
 	public final void openOrder(int orderId, Contract contract, Order order,
 			OrderState orderState)
@@ -245,6 +253,14 @@ public class BaseIdHandler<T> extends BaseHandler<T> {
 	protected void onHistoricalDataEnd(String startDateStr, String endDateStr) {
 	}
 
+	/**
+	 * Override to implement historicalDataUpdate event for this request id, received for
+	 * requests made with keepUpToDate set.
+	 * @param bar the new or updated most recent bar
+	 */
+	protected void onHistoricalDataUpdate(Bar bar) {
+	}
+
 	protected void onOpenOrder(Contract contract, Order order,
 			OrderState orderState) {
 	}
@@ -15,9 +15,10 @@
  */
 package com.jgoetsch.ib.handlers;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -30,6 +31,9 @@ import com.jgoetsch.tradeframework.data.HistoricalDataSource;
 
 public class HistoricalDataHandler extends BaseIdHandler<OHLC[]> {
 
+	private static final ZoneId zone = HistoricalDataSource.timeZone.toZoneId();
+	private static final DateTimeFormatter dailyBarFormat = DateTimeFormatter.BASIC_ISO_DATE;
+
 	private List<OHLC> data = new ArrayList<OHLC>();
 
 	public HistoricalDataHandler(int tickerId) {
@@ -50,6 +54,14 @@ public class HistoricalDataHandler extends BaseIdHandler<OHLC[]> {
 	@Override
 	protected void onHistoricalData(Bar bar)
 	{
+		data.add(toOHLC(bar));
+	}
+
+	/**
+	 * Converts a bar received from TWS, with its time given either as epoch seconds or as
+	 * the date of a daily bar.
+	 */
+	public static OHLC toOHLC(Bar bar) {
 		SimpleOHLC ohlc = new SimpleOHLC();
 		ohlc.setOpen(bar.open());
 		ohlc.setHigh(bar.high());
@@ -57,22 +69,18 @@ public class HistoricalDataHandler extends BaseIdHandler<OHLC[]> {
 		ohlc.setClose(bar.close());
 		ohlc.setVolume(bar.volume() * 100);
 		try {
-			if (bar.time().length() == 8) {
-				DateFormat df = new SimpleDateFormat("yyyyMMdd");
-				df.setTimeZone(HistoricalDataSource.timeZone);
-				ohlc.setDate(df.parse(bar.time()));
-			}
+			if (bar.time().length() == 8)
+				ohlc.setDate(Date.from(LocalDate.parse(bar.time(), dailyBarFormat).atStartOfDay(zone).toInstant()));
 			else
 				ohlc.setDate(new Date(Long.parseLong(bar.time()) * 1000));
 		}
-		catch (ParseException e) {
+		catch (DateTimeParseException e) {
 			e.printStackTrace();
 		}
 		catch (NumberFormatException e) {
 			e.printStackTrace();
 		}
-
-		data.add(ohlc);
+		return ohlc;
 	}
 
 	@Override
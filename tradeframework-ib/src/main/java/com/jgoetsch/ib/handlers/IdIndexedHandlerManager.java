@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.ib.handlers;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.ib.client.EWrapper;
+
+/**
+ * HandlerManager and delegating wrapper that indexes handlers by request/order/ticker id, so
+ * that an event with an id is passed only to the handlers registered for that id, found with
+ * a single lookup in a primitive int keyed hash table, plus any handlers not tied to an id.
+ * Handlers are tied to an id if they are registered with one, or are instances of
+ * {@link BaseIdHandler}. Handlers not tied to an id, such as {@link MessageLogger} and account
+ * data handlers, receive every event as with {@link SimpleHandlerDelegatingWrapper}.
+ * <p>
+ * Handlers tied to an id do not receive events without an id, except for connectionClosed and
+ * the error events without an id which are sent to all handlers.
+ * <p>
+ * Handlers extending {@link BaseHandler} receive only the events they override, or the events
+ * they were registered for by name, and an event is skipped without further work if no handler
+ * receives it.
+ * <p>
+ * Each id's entry in the index is copy on write so that dispatching does not lock or allocate,
+ * and adding or removing a handler with an id only replaces the entry for that id. The whole
+ * index is only rebuilt when it fills up or when a handler not tied to an id is added or removed.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class IdIndexedHandlerManager extends DispatchingWrapper implements HandlerManager {
+
+	private static final int NO_ID = -1;
+	private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+	/**
+	 * Events overridden by each BaseHandler subclass
+	 */
+	private static final ClassValue<BitSet> overriddenEvents = new ClassValue<BitSet>() {
+		@Override
+		protected BitSet computeValue(Class<?> type) {
+			BitSet events = new BitSet(EVENT_COUNT);
+			for (int eventType = 0; eventType < EVENT_COUNT; eventType++) {
+				Method method = getEventMethod(eventType);
+				try {
+					if (type.getMethod(method.getName(), method.getParameterTypes()).getDeclaringClass() != BaseHandler.class)
+						events.set(eventType);
+				} catch (NoSuchMethodException e) {
+					events.set(eventType);
+				}
+			}
+			return events;
+		}
+	};
+
+	private final Map<EWrapper, Registration> registrations = new IdentityHashMap<EWrapper, Registration>();
+	private final Map<Integer, Registration[]> idHandlers = new LinkedHashMap<Integer, Registration[]>();
+	private Registration[] broadcastHandlers = NO_REGISTRATIONS;
+	private volatile EWrapper[] allHandlers = NO_HANDLERS; // null when handlers have changed since last use
+	private volatile IdIndex index = new IdIndex(Collections.emptyMap(), NO_REGISTRATIONS);
+
+	private static final class Registration {
+		private final EWrapper handler;
+		private final int id;
+		private final BitSet events;
+
+		private Registration(EWrapper handler, int id, BitSet events) {
+			this.handler = handler;
+			this.id = id;
+			this.events = events;
+		}
+
+		private boolean receives(int eventType) {
+			if (events != null)
+				return events.get(eventType);
+			else if (handler instanceof BaseHandler)
+				return overriddenEvents.get(handler.getClass()).get(eventType);
+			else
+				return true;
+		}
+	}
+
+	/**
+	 * Immutable handlers for one id along with the handlers for each event type, combined with
+	 * the broadcast handlers on first use.
+	 */
+	private static final class IdEntry {
+		private final int id;
+		private final Registration[] registrations;
+		private final AtomicReferenceArray<EWrapper[]> eventHandlers = new AtomicReferenceArray<EWrapper[]>(EVENT_COUNT);
+
+		private IdEntry(int id, Registration[] registrations) {
+			this.id = id;
+			this.registrations = registrations;
+		}
+	}
+
+	/**
+	 * Open addressing hash table of handlers keyed by id, along with the broadcast handlers
+	 * for each event type. Read without locking, and updated only by the thread holding the
+	 * lock of the handler manager, by replacing the entry of a single slot.
+	 */
+	private static final class IdIndex {
+		/** Left in the slot of a removed id until the slot is reused */
+		private static final IdEntry REMOVED = new IdEntry(NO_ID, NO_REGISTRATIONS);
+
+		private final AtomicReferenceArray<IdEntry> entries;
+		private final int mask;
+		private final EWrapper[][] broadcastHandlers = new EWrapper[EVENT_COUNT][];
+		private int usedSlots;
+
+		private IdIndex(Map<Integer, Registration[]> handlers, Registration[] broadcast) {
+			int capacity = Integer.highestOneBit(Math.max(handlers.size(), 4) * 4 - 1) << 1;
+			entries = new AtomicReferenceArray<IdEntry>(capacity);
+			mask = capacity - 1;
+			for (int eventType = 0; eventType < EVENT_COUNT; eventType++)
+				broadcastHandlers[eventType] = receiving(NO_HANDLERS, broadcast, eventType);
+			for (Map.Entry<Integer, Registration[]> entry : handlers.entrySet())
+				put(entry.getKey(), entry.getValue());
+		}
+
+		private EWrapper[] get(int eventType, int id) {
+			if (id == NO_ID)
+				return broadcastHandlers[eventType];
+			int i = hash(id) & mask;
+			IdEntry v;
+			while ((v = entries.get(i)) != null) {
+				if (v.id == id) {
+					EWrapper[] handlers = v.eventHandlers.get(eventType);
+					if (handlers == null) {
+						handlers = receiving(broadcastHandlers[eventType], v.registrations, eventType);
+						v.eventHandlers.set(eventType, handlers);
+					}
+					return handlers;
+				}
+				i = (i + 1) & mask;
+			}
+			return broadcastHandlers[eventType];
+		}
+
+		/**
+		 * Replaces the handlers for an id, reusing the slot of a removed id if there is one
+		 * in its probe sequence.
+		 * 
+		 * @return false if the table is too full to add the id and must be rebuilt
+		 */
+		private boolean put(int id, Registration[] registrations) {
+			int i = hash(id) & mask;
+			int free = -1;
+			IdEntry v;
+			while ((v = entries.get(i)) != null) {
+				if (v.id == id) {
+					entries.set(i, registrations.length == 0 ? REMOVED : new IdEntry(id, registrations));
+					return true;
+				}
+				else if (free < 0 && v == REMOVED)
+					free = i;
+				i = (i + 1) & mask;
+			}
+			if (registrations.length == 0)
+				return true;
+			else if (free >= 0) {
+				entries.set(free, new IdEntry(id, registrations));
+				return true;
+			}
+			else if ((usedSlots + 1) * 2 > entries.length())
+				return false;
+			usedSlots++;
+			entries.set(i, new IdEntry(id, registrations));
+			return true;
+		}
+
+		private static int hash(int id) {
+			int h = id * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		private static EWrapper[] receiving(EWrapper[] handlers, Registration[] registrations, int eventType) {
+			for (Registration registration : registrations) {
+				if (registration.receives(eventType))
+					handlers = append(handlers, registration.handler);
+			}
+			return handlers;
+		}
+	}
+
+	@Override
+	protected EWrapper[] getHandlers(int eventType, int objId) {
+		// connection closed and error events without an id get sent to all registered handlers
+		if (eventType == CONNECTION_CLOSED || eventType == ERROR_EXCEPTION || eventType == ERROR_STRING) {
+			EWrapper[] handlers = allHandlers;
+			return handlers != null ? handlers : getAllHandlers();
+		}
+		else
+			return index.get(eventType, objId);
+	}
+
+	private synchronized EWrapper[] getAllHandlers() {
+		if (allHandlers == null)
+			allHandlers = getHandlers().toArray(NO_HANDLERS);
+		return allHandlers;
+	}
+
+	@Override
+	public void addHandler(EWrapper handler) {
+		if (handler instanceof BaseIdHandler)
+			addHandler(((BaseIdHandler<?>)handler).getId(), null, handler);
+		else
+			addHandler(NO_ID, null, handler);
+	}
+
+	@Override
+	public void addHandler(String eventName, int objectId, EWrapper handler) {
+		addHandler(objectId, new String[] { eventName }, handler);
+	}
+
+	@Override
+	public void addHandler(String eventName, EWrapper handler) {
+		addHandler(new String[] { eventName }, handler);
+	}
+
+	@Override
+	public void addHandler(String[] eventNames, int objectId, EWrapper handler) {
+		addHandler(objectId, eventNames, handler);
+	}
+
+	@Override
+	public void addHandler(String[] eventNames, EWrapper handler) {
+		addHandler(handler instanceof BaseIdHandler ? ((BaseIdHandler<?>)handler).getId() : NO_ID, eventNames, handler);
+	}
+
+	private synchronized void addHandler(int id, String[] eventNames, EWrapper handler) {
+		if (registrations.containsKey(handler))
+			return;
+		BitSet events = null;
+		if (eventNames != null) {
+			events = new BitSet(EVENT_COUNT);
+			for (String eventName : eventNames) {
+				for (int eventType : getEventTypes(eventName))
+					events.set(eventType);
+			}
+		}
+		Registration registration = new Registration(handler, id, events);
+		registrations.put(handler, registration);
+		if (id == NO_ID) {
+			broadcastHandlers = append(broadcastHandlers, registration);
+			rebuild();
+		}
+		else {
+			Registration[] handlers = idHandlers.get(id);
+			handlers = append(handlers != null ? handlers : NO_REGISTRATIONS, registration);
+			idHandlers.put(id, handlers);
+			update(id, handlers);
+		}
+	}
+
+	@Override
+	public synchronized void removeHandler(EWrapper handler) {
+		Registration registration = registrations.remove(handler);
+		if (registration == null)
+			return;
+		else if (registration.id == NO_ID) {
+			broadcastHandlers = remove(broadcastHandlers, registration);
+			rebuild();
+		}
+		else {
+			Registration[] handlers = remove(idHandlers.get(registration.id), registration);
+			if (handlers.length == 0)
+				idHandlers.remove(registration.id);
+			else
+				idHandlers.put(registration.id, handlers);
+			update(registration.id, handlers);
+		}
+	}
+
+	@Override
+	public synchronized void removeAllHandlers() {
+		registrations.clear();
+		idHandlers.clear();
+		broadcastHandlers = NO_REGISTRATIONS;
+		rebuild();
+	}
+
+	private void update(int id, Registration[] handlers) {
+		if (!index.put(id, handlers))
+			index = new IdIndex(idHandlers, broadcastHandlers);
+		allHandlers = null;
+	}
+
+	private void rebuild() {
+		index = new IdIndex(idHandlers, broadcastHandlers);
+		allHandlers = null;
+	}
+
+	private static <T> T[] append(T[] array, T element) {
+		T[] newArray = Arrays.copyOf(array, array.length + 1);
+		newArray[array.length] = element;
+		return newArray;
+	}
+
+	private static <T> T[] remove(T[] array, T element) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == element) {
+				T[] newArray = Arrays.copyOf(array, array.length - 1);
+				System.arraycopy(array, i + 1, newArray, i, newArray.length - i);
+				return newArray;
+			}
+		}
+		return array;
+	}
+
+	@Override
+	public Collection<EWrapper> getHandlers(String eventName, int objectId) {
+		List<EWrapper> list = new ArrayList<EWrapper>();
+		for (int eventType : getEventTypes(eventName)) {
+			for (EWrapper handler : getHandlers(eventType, objectId)) {
+				if (!list.contains(handler))
+					list.add(handler);
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public Collection<EWrapper> getHandlers(String eventName) {
+		return getHandlers();
+	}
+
+	@Override
+	public synchronized Collection<EWrapper> getHandlers() {
+		List<EWrapper> list = new ArrayList<EWrapper>();
+		for (Registration registration : broadcastHandlers)
+			list.add(registration.handler);
+		for (Registration[] handlers : idHandlers.values()) {
+			for (Registration registration : handlers)
+				list.add(registration.handler);
+		}
+		return list;
+	}
+}
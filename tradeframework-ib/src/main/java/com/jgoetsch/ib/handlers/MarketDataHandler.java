@@ -21,12 +21,17 @@ import java.time.Instant;
 import com.ib.client.TickAttrib;
 import com.ib.client.TickType;
 import com.jgoetsch.tradeframework.BrokerResponseException;
+import com.jgoetsch.tradeframework.marketdata.FixedPointMarketData;
 import com.jgoetsch.tradeframework.marketdata.MarketData;
-import com.jgoetsch.tradeframework.marketdata.SimpleMarketData;
+import com.jgoetsch.tradeframework.marketdata.MarketDataField;
+import com.jgoetsch.tradeframework.marketdata.SequencedMarketData;
 
 public class MarketDataHandler extends BaseIdHandler<MarketData> {
 
-	private SimpleMarketData data = new SimpleMarketData();
+	private final FixedPointMarketData data = new FixedPointMarketData();
+	private final SequencedMarketData view = new MarketDataView();
+	private long sequence;
+	private int changedFields;
 
 	public MarketDataHandler(int tickerId) {
 		super(tickerId);
@@ -38,49 +43,73 @@ public class MarketDataHandler extends BaseIdHandler<MarketData> {
 
 	@Override
 	protected void onTickPrice(int field, double price, TickAttrib attrib) {
-		BigDecimal decimal = BigDecimal.valueOf(price);
 		switch (TickType.get(field)) {
 			case BID:
-				data.setBid(decimal); break;
+				data.setBid(price);
+				changedFields |= MarketDataField.BID;
+				break;
 			case ASK:
-				data.setAsk(decimal); break;
+				data.setAsk(price);
+				changedFields |= MarketDataField.ASK;
+				break;
 			case LAST:
-				data.setLast(decimal); break;
+				data.setLast(price);
+				changedFields |= MarketDataField.LAST;
+				break;
 			case HIGH:
-				data.setHigh(decimal); break;
+				data.setHigh(price);
+				changedFields |= MarketDataField.HIGH;
+				break;
 			case LOW:
-				data.setLow(decimal); break;
+				data.setLow(price);
+				changedFields |= MarketDataField.LOW;
+				break;
 			case CLOSE:
-				data.setClose(decimal); break;
+				data.setClose(price);
+				changedFields |= MarketDataField.CLOSE;
+				break;
 			default:
 		}
-		data.setTimestamp(Instant.now());
+		data.setTimestampMillis(System.currentTimeMillis());
+		sequence++;
 	}
 
 	@Override
 	protected void onTickSize(int field, int size) {
 		switch (TickType.get(field)) {
 			case BID_SIZE:
-				data.setBidSize(size); break;
+				data.setBidSize(size);
+				changedFields |= MarketDataField.BID_SIZE;
+				break;
 			case ASK_SIZE:
-				data.setAskSize(size); break;
+				data.setAskSize(size);
+				changedFields |= MarketDataField.ASK_SIZE;
+				break;
 			case LAST_SIZE:
-				data.setLastSize(size); break;
+				data.setLastSize(size);
+				changedFields |= MarketDataField.LAST_SIZE;
+				break;
 			case VOLUME:
-				data.setVolume(size); break;
+				data.setVolume(size);
+				changedFields |= MarketDataField.VOLUME;
+				break;
 			default:
 		}
-		data.setTimestamp(Instant.now());
+		data.setTimestampMillis(System.currentTimeMillis());
+		sequence++;
 	}
 
 	@Override
 	protected void onTickString(int tickType, String value) {
 		switch (TickType.get(tickType)) {
 			case LAST_TIMESTAMP:
-				data.setLastTimestamp(Instant.ofEpochMilli(Long.parseLong(value))); break;
+				data.setLastTimestampMillis(Long.parseLong(value));
+				changedFields |= MarketDataField.LAST_TIMESTAMP;
+				break;
 			default:
 		}
-		data.setTimestamp(Instant.now());
+		data.setTimestampMillis(System.currentTimeMillis());
+		sequence++;
 	}
 
 	@Override
@@ -93,7 +122,25 @@ public class MarketDataHandler extends BaseIdHandler<MarketData> {
 	}
 
 	protected final MarketData getMarketData() {
-		return new SimpleMarketData(data);
+		return new FixedPointMarketData(data);
+	}
+
+	/**
+	 * Returns the {@link MarketDataField} bits updated since the last call to this method
+	 * and resets them.
+	 */
+	protected final int clearChangedFields() {
+		int fields = changedFields;
+		changedFields = MarketDataField.NONE;
+		return fields;
+	}
+
+	/**
+	 * @return read-only view of the market data being updated by this handler, the same
+	 * instance is returned on every call.
+	 */
+	protected final SequencedMarketData getMarketDataView() {
+		return view;
 	}
 
 	@Override
@@ -101,4 +148,177 @@ public class MarketDataHandler extends BaseIdHandler<MarketData> {
 		return data.toString();
 	}
 
+	private class MarketDataView implements SequencedMarketData {
+
+		@Override
+		public long getSequence() {
+			return sequence;
+		}
+
+		@Override
+		public MarketData snapshot() {
+			return getMarketData();
+		}
+
+		@Override
+		public void copyTo(FixedPointMarketData target) {
+			target.set(data);
+		}
+
+		@Override
+		public BigDecimal getBid() {
+			return data.getBid();
+		}
+
+		@Override
+		public Integer getBidSize() {
+			return data.getBidSize();
+		}
+
+		@Override
+		public BigDecimal getAsk() {
+			return data.getAsk();
+		}
+
+		@Override
+		public Integer getAskSize() {
+			return data.getAskSize();
+		}
+
+		@Override
+		public BigDecimal getLast() {
+			return data.getLast();
+		}
+
+		@Override
+		public Integer getLastSize() {
+			return data.getLastSize();
+		}
+
+		@Override
+		public BigDecimal getHigh() {
+			return data.getHigh();
+		}
+
+		@Override
+		public BigDecimal getLow() {
+			return data.getLow();
+		}
+
+		@Override
+		public Integer getVolume() {
+			return data.getVolume();
+		}
+
+		@Override
+		public BigDecimal getClose() {
+			return data.getClose();
+		}
+
+		@Override
+		public Instant getLastTimestamp() {
+			return data.getLastTimestamp();
+		}
+
+		@Override
+		public Instant getTimestamp() {
+			return data.getTimestamp();
+		}
+
+		@Override
+		public long getBidTicks() {
+			return data.getBidTicks();
+		}
+
+		@Override
+		public long getAskTicks() {
+			return data.getAskTicks();
+		}
+
+		@Override
+		public long getLastTicks() {
+			return data.getLastTicks();
+		}
+
+		@Override
+		public long getHighTicks() {
+			return data.getHighTicks();
+		}
+
+		@Override
+		public long getLowTicks() {
+			return data.getLowTicks();
+		}
+
+		@Override
+		public long getCloseTicks() {
+			return data.getCloseTicks();
+		}
+
+		@Override
+		public double getBidAsDouble() {
+			return data.getBidAsDouble();
+		}
+
+		@Override
+		public double getAskAsDouble() {
+			return data.getAskAsDouble();
+		}
+
+		@Override
+		public double getLastAsDouble() {
+			return data.getLastAsDouble();
+		}
+
+		@Override
+		public double getHighAsDouble() {
+			return data.getHighAsDouble();
+		}
+
+		@Override
+		public double getLowAsDouble() {
+			return data.getLowAsDouble();
+		}
+
+		@Override
+		public double getCloseAsDouble() {
+			return data.getCloseAsDouble();
+		}
+
+		@Override
+		public int getBidSizeAsInt() {
+			return data.getBidSizeAsInt();
+		}
+
+		@Override
+		public int getAskSizeAsInt() {
+			return data.getAskSizeAsInt();
+		}
+
+		@Override
+		public int getLastSizeAsInt() {
+			return data.getLastSizeAsInt();
+		}
+
+		@Override
+		public long getVolumeAsLong() {
+			return data.getVolumeAsLong();
+		}
+
+		@Override
+		public long getLastTimestampMillis() {
+			return data.getLastTimestampMillis();
+		}
+
+		@Override
+		public long getTimestampMillis() {
+			return data.getTimestampMillis();
+		}
+
+		@Override
+		public String toString() {
+			return data.toString();
+		}
+	}
+
 }
@@ -15,17 +15,22 @@
  */
 package com.jgoetsch.ib.handlers;
 
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
-
 import com.ib.client.TickAttrib;
+import com.ib.client.TickType;
 import com.jgoetsch.tradeframework.Contract;
+import com.jgoetsch.tradeframework.marketdata.MarketData;
+import com.jgoetsch.tradeframework.marketdata.MarketDataField;
 import com.jgoetsch.tradeframework.marketdata.MarketDataListener;
+import com.jgoetsch.tradeframework.marketdata.MarketDataListenerSet;
+import com.jgoetsch.tradeframework.marketdata.SequencedMarketData;
 
 public class MarketDataListenerHandler extends MarketDataHandler {
 
 	private Contract contract;
-	private Set<MarketDataListener> listeners = new CopyOnWriteArraySet<MarketDataListener>();
+	private final MarketDataListenerSet listeners = new MarketDataListenerSet();
+	private boolean reusableMarketData;
+	private boolean coalesceTicks;
+	private int pendingField = -1;
 	
 	public MarketDataListenerHandler(int tickerId, Contract contract) {
 		super(tickerId);
@@ -33,9 +38,18 @@ public class MarketDataListenerHandler extends MarketDataHandler {
 	}
 
 	public final boolean addListener(MarketDataListener listener) {
-		return listeners.add(listener);
+		return listeners.add(listener, MarketDataField.ALL);
 	}
-	
+
+	/**
+	 * Adds a listener to be notified only of updates to the given fields.
+	 * 
+	 * @param fieldMask bit mask of {@link MarketDataField} values
+	 */
+	public final boolean addListener(MarketDataListener listener, int fieldMask) {
+		return listeners.add(listener, fieldMask);
+	}
+
 	public final boolean removeListener(MarketDataListener listener) {
 		return listeners.remove(listener);
 	}
@@ -46,20 +60,123 @@ public class MarketDataListenerHandler extends MarketDataHandler {
 
 	@Override
 	protected void onTickPrice(int field, double price, TickAttrib attrib) {
-		super.onTickPrice(field, price, attrib);
-		listeners.forEach(listener -> listener.tick(contract, getMarketData()));
+		if (coalesceTicks) {
+			flush();
+			super.onTickPrice(field, price, attrib);
+			pendingField = getCompletingField(field);
+			if (pendingField < 0)
+				fireTick();
+		}
+		else {
+			super.onTickPrice(field, price, attrib);
+			fireTick();
+		}
 	}
 
 	@Override
 	protected void onTickSize(int field, int size) {
-		super.onTickSize(field, size);
-		listeners.forEach(listener -> listener.tick(contract, getMarketData()));
+		if (coalesceTicks && pendingField == field) {
+			super.onTickSize(field, size);
+			pendingField = getCompletingField(field);
+			if (pendingField < 0)
+				fireTick();
+		}
+		else {
+			flush();
+			super.onTickSize(field, size);
+			fireTick();
+		}
 	}
 
 	@Override
 	protected void onTickString(int tickType, String value) {
-		super.onTickString(tickType, value);
-		listeners.forEach(listener -> listener.tick(contract, getMarketData()));
+		if (coalesceTicks && pendingField == tickType) {
+			super.onTickString(tickType, value);
+			pendingField = -1;
+			fireTick();
+		}
+		else {
+			flush();
+			super.onTickString(tickType, value);
+			fireTick();
+		}
+	}
+
+	/**
+	 * Returns the tick type that TWS sends immediately following the given tick type
+	 * as part of the same update, or -1 if the update is complete.
+	 */
+	private static int getCompletingField(int field) {
+		switch (TickType.get(field)) {
+			case BID:
+				return TickType.BID_SIZE.index();
+			case ASK:
+				return TickType.ASK_SIZE.index();
+			case LAST:
+				return TickType.LAST_SIZE.index();
+			case LAST_SIZE:
+				return TickType.LAST_TIMESTAMP.index();
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Notifies listeners of an update that is being held back waiting for the rest of
+	 * a coalesced price/size update, if any. Must be called from the thread handling
+	 * the TWS events for this ticker id.
+	 */
+	public final void flush() {
+		if (pendingField >= 0) {
+			pendingField = -1;
+			fireTick();
+		}
+	}
+
+	/**
+	 * Notifies listeners interested in the fields updated since the last notification of
+	 * the current market data, either with a reusable view or with a new copy per listener
+	 * depending on {@link #isReusableMarketData()}.
+	 */
+	protected void fireTick() {
+		int changedFields = clearChangedFields();
+		if (reusableMarketData)
+			listeners.fire(contract, getMarketDataView(), changedFields);
+		else
+			listeners.fireSnapshots(contract, getMarketDataView(), changedFields);
+	}
+
+	public boolean isReusableMarketData() {
+		return reusableMarketData;
+	}
+
+	/**
+	 * If true, listeners are passed the same read-only {@link SequencedMarketData}
+	 * view on every tick instead of a new copy, avoiding any allocation per tick.
+	 * Listeners must then call {@link MarketData#snapshot()} to retain the data
+	 * beyond the <code>tick</code> call.
+	 * 
+	 * @param reusableMarketData
+	 */
+	public void setReusableMarketData(boolean reusableMarketData) {
+		this.reusableMarketData = reusableMarketData;
+	}
+
+	public boolean isCoalesceTicks() {
+		return coalesceTicks;
+	}
+
+	/**
+	 * If true, a bid, ask or last price tick is not dispatched until the matching size
+	 * tick (and for last, the last timestamp) is received, so that listeners receive a
+	 * single event for each complete quote or trade update. A held update is dispatched
+	 * early if any other tick for this contract arrives first or {@link #flush()} is
+	 * called.
+	 * 
+	 * @param coalesceTicks
+	 */
+	public void setCoalesceTicks(boolean coalesceTicks) {
+		this.coalesceTicks = coalesceTicks;
 	}
 
 }
@@ -15,18 +15,6 @@
  */
 package com.jgoetsch.ib.handlers;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
-import java.lang.reflect.Proxy;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.ib.client.CommissionReport;
 import com.ib.client.Contract;
 import com.ib.client.EWrapper;
@@ -35,86 +23,108 @@ import com.ib.client.Order;
 import com.ib.client.OrderState;
 import com.ib.client.TickType;
 import com.jgoetsch.ib.TWSMapper;
+import com.jgoetsch.tradeframework.ib.spi.GenerateLogger;
 
 /**
  * Logs responses received from TWS to various loggers at the DEBUG level.
  * This handler is automatically registered so you can get logging output just by
  * enabling DEBUG logging on com.jgoetsch.ib.handlers.MessageLogger or its
- * sublevels.
+ * sublevels, which are named after each event, e.g. com.jgoetsch.ib.handlers.MessageLogger.tickPrice.
+ * <p>
+ * The logging handler is generated at compile time from the EWrapper methods and
+ * BaseHandler parameter names, and checks the level of each event's logger before
+ * formatting any of its arguments. Null arguments, int arguments of 0 or -1 and double
+ * arguments of 0 are left out of the logged message.
+ * <p>
+ * The handler is registered only for the events whose logger has DEBUG enabled when
+ * it is registered, so that the handler manager can skip the events nothing else
+ * subscribes to. Enabling an event's logger later has no effect until the handler is
+ * registered again.
  * 
  * @author jgoetsch
  *
  */
+@GenerateLogger(value = "LoggingHandler", source = BaseHandler.class)
 public class MessageLogger {
 
-	private static final Logger log = LoggerFactory.getLogger(MessageLogger.class);
 	private static final TWSMapper mapper = TWSMapper.INSTANCE;
 
-	private static final Class<EWrapper> wrapperInterface = EWrapper.class;
-
 	private static final String PARAM_SEPARATOR = ", ";
 	private static final String PARAM_VALUE_SEPARATOR = ":";
-	private static final Set<Object> SUPPRESSED_VALUES = Set.of(0, 0d, -1);
-
-	// EWrapper interface from tws api may not have been compiled with parameter name info,
-	// so get them from BaseHandler implementation class
-	private static String[] handlerArgumentNames(Method m) {
-		try {
-			return Arrays.stream(BaseHandler.class.getDeclaredMethod(m.getName(), m.getParameterTypes()).getParameters())
-					.map(Parameter::getName).toArray(String[]::new);
-		} catch (NoSuchMethodException e) {
-			throw new IllegalArgumentException("Interface method not implemented in BaseHandler", e);
-		}
-	}
 
 	public static EWrapper createLoggingHandler() {
-		Map<Method, String[]> methodArgNames = Arrays.stream(wrapperInterface.getDeclaredMethods()).collect(
-				Collectors.toMap(Function.identity(), MessageLogger::handlerArgumentNames));
-
-		return (EWrapper) Proxy.newProxyInstance(
-				wrapperInterface.getClassLoader(), new Class[] { wrapperInterface },
-			(proxy, method, args) -> {
-				if (log.isDebugEnabled()) {
-					try {
-						StringBuilder sb = new StringBuilder();
-						if (args != null) {
-							String[] argNames = methodArgNames.get(method);
-							for (int i = 0; i < args.length; i++) {
-								if (args[i] != null && !SUPPRESSED_VALUES.contains(args[i])) {
-									String argVal;
-									if (args[i] instanceof Contract)
-										argVal = mapper.fromTWSContract((Contract)args[i]).toString();
-									else if (args[i] instanceof Order)
-										argVal = mapper.fromTWSOrder((Order)args[i]).toString();
-									else if (args[i] instanceof Execution)
-										argVal = mapper.fromTWSExecution((Execution)args[i]).toString();
-									else if (args[i] instanceof OrderState)
-										argVal = ((OrderState)args[i]).getStatus();
-									else if (args[i] instanceof CommissionReport) {
-										argVal = mapper.fromTWSCommissionReport((CommissionReport)args[i]).toString();
-									}
-									else if (args[i] instanceof Integer && argNames[i].equals("field"))
-										argVal = TickType.getField((Integer)args[i]);
-									else
-										argVal = args[i].toString();
-		
-									if (argVal != null && !argVal.isBlank()) {
-										if (sb.length() > 0)
-											sb.append(PARAM_SEPARATOR);
-										sb.append(argNames[i]).append(PARAM_VALUE_SEPARATOR);
-										sb.append(argVal);
-									}
-								}
-							}
-						}
-						log.debug("{} {}", method.getName(), sb.toString());
-					} catch (Exception e) {
-						log.error("Exception logging message", e);
-					}
-				}
-				return null;
-			}
-		);
+		return new LoggingHandler();
+	}
+
+	/**
+	 * Returns the names of the events whose logger currently has DEBUG enabled, for
+	 * registering the logging handler with a {@link HandlerManager}.
+	 */
+	public static String[] getEnabledEvents() {
+		return LoggingHandler.getEnabledEvents();
+	}
+
+	/*
+	 * Argument formatting methods called by the generated LoggingHandler
+	 */
+
+	static boolean isSuppressed(int value) {
+		return value == 0 || value == -1;
+	}
+
+	static boolean isSuppressed(double value) {
+		return value == 0d;
+	}
+
+	static boolean isSuppressed(long value) {
+		return false;
+	}
+
+	static boolean isSuppressed(boolean value) {
+		return false;
+	}
+
+	static boolean isSuppressed(Object value) {
+		return value == null;
+	}
+
+	static String format(String name, int value) {
+		return name.equals("field") ? TickType.getField(value) : Integer.toString(value);
+	}
+
+	static String format(String name, double value) {
+		return Double.toString(value);
+	}
+
+	static String format(String name, long value) {
+		return Long.toString(value);
+	}
+
+	static String format(String name, boolean value) {
+		return Boolean.toString(value);
+	}
+
+	static String format(String name, Object value) {
+		if (value instanceof Contract)
+			return mapper.fromTWSContract((Contract)value).toString();
+		else if (value instanceof Order)
+			return mapper.fromTWSOrder((Order)value).toString();
+		else if (value instanceof Execution)
+			return mapper.fromTWSExecution((Execution)value).toString();
+		else if (value instanceof OrderState)
+			return ((OrderState)value).getStatus();
+		else if (value instanceof CommissionReport)
+			return mapper.fromTWSCommissionReport((CommissionReport)value).toString();
+		else
+			return value.toString();
+	}
+
+	static void append(StringBuilder sb, String name, String value) {
+		if (value != null && !value.isBlank()) {
+			if (sb.length() > 0)
+				sb.append(PARAM_SEPARATOR);
+			sb.append(name).append(PARAM_VALUE_SEPARATOR).append(value);
+		}
 	}
 
 }
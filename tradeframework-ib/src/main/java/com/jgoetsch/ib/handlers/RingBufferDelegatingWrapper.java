@@ -0,0 +1,580 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.ib.handlers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ib.client.CommissionReport;
+import com.ib.client.Contract;
+import com.ib.client.EWrapper;
+import com.ib.client.Execution;
+import com.ib.client.TickAttrib;
+
+/**
+ * Delegating wrapper that decouples decoding of TWS messages from handler execution by
+ * passing events through a pre-allocated ring buffer to a set of consumer threads, which
+ * call the target EWrapper. Events are partitioned across consumers by request/ticker id
+ * so that events for different requests are handled in parallel, while events for the
+ * same id are always handled in order by the same consumer. Errors for a request and
+ * order status, open order and execution events are partitioned by request or order id
+ * in the same way, with commission reports following the execution they belong to.
+ * Events without an id go to a single dedicated partition so that their relative order
+ * is preserved.
+ * <p>
+ * The tick price, size, string and generic events are stored in the ring buffer slots
+ * as primitives without allocation. Until {@link #start()} is called, or if the number of
+ * consumer threads is 0, events are passed to the target inline on the calling thread,
+ * and a callback capturing the call is only allocated for events actually published to
+ * the ring buffer.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class RingBufferDelegatingWrapper extends QueueingWrapper {
+
+	private static final Logger log = LoggerFactory.getLogger(RingBufferDelegatingWrapper.class);
+
+	/**
+	 * Strategy used by consumer threads waiting for events to become available and by
+	 * the producer waiting for space in the ring buffer.
+	 */
+	public enum WaitStrategy {
+		/** Park the thread until signaled, lowest CPU usage but highest latency */
+		BLOCKING,
+		/** Spin briefly and then yield the thread */
+		YIELDING,
+		/** Spin continuously, occupying a CPU core per consumer thread for lowest latency */
+		BUSY_SPIN
+	}
+
+	private static final int CALLBACK = 0;
+	private static final int TICK_PRICE = 1;
+	private static final int TICK_SIZE = 2;
+	private static final int TICK_STRING = 3;
+	private static final int TICK_GENERIC = 4;
+	private static final int TASK = 5;
+	private static final int PARTITION_TASK = 6;
+
+	private static final int NO_ID = -1;
+	private static final int SPIN_TRIES = 100;
+	private static final int MAX_PENDING_COMMISSIONS = 1000;
+
+	/**
+	 * Task run once for each partition on the consumer thread handling it.
+	 */
+	public interface PartitionTask {
+		/**
+		 * @param partition index of the partition being handled by the current thread
+		 * @param partitions total number of partitions
+		 */
+		void run(int partition, int partitions);
+	}
+
+	private static final class Slot {
+		private volatile long sequence = -1;
+		private int eventType;
+		private int partition;
+		private int id;
+		private int field;
+		private int intValue;
+		private double doubleValue;
+		private Object objectValue;
+	}
+
+	private final EWrapper target;
+	private int bufferSize = 4096;
+	private int consumerThreads = 0;
+	private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+
+	private volatile EventRing eventRing;
+
+	@SuppressWarnings("serial")
+	private final Map<String, Integer> executionOrderIds = new LinkedHashMap<String, Integer>() {
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > MAX_PENDING_COMMISSIONS;
+		}
+	};
+
+	public RingBufferDelegatingWrapper(EWrapper target) {
+		this.target = target;
+	}
+
+	/**
+	 * Allocates the ring buffer and starts the consumer threads. Has no effect if
+	 * already started or if the number of consumer threads is 0.
+	 */
+	public synchronized void start() {
+		if (eventRing != null || consumerThreads <= 0)
+			return;
+		if (Integer.bitCount(bufferSize) != 1)
+			throw new IllegalStateException("Buffer size must be a power of 2: " + bufferSize);
+		EventRing ring = new EventRing(bufferSize, consumerThreads, waitStrategy);
+		for (Thread thread : ring.threads)
+			thread.start();
+		eventRing = ring;
+	}
+
+	/**
+	 * Stops the consumer threads and waits for them to finish handling the events
+	 * already published. Subsequent events are passed to the target inline. An event
+	 * published by another thread concurrently with the call to stop may be discarded.
+	 */
+	public synchronized void stop() {
+		EventRing ring = eventRing;
+		if (ring != null) {
+			eventRing = null;
+			ring.running = false;
+			ring.signalConsumers();
+			for (Thread thread : ring.threads) {
+				if (thread == Thread.currentThread())
+					continue;
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			synchronized (executionOrderIds) {
+				executionOrderIds.clear();
+			}
+		}
+	}
+
+	public boolean isRunning() {
+		return eventRing != null;
+	}
+
+	/**
+	 * Runs a task on the consumer thread responsible for the given id, after any
+	 * events for that id that have already been published.
+	 * 
+	 * @param id request/ticker id, or -1 for the partition of events without an id
+	 * @param task
+	 */
+	public void execute(int id, Runnable task) {
+		EventRing ring = eventRing;
+		long seq = ring != null ? ring.claim() : -1;
+		if (seq < 0)
+			task.run();
+		else {
+			Slot slot = ring.slots[(int)seq & ring.mask];
+			slot.eventType = TASK;
+			slot.partition = ring.partitionOf(id);
+			slot.objectValue = task;
+			ring.publish(slot, seq);
+		}
+	}
+
+	/**
+	 * Runs a task once on each consumer thread, after any events already published to
+	 * its partition. If not started, the task is run inline as the only partition.
+	 * Use {@link #partitionOf(int, int)} to find which ids belong to the partition
+	 * passed to the task.
+	 * 
+	 * @param task
+	 */
+	public void executeOnEachPartition(PartitionTask task) {
+		EventRing ring = eventRing;
+		if (ring == null)
+			task.run(0, 1);
+		else {
+			int partitions = ring.consumers.length;
+			for (int partition = 0; partition < partitions; partition++) {
+				long seq = ring.claim();
+				if (seq < 0)
+					task.run(partition, partitions);
+				else {
+					Slot slot = ring.slots[(int)seq & ring.mask];
+					slot.eventType = PARTITION_TASK;
+					slot.partition = partition;
+					slot.intValue = partitions;
+					slot.objectValue = task;
+					ring.publish(slot, seq);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the partition that events for the given id are handled by.
+	 * 
+	 * @param id request/ticker id, or -1 for events without an id
+	 * @param partitions total number of partitions
+	 */
+	public static int partitionOf(int id, int partitions) {
+		if (id < 0 || partitions <= 1)
+			return 0;
+		else
+			return 1 + id % (partitions - 1);
+	}
+
+	@Override
+	protected EWrapper getDirectTarget() {
+		return eventRing == null ? target : null;
+	}
+
+	@Override
+	protected void enqueue(int eventType, int objId, Callback callback) {
+		EventRing ring = eventRing;
+		long seq = ring != null ? ring.claim() : -1;
+		if (seq < 0)
+			callback.call(target);
+		else {
+			Slot slot = ring.slots[(int)seq & ring.mask];
+			slot.eventType = CALLBACK;
+			slot.partition = ring.partitionOf(objId);
+			slot.objectValue = callback;
+			ring.publish(slot, seq);
+		}
+	}
+
+	/**
+	 * Routes the execution by the id of the order it belongs to, and remembers the order
+	 * id so that the commission report for the execution is routed the same way.
+	 */
+	@Override
+	public void execDetails(int orderId, Contract contract, Execution execution) {
+		if (!isRunning())
+			target.execDetails(orderId, contract, execution);
+		else {
+			int routeId = execution != null ? execution.orderId() : orderId;
+			if (execution != null && execution.execId() != null) {
+				synchronized (executionOrderIds) {
+					executionOrderIds.put(execution.execId(), routeId);
+				}
+			}
+			enqueue(DispatchingWrapper.EXEC_DETAILS, routeId, h -> h.execDetails(orderId, contract, execution));
+		}
+	}
+
+	@Override
+	public void commissionReport(CommissionReport commissionReport) {
+		if (!isRunning())
+			target.commissionReport(commissionReport);
+		else {
+			Integer orderId = null;
+			if (commissionReport != null && commissionReport.m_execId != null) {
+				synchronized (executionOrderIds) {
+					orderId = executionOrderIds.remove(commissionReport.m_execId);
+				}
+			}
+			enqueue(DispatchingWrapper.COMMISSION_REPORT, orderId != null ? orderId : NO_ID, h -> h.commissionReport(commissionReport));
+		}
+	}
+
+	@Override
+	public void tickPrice(int tickerId, int field, double price, TickAttrib attrib) {
+		EventRing ring = eventRing;
+		long seq = ring != null ? ring.claim() : -1;
+		if (seq < 0)
+			target.tickPrice(tickerId, field, price, attrib);
+		else {
+			Slot slot = ring.slots[(int)seq & ring.mask];
+			slot.eventType = TICK_PRICE;
+			slot.partition = ring.partitionOf(tickerId);
+			slot.id = tickerId;
+			slot.field = field;
+			slot.doubleValue = price;
+			slot.objectValue = attrib;
+			ring.publish(slot, seq);
+		}
+	}
+
+	@Override
+	public void tickSize(int tickerId, int field, int size) {
+		EventRing ring = eventRing;
+		long seq = ring != null ? ring.claim() : -1;
+		if (seq < 0)
+			target.tickSize(tickerId, field, size);
+		else {
+			Slot slot = ring.slots[(int)seq & ring.mask];
+			slot.eventType = TICK_SIZE;
+			slot.partition = ring.partitionOf(tickerId);
+			slot.id = tickerId;
+			slot.field = field;
+			slot.intValue = size;
+			ring.publish(slot, seq);
+		}
+	}
+
+	@Override
+	public void tickString(int tickerId, int tickType, String value) {
+		EventRing ring = eventRing;
+		long seq = ring != null ? ring.claim() : -1;
+		if (seq < 0)
+			target.tickString(tickerId, tickType, value);
+		else {
+			Slot slot = ring.slots[(int)seq & ring.mask];
+			slot.eventType = TICK_STRING;
+			slot.partition = ring.partitionOf(tickerId);
+			slot.id = tickerId;
+			slot.field = tickType;
+			slot.objectValue = value;
+			ring.publish(slot, seq);
+		}
+	}
+
+	@Override
+	public void tickGeneric(int tickerId, int tickType, double value) {
+		EventRing ring = eventRing;
+		long seq = ring != null ? ring.claim() : -1;
+		if (seq < 0)
+			target.tickGeneric(tickerId, tickType, value);
+		else {
+			Slot slot = ring.slots[(int)seq & ring.mask];
+			slot.eventType = TICK_GENERIC;
+			slot.partition = ring.partitionOf(tickerId);
+			slot.id = tickerId;
+			slot.field = tickType;
+			slot.doubleValue = value;
+			ring.publish(slot, seq);
+		}
+	}
+
+	private void dispatch(Slot slot) {
+		switch (slot.eventType) {
+			case TICK_PRICE:
+				target.tickPrice(slot.id, slot.field, slot.doubleValue, (TickAttrib)slot.objectValue);
+				break;
+			case TICK_SIZE:
+				target.tickSize(slot.id, slot.field, slot.intValue);
+				break;
+			case TICK_STRING:
+				target.tickString(slot.id, slot.field, (String)slot.objectValue);
+				break;
+			case TICK_GENERIC:
+				target.tickGeneric(slot.id, slot.field, slot.doubleValue);
+				break;
+			case TASK:
+				((Runnable)slot.objectValue).run();
+				break;
+			case PARTITION_TASK:
+				((PartitionTask)slot.objectValue).run(slot.partition, slot.intValue);
+				break;
+			default:
+				((Callback)slot.objectValue).call(target);
+		}
+	}
+
+	/**
+	 * The ring buffer and consumer threads of one start/stop cycle. Consumers only ever
+	 * read the ring they were started with, so a consumer still finishing after
+	 * {@link #stop()} can never see the events of a ring allocated by a later
+	 * {@link #start()}.
+	 */
+	private final class EventRing {
+		private final Slot slots[];
+		private final int mask;
+		private final Consumer consumers[];
+		private final Thread threads[];
+		private final WaitStrategy waitStrategy;
+		private final AtomicLong claimSequence = new AtomicLong();
+		private volatile boolean running = true;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition dataAvailable = lock.newCondition();
+		private final AtomicInteger waiters = new AtomicInteger();
+
+		private EventRing(int bufferSize, int consumerThreads, WaitStrategy waitStrategy) {
+			this.waitStrategy = waitStrategy;
+			slots = new Slot[bufferSize];
+			for (int i = 0; i < slots.length; i++)
+				slots[i] = new Slot();
+			mask = bufferSize - 1;
+			consumers = new Consumer[consumerThreads];
+			threads = new Thread[consumerThreads];
+			for (int i = 0; i < consumers.length; i++) {
+				consumers[i] = new Consumer(this, i);
+				threads[i] = new Thread(consumers[i], "tws-event-" + i);
+				threads[i].setDaemon(true);
+			}
+		}
+
+		private int partitionOf(int id) {
+			return RingBufferDelegatingWrapper.partitionOf(id, consumers.length);
+		}
+
+		/**
+		 * Claims the next sequence, waiting until all consumers have moved past the previous
+		 * use of its slot.
+		 * 
+		 * @return the claimed sequence, or -1 if the consumers were stopped while waiting.
+		 */
+		private long claim() {
+			long seq = claimSequence.getAndIncrement();
+			long wrapPoint = seq - slots.length;
+			int tries = 0;
+			while (wrapPoint > minConsumerSequence()) {
+				if (!running)
+					return -1;
+				tries = backoff(tries);
+			}
+			return seq;
+		}
+
+		private void publish(Slot slot, long seq) {
+			slot.sequence = seq;
+			if (waiters.get() > 0)
+				signalConsumers();
+		}
+
+		private long minConsumerSequence() {
+			long min = Long.MAX_VALUE;
+			for (Consumer consumer : consumers)
+				min = Math.min(min, consumer.sequence.get());
+			return min;
+		}
+
+		private int backoff(int tries) {
+			switch (waitStrategy) {
+				case BUSY_SPIN:
+					Thread.onSpinWait();
+					return tries;
+				case YIELDING:
+					if (tries < SPIN_TRIES) {
+						Thread.onSpinWait();
+						return tries + 1;
+					}
+					Thread.yield();
+					return tries;
+				default:
+					if (tries < SPIN_TRIES) {
+						Thread.onSpinWait();
+						return tries + 1;
+					}
+					LockSupport.parkNanos(1000);
+					return tries;
+			}
+		}
+
+		private void signalConsumers() {
+			lock.lock();
+			try {
+				dataAvailable.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private class Consumer implements Runnable {
+		private final EventRing ring;
+		private final int partition;
+		private final AtomicLong sequence = new AtomicLong(-1);
+
+		private Consumer(EventRing ring, int partition) {
+			this.ring = ring;
+			this.partition = partition;
+		}
+
+		/**
+		 * Handles events until stopped, then finishes handling the events that were
+		 * already published before exiting.
+		 */
+		public void run() {
+			long next = sequence.get() + 1;
+			int tries = 0;
+			for (;;) {
+				Slot slot = ring.slots[(int)next & ring.mask];
+				if (slot.sequence == next) {
+					if (slot.partition == partition) {
+						try {
+							dispatch(slot);
+						} catch (RuntimeException e) {
+							log.error("Exception thrown from handler processing TWS event", e);
+						}
+						slot.objectValue = null;
+					}
+					sequence.lazySet(next++);
+					tries = 0;
+				}
+				else if (!ring.running)
+					break;
+				else if (ring.waitStrategy == WaitStrategy.BLOCKING && tries >= SPIN_TRIES)
+					await(slot, next);
+				else
+					tries = ring.backoff(tries);
+			}
+		}
+
+		private void await(Slot slot, long next) {
+			ring.waiters.incrementAndGet();
+			ring.lock.lock();
+			try {
+				while (ring.running && slot.sequence != next)
+					ring.dataAvailable.await(10, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				ring.running = false;
+			} finally {
+				ring.lock.unlock();
+				ring.waiters.decrementAndGet();
+			}
+		}
+	}
+
+	public EWrapper getTarget() {
+		return target;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the number of slots in the ring buffer, must be a power of 2. Takes effect on
+	 * the next call to {@link #start()}.
+	 * 
+	 * @param bufferSize
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getConsumerThreads() {
+		return consumerThreads;
+	}
+
+	/**
+	 * Sets the number of consumer threads. With more than one, one consumer handles events
+	 * without an id and the others handle events partitioned by id. If 0, events are
+	 * passed to the target inline. Takes effect on the next call to {@link #start()}.
+	 * 
+	 * @param consumerThreads
+	 */
+	public void setConsumerThreads(int consumerThreads) {
+		this.consumerThreads = consumerThreads;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+}
@@ -29,35 +29,36 @@ import com.ib.client.EWrapper;
  * @author jgoetsch
  *
  */
-public class SimpleHandlerDelegatingWrapper extends HandlerDelegatingWrapper implements HandlerManager {                           
+public class SimpleHandlerDelegatingWrapper extends DispatchingWrapper implements HandlerManager {                           
 
 	private Set<EWrapper> handlers;
+	private volatile EWrapper[] handlerArray = NO_HANDLERS;
 	
 	public SimpleHandlerDelegatingWrapper() {
 		handlers = new CopyOnWriteArraySet<EWrapper>();
 	}
 	
 	@Override
-	public void addHandler(EWrapper handler) {
+	public synchronized void addHandler(EWrapper handler) {
 		handlers.add(handler);
+		handlerArray = handlers.toArray(NO_HANDLERS);
 	}
 	
 	@Override
-	public void removeHandler(EWrapper handler) {
+	public synchronized void removeHandler(EWrapper handler) {
 		handlers.remove(handler);
+		handlerArray = handlers.toArray(NO_HANDLERS);
 	}
 
 	@Override
-	public void removeAllHandlers() {
+	public synchronized void removeAllHandlers() {
 		handlers.clear();
+		handlerArray = NO_HANDLERS;
 	}
 
 	@Override
-	protected void callHandlers(String eventName, int objId, HandlerCallback callback) {
-		for (EWrapper handler : handlers) {
-			//System.out.println("event = " + eventName + ", calling handler:" + handler);
-			callback.callHandler(handler);
-		}
+	protected EWrapper[] getHandlers(int eventType, int objId) {
+		return handlerArray;
 	}
 
 	@Override
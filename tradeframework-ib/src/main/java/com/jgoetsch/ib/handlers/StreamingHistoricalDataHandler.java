@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012 Jeremy Goetsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jgoetsch.ib.handlers;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import com.ib.client.Bar;
+import com.jgoetsch.tradeframework.BrokerResponseException;
+import com.jgoetsch.tradeframework.OHLC;
+
+/**
+ * Historical data handler that passes each bar to a consumer as it is received instead of
+ * collecting the whole result.
+ * <p>
+ * The initial data future completes when all bars of the requested range have been
+ * received. For requests made with keepUpToDate set, the handler then continues to pass on
+ * the bar updates sent by TWS, each being either a revision of the most recent bar or a new
+ * bar, until cancelled. Otherwise the handler completes along with the initial data.
+ * 
+ * @author jgoetsch
+ *
+ */
+public class StreamingHistoricalDataHandler extends BaseIdHandler<Void> {
+
+	private final Consumer<? super OHLC> consumer;
+	private final boolean keepUpToDate;
+	private final CompletableFuture<Void> initialData = new CompletableFuture<Void>();
+
+	public StreamingHistoricalDataHandler(int tickerId, HandlerManager manager, Consumer<? super OHLC> consumer, boolean keepUpToDate) {
+		super(tickerId, manager);
+		this.consumer = consumer;
+		this.keepUpToDate = keepUpToDate;
+	}
+
+	public CompletableFuture<Void> getInitialData() {
+		return initialData;
+	}
+
+	public boolean isKeepUpToDate() {
+		return keepUpToDate;
+	}
+
+	@Override
+	protected void onError(int errorCode, String errorMsg) {
+		super.onError(errorCode, errorMsg);
+		if (errorCode == 162 || errorCode == 200) {
+			BrokerResponseException ex = new BrokerResponseException(errorCode, errorMsg);
+			initialData.completeExceptionally(ex);
+			getCompletableFuture().completeExceptionally(ex);
+		}
+	}
+
+	@Override
+	public synchronized void connectionClosed() {
+		initialData.completeExceptionally(new IOException("Connection closed"));
+		super.connectionClosed();
+	}
+
+	@Override
+	protected void onHistoricalData(Bar bar) {
+		consumer.accept(HistoricalDataHandler.toOHLC(bar));
+	}
+
+	@Override
+	protected void onHistoricalDataUpdate(Bar bar) {
+		consumer.accept(HistoricalDataHandler.toOHLC(bar));
+	}
+
+	@Override
+	protected void onHistoricalDataEnd(String startDateStr, String endDateStr) {
+		if (!keepUpToDate)
+			getCompletableFuture().complete(null);
+		initialData.complete(null);
+	}
+
+}
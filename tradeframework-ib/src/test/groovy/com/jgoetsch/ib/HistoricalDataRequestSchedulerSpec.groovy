@@ -0,0 +1,116 @@
+package com.jgoetsch.ib;
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+
+import com.jgoetsch.tradeframework.BrokerResponseException
+import com.jgoetsch.tradeframework.Contract
+import com.jgoetsch.tradeframework.OHLC
+
+class HistoricalDataRequestSchedulerSpec extends Specification {
+
+	def sent = new ConcurrentLinkedQueue()
+	def responses = new ConcurrentLinkedQueue<CompletableFuture<OHLC[]>>()
+
+	static HistoricalDataRequest request(String symbol, String end = "20200102 16:00:00 EST") {
+		new HistoricalDataRequest(Contract.stock(symbol), end, "1800 S", "1 min", "TRADES", true)
+	}
+
+	def scheduler(Closure response = { CompletableFuture.completedFuture(new OHLC[0]) }) {
+		def start = System.nanoTime()
+		new HistoricalDataRequestScheduler({ req ->
+			sent << [req, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)]
+			def future = response(req)
+			responses << future
+			future
+		} as HistoricalDataRequestScheduler.RequestSender)
+	}
+
+	def "Limits requests within the sliding request window"() {
+		given:
+		def scheduler = scheduler()
+		scheduler.maxRequests = 3
+		scheduler.requestWindow = 500
+
+		when:
+		def results = (1..5).collect { scheduler.submit(request("S" + it)) }
+		results*.get(5, TimeUnit.SECONDS)
+
+		then:
+		sent*.get(0) == (1..5).collect { request("S" + it) }
+		sent[2][1] - sent[0][1] < 200
+		sent[3][1] >= 500
+		sent[4][1] >= 500
+	}
+
+	def "Spaces identical requests and limits requests for the same contract"() {
+		given:
+		def scheduler = scheduler()
+		scheduler.identicalRequestInterval = 400
+		scheduler.maxContractRequests = 2
+		scheduler.contractWindow = 300
+
+		when:
+		[request("ABCD"), request("ABCD"), request("ABCD", "20200103 16:00:00 EST"), request("ABCD", "20200106 16:00:00 EST"), request("WXYZ")]
+			.collect { scheduler.submit(it) }*.get(5, TimeUnit.SECONDS)
+
+		then: "requests for other contracts are not held up"
+		sent*.get(0) == [request("ABCD"), request("ABCD", "20200103 16:00:00 EST"), request("WXYZ"), request("ABCD", "20200106 16:00:00 EST"), request("ABCD")]
+		sent[2][1] - sent[0][1] < 200
+		sent[3][1] >= 300
+		sent[4][1] >= 400
+	}
+
+	def "Limits the number of active requests"() {
+		given:
+		def scheduler = scheduler({ new CompletableFuture() })
+		scheduler.maxActiveRequests = 2
+
+		when:
+		def results = (1..3).collect { scheduler.submit(request("S" + it)) }
+
+		then:
+		sent.size() == 2
+		scheduler.activeRequests == 2
+		scheduler.queuedRequests == 1
+
+		when:
+		responses.poll().complete(new OHLC[0])
+
+		then:
+		sent.size() == 3
+		results[0].isDone()
+		!results[2].isDone()
+	}
+
+	def "Retries after a pacing violation and times out unanswered requests"() {
+		given:
+		def attempts = 0
+		def scheduler = scheduler({
+			attempts++ == 0 ? CompletableFuture.failedFuture(new BrokerResponseException(162, "Historical Market Data Service error message:Historical data request pacing violation"))
+				: attempts == 2 ? CompletableFuture.completedFuture(new OHLC[0]) : new CompletableFuture()
+		})
+		scheduler.pacingViolationDelay = 200
+		scheduler.identicalRequestInterval = 0
+		scheduler.requestTimeout = 200
+
+		when:
+		def data = scheduler.submit(request("ABCD")).get(5, TimeUnit.SECONDS)
+
+		then:
+		data.length == 0
+		sent.size() == 2
+		sent[1][1] >= 200
+
+		when:
+		scheduler.submit(request("WXYZ")).get(5, TimeUnit.SECONDS)
+
+		then:
+		def e = thrown(java.util.concurrent.ExecutionException)
+		e.cause instanceof java.util.concurrent.TimeoutException
+		scheduler.activeRequests == 0
+	}
+}
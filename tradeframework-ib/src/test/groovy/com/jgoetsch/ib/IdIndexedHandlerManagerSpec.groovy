@@ -0,0 +1,109 @@
+package com.jgoetsch.ib;
+
+import spock.lang.Specification
+
+import com.ib.client.TickAttrib
+import com.ib.client.TickType
+import com.jgoetsch.ib.handlers.BaseHandler
+import com.jgoetsch.ib.handlers.IdIndexedHandlerManager
+import com.jgoetsch.ib.handlers.MarketDataHandler
+
+class IdIndexedHandlerManagerSpec extends Specification {
+
+	IdIndexedHandlerManager manager = new IdIndexedHandlerManager()
+
+	def "Routes id events only to handlers for that id plus broadcast handlers"() {
+		given:
+		def broadcastEvents = []
+		def broadcast = new BaseHandler() {
+			void tickPrice(int tickerId, int field, double price, TickAttrib attrib) {
+				broadcastEvents << tickerId
+			}
+			void nextValidId(int orderId) {
+				broadcastEvents << "nextValidId"
+			}
+		}
+		def handlers = (1..100).collect { new MarketDataHandler(it, manager) }
+		manager.addHandler(broadcast)
+
+		when:
+		manager.tickPrice(42, TickType.BID.index(), 1.50d, null)
+		manager.tickPrice(7, TickType.ASK.index(), 1.60d, null)
+		manager.tickPrice(1000, TickType.ASK.index(), 1.60d, null)
+		manager.nextValidId(5)
+
+		then:
+		broadcastEvents == [42, 7, 1000, "nextValidId"]
+		handlers[41].toString().contains("Bid=1.5")
+		handlers[6].toString().contains("Ask=1.6")
+		handlers.findAll { it.toString().contains("1.") }.size() == 2
+		manager.getHandlers().size() == 101
+	}
+
+	def "Removes handlers from the index"() {
+		given:
+		def handler = new MarketDataHandler(3, manager)
+
+		when:
+		manager.removeHandler(handler)
+		manager.tickPrice(3, TickType.BID.index(), 1.50d, null)
+
+		then:
+		handler.toString() == "Bid=null, Ask=null, Last=null"
+		manager.getHandlers().isEmpty()
+	}
+
+	def "Keeps routing events while handlers for many ids are added and removed"() {
+		given:
+		def handlers = [:]
+
+		when:
+		for (int id = 1; id <= 1000; id++) {
+			handlers[id] = new MarketDataHandler(id, manager)
+			if (id > 10)
+				manager.removeHandler(handlers.remove(id - 10))
+		}
+		(1..1000).each { manager.tickPrice(it, TickType.BID.index(), it as double, null) }
+
+		then:
+		handlers.keySet() == (991..1000) as Set
+		handlers.every { id, handler -> handler.toString().contains("Bid=" + id + ",") }
+		manager.getHandlers().size() == 10
+	}
+
+	def "Sends connection closed to id handlers"() {
+		given:
+		def handler = new MarketDataHandler(3, manager)
+
+		when:
+		manager.connectionClosed()
+
+		then:
+		handler.getCompletableFuture().isCompletedExceptionally()
+		manager.getHandlers().isEmpty()
+	}
+
+	def "Dispatches events only to handlers that override them"() {
+		given:
+		def handler = new MarketDataHandler(3, manager)
+		def sizes = []
+		def sizeHandler = new BaseHandler() {
+			void tickSize(int tickerId, int field, int size) {
+				sizes << size
+			}
+		}
+		manager.addHandler(sizeHandler)
+
+		expect:
+		manager.getHandlers("tickPrice", 3) == [handler]
+		manager.getHandlers("tickSize", 3) as Set == [handler, sizeHandler] as Set
+		manager.getHandlers("tickPrice", 4).isEmpty()
+		manager.getHandlers("updateAccountValue", -1).isEmpty()
+
+		when:
+		manager.tickSize(4, TickType.BID_SIZE.index(), 100)
+
+		then:
+		sizes == [100]
+	}
+}
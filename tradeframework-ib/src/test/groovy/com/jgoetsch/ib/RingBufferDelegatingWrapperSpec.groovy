@@ -0,0 +1,178 @@
+package com.jgoetsch.ib;
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import com.ib.client.TickAttrib
+import com.jgoetsch.ib.handlers.BaseHandler
+import com.jgoetsch.ib.handlers.RingBufferDelegatingWrapper
+import com.jgoetsch.ib.handlers.RingBufferDelegatingWrapper.WaitStrategy
+import com.jgoetsch.ib.handlers.SimpleHandlerDelegatingWrapper
+
+class RingBufferDelegatingWrapperSpec extends Specification {
+
+	static final int IDS = 5
+	static final int TICKS_PER_ID = 2000
+
+	SimpleHandlerDelegatingWrapper target = new SimpleHandlerDelegatingWrapper()
+	RingBufferDelegatingWrapper bus = new RingBufferDelegatingWrapper(target)
+
+	def cleanup() {
+		bus.stop()
+	}
+
+	@Unroll
+	def "Delivers events in order per id with #strategy wait strategy"() {
+		given:
+		def received = new ConcurrentHashMap()
+		def threads = new ConcurrentHashMap()
+		def done = new CountDownLatch(IDS * TICKS_PER_ID + 1)
+		target.addHandler(new BaseHandler() {
+			void tickSize(int tickerId, int field, int size) {
+				received.computeIfAbsent(tickerId, { [] }) << size
+				threads.computeIfAbsent(tickerId, { [] as Set }) << Thread.currentThread().name
+				done.countDown()
+			}
+			void nextValidId(int orderId) {
+				threads.computeIfAbsent(-1, { [] as Set }) << Thread.currentThread().name
+				done.countDown()
+			}
+		})
+		bus.setConsumerThreads(3)
+		bus.setBufferSize(64)
+		bus.setWaitStrategy(strategy)
+		bus.start()
+
+		when:
+		bus.nextValidId(1)
+		for (int i = 0; i < TICKS_PER_ID; i++)
+			for (int id = 0; id < IDS; id++)
+				bus.tickSize(id, 0, i)
+
+		then:
+		done.await(10, TimeUnit.SECONDS)
+		(0..<IDS).every { received[it] == (0..<TICKS_PER_ID).toList() }
+		(0..<IDS).every { threads[it].size() == 1 && threads[it] != threads[-1] }
+
+		where:
+		strategy << WaitStrategy.values()
+	}
+
+	def "Delivers errors and order events on the partition of their id"() {
+		given:
+		def events = new ConcurrentHashMap()
+		def done = new CountDownLatch(IDS * 3)
+		target.addHandler(new BaseHandler() {
+			void tickSize(int tickerId, int field, int size) {
+				events.computeIfAbsent(tickerId, { [] }) << ["tick", Thread.currentThread().name]
+				done.countDown()
+			}
+			void error(int id, int errorCode, String errorMsg) {
+				events.computeIfAbsent(id, { [] }) << ["error", Thread.currentThread().name]
+				done.countDown()
+			}
+			void orderStatus(int orderId, String status, double filled, double remaining, double avgFillPrice,
+					int permId, int parentId, double lastFillPrice, int clientId, String whyHeld, double mktCapPrice) {
+				events.computeIfAbsent(orderId, { [] }) << ["orderStatus", Thread.currentThread().name]
+				done.countDown()
+			}
+		})
+		bus.setConsumerThreads(3)
+		bus.start()
+
+		when:
+		for (int id = 0; id < IDS; id++) {
+			bus.tickSize(id, 0, 1)
+			bus.orderStatus(id, "Submitted", 0, 1, 0, 0, 0, 0, 0, null, 0)
+			bus.error(id, 200, "No security definition")
+		}
+
+		then:
+		done.await(10, TimeUnit.SECONDS)
+		(0..<IDS).every { id -> events[id]*.get(0) == ["tick", "orderStatus", "error"] && events[id]*.get(1).toSet().size() == 1 }
+	}
+
+	def "Handles published events before stopping and each event once after restart"() {
+		given:
+		def received = Collections.synchronizedList([])
+		def threads = Collections.synchronizedSet([] as Set)
+		target.addHandler(new BaseHandler() {
+			void tickSize(int tickerId, int field, int size) {
+				received << size
+				threads << Thread.currentThread()
+			}
+		})
+		bus.setConsumerThreads(2)
+		bus.setBufferSize(64)
+
+		when:
+		bus.start()
+		for (int i = 0; i < 500; i++)
+			bus.tickSize(1, 0, i)
+		bus.stop()
+
+		then:
+		received == (0..<500).toList()
+		threads.every { !it.alive }
+
+		when:
+		bus.start()
+		for (int i = 500; i < 1000; i++)
+			bus.tickSize(1, 0, i)
+		bus.stop()
+
+		then:
+		received == (0..<1000).toList()
+		threads.every { !it.alive }
+	}
+
+	def "Runs a partition task on each consumer after the events published to it"() {
+		given:
+		def tickThreads = new ConcurrentHashMap()
+		def tasks = new ConcurrentHashMap()
+		def done = new CountDownLatch(3)
+		target.addHandler(new BaseHandler() {
+			void tickSize(int tickerId, int field, int size) {
+				tickThreads[tickerId] = Thread.currentThread().name
+			}
+		})
+		bus.setConsumerThreads(3)
+		bus.start()
+
+		when:
+		for (int id = 0; id < IDS; id++)
+			bus.tickSize(id, 0, 1)
+		bus.executeOnEachPartition({ partition, partitions ->
+			tasks[partition] = [Thread.currentThread().name, (0..<IDS).findAll {
+				RingBufferDelegatingWrapper.partitionOf(it, partitions) == partition && tickThreads[it] != null
+			}]
+			done.countDown()
+		} as RingBufferDelegatingWrapper.PartitionTask)
+
+		then:
+		done.await(10, TimeUnit.SECONDS)
+		tasks.keySet() == [0, 1, 2] as Set
+		(0..<IDS).every { tickThreads[it] == tasks[RingBufferDelegatingWrapper.partitionOf(it, 3)][0] }
+		tasks.values()*.get(1).flatten().sort() == (0..<IDS).toList()
+	}
+
+	def "Passes events inline when not started"() {
+		given:
+		def thread
+		target.addHandler(new BaseHandler() {
+			void tickPrice(int tickerId, int field, double price, TickAttrib attrib) {
+				thread = Thread.currentThread()
+			}
+		})
+
+		when:
+		bus.tickPrice(1, 1, 1.5d, null)
+
+		then:
+		thread == Thread.currentThread()
+	}
+}
@@ -4,10 +4,12 @@ import spock.lang.Specification
 import java.time.ZonedDateTime
 import java.util.concurrent.ExecutionException
 import java.util.concurrent.Executors
+import java.util.concurrent.Flow
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
 
+import com.ib.client.Bar
 import com.ib.client.CommissionReport
 import com.ib.client.EClientSocket
 import com.ib.client.TickType
@@ -15,7 +17,13 @@ import com.jgoetsch.ib.handlers.BaseHandler
 import com.jgoetsch.ib.handlers.MessageLogger
 import com.jgoetsch.ib.handlers.SimpleHandlerDelegatingWrapper
 import com.jgoetsch.tradeframework.Contract
+import com.jgoetsch.tradeframework.OHLC
 import com.jgoetsch.tradeframework.Order
+import com.jgoetsch.tradeframework.data.HistoricalDataSource
+import com.jgoetsch.tradeframework.marketdata.MarketData
+import com.jgoetsch.tradeframework.marketdata.MarketDataField
+import com.jgoetsch.tradeframework.marketdata.MarketDataListener
+import com.jgoetsch.tradeframework.marketdata.SequencedMarketData
 import com.jgoetsch.tradeframework.marketdata.SimpleMarketData
 
 import java.time.ZoneId;
@@ -71,6 +79,90 @@ class TWSServiceSpec extends Specification {
 		e.cause.getClass() == TimeoutException
 	}
 
+	def "Dispatches reusable market data view to subscribers"() {
+		given:
+		def tickerId
+		def received = []
+		def snapshots = []
+		twsService.setReusableMarketData(true)
+		clientSocket.reqMktData(*_) >> { arg -> tickerId = arg[0] }
+
+		when:
+		twsService.subscribeMarketData(Contract.stock("ABCD"), new MarketDataListener() {
+			void tick(Contract contract, MarketData data) {
+				received << data
+				snapshots << data.snapshot()
+			}
+		})
+		wrapper.tickPrice(tickerId, TickType.BID.index(), 1.50, null)
+		wrapper.tickPrice(tickerId, TickType.BID.index(), 1.51, null)
+
+		then:
+		received.size() == 2
+		received[0].is(received[1])
+		received[0] instanceof SequencedMarketData
+		received[0].sequence == 2
+		received[0].bid == 1.51
+		snapshots[0].bid == 1.50
+		snapshots[1].bid == 1.51
+	}
+
+	def "Coalesces price and size ticks into single market data events"() {
+		given:
+		def tickerId
+		def received = []
+		twsService.setCoalesceMarketData(true)
+		clientSocket.reqMktData(*_) >> { arg -> tickerId = arg[0] }
+
+		when:
+		twsService.subscribeMarketData(Contract.stock("ABCD"), new MarketDataListener() {
+			void tick(Contract contract, MarketData data) {
+				received << data
+			}
+		})
+		wrapper.tickPrice(tickerId, TickType.BID.index(), 1.50, null)
+		wrapper.tickSize(tickerId, TickType.BID_SIZE.index(), 10)
+		wrapper.tickPrice(tickerId, TickType.LAST.index(), 1.55, null)
+		wrapper.tickSize(tickerId, TickType.LAST_SIZE.index(), 300)
+		wrapper.tickString(tickerId, TickType.LAST_TIMESTAMP.index(), "1600000000000")
+		wrapper.tickPrice(tickerId, TickType.ASK.index(), 1.60, null)
+		wrapper.tickSize(tickerId, TickType.VOLUME.index(), 5000)
+
+		then:
+		received.size() == 4
+		received[0].bid == 1.50 && received[0].bidSize == 10
+		received[1].last == 1.55 && received[1].lastSize == 300 && received[1].lastTimestamp.toEpochMilli() == 1600000000000L
+		received[2].ask == 1.60 && received[2].volume == null
+		received[3].volume == 5000
+
+		when:
+		wrapper.tickPrice(tickerId, TickType.BID.index(), 1.51, null)
+		twsService.flushMarketData()
+
+		then:
+		received.size() == 5
+		received[4].bid == 1.51
+	}
+
+	def "Filters market data events by subscribed fields"() {
+		given:
+		def tickerId
+		def lastEvents = []
+		def allEvents = []
+		clientSocket.reqMktData(*_) >> { arg -> tickerId = arg[0] }
+
+		when:
+		twsService.subscribeMarketData(Contract.stock("ABCD"), new ChangeRecorder(lastEvents), MarketDataField.LAST)
+		twsService.subscribeMarketData(Contract.stock("ABCD"), new ChangeRecorder(allEvents))
+		wrapper.tickPrice(tickerId, TickType.BID.index(), 1.50, null)
+		wrapper.tickSize(tickerId, TickType.VOLUME.index(), 5000)
+		wrapper.tickPrice(tickerId, TickType.LAST.index(), 1.55, null)
+
+		then:
+		lastEvents == [MarketDataField.LAST]
+		allEvents == [MarketDataField.BID, MarketDataField.VOLUME, MarketDataField.LAST]
+	}
+
 	def "Places order"() {
 		when:
 		twsService.placeOrder(Order.limitOrder(Contract.stock("ABCD"), 2000, 1.55)).get()
@@ -95,4 +187,102 @@ class TWSServiceSpec extends Specification {
 			
 		}
 	}
-}
\ No newline at end of file
+
+	static class ChangeRecorder implements MarketDataListener {
+		final List events
+
+		ChangeRecorder(List events) {
+			this.events = events
+		}
+
+		void tick(Contract contract, MarketData data) {
+		}
+
+		void tick(Contract contract, MarketData data, int changedFields) {
+			events << changedFields
+		}
+	}
+
+	static class BarCollector implements Flow.Subscriber<OHLC> {
+		final long initialRequest
+		Flow.Subscription subscription
+		def received = []
+		def completed = false
+
+		BarCollector(long initialRequest) {
+			this.initialRequest = initialRequest
+		}
+
+		void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription
+			subscription.request(initialRequest)
+		}
+
+		void onNext(OHLC bar) {
+			received << bar
+		}
+
+		void onError(Throwable t) {
+		}
+
+		void onComplete() {
+			completed = true
+		}
+	}
+
+	def "Streams historical bars to a subscriber and keeps them up to date"() {
+		given:
+		def tickerId
+		def args
+		def collector = new BarCollector(2)
+		clientSocket.isConnected() >> true
+		clientSocket.reqHistoricalData(*_) >> { arg -> tickerId = arg[0]; args = arg }
+
+		when:
+		twsService.streamHistoricalData(Contract.stock("ABCD"), new Date(), "1800 S", HistoricalDataSource.PERIOD_1_MINUTE, true, true, collector)
+		wrapper.historicalData(tickerId, new Bar("1600000000", 1.50, 1.60, 1.40, 1.55, 10, 1, 1.5))
+		wrapper.historicalData(tickerId, new Bar("1600000060", 1.55, 1.65, 1.45, 1.60, 10, 1, 1.5))
+		wrapper.historicalData(tickerId, new Bar("1600000120", 1.60, 1.70, 1.50, 1.65, 10, 1, 1.6))
+		wrapper.historicalDataEnd(tickerId, "", "")
+
+		then: "bars are held until requested"
+		args[2] == "" && args[8] == true
+		collector.received*.date*.time == [1600000000000L, 1600000060000L]
+
+		when:
+		collector.subscription.request(Long.MAX_VALUE)
+		wrapper.historicalDataUpdate(tickerId, new Bar("1600000120", 1.60, 1.75, 1.50, 1.72, 20, 2, 1.6))
+
+		then:
+		collector.received*.date*.time == [1600000000000L, 1600000060000L, 1600000120000L, 1600000120000L]
+		collector.received[3].high == 1.75
+		!collector.completed
+
+		when:
+		collector.subscription.cancel()
+		wrapper.historicalDataUpdate(tickerId, new Bar("1600000180", 1.72, 1.75, 1.70, 1.71, 5, 1, 1.7))
+
+		then:
+		1 * clientSocket.cancelHistoricalData(_)
+		collector.received.size() == 4
+	}
+
+	def "Completes streamed historical data at the end of the requested range"() {
+		given:
+		def tickerId
+		def collector = new BarCollector(Long.MAX_VALUE)
+		clientSocket.isConnected() >> true
+		clientSocket.reqHistoricalData(*_) >> { arg -> tickerId = arg[0] }
+
+		when:
+		twsService.streamHistoricalData(Contract.stock("ABCD"), new Date(), "2 D", HistoricalDataSource.PERIOD_1_DAY, true, false, collector)
+		wrapper.historicalData(tickerId, new Bar("20200102", 10.0, 11.0, 9.0, 10.5, 1000, 1, 10.0))
+		wrapper.historicalData(tickerId, new Bar("20200103", 10.5, 11.5, 9.5, 11.0, 1000, 1, 10.5))
+		wrapper.historicalDataEnd(tickerId, "", "")
+
+		then:
+		collector.received*.date == [ZonedDateTime.of(2020, 1, 2, 0, 0, 0, 0, ZoneId.of("America/New_York")), ZonedDateTime.of(2020, 1, 3, 0, 0, 0, 0, ZoneId.of("America/New_York"))].collect { Date.from(it.toInstant()) }
+		collector.completed
+		0 * clientSocket.cancelHistoricalData(_)
+	}
+}
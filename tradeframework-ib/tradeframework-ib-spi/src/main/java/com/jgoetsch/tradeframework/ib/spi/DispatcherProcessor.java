@@ -0,0 +1,185 @@
+package com.jgoetsch.tradeframework.ib.spi;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating the dispatcher classes requested by {@link GenerateDispatcher}.
+ * @author jgoetsch
+ */
+@SupportedAnnotationTypes("com.jgoetsch.tradeframework.ib.spi.GenerateDispatcher")
+public class DispatcherProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(GenerateDispatcher.class)) {
+			TypeElement type = (TypeElement)element;
+			TypeElement eventInterface = InterfaceEvent.getEventInterface(type);
+			if (eventInterface == null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@GenerateDispatcher class must implement an event interface", element);
+				continue;
+			}
+			GenerateDispatcher annotation = type.getAnnotation(GenerateDispatcher.class);
+			List<InterfaceEvent> events = InterfaceEvent.getEvents(processingEnv, eventInterface, type,
+					annotation.broadcastEvents(), annotation.idParameterNames());
+			String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+			try {
+				generate(packageName, annotation.value(), eventInterface, events, type);
+				if (!annotation.queueing().isEmpty())
+					generateQueueing(packageName, annotation.queueing(), annotation.value(), eventInterface, events, type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate dispatcher: " + e, element);
+			}
+		}
+		return true;
+	}
+
+	private void generate(String packageName, String className, TypeElement eventInterface, List<InterfaceEvent> events, TypeElement origin) throws IOException {
+		String iface = eventInterface.getQualifiedName().toString();
+		try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+				.createSourceFile(packageName + "." + className, origin).openWriter())) {
+			out.println("package " + packageName + ";");
+			out.println();
+			out.println("/**");
+			out.println(" * Dispatching implementation of {@link " + iface + "} generated from {@link " + origin.getQualifiedName() + "}.");
+			out.println(" * Each event is passed directly to the handlers returned by {@link #getHandlers(int, int)}.");
+			out.println(" */");
+			out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+			out.println("public abstract class " + className + " implements " + iface + " {");
+			out.println();
+			for (int i = 0; i < events.size(); i++)
+				out.println("\tpublic static final int " + events.get(i).getConstant() + " = " + i + ";");
+			out.println();
+			out.println("\tpublic static final int EVENT_COUNT = " + events.size() + ";");
+			out.println();
+			out.println("\tprotected static final " + iface + "[] NO_HANDLERS = new " + iface + "[0];");
+			out.println();
+			out.println("\tprivate static final String[] eventNames = {");
+			for (InterfaceEvent event : events)
+				out.println("\t\t\"" + event.getName() + "\",");
+			out.println("\t};");
+			out.println();
+			out.println("\tprivate static final java.lang.reflect.Method[] eventMethods = new java.lang.reflect.Method[EVENT_COUNT];");
+			out.println();
+			out.println("\tstatic {");
+			out.println("\t\ttry {");
+			for (InterfaceEvent event : events) {
+				StringBuilder types = new StringBuilder();
+				for (int i = 0; i < event.getParameterNames().size(); i++)
+					types.append(", ").append(processingEnv.getTypeUtils().erasure(event.getParameterType(i))).append(".class");
+				out.println("\t\t\teventMethods[" + event.getConstant() + "] = " + iface + ".class.getMethod(\"" + event.getName() + "\"" + types + ");");
+			}
+			out.println("\t\t} catch (NoSuchMethodException e) {");
+			out.println("\t\t\tthrow new ExceptionInInitializerError(e);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic static String getEventName(int eventType) {");
+			out.println("\t\treturn eventNames[eventType];");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic static java.lang.reflect.Method getEventMethod(int eventType) {");
+			out.println("\t\treturn eventMethods[eventType];");
+			out.println("\t}");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * @return the event types with the given method name, more than one if the method is overloaded");
+			out.println("\t */");
+			out.println("\tpublic static int[] getEventTypes(String eventName) {");
+			out.println("\t\treturn java.util.stream.IntStream.range(0, EVENT_COUNT).filter(i -> eventNames[i].equals(eventName)).toArray();");
+			out.println("\t}");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * Returns the handlers that an event is to be passed to, or an empty array to skip the event.");
+			out.println("\t * Called for every event so it should not allocate.");
+			out.println("\t * ");
+			out.println("\t * @param eventType one of the event type constants of this class");
+			out.println("\t * @param objId request/order/ticker id of the event, or -1 if it does not have one");
+			out.println("\t */");
+			out.println("\tprotected abstract " + iface + "[] getHandlers(int eventType, int objId);");
+			for (InterfaceEvent event : events) {
+				out.println();
+				out.println("\t@Override");
+				out.println("\tpublic void " + event.getName() + "(" + event.getParameterDeclarations() + ") {");
+				String objId = event.getIdParameter() >= 0 ? event.getParameterNames().get(event.getIdParameter()) : "-1";
+				out.println("\t\tfor (" + iface + " handler : getHandlers(" + event.getConstant() + ", " + objId + "))");
+				out.println("\t\t\thandler." + event.getName() + "(" + event.getArguments() + ");");
+				out.println("\t}");
+			}
+			out.println("}");
+		}
+	}
+
+	private void generateQueueing(String packageName, String className, String dispatcherName, TypeElement eventInterface,
+			List<InterfaceEvent> events, TypeElement origin) throws IOException
+	{
+		String iface = eventInterface.getQualifiedName().toString();
+		try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+				.createSourceFile(packageName + "." + className, origin).openWriter())) {
+			out.println("package " + packageName + ";");
+			out.println();
+			out.println("/**");
+			out.println(" * Queueing implementation of {@link " + iface + "} generated from {@link " + origin.getQualifiedName() + "}.");
+			out.println(" * Each event is passed straight to the target returned by {@link #getDirectTarget()}, or if there");
+			out.println(" * is none, captured in a {@link Callback} and passed to {@link #enqueue(int, int, Callback)}.");
+			out.println(" */");
+			out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+			out.println("public abstract class " + className + " implements " + iface + " {");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * Call of an event method captured to be made later.");
+			out.println("\t */");
+			out.println("\t@FunctionalInterface");
+			out.println("\tprotected interface Callback {");
+			out.println("\t\tvoid call(" + iface + " handler);");
+			out.println("\t}");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * Returns the target to pass events to directly on the calling thread, or null if events");
+			out.println("\t * are to be enqueued. Called for every event so it should not allocate.");
+			out.println("\t */");
+			out.println("\tprotected abstract " + iface + " getDirectTarget();");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * Queues a captured event, called only when {@link #getDirectTarget()} returns null.");
+			out.println("\t * ");
+			out.println("\t * @param eventType one of the event type constants of {@link " + dispatcherName + "}");
+			out.println("\t * @param objId request/order/ticker id of the event, or -1 if it does not have one");
+			out.println("\t * @param callback");
+			out.println("\t */");
+			out.println("\tprotected abstract void enqueue(int eventType, int objId, Callback callback);");
+			for (InterfaceEvent event : events) {
+				String handler = "handler";
+				while (event.getParameterNames().contains(handler))
+					handler = "_" + handler;
+				out.println();
+				out.println("\t@Override");
+				out.println("\tpublic void " + event.getName() + "(" + event.getParameterDeclarations() + ") {");
+				String objId = event.getIdParameter() >= 0 ? event.getParameterNames().get(event.getIdParameter()) : "-1";
+				out.println("\t\t" + iface + " target = getDirectTarget();");
+				out.println("\t\tif (target != null)");
+				out.println("\t\t\ttarget." + event.getName() + "(" + event.getArguments() + ");");
+				out.println("\t\telse");
+				out.println("\t\t\tenqueue(" + dispatcherName + "." + event.getConstant() + ", " + objId + ", "
+						+ handler + " -> " + handler + "." + event.getName() + "(" + event.getArguments() + "));");
+				out.println("\t}");
+			}
+			out.println("}");
+		}
+	}
+}
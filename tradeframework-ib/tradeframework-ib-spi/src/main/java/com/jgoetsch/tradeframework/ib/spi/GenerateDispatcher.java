@@ -0,0 +1,41 @@
+package com.jgoetsch.tradeframework.ib.spi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates an abstract dispatching implementation of the interface implemented by the
+ * annotated class, in which each interface method looks up the array of handlers for its
+ * event type and id and calls the same method on each of them directly. The annotated
+ * class is used as the source of the parameter names of each method.
+ * @author jgoetsch
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateDispatcher {
+
+	/**
+	 * Simple name of the generated class, which is generated in the package of the annotated class.
+	 */
+	String value();
+
+	/**
+	 * Names of events that have an id parameter but are never routed by it.
+	 */
+	String[] broadcastEvents() default {};
+
+	/**
+	 * Names of int parameters that identify the request, order or ticker an event is for.
+	 */
+	String[] idParameterNames() default { "reqId", "tickerId", "orderId", "requestId", "id", "marketRuleId" };
+
+	/**
+	 * Simple name of an additional abstract queueing class to generate, or empty for none.
+	 * Each interface method of the queueing class passes the event straight to the target
+	 * returned by <code>getDirectTarget()</code> if there is one, and otherwise captures the
+	 * call in a callback passed to <code>enqueue</code> to be run later on another thread.
+	 */
+	String queueing() default "";
+}
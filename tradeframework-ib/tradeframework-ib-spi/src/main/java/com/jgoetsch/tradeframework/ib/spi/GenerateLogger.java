@@ -0,0 +1,31 @@
+package com.jgoetsch.tradeframework.ib.spi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a logging implementation of the interface implemented by the given source class,
+ * that logs each call at the DEBUG level to a logger named after the annotated class and the
+ * method, checking the level before formatting any of the arguments.
+ * <p>
+ * Arguments are formatted with static methods of the annotated class, which must provide
+ * overloads of <code>isSuppressed(value)</code> and <code>format(String name, value)</code>
+ * for the parameter types of the interface, and <code>append(StringBuilder, String name, String value)</code>.
+ * @author jgoetsch
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateLogger {
+
+	/**
+	 * Simple name of the generated class, which is generated in the package of the annotated class.
+	 */
+	String value();
+
+	/**
+	 * Implementation of the interface to be logged, used as the source of parameter names.
+	 */
+	Class<?> source();
+}
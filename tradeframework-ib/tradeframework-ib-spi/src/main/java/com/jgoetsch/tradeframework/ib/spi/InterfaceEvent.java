@@ -0,0 +1,164 @@
+package com.jgoetsch.tradeframework.ib.spi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+/**
+ * Model of one method of an event interface such as EWrapper, as used by the code generating
+ * annotation processors.
+ * @author jgoetsch
+ */
+class InterfaceEvent {
+	private final String name;
+	private final String constant;
+	private final ExecutableElement method;
+	private final List<String> parameterNames;
+	private final int idParameter;
+
+	private InterfaceEvent(String name, String constant, ExecutableElement method, List<String> parameterNames, int idParameter) {
+		this.name = name;
+		this.constant = constant;
+		this.method = method;
+		this.parameterNames = parameterNames;
+		this.idParameter = idParameter;
+	}
+
+	/**
+	 * Returns the first interface directly implemented by the given class.
+	 */
+	static TypeElement getEventInterface(TypeElement type) {
+		if (type.getInterfaces().isEmpty())
+			return null;
+		return (TypeElement)((DeclaredType)type.getInterfaces().get(0)).asElement();
+	}
+
+	/**
+	 * Builds the list of events for the abstract methods of the given interface, taking the
+	 * parameter names from the implementing methods of the given class if it has them.
+	 */
+	static List<InterfaceEvent> getEvents(ProcessingEnvironment env, TypeElement eventInterface, TypeElement implementation,
+			String[] broadcastEvents, String[] idParameterNames)
+	{
+		Set<String> broadcast = new HashSet<String>(Arrays.asList(broadcastEvents));
+		Set<String> idNames = new HashSet<String>(Arrays.asList(idParameterNames));
+		Set<String> constants = new HashSet<String>();
+		Set<String> methodNames = new HashSet<String>();
+		Set<String> overloaded = new HashSet<String>();
+		List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		for (ExecutableElement method : ElementFilter.methodsIn(eventInterface.getEnclosedElements())) {
+			if (method.getModifiers().contains(Modifier.ABSTRACT)) {
+				methods.add(method);
+				if (!methodNames.add(method.getSimpleName().toString()))
+					overloaded.add(method.getSimpleName().toString());
+			}
+		}
+		List<ExecutableElement> implMethods = ElementFilter.methodsIn(implementation.getEnclosedElements());
+		List<InterfaceEvent> events = new ArrayList<InterfaceEvent>();
+
+		for (ExecutableElement method : methods) {
+			ExecutableElement source = method;
+			for (ExecutableElement impl : implMethods) {
+				if (env.getElementUtils().overrides(impl, method, implementation)) {
+					source = impl;
+					break;
+				}
+			}
+			List<String> names = new ArrayList<String>();
+			for (VariableElement param : source.getParameters())
+				names.add(param.getSimpleName().toString());
+
+			String name = method.getSimpleName().toString();
+			int idParameter = -1;
+			if (!broadcast.contains(name)) {
+				for (int i = 0; i < names.size(); i++) {
+					if (method.getParameters().get(i).asType().getKind() == TypeKind.INT && idNames.contains(names.get(i))) {
+						idParameter = i;
+						break;
+					}
+				}
+			}
+
+			// overloaded methods are told apart by the type of their first parameter, e.g. ERROR_STRING
+			String constant = toConstantName(name);
+			if (overloaded.contains(name) && !method.getParameters().isEmpty()) {
+				TypeMirror firstType = env.getTypeUtils().erasure(method.getParameters().get(0).asType());
+				String typeName = firstType.getKind() == TypeKind.DECLARED
+						? ((DeclaredType)firstType).asElement().getSimpleName().toString() : firstType.toString();
+				constant = constant + "_" + toConstantName(typeName);
+			}
+			for (int n = 1; !constants.add(constant); n++)
+				constant = toConstantName(name) + "_" + n;
+
+			events.add(new InterfaceEvent(name, constant, method, names, idParameter));
+		}
+		return events;
+	}
+
+	static String toConstantName(String name) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (i > 0 && Character.isUpperCase(c) && !Character.isUpperCase(name.charAt(i - 1)))
+				sb.append('_');
+			sb.append(Character.toUpperCase(c));
+		}
+		return sb.toString();
+	}
+
+	String getName() {
+		return name;
+	}
+
+	String getConstant() {
+		return constant;
+	}
+
+	ExecutableElement getMethod() {
+		return method;
+	}
+
+	List<String> getParameterNames() {
+		return parameterNames;
+	}
+
+	int getIdParameter() {
+		return idParameter;
+	}
+
+	TypeMirror getParameterType(int i) {
+		return method.getParameters().get(i).asType();
+	}
+
+	/**
+	 * @return parameter declarations of the method, e.g. "int reqId, com.ib.client.Bar bar"
+	 */
+	String getParameterDeclarations() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < parameterNames.size(); i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(getParameterType(i)).append(' ').append(parameterNames.get(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return parameter names separated by commas, for passing on to another call
+	 */
+	String getArguments() {
+		return String.join(", ", parameterNames);
+	}
+}
@@ -0,0 +1,113 @@
+package com.jgoetsch.tradeframework.ib.spi;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating the logging handlers requested by {@link GenerateLogger}.
+ * @author jgoetsch
+ */
+@SupportedAnnotationTypes("com.jgoetsch.tradeframework.ib.spi.GenerateLogger")
+public class LoggerProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(GenerateLogger.class)) {
+			TypeElement type = (TypeElement)element;
+			GenerateLogger annotation = type.getAnnotation(GenerateLogger.class);
+			TypeElement source;
+			try {
+				annotation.source();
+				throw new IllegalStateException("source class should not be loadable during annotation processing");
+			} catch (MirroredTypeException e) {
+				source = (TypeElement)((DeclaredType)e.getTypeMirror()).asElement();
+			}
+			TypeElement eventInterface = InterfaceEvent.getEventInterface(source);
+			if (eventInterface == null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@GenerateLogger source class must implement an event interface", element);
+				continue;
+			}
+			List<InterfaceEvent> events = InterfaceEvent.getEvents(processingEnv, eventInterface, source, new String[0], new String[0]);
+			String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+			try {
+				generate(packageName, annotation.value(), eventInterface, events, type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate logger: " + e, element);
+			}
+		}
+		return true;
+	}
+
+	private void generate(String packageName, String className, TypeElement eventInterface, List<InterfaceEvent> events, TypeElement formatter) throws IOException {
+		String iface = eventInterface.getQualifiedName().toString();
+		String fmt = formatter.getQualifiedName().toString();
+		Set<String> eventNames = new LinkedHashSet<String>();
+		for (InterfaceEvent event : events)
+			eventNames.add(event.getName());
+
+		try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+				.createSourceFile(packageName + "." + className, formatter).openWriter())) {
+			out.println("package " + packageName + ";");
+			out.println();
+			out.println("/**");
+			out.println(" * Logging implementation of {@link " + iface + "} generated from {@link " + fmt + "}.");
+			out.println(" * Each event is logged at the DEBUG level to the logger " + fmt + ".&lt;event name&gt;.");
+			out.println(" */");
+			out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+			out.println("public class " + className + " implements " + iface + " {");
+			out.println();
+			out.println("\tprivate static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(" + fmt + ".class);");
+			for (String name : eventNames)
+				out.println("\tprivate static final org.slf4j.Logger " + name + "Log = org.slf4j.LoggerFactory.getLogger(\"" + fmt + "." + name + "\");");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * Returns the names of the events whose logger has DEBUG enabled.");
+			out.println("\t */");
+			out.println("\tpublic static String[] getEnabledEvents() {");
+			out.println("\t\tjava.util.List<String> events = new java.util.ArrayList<String>();");
+			for (String name : eventNames) {
+				out.println("\t\tif (" + name + "Log.isDebugEnabled())");
+				out.println("\t\t\tevents.add(\"" + name + "\");");
+			}
+			out.println("\t\treturn events.toArray(new String[0]);");
+			out.println("\t}");
+			for (InterfaceEvent event : events) {
+				out.println();
+				out.println("\t@Override");
+				out.println("\tpublic void " + event.getName() + "(" + event.getParameterDeclarations() + ") {");
+				out.println("\t\tif (" + event.getName() + "Log.isDebugEnabled()) {");
+				out.println("\t\t\ttry {");
+				out.println("\t\t\t\tStringBuilder sb = new StringBuilder();");
+				for (String param : event.getParameterNames()) {
+					out.println("\t\t\t\tif (!" + fmt + ".isSuppressed(" + param + "))");
+					out.println("\t\t\t\t\t" + fmt + ".append(sb, \"" + param + "\", " + fmt + ".format(\"" + param + "\", " + param + "));");
+				}
+				out.println("\t\t\t\t" + event.getName() + "Log.debug(\"{} {}\", \"" + event.getName() + "\", sb.toString());");
+				out.println("\t\t\t} catch (Exception e) {");
+				out.println("\t\t\t\tlog.error(\"Exception logging message\", e);");
+				out.println("\t\t\t}");
+				out.println("\t\t}");
+				out.println("\t}");
+			}
+			out.println("}");
+		}
+	}
+}